@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley;
+
+import org.commonjava.maven.galley.model.Location;
+
+/**
+ * The request wasn't sent, because the location is known to be failing (for example, its circuit breaker is open).
+ * This says nothing about whether the requested content exists.
+ */
+public class TransferLocationUnavailableException
+    extends TransferLocationException
+{
+
+    private static final long serialVersionUID = 1L;
+
+    public TransferLocationUnavailableException( final Location location, final String format, final Object... params )
+    {
+        super( location, format, params );
+    }
+
+}
@@ -17,13 +17,16 @@ package org.commonjava.maven.galley;
 
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.ListingResult;
 import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.PublishBatch;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferBatch;
+import org.commonjava.maven.galley.model.TransferBatchListener;
 import org.commonjava.maven.galley.model.VirtualResource;
 
 public interface TransferManager
@@ -43,6 +46,31 @@ public interface TransferManager
     <T extends TransferBatch> T batchRetrieveAll( T batch , EventMetadata eventMetadata  )
         throws TransferException;
 
+    /**
+     * Like {@link #batchRetrieve(TransferBatch, EventMetadata)}, but also reports each resource's result to the
+     * listener as soon as it's ready. See {@link TransferBatchListener} for threading and backpressure.
+     */
+    <T extends TransferBatch> T batchRetrieve( T batch, EventMetadata eventMetadata, TransferBatchListener listener )
+        throws TransferException;
+
+    /**
+     * Like {@link #batchRetrieveAll(TransferBatch, EventMetadata)}, but also reports each resource's result to the
+     * listener as soon as it's ready. See {@link TransferBatchListener} for threading and backpressure.
+     */
+    <T extends TransferBatch> T batchRetrieveAll( T batch, EventMetadata eventMetadata,
+                                                  TransferBatchListener listener )
+        throws TransferException;
+
+    /**
+     * Publish every item in the batch concurrently, each followed by the checksum sidecars generated while it was
+     * sent. Per-item outcomes are recorded in the batch; this only throws if interrupted while waiting for them.
+     */
+    <T extends PublishBatch> T batchPublish( T batch )
+        throws TransferException;
+
+    <T extends PublishBatch> T batchPublish( T batch, EventMetadata eventMetadata )
+        throws TransferException;
+
     Transfer retrieveFirst( VirtualResource resource )
         throws TransferException;
 
@@ -119,4 +147,28 @@ public interface TransferManager
     Transfer retrieve( ConcreteResource resource, boolean suppressFailures, EventMetadata eventMetadata )
         throws TransferException;
 
+    /*
+     * Asynchronous variants. These never block the calling thread; failures that the blocking methods would throw
+     * complete the returned stage exceptionally with the same TransferException. Dependent stages that don't use the
+     * *Async composition methods run on the galley thread that completed the transfer.
+     */
+
+    CompletionStage<Transfer> retrieveAsync( ConcreteResource resource );
+
+    CompletionStage<Transfer> retrieveAsync( ConcreteResource resource, boolean suppressFailures,
+                                             EventMetadata eventMetadata );
+
+    CompletionStage<Transfer> retrieveFirstAsync( VirtualResource resource );
+
+    CompletionStage<Transfer> retrieveFirstAsync( VirtualResource resource, EventMetadata eventMetadata );
+
+    CompletionStage<Boolean> existsAsync( ConcreteResource resource );
+
+    CompletionStage<ListingResult> listAsync( ConcreteResource resource );
+
+    CompletionStage<ListingResult> listAsync( ConcreteResource resource, EventMetadata metadata );
+
+    CompletionStage<Boolean> publishAsync( ConcreteResource resource, InputStream stream, long length,
+                                           String contentType, EventMetadata metadata );
+
 }
@@ -32,12 +32,46 @@ public class TransportManagerConfig
 
     float DEFAULT_TIMEOUT_OVEREXTENSION_FACTOR = 1.25f;
 
+    int DEFAULT_EXISTENCE_CACHE_SECONDS = 10; // positive existence-check results are reused for this long.
+
+    int DEFAULT_BATCH_CONCURRENCY = 12; // matches the default size of the galley-batching pool.
+
+    int DEFAULT_BULKHEAD_QUEUE_SIZE = 50; // jobs waiting on one saturated location before new ones are rejected.
+
+    int DEFAULT_DOWNLOAD_STALL_SECONDS = 15; // a download that stops receiving data is abandoned after this long.
+
+    int DEFAULT_DOWNLOAD_CONCURRENCY = 12; // matches the default size of the galley-transfers pool.
+
+    int DEFAULT_RESERVED_PRIORITY_DOWNLOADS = 2; // download slots bulk content can never take.
+
     private long thresholdWaitRetrySize;
 
     private long waitRetryScalingIncrement;
 
     private float timeoutOverextensionFactor;
 
+    private boolean virtualThreadsEnabled;
+
+    private boolean parallelRetrieveFirst;
+
+    private long retrieveFirstHedgeMillis;
+
+    private int existenceCacheSeconds = DEFAULT_EXISTENCE_CACHE_SECONDS;
+
+    private int batchConcurrency = DEFAULT_BATCH_CONCURRENCY;
+
+    private boolean locationBulkheadsEnabled;
+
+    private int bulkheadQueueSize = DEFAULT_BULKHEAD_QUEUE_SIZE;
+
+    private int downloadStallSeconds = DEFAULT_DOWNLOAD_STALL_SECONDS;
+
+    private boolean fairShareDownloadsEnabled;
+
+    private int downloadConcurrency = DEFAULT_DOWNLOAD_CONCURRENCY;
+
+    private int reservedPriorityDownloads = DEFAULT_RESERVED_PRIORITY_DOWNLOADS;
+
     public TransportManagerConfig()
     {
         thresholdWaitRetrySize = DEFAULT_THRESHOLD_WAIT_RETRY_SIZE;
@@ -51,6 +85,11 @@ public class TransportManagerConfig
         this.waitRetryScalingIncrement = waitRetryScalingIncrement;
     }
 
+    /**
+     * Only used for transports that don't report download progress (see {@link
+     * org.commonjava.maven.galley.spi.transport.DownloadJob#getBytesTransferred()}): downloads announcing a larger size
+     * than this get extra time, scaled by {@link #getWaitRetryScalingIncrement()}.
+     */
     public long getThresholdWaitRetrySize()
     {
         return thresholdWaitRetrySize;
@@ -65,4 +104,169 @@ public class TransportManagerConfig
     {
         return timeoutOverextensionFactor;
     }
+
+    /**
+     * If true, transfer, batch and listing jobs run on virtual threads (one per job, falling back to an unbounded
+     * pool of daemon threads on JVMs without virtual-thread support) instead of the fixed-size transfer pools. The
+     * number of concurrent jobs against any one location is then capped by its {@link
+     * org.commonjava.maven.galley.model.Location#MAX_CONNECTIONS} attribute rather than by the pool size.
+     */
+    public boolean isVirtualThreadsEnabled()
+    {
+        return virtualThreadsEnabled;
+    }
+
+    public void setVirtualThreadsEnabled( boolean virtualThreadsEnabled )
+    {
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+    }
+
+    /**
+     * If true, retrieveFirst() probes the locations of a virtual resource concurrently (using existence checks) instead
+     * of retrieving from each in turn. The result is the same as the sequential walk: the first location by priority
+     * that has the resource wins, and only that location's content is downloaded.
+     */
+    public boolean isParallelRetrieveFirst()
+    {
+        return parallelRetrieveFirst;
+    }
+
+    public void setParallelRetrieveFirst( boolean parallelRetrieveFirst )
+    {
+        this.parallelRetrieveFirst = parallelRetrieveFirst;
+    }
+
+    /**
+     * With {@link #isParallelRetrieveFirst()}, how long to wait on a location's probe before also probing the next
+     * location (hedging). Zero (the default) probes every location at once.
+     */
+    public long getRetrieveFirstHedgeMillis()
+    {
+        return retrieveFirstHedgeMillis;
+    }
+
+    public void setRetrieveFirstHedgeMillis( long retrieveFirstHedgeMillis )
+    {
+        this.retrieveFirstHedgeMillis = retrieveFirstHedgeMillis;
+    }
+
+    /**
+     * How long a positive remote existence check is remembered, so repeated checks of the same resource don't each
+     * send a request upstream. Negative results are handled by the NFC instead. Zero disables the cache.
+     */
+    public int getExistenceCacheSeconds()
+    {
+        return existenceCacheSeconds;
+    }
+
+    public void setExistenceCacheSeconds( int existenceCacheSeconds )
+    {
+        this.existenceCacheSeconds = existenceCacheSeconds;
+    }
+
+    /**
+     * Maximum number of retrieval tries a single batch retrieval runs at once, across all locations. Tries against any
+     * one location are further limited by its {@link org.commonjava.maven.galley.model.Location#MAX_CONNECTIONS}
+     * attribute.
+     */
+    public int getBatchConcurrency()
+    {
+        return batchConcurrency;
+    }
+
+    public void setBatchConcurrency( int batchConcurrency )
+    {
+        this.batchConcurrency = batchConcurrency;
+    }
+
+    /**
+     * If true, download, upload and listing jobs against each location are isolated from other locations: no more than
+     * the location's {@link org.commonjava.maven.galley.model.Location#MAX_CONNECTIONS} jobs run at once, up to
+     * {@link #getBulkheadQueueSize()} more wait for a slot, and anything past that fails straight away with a {@link
+     * org.commonjava.maven.galley.TransferLocationException}. This keeps a slow or hung upstream from tying up every
+     * transfer thread.
+     */
+    public boolean isLocationBulkheadsEnabled()
+    {
+        return locationBulkheadsEnabled;
+    }
+
+    public void setLocationBulkheadsEnabled( boolean locationBulkheadsEnabled )
+    {
+        this.locationBulkheadsEnabled = locationBulkheadsEnabled;
+    }
+
+    /**
+     * With {@link #isLocationBulkheadsEnabled()}, how many jobs of each kind may wait for a slot on a saturated
+     * location before new ones are rejected.
+     */
+    public int getBulkheadQueueSize()
+    {
+        return bulkheadQueueSize;
+    }
+
+    public void setBulkheadQueueSize( int bulkheadQueueSize )
+    {
+        this.bulkheadQueueSize = bulkheadQueueSize;
+    }
+
+    /**
+     * For transports that report download progress, how long a download may go without receiving any data, once it has
+     * started receiving, before the waiting caller gives up on it. As long as data keeps arriving, callers keep waiting
+     * regardless of the download's size or the request timeout. Before the first byte arrives, the request timeout
+     * (scaled by {@link #getTimeoutOverextensionFactor()}) applies instead.
+     */
+    public int getDownloadStallSeconds()
+    {
+        return downloadStallSeconds;
+    }
+
+    public void setDownloadStallSeconds( int downloadStallSeconds )
+    {
+        this.downloadStallSeconds = downloadStallSeconds;
+    }
+
+    /**
+     * If true, downloads of small, latency-sensitive files (special paths like metadata, checksums and signatures, and
+     * POMs) are scheduled ahead of bulk downloads: at most {@link #getDownloadConcurrency()} downloads run at once,
+     * queued priority downloads always start before queued bulk ones, and bulk downloads never take the last {@link
+     * #getReservedPriorityDownloads()} slots. Ignored when virtual threads are enabled, since there is no pool to
+     * queue for then.
+     */
+    public boolean isFairShareDownloadsEnabled()
+    {
+        return fairShareDownloadsEnabled;
+    }
+
+    public void setFairShareDownloadsEnabled( boolean fairShareDownloadsEnabled )
+    {
+        this.fairShareDownloadsEnabled = fairShareDownloadsEnabled;
+    }
+
+    /**
+     * With {@link #isFairShareDownloadsEnabled()}, maximum number of downloads running at once, across all locations.
+     */
+    public int getDownloadConcurrency()
+    {
+        return downloadConcurrency;
+    }
+
+    public void setDownloadConcurrency( int downloadConcurrency )
+    {
+        this.downloadConcurrency = downloadConcurrency;
+    }
+
+    /**
+     * With {@link #isFairShareDownloadsEnabled()}, how many of the {@link #getDownloadConcurrency()} slots are kept
+     * free of bulk downloads.
+     */
+    public int getReservedPriorityDownloads()
+    {
+        return reservedPriorityDownloads;
+    }
+
+    public void setReservedPriorityDownloads( int reservedPriorityDownloads )
+    {
+        this.reservedPriorityDownloads = reservedPriorityDownloads;
+    }
 }
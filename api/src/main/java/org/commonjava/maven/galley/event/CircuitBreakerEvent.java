@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.event;
+
+import org.commonjava.maven.galley.model.Location;
+
+/**
+ * Fired when a transport's circuit breaker for a location changes state: it opens when too many recent requests to
+ * the location failed (and from then on, requests fail fast), goes half-open when it lets a probe request through
+ * after a while, and closes again once a probe succeeds.
+ */
+public class CircuitBreakerEvent
+{
+    public enum State
+    {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final Location location;
+
+    private final State previous;
+
+    private final State state;
+
+    public CircuitBreakerEvent( final Location location, final State previous, final State state )
+    {
+        this.location = location;
+        this.previous = previous;
+        this.state = state;
+    }
+
+    public Location getLocation()
+    {
+        return location;
+    }
+
+    public State getPrevious()
+    {
+        return previous;
+    }
+
+    public State getState()
+    {
+        return state;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format( "CircuitBreakerEvent [location=%s, %s -> %s]", location, previous, state );
+    }
+}
@@ -17,17 +17,29 @@ package org.commonjava.maven.galley.io.checksum;
 
 public enum ChecksumAlgorithm
 {
-    MD5( ".md5" ), SHA1( ".sha1" ), SHA256( ".sha256" ), SHA384( ".sha384" ), SHA512( ".sha512" );
+    MD5( ".md5", "MD5" ), SHA1( ".sha1", "SHA-1" ), SHA256( ".sha256", "SHA-256" ), SHA384( ".sha384", "SHA-384" ),
+    SHA512( ".sha512", "SHA-512" );
 
     private String extension;
 
-    ChecksumAlgorithm( String extension )
+    private String digestName;
+
+    ChecksumAlgorithm( String extension, String digestName )
     {
         this.extension = extension;
+        this.digestName = digestName;
     }
 
     public String getExtension()
     {
         return extension;
     }
+
+    /**
+     * Name of the algorithm for {@link java.security.MessageDigest#getInstance(String)}.
+     */
+    public String getDigestName()
+    {
+        return digestName;
+    }
 }
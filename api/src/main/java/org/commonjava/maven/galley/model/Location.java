@@ -26,10 +26,36 @@ public interface Location
 
     String METADATA_TIMEOUT_SECONDS = "metadata-timeout";
 
+    String METADATA_MAX_STALE_SECONDS = "metadata-max-stale";
+
     String ATTR_ALT_STORAGE_LOCATION = "alt-storage-location";
 
     String MAX_CONNECTIONS = "max-connections";
 
+    String SEGMENTED_DOWNLOAD_THRESHOLD = "segmented-download-threshold";
+
+    String SEGMENTED_DOWNLOAD_SEGMENTS = "segmented-download-segments";
+
+    String CIRCUIT_BREAKER_FAILURE_RATE = "circuit-breaker-failure-rate";
+
+    String CIRCUIT_BREAKER_WINDOW = "circuit-breaker-window";
+
+    String CIRCUIT_BREAKER_OPEN_SECONDS = "circuit-breaker-open-seconds";
+
+    String RETRY_MAX_RETRIES = "retry-max-retries";
+
+    String RETRY_BACKOFF_MILLIS = "retry-backoff-millis";
+
+    String RETRY_MAX_BACKOFF_MILLIS = "retry-max-backoff-millis";
+
+    String HEDGE_PERCENTILE = "hedge-percentile";
+
+    String MAX_BYTES_PER_SECOND = "max-bytes-per-second";
+
+    String COMPRESSED_DOWNLOADS = "compressed-downloads";
+
+    String COMPRESSED_UPLOADS = "compressed-uploads";
+
     int DEFAULT_CONNECTION_TIMEOUT_SECONDS = 30;
 
     int DEFAULT_CACHE_TIMEOUT_SECONDS = 86400;
@@ -38,6 +64,16 @@ public interface Location
 
     int DEFAULT_MAX_CONNECTIONS = 10;
 
+    int DEFAULT_SEGMENTED_DOWNLOAD_SEGMENTS = 4;
+
+    int DEFAULT_CIRCUIT_BREAKER_WINDOW = 20;
+
+    int DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS = 30;
+
+    int DEFAULT_RETRY_BACKOFF_MILLIS = 200;
+
+    int DEFAULT_RETRY_MAX_BACKOFF_MILLIS = 5000;
+
     boolean allowsDownloading();
 
     boolean allowsPublishing();
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.model;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.io.checksum.ChecksumAlgorithm;
+
+/**
+ * A set of resources to publish together, e.g. the files of one deployment. Each item's checksum sidecars (MD5 and
+ * SHA-1 unless {@link #setChecksums(Set)} says otherwise) are computed while its content is sent, and published once
+ * it succeeds; items that already have a sidecar in the batch keep it. Results and errors are keyed by resource,
+ * sidecars included.
+ */
+public class PublishBatch
+{
+
+    private final List<Item> items = new ArrayList<>();
+
+    private Set<ChecksumAlgorithm> checksums = EnumSet.of( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1 );
+
+    private Map<ConcreteResource, Boolean> results;
+
+    private Map<ConcreteResource, TransferException> errors;
+
+    public PublishBatch add( final ConcreteResource resource, final InputStream stream, final long length )
+    {
+        return add( resource, stream, length, null );
+    }
+
+    public PublishBatch add( final ConcreteResource resource, final InputStream stream, final long length,
+                             final String contentType )
+    {
+        items.add( new Item( resource, stream, length, contentType ) );
+        return this;
+    }
+
+    public List<Item> getItems()
+    {
+        return items;
+    }
+
+    public Set<ChecksumAlgorithm> getChecksums()
+    {
+        return checksums;
+    }
+
+    public void setChecksums( final Set<ChecksumAlgorithm> checksums )
+    {
+        this.checksums = checksums == null || checksums.isEmpty() ?
+                EnumSet.noneOf( ChecksumAlgorithm.class ) :
+                EnumSet.copyOf( checksums );
+    }
+
+    public void setResults( final Map<ConcreteResource, Boolean> results )
+    {
+        this.results = results;
+    }
+
+    public Map<ConcreteResource, Boolean> getResults()
+    {
+        return results == null ? Collections.<ConcreteResource, Boolean> emptyMap() : results;
+    }
+
+    /**
+     * True if the resource was published; false if it failed, was skipped because its item failed, or isn't part of
+     * the batch.
+     */
+    public boolean isPublished( final ConcreteResource resource )
+    {
+        return results != null && Boolean.TRUE.equals( results.get( resource ) );
+    }
+
+    public void setErrors( final Map<ConcreteResource, TransferException> errors )
+    {
+        this.errors = errors;
+    }
+
+    public Map<ConcreteResource, TransferException> getErrors()
+    {
+        return errors == null ? Collections.<ConcreteResource, TransferException> emptyMap() : errors;
+    }
+
+    public TransferException getError( final ConcreteResource resource )
+    {
+        return errors == null ? null : errors.get( resource );
+    }
+
+    public static final class Item
+    {
+        private final ConcreteResource resource;
+
+        private final InputStream stream;
+
+        private final long length;
+
+        private final String contentType;
+
+        private Item( final ConcreteResource resource, final InputStream stream, final long length,
+                      final String contentType )
+        {
+            this.resource = resource;
+            this.stream = stream;
+            this.length = length;
+            this.contentType = contentType;
+        }
+
+        public ConcreteResource getResource()
+        {
+            return resource;
+        }
+
+        public InputStream getStream()
+        {
+            return stream;
+        }
+
+        public long getLength()
+        {
+            return length;
+        }
+
+        public String getContentType()
+        {
+            return contentType;
+        }
+    }
+
+}
@@ -508,6 +508,14 @@ public class Transfer
         return provider.isWriteLocked( resource );
     }
 
+    /**
+     * @see CacheProvider#isStreamingThrough(ConcreteResource)
+     */
+    public boolean isStreamingThrough()
+    {
+        return provider.isStreamingThrough( resource );
+    }
+
     public TransferDecoratorManager getDecorator()
     {
         return decorator;
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.model;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.event.EventMetadata;
+
+/**
+ * Receives the results of a streaming batch retrieval (for example
+ * {@link org.commonjava.maven.galley.TransferManager#batchRetrieve(TransferBatch, EventMetadata, TransferBatchListener)})
+ * as each requested resource finishes, instead of all at once when the whole batch is done.
+ * <br/>
+ * Callbacks are made one at a time, on the thread that called the batch method, which is also the thread that starts
+ * new retrievals. While a callback runs no new retrievals are started, so a slow listener throttles the batch; at most
+ * the configured batch concurrency of retrievals finish and wait for it in the meantime. If a callback throws, the
+ * batch stops starting new retrievals and the exception propagates to the caller.
+ */
+public interface TransferBatchListener
+{
+    /**
+     * The resource was retrieved. For a {@link VirtualResource}, this is the concrete resource that was found.
+     */
+    void transferred( ConcreteResource resource, Transfer transfer );
+
+    /**
+     * Retrieval failed; this was the last resource tried.
+     */
+    void failed( ConcreteResource resource, TransferException error );
+
+    /**
+     * The requested resource wasn't found in any of its locations.
+     */
+    void notFound( Resource resource );
+}
@@ -32,6 +32,12 @@ public interface CacheProvider
 
     String SUFFIX_TO_WRITE = ".to-write";
 
+    String SUFFIX_TO_RESUME = ".to-resume";
+
+    String SUFFIX_TO_REVALIDATE = ".to-revalidate";
+
+    String SUFFIX_TO_ASSEMBLE = ".to-assemble";
+
     @Deprecated
     String STORAGE_PATH = "storage-path";
 
@@ -42,6 +48,9 @@ public interface CacheProvider
         {
             add( SUFFIX_TO_DELETE );
             add( SUFFIX_TO_WRITE );
+            add( SUFFIX_TO_RESUME );
+            add( SUFFIX_TO_REVALIDATE );
+            add( SUFFIX_TO_ASSEMBLE );
         }
 
         private static final long serialVersionUID = 1L;
@@ -66,6 +75,15 @@ public interface CacheProvider
 
     boolean exists( ConcreteResource resource );
 
+    /**
+     * Whether the resource is being written right now, and readers that open it receive its content as it's written
+     * (failing if the write fails) instead of a partial file.
+     */
+    default boolean isStreamingThrough( ConcreteResource resource )
+    {
+        return false;
+    }
+
     void copy( ConcreteResource from, ConcreteResource to )
         throws IOException;
 
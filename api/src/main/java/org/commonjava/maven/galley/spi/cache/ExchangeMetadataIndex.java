@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.spi.cache;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+
+/**
+ * Answers whether a transport has kept exchange metadata (response headers, and so possibly a validator) for a
+ * resource somewhere other than next to the cached file. A cache asks before deciding whether an expired file is worth
+ * setting aside for revalidation rather than deleting it.
+ */
+public interface ExchangeMetadataIndex
+{
+
+    /**
+     * @return true if metadata is recorded for the resource
+     */
+    boolean contains( ConcreteResource resource );
+
+}
@@ -15,6 +15,7 @@
  */
 package org.commonjava.maven.galley.spi.event;
 
+import org.commonjava.maven.galley.event.CircuitBreakerEvent;
 import org.commonjava.maven.galley.event.FileAccessEvent;
 import org.commonjava.maven.galley.event.FileDeletionEvent;
 import org.commonjava.maven.galley.event.FileErrorEvent;
@@ -34,4 +35,11 @@ public interface FileEventManager
     void fire( final FileDeletionEvent evt );
 
     void fire( final FileErrorEvent evt );
+
+    /**
+     * A transport's circuit breaker for a location changed state. Not every event manager cares about these.
+     */
+    default void fire( final CircuitBreakerEvent evt )
+    {
+    }
 }
@@ -0,0 +1,27 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.spi.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Registers live values (for example, how many jobs are currently running against a location) with the metrics
+ * system, which samples them whenever it reports.
+ */
+public interface GaugeProvider
+{
+    void register( String name, Supplier<? extends Number> gauge );
+}
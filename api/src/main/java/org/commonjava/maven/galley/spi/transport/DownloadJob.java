@@ -34,5 +34,15 @@ public interface DownloadJob
      */
     long getTransferSize();
 
+    /**
+     * Number of content bytes written to the target so far, read (from another thread) while the job is running so the
+     * handler can tell a slow but healthy download from a stalled one. If the job doesn't track this, return -1, and
+     * the handler falls back to waiting based on {@link #getTransferSize()}.
+     */
+    default long getBytesTransferred()
+    {
+        return -1;
+    }
+
     Transfer getTransfer();
 }
@@ -65,4 +65,13 @@ public interface Transport
 
     boolean allowsCaching();
 
+    /**
+     * @return false while requests to the location would fail fast without contacting it (for example, because its
+     * circuit breaker is open), so callers with alternatives can skip it.
+     */
+    default boolean isAvailable( final Location location )
+    {
+        return true;
+    }
+
 }
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Implemented by output streams whose content can be abandoned part-way. A writer that fails (an upstream read dies
+ * mid-download, say) aborts the stream before closing it, so the close doesn't publish the incomplete content as if
+ * it were whole, and anyone reading the content as it's written gets the failure instead of a short file.
+ *
+ * @see IdempotentCloseOutputStream
+ */
+public interface AbortableOutput
+{
+
+    /**
+     * Mark the content written so far as incomplete. The stream still has to be closed afterward.
+     *
+     * @return true if the content will be discarded on close; false if nothing underneath can discard it, so closing
+     * the stream keeps whatever was written
+     */
+    boolean abort( IOException cause );
+
+    /**
+     * Abort the stream if it supports that; otherwise do nothing.
+     *
+     * @return true if the content will be discarded on close
+     */
+    static boolean abort( final OutputStream out, final IOException cause )
+    {
+        return out instanceof AbortableOutput && ( (AbortableOutput) out ).abort( cause );
+    }
+
+}
@@ -20,12 +20,14 @@ import java.io.FileNotFoundException;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class AtomicFileOutputStreamWrapper
     extends IdempotentCloseOutputStream
+    implements DirectFileOutput
 {
 
     public static abstract class AtomicStreamCallbacks
@@ -37,8 +39,31 @@ public class AtomicFileOutputStreamWrapper
         public void afterClose()
         {
         }
+
+        /**
+         * Called as soon as the stream is aborted, before it's closed.
+         */
+        public void aborted( final IOException cause )
+        {
+        }
+
+        /**
+         * Called on close of an aborted stream, instead of moving the download file to the target. By default the
+         * incomplete download file is deleted.
+         */
+        public void discard( final File downloadFile )
+        {
+            if ( downloadFile.exists() && !downloadFile.delete() )
+            {
+                LoggerFactory.getLogger( getClass() ).warn( "Failed to delete incomplete file: {}", downloadFile );
+            }
+        }
     }
 
+    private static final AtomicStreamCallbacks DISCARD = new AtomicStreamCallbacks()
+    {
+    };
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final File downloadFile;
@@ -47,6 +72,8 @@ public class AtomicFileOutputStreamWrapper
 
     private final AtomicStreamCallbacks callbacks;
 
+    private volatile boolean discarding;
+
     public AtomicFileOutputStreamWrapper( final File targetFile, final File downloadFile, final OutputStream stream )
         throws FileNotFoundException
     {
@@ -81,13 +108,20 @@ public class AtomicFileOutputStreamWrapper
         }
         finally
         {
-            try
+            if ( discarding )
             {
-                downloadFile.renameTo( targetFile );
+                ( callbacks == null ? DISCARD : callbacks ).discard( downloadFile );
             }
-            catch ( final Exception e )
+            else
             {
-                logger.error( String.format( "Failed to rename: %s to: %s", downloadFile, targetFile ), e );
+                try
+                {
+                    downloadFile.renameTo( targetFile );
+                }
+                catch ( final Exception e )
+                {
+                    logger.error( String.format( "Failed to rename: %s to: %s", downloadFile, targetFile ), e );
+                }
             }
 
             if ( callbacks != null )
@@ -97,4 +131,27 @@ public class AtomicFileOutputStreamWrapper
         }
     }
 
+    /**
+     * The target is left as it was: the download file is discarded on close instead of replacing it.
+     */
+    @Override
+    public boolean abort( final IOException cause )
+    {
+        super.abort( cause );
+        discarding = true;
+        if ( callbacks != null )
+        {
+            callbacks.aborted( cause );
+        }
+
+        return true;
+    }
+
+    @Override
+    public FileChannel getFileChannel()
+        throws IOException
+    {
+        return CopyUtils.getFileChannel( out );
+    }
+
 }
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copies content into transfer output streams, skipping the stream layers when they only pass bytes through to a
+ * file (see {@link DirectFileOutput}): the content is then written straight into the file's channel, and from a file
+ * source it's transferred by the OS without being brought into the JVM at all.
+ */
+public final class CopyUtils
+{
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Told about each chunk as it's copied, for progress tracking or throttling.
+     */
+    public interface ChunkListener
+    {
+        void copied( int bytes )
+                throws IOException;
+    }
+
+    private CopyUtils()
+    {
+    }
+
+    /**
+     * @return the channel of the file the stream writes to, if nothing in between needs to see the bytes; otherwise null
+     */
+    public static FileChannel getFileChannel( final OutputStream out )
+            throws IOException
+    {
+        if ( out instanceof DirectFileOutput )
+        {
+            return ( (DirectFileOutput) out ).getFileChannel();
+        }
+        else if ( out instanceof FileOutputStream )
+        {
+            return ( (FileOutputStream) out ).getChannel();
+        }
+
+        return null;
+    }
+
+    public static long copy( final File src, final OutputStream out )
+            throws IOException
+    {
+        try (FileInputStream in = new FileInputStream( src ))
+        {
+            return copy( in, out, DEFAULT_CHUNK_SIZE, null );
+        }
+    }
+
+    public static long copy( final InputStream in, final OutputStream out )
+            throws IOException
+    {
+        return copy( in, out, DEFAULT_CHUNK_SIZE, null );
+    }
+
+    /**
+     * Copy everything from the input to the output, through the output's file channel if it has one.
+     *
+     * @param chunkSize most bytes to move before telling the listener (capped at 8KiB through the stream, and 64KiB
+     * from a non-file source into the channel)
+     * @param listener told about each chunk; may be null
+     * @return the number of bytes copied
+     */
+    public static long copy( final InputStream in, final OutputStream out, final int chunkSize,
+                             final ChunkListener listener )
+            throws IOException
+    {
+        final FileChannel target = getFileChannel( out );
+        if ( target == null )
+        {
+            return copyStream( in, out, Math.min( chunkSize, BUFFER_SIZE ), listener );
+        }
+
+        // anything already written through the stream has to land before we write underneath it
+        out.flush();
+
+        if ( in instanceof FileInputStream )
+        {
+            return transferFile( ( (FileInputStream) in ).getChannel(), target, chunkSize, listener );
+        }
+
+        // not transferFrom(): it swallows a read error once some bytes are through, and a truncated body would pass
+        final byte[] buffer = new byte[Math.min( chunkSize, MAX_BUFFER_SIZE )];
+        long total = 0;
+        int read;
+        while ( ( read = in.read( buffer ) ) != -1 )
+        {
+            final ByteBuffer buf = ByteBuffer.wrap( buffer, 0, read );
+            while ( buf.hasRemaining() )
+            {
+                target.write( buf );
+            }
+            total += read;
+            if ( listener != null )
+            {
+                listener.copied( read );
+            }
+        }
+
+        return total;
+    }
+
+    private static long transferFile( final FileChannel source, final FileChannel target, final int chunkSize,
+                                      final ChunkListener listener )
+            throws IOException
+    {
+        final long start = target.position();
+        long position = start;
+        try
+        {
+            long n;
+            while ( ( n = target.transferFrom( source, position, chunkSize ) ) > 0 )
+            {
+                position += n;
+                if ( listener != null )
+                {
+                    listener.copied( (int) n );
+                }
+            }
+        }
+        finally
+        {
+            // transferFrom() doesn't move the channel's position, and the stream still writes (and closes) from there
+            target.position( position );
+        }
+
+        if ( source.position() < source.size() )
+        {
+            throw new IOException( String.format( "Copy stopped at %d of %d bytes", source.position(),
+                                                  source.size() ) );
+        }
+
+        return position - start;
+    }
+
+    private static long copyStream( final InputStream in, final OutputStream out, final int bufferSize,
+                                    final ChunkListener listener )
+            throws IOException
+    {
+        final byte[] buffer = new byte[bufferSize];
+        long total = 0;
+        int read;
+        while ( ( read = in.read( buffer ) ) != -1 )
+        {
+            out.write( buffer, 0, read );
+            total += read;
+            if ( listener != null )
+            {
+                listener.copied( read );
+            }
+        }
+
+        return total;
+    }
+}
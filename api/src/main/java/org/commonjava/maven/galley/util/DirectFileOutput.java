@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Implemented by output streams that only pass bytes through to a file (locking, events, atomic rename on close), so
+ * a copy can write to that file's channel directly. Streams that look at the bytes (checksums, decorators) don't
+ * implement this, which keeps them on the normal path.
+ *
+ * @see CopyUtils
+ */
+public interface DirectFileOutput
+{
+
+    /**
+     * @return the channel of the file this stream ends up writing to, or null if the bytes have to go through the
+     * stream
+     */
+    FileChannel getFileChannel()
+            throws IOException;
+
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.util;
+
+import org.commonjava.maven.galley.TransferException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Helpers for the {@link CompletableFuture}-based (async) transfer methods, mostly to bridge the checked
+ * {@link TransferException} into and out of future completion.
+ */
+public final class FutureUtils
+{
+    private FutureUtils()
+    {
+    }
+
+    public static <T> CompletableFuture<T> completedExceptionally( final Throwable error )
+    {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally( error );
+        return future;
+    }
+
+    /**
+     * Run the given call on the executor, completing the returned future with its result or with whatever it throws.
+     * If the executor rejects the call, the returned future completes exceptionally with the rejection.
+     */
+    public static <T> CompletableFuture<T> callAsync( final Callable<T> call, final Executor executor )
+    {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try
+        {
+            executor.execute( () -> {
+                try
+                {
+                    future.complete( call.call() );
+                }
+                catch ( final Throwable t )
+                {
+                    future.completeExceptionally( t );
+                }
+            } );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            future.completeExceptionally( e );
+        }
+
+        return future;
+    }
+
+    /**
+     * Strip the {@link CompletionException} / {@link ExecutionException} wrappers added by future composition.
+     */
+    public static Throwable unwrap( final Throwable error )
+    {
+        Throwable cause = error;
+        while ( ( cause instanceof CompletionException || cause instanceof ExecutionException )
+                && cause.getCause() != null )
+        {
+            cause = cause.getCause();
+        }
+
+        return cause;
+    }
+
+    /**
+     * Unwrap the error and return it if it's already a {@link TransferException}, otherwise wrap it in one using the
+     * given message format (the error's message is appended as the last format parameter).
+     */
+    public static TransferException toTransferException( final Throwable error, final String format,
+                                                         final Object... params )
+    {
+        final Throwable cause = unwrap( error );
+        if ( cause instanceof TransferException )
+        {
+            return (TransferException) cause;
+        }
+
+        final Object[] withReason = new Object[params.length + 1];
+        System.arraycopy( params, 0, withReason, 0, params.length );
+        withReason[params.length] = cause.getMessage();
+
+        return new TransferException( format, cause, withReason );
+    }
+}
@@ -24,9 +24,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 public class IdempotentCloseOutputStream
         extends OutputStream
+        implements AbortableOutput
 {
     private AtomicBoolean closed = new AtomicBoolean( false );
 
+    private volatile boolean aborted;
+
     final protected OutputStream out;
 
     protected IdempotentCloseOutputStream( final OutputStream out )
@@ -54,6 +57,24 @@ public class IdempotentCloseOutputStream
         }
     }
 
+    /**
+     * Passes the abort down to the wrapped stream, so it reaches whatever actually holds the content.
+     */
+    @Override
+    public boolean abort( final IOException cause )
+    {
+        aborted = AbortableOutput.abort( out, cause );
+        return aborted;
+    }
+
+    /**
+     * @return true if the stream was aborted and its content will be discarded on close
+     */
+    protected boolean isAborted()
+    {
+        return aborted;
+    }
+
     @Override
     public void write( byte b[], int off, int len )
             throws IOException
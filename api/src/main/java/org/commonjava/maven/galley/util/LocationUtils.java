@@ -51,9 +51,133 @@ public final class LocationUtils
         return location.getAttribute( Location.MAX_CONNECTIONS, Integer.class, Location.DEFAULT_MAX_CONNECTIONS );
     }
 
+    /**
+     * Content length (in bytes) at or above which a download from this location may be split into concurrent
+     * byte-range requests, or -1 if segmented downloads are disabled for it (the default).
+     */
+    public static long getSegmentedDownloadThreshold( final Location location )
+    {
+        final Number threshold = location.getAttribute( Location.SEGMENTED_DOWNLOAD_THRESHOLD, Number.class );
+        return threshold == null || threshold.longValue() < 1 ? -1 : threshold.longValue();
+    }
+
+    /**
+     * Number of concurrent byte-range requests for a segmented download, capped by the location's max connections.
+     */
+    public static int getSegmentedDownloadSegments( final Location location )
+    {
+        final int segments = location.getAttribute( Location.SEGMENTED_DOWNLOAD_SEGMENTS, Integer.class,
+                                                    Location.DEFAULT_SEGMENTED_DOWNLOAD_SEGMENTS );
+        return Math.max( 1, Math.min( segments, getMaxConnections( location ) ) );
+    }
+
     public static int getMetadataTimeoutSeconds( final Location location )
     {
         return location.getAttribute( Location.METADATA_TIMEOUT_SECONDS, Integer.class,
                                       Location.DEFAULT_CACHE_TIMEOUT_SECONDS );
     }
+
+    /**
+     * How long (in seconds) past its metadata timeout a cached metadata file may still be served while it's refreshed
+     * in the background (stale-while-revalidate), or -1 if that's disabled for this location (the default). Beyond this
+     * bound, the metadata has to be refreshed before it's returned.
+     */
+    public static int getMetadataMaxStaleSeconds( final Location location )
+    {
+        final Integer maxStale = location.getAttribute( Location.METADATA_MAX_STALE_SECONDS, Integer.class );
+        return maxStale == null || maxStale < 1 ? -1 : maxStale;
+    }
+
+    /**
+     * Percentage (1-100) of failed requests among the recent ones that opens the location's circuit breaker, or -1 if
+     * the breaker is disabled for this location (the default).
+     */
+    public static int getCircuitBreakerFailureRate( final Location location )
+    {
+        final Integer rate = location.getAttribute( Location.CIRCUIT_BREAKER_FAILURE_RATE, Integer.class );
+        return rate == null || rate < 1 ? -1 : Math.min( rate, 100 );
+    }
+
+    /**
+     * Number of recent requests the circuit breaker's failure rate is computed over. The breaker won't open before it
+     * has seen this many.
+     */
+    public static int getCircuitBreakerWindow( final Location location )
+    {
+        return Math.max( 1, location.getAttribute( Location.CIRCUIT_BREAKER_WINDOW, Integer.class,
+                                                   Location.DEFAULT_CIRCUIT_BREAKER_WINDOW ) );
+    }
+
+    /**
+     * How long an open circuit breaker fails requests fast, before letting a probe request through.
+     */
+    public static int getCircuitBreakerOpenSeconds( final Location location )
+    {
+        return Math.max( 1, location.getAttribute( Location.CIRCUIT_BREAKER_OPEN_SECONDS, Integer.class,
+                                                   Location.DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS ) );
+    }
+
+    /**
+     * How many times an idempotent request that failed transiently (a gateway error or a timeout) is sent again.
+     * Zero (the default) disables retries.
+     */
+    public static int getRetryMaxRetries( final Location location )
+    {
+        return Math.max( 0, location.getAttribute( Location.RETRY_MAX_RETRIES, Integer.class, 0 ) );
+    }
+
+    /**
+     * Base delay before the first retry; each further retry doubles it, up to {@link #getRetryMaxBackoffMillis}.
+     */
+    public static int getRetryBackoffMillis( final Location location )
+    {
+        return Math.max( 0, location.getAttribute( Location.RETRY_BACKOFF_MILLIS, Integer.class,
+                                                   Location.DEFAULT_RETRY_BACKOFF_MILLIS ) );
+    }
+
+    public static int getRetryMaxBackoffMillis( final Location location )
+    {
+        return Math.max( getRetryBackoffMillis( location ),
+                         location.getAttribute( Location.RETRY_MAX_BACKOFF_MILLIS, Integer.class,
+                                                Location.DEFAULT_RETRY_MAX_BACKOFF_MILLIS ) );
+    }
+
+    /**
+     * Latency percentile (of recent responses from the location) after which an idempotent request is hedged with a
+     * duplicate, or -1 if hedging is disabled (the default).
+     */
+    public static int getHedgePercentile( final Location location )
+    {
+        final Integer percentile = location.getAttribute( Location.HEDGE_PERCENTILE, Integer.class );
+        return percentile == null || percentile < 1 || percentile > 99 ? -1 : percentile;
+    }
+
+    /**
+     * Cap on the rate content is downloaded from the location, or -1 if it isn't limited (the default).
+     */
+    public static long getMaxBytesPerSecond( final Location location )
+    {
+        final Number rate = location.getAttribute( Location.MAX_BYTES_PER_SECOND, Number.class );
+        return rate == null || rate.longValue() < 1 ? -1 : rate.longValue();
+    }
+
+    /**
+     * Whether downloads from the location may be sent compressed (Content-Encoding) and decoded as they arrive. On by
+     * default; when off, the content is asked for as-is (Accept-Encoding: identity).
+     */
+    public static boolean isCompressedDownloads( final Location location )
+    {
+        final Boolean compressed = location.getAttribute( Location.COMPRESSED_DOWNLOADS, Boolean.class );
+        return compressed == null || compressed;
+    }
+
+    /**
+     * Whether uploads to the location are compressed (Content-Encoding: gzip). Off by default, since the server has
+     * to decode the body before storing it.
+     */
+    public static boolean isCompressedUploads( final Location location )
+    {
+        final Boolean compressed = location.getAttribute( Location.COMPRESSED_UPLOADS, Boolean.class );
+        return compressed != null && compressed;
+    }
 }
@@ -17,6 +17,7 @@ package org.commonjava.maven.galley.util;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 import org.commonjava.maven.galley.event.FileStorageEvent;
 import org.commonjava.maven.galley.model.Transfer.TransferUnlocker;
@@ -24,6 +25,7 @@ import org.commonjava.maven.galley.spi.event.FileEventManager;
 
 public class TransferOutputStream
     extends IdempotentCloseOutputStream
+    implements DirectFileOutput
 {
 
     private final TransferUnlocker unlocker;
@@ -56,10 +58,18 @@ public class TransferOutputStream
         super.close();
         unlocker.unlock();
 
-        if ( fileEventManager != null )
+        // nothing was stored if the write was aborted
+        if ( fileEventManager != null && !isAborted() )
         {
             fileEventManager.fire( event );
         }
     }
 
+    @Override
+    public FileChannel getFileChannel()
+        throws IOException
+    {
+        return CopyUtils.getFileChannel( out );
+    }
+
 }
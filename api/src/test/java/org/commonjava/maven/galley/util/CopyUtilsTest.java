@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CopyUtilsTest
+{
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void fileSourceGoesStraightIntoAtomicFileChannel()
+            throws Exception
+    {
+        final File src = temp.newFile( "src" );
+        final byte[] content = content( 3 * 1024 * 1024 + 17 );
+        FileUtils.writeByteArrayToFile( src, content );
+
+        final File target = new File( temp.getRoot(), "target" );
+        final File download = new File( temp.getRoot(), "target.tmp" );
+        try (OutputStream out = new AtomicFileOutputStreamWrapper( target, download,
+                                                                   new FileOutputStream( download ) ))
+        {
+            assertThat( CopyUtils.getFileChannel( out ), notNullValue() );
+            out.write( "head:".getBytes( StandardCharsets.UTF_8 ) );
+            assertThat( CopyUtils.copy( src, out ), equalTo( (long) content.length ) );
+            out.write( ":tail".getBytes( StandardCharsets.UTF_8 ) );
+        }
+
+        final byte[] expected = new byte[content.length + 10];
+        System.arraycopy( "head:".getBytes( StandardCharsets.UTF_8 ), 0, expected, 0, 5 );
+        System.arraycopy( content, 0, expected, 5, content.length );
+        System.arraycopy( ":tail".getBytes( StandardCharsets.UTF_8 ), 0, expected, content.length + 5, 5 );
+        assertThat( FileUtils.readFileToByteArray( target ), equalTo( expected ) );
+        assertThat( download.exists(), equalTo( false ) );
+    }
+
+    @Test
+    public void streamSourceReportsEveryChunk()
+            throws Exception
+    {
+        final byte[] content = content( 100000 );
+        final File target = temp.newFile( "target" );
+        final AtomicLong reported = new AtomicLong();
+        try (OutputStream out = new FileOutputStream( target ))
+        {
+            CopyUtils.copy( new ByteArrayInputStream( content ), out, 8192, reported::addAndGet );
+        }
+
+        assertThat( reported.get(), equalTo( (long) content.length ) );
+        assertThat( FileUtils.readFileToByteArray( target ), equalTo( content ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void readErrorPartWayThroughIsNotSwallowed()
+            throws Exception
+    {
+        final InputStream truncated = new SequenceInputStream( new ByteArrayInputStream( content( 20000 ) ),
+                                                               new InputStream()
+                                                               {
+                                                                   @Override
+                                                                   public int read()
+                                                                           throws IOException
+                                                                   {
+                                                                       throw new IOException( "Premature end" );
+                                                                   }
+                                                               } );
+
+        try (OutputStream out = new FileOutputStream( temp.newFile( "target" ) ))
+        {
+            CopyUtils.copy( truncated, out );
+        }
+    }
+
+    @Test
+    public void streamsThatSeeTheBytesStayOnTheStreamPath()
+            throws Exception
+    {
+        final byte[] content = content( 50000 );
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        final AtomicLong seen = new AtomicLong();
+        final OutputStream counting = new FilterOutputStream( sink )
+        {
+            @Override
+            public void write( final int b )
+                    throws IOException
+            {
+                seen.incrementAndGet();
+                super.write( b );
+            }
+        };
+
+        assertThat( CopyUtils.getFileChannel( counting ), nullValue() );
+        assertThat( CopyUtils.copy( new ByteArrayInputStream( content ), counting ), equalTo( (long) content.length ) );
+        assertThat( seen.get(), equalTo( (long) content.length ) );
+        assertThat( sink.toByteArray(), equalTo( content ) );
+    }
+
+    private static byte[] content( final int size )
+    {
+        final byte[] content = new byte[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            content[i] = (byte) ( i * 31 + ( i >> 8 ) );
+        }
+
+        return content;
+    }
+}
@@ -24,6 +24,7 @@ import org.commonjava.maven.galley.internal.TransferManagerImpl;
 import org.commonjava.maven.galley.internal.xfer.DownloadHandler;
 import org.commonjava.maven.galley.internal.xfer.ExistenceHandler;
 import org.commonjava.maven.galley.internal.xfer.ListingHandler;
+import org.commonjava.maven.galley.internal.xfer.TransferExecutors;
 import org.commonjava.maven.galley.internal.xfer.UploadHandler;
 import org.commonjava.maven.galley.io.HashedLocationPathGenerator;
 import org.commonjava.maven.galley.io.NoOpTransferDecorator;
@@ -35,6 +36,8 @@ import org.commonjava.maven.galley.spi.cache.CacheProvider;
 import org.commonjava.maven.galley.spi.event.FileEventManager;
 import org.commonjava.maven.galley.spi.io.PathGenerator;
 import org.commonjava.maven.galley.spi.io.SpecialPathManager;
+import org.commonjava.maven.galley.spi.metrics.GaugeProvider;
+import org.commonjava.maven.galley.spi.metrics.MeteringProvider;
 import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
 import org.commonjava.maven.galley.spi.transport.LocationExpander;
 import org.commonjava.maven.galley.spi.transport.LocationResolver;
@@ -84,12 +87,18 @@ public class GalleyCoreBuilder
 
     private ExecutorService batchExecutor;
 
+    private ExecutorService existenceExecutor;
+
     private PasswordManager passwordManager;
 
     private PathGenerator pathGenerator;
 
     private CacheProviderFactory cacheProviderFactory;
 
+    private MeteringProvider meteringProvider;
+
+    private GaugeProvider gaugeProvider;
+
     public GalleyCoreBuilder(){}
 
     public GalleyCoreBuilder( CacheProviderFactory cacheProviderFactory )
@@ -120,8 +129,45 @@ public class GalleyCoreBuilder
             transportManager = new TransportManagerImpl( transports );
         }
 
-        handlerExecutor = Executors.newFixedThreadPool( 2, new NamedThreadFactory( "transfer-handlers", true, 4 ) );
-        batchExecutor = Executors.newFixedThreadPool( 2, new NamedThreadFactory( "transfer-batches", true, 4 ) );
+        if ( transportManagerConfig == null )
+        {
+            transportManagerConfig = new TransportManagerConfig();
+        }
+
+        if ( transportManagerConfig.isVirtualThreadsEnabled() )
+        {
+            if ( handlerExecutor == null )
+            {
+                handlerExecutor = TransferExecutors.newVirtualThreadExecutor( "transfer-handlers" );
+            }
+
+            if ( batchExecutor == null )
+            {
+                batchExecutor = TransferExecutors.newVirtualThreadExecutor( "transfer-batches" );
+            }
+
+            if ( existenceExecutor == null )
+            {
+                existenceExecutor = TransferExecutors.newVirtualThreadExecutor( "transfer-existence" );
+            }
+        }
+
+        if ( handlerExecutor == null )
+        {
+            handlerExecutor = Executors.newFixedThreadPool( 2, new NamedThreadFactory( "transfer-handlers", true, 4 ) );
+        }
+
+        if ( batchExecutor == null )
+        {
+            batchExecutor = Executors.newFixedThreadPool( 2, new NamedThreadFactory( "transfer-batches", true, 4 ) );
+        }
+
+        // existence checks are short, and shouldn't queue up behind downloads (or keep them waiting).
+        if ( existenceExecutor == null )
+        {
+            existenceExecutor =
+                    Executors.newFixedThreadPool( 2, new NamedThreadFactory( "transfer-existence", true, 4 ) );
+        }
 
         if ( decorator == null )
         {
@@ -138,21 +184,20 @@ public class GalleyCoreBuilder
             nfc = new MemoryNotFoundCache();
         }
 
-        if ( transportManagerConfig == null )
-        {
-            transportManagerConfig = new TransportManagerConfig();
-        }
-
-        final DownloadHandler dh = new DownloadHandler( getNfc(), transportManagerConfig, handlerExecutor );
-        final UploadHandler uh = new UploadHandler( getNfc(), transportManagerConfig, handlerExecutor );
-        final ListingHandler lh = new ListingHandler( getNfc() );
-        final ExistenceHandler eh = new ExistenceHandler( getNfc() );
-
         if ( specialPathManager == null )
         {
             specialPathManager = new SpecialPathManagerImpl();
         }
 
+        final DownloadHandler dh = new DownloadHandler( getNfc(), transportManagerConfig, handlerExecutor,
+                                                        meteringProvider, gaugeProvider, specialPathManager );
+        final UploadHandler uh = new UploadHandler( getNfc(), transportManagerConfig, handlerExecutor,
+                                                    meteringProvider, gaugeProvider );
+        final ListingHandler lh =
+                new ListingHandler( getNfc(), transportManagerConfig, meteringProvider, gaugeProvider );
+        final ExistenceHandler eh = new ExistenceHandler( getNfc(), transportManagerConfig, existenceExecutor );
+
+
         if ( pathGenerator == null )
         {
             pathGenerator = new HashedLocationPathGenerator();
@@ -174,7 +219,7 @@ public class GalleyCoreBuilder
         {
             transferManager =
                     new TransferManagerImpl( transportManager, getCache(), getNfc(), getFileEvents(), dh, uh, lh, eh,
-                                             specialPathManager, batchExecutor );
+                                             specialPathManager, batchExecutor, transportManagerConfig );
         }
 
         if ( locationExpander == null )
@@ -333,6 +378,17 @@ public class GalleyCoreBuilder
         return this;
     }
 
+    public ExecutorService getExistenceExecutor()
+    {
+        return existenceExecutor;
+    }
+
+    public GalleyCoreBuilder withExistenceExecutor( final ExecutorService existenceExecutor )
+    {
+        this.existenceExecutor = existenceExecutor;
+        return this;
+    }
+
     public ExecutorService getBatchExecutor()
     {
         return batchExecutor;
@@ -389,4 +445,26 @@ public class GalleyCoreBuilder
         return this;
     }
 
+    public MeteringProvider getMeteringProvider()
+    {
+        return meteringProvider;
+    }
+
+    public GalleyCoreBuilder withMeteringProvider( MeteringProvider meteringProvider )
+    {
+        this.meteringProvider = meteringProvider;
+        return this;
+    }
+
+    public GaugeProvider getGaugeProvider()
+    {
+        return gaugeProvider;
+    }
+
+    public GalleyCoreBuilder withGaugeProvider( GaugeProvider gaugeProvider )
+    {
+        this.gaugeProvider = gaugeProvider;
+        return this;
+    }
+
 }
@@ -16,11 +16,13 @@
 package org.commonjava.maven.galley.cache;
 
 import org.apache.commons.io.FileUtils;
+import org.commonjava.maven.galley.io.SpecialPathConstants;
 import org.commonjava.maven.galley.io.TransferDecoratorManager;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.commonjava.maven.galley.spi.cache.ExchangeMetadataIndex;
 import org.commonjava.maven.galley.spi.event.FileEventManager;
 import org.commonjava.maven.galley.spi.io.PathGenerator;
 import org.commonjava.maven.galley.util.AtomicFileOutputStreamWrapper;
@@ -36,6 +38,8 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -52,6 +56,12 @@ public class FileCacheProvider
 
     private final Map<ConcreteResource, Transfer> transferCache = new ConcurrentHashMap<>( 10000 );
 
+    /**
+     * Files currently being written, when stream-through is enabled (see {@link
+     * FileCacheProviderConfig#withStreamThrough(boolean)}).
+     */
+    private final Map<ConcreteResource, StreamThroughFile> writing = new ConcurrentHashMap<>();
+
     private FileCacheProviderConfig config;
 
     private PathGenerator pathGenerator;
@@ -110,7 +120,8 @@ public class FileCacheProvider
                         .getAttribute( Location.CACHE_TIMEOUT_SECONDS, Integer.class,
                                        Location.DEFAULT_CACHE_TIMEOUT_SECONDS );
 
-            if ( !resource.isRoot() && f.exists() && !f.isDirectory() && timeoutSeconds > 0 )
+            if ( !resource.isRoot() && f.exists() && !f.isDirectory() && timeoutSeconds > 0
+                    && !f.getName().endsWith( SUFFIX_TO_REVALIDATE ) )
             {
                 final long current = System.currentTimeMillis();
                 final long lastModified = f.lastModified();
@@ -120,7 +131,12 @@ public class FileCacheProvider
 
                 final long timeout = TimeUnit.MILLISECONDS.convert( tos, TimeUnit.SECONDS );
 
-                if ( current - lastModified > timeout )
+                if ( current - lastModified > timeout && setAsideForRevalidation( resource, f ) )
+                {
+                    logger.info( "Cached file: {} expired after: {}ms (timeout: {}s). Set aside for revalidation.", f,
+                                 ( current - lastModified ), tos );
+                }
+                else if ( current - lastModified > timeout )
                 {
                     final File mved = new File( f.getPath() + SUFFIX_TO_DELETE );
                     f.renameTo( mved );
@@ -146,6 +162,48 @@ public class FileCacheProvider
         }
     }
 
+    /**
+     * If the expired file has HTTP exchange metadata (and so, possibly, a validator), move it aside with the
+     * {@link #SUFFIX_TO_REVALIDATE} suffix instead of deleting it, along with its metadata sidecar if there is one
+     * (otherwise the metadata is in the configured {@link ExchangeMetadataIndex}, which keeps it under the resource).
+     * The file then no longer exists, so the next request downloads it, and the transport can make that download
+     * conditional on the stale copy.
+     */
+    private boolean setAsideForRevalidation( final ConcreteResource resource, final File f )
+    {
+        if ( !config.isRevalidateExpired() )
+        {
+            return false;
+        }
+
+        final File meta = new File( f.getPath() + SpecialPathConstants.HTTP_METADATA_EXT );
+        final boolean sidecar = meta.isFile();
+        final ExchangeMetadataIndex index = config.getExchangeMetadataIndex();
+        if ( !sidecar && ( index == null || !index.contains( resource ) ) )
+        {
+            return false;
+        }
+
+        final File staleMeta = new File( meta.getPath() + SUFFIX_TO_REVALIDATE );
+        final File stale = new File( f.getPath() + SUFFIX_TO_REVALIDATE );
+        try
+        {
+            if ( sidecar )
+            {
+                Files.move( meta.toPath(), staleMeta.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+
+            Files.move( f.toPath(), stale.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            return true;
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to set aside expired file: {} for revalidation. Reason: {}", f, e.getMessage() );
+            FileUtils.deleteQuietly( staleMeta );
+            return false;
+        }
+    }
+
     private File getRawFile( ConcreteResource resource )
     {
         resource.getLocation().getAttribute( Location.ATTR_ALT_STORAGE_LOCATION, String.class );
@@ -172,6 +230,13 @@ public class FileCacheProvider
             throws IOException
 
     {
+        final StreamThroughFile growing = writing.get( resource );
+        if ( growing != null )
+        {
+            logger.debug( "Streaming content of: {} while it is being written.", resource );
+            return growing.openReader();
+        }
+
         waitForReadUnlock( resource );
         lockRead( resource );
         final File targetFile = getDetachedFile( resource );
@@ -191,7 +256,8 @@ public class FileCacheProvider
         final File targetFile = getDetachedFile( resource );
 
         final File dir = targetFile.getParentFile();
-        if ( !dir.isDirectory() && !dir.mkdirs() )
+        // another writer may create the same directory concurrently, in which case mkdirs() returns false.
+        if ( !dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory() )
         {
             throw new IOException( "Cannot create directory: " + dir );
         }
@@ -199,7 +265,77 @@ public class FileCacheProvider
         final File downloadFile = new File( targetFile.getPath() + CacheProvider.SUFFIX_TO_WRITE );
         final FileOutputStream stream = new FileOutputStream( downloadFile );
 
-        return new AtomicFileOutputStreamWrapper( targetFile, downloadFile, stream );
+        if ( !config.isStreamThrough() )
+        {
+            return new AtomicFileOutputStreamWrapper( targetFile, downloadFile, stream, new KeepAbortedForResume( targetFile ) );
+        }
+
+        final StreamThroughFile growing =
+                new StreamThroughFile( downloadFile, targetFile, config.getStreamThroughStallSeconds() );
+        final StreamThroughFile replaced = writing.put( resource, growing );
+        if ( replaced != null )
+        {
+            replaced.fail( new IOException( "Superseded by a new write of: " + resource ) );
+        }
+
+        return new AtomicFileOutputStreamWrapper( targetFile, downloadFile, growing.track( stream ),
+                                                  new KeepAbortedForResume( targetFile )
+                                                  {
+                                                      private volatile boolean aborted;
+
+                                                      @Override
+                                                      public void aborted( final IOException cause )
+                                                      {
+                                                          aborted = true;
+                                                          growing.fail( cause );
+                                                      }
+
+                                                      @Override
+                                                      public void afterClose()
+                                                      {
+                                                          writing.remove( resource, growing );
+
+                                                          // an aborted write never replaced the target, so whatever
+                                                          // is there (an earlier copy, if any) is still whole.
+                                                          if ( !growing.closed() && !aborted && targetFile.exists()
+                                                                  && !targetFile.delete() )
+                                                          {
+                                                              logger.warn( "Failed to delete incomplete file: {}",
+                                                                           targetFile );
+                                                          }
+                                                      }
+                                                  } );
+    }
+
+    /**
+     * The content of an aborted write is kept as the target's {@link #SUFFIX_TO_RESUME} sibling, where a transport
+     * that can resume downloads picks it up (and which the next aborted write of the same target replaces).
+     */
+    private class KeepAbortedForResume
+            extends AtomicFileOutputStreamWrapper.AtomicStreamCallbacks
+    {
+        private final File targetFile;
+
+        KeepAbortedForResume( final File targetFile )
+        {
+            this.targetFile = targetFile;
+        }
+
+        @Override
+        public void discard( final File downloadFile )
+        {
+            final File partial = new File( targetFile.getPath() + SUFFIX_TO_RESUME );
+            try
+            {
+                Files.move( downloadFile.toPath(), partial.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+            catch ( final IOException e )
+            {
+                logger.warn( "Failed to keep incomplete file: {} for resume. Reason: {}", downloadFile,
+                             e.getMessage() );
+                super.discard( downloadFile );
+            }
+        }
     }
 
     @Override
@@ -207,7 +343,13 @@ public class FileCacheProvider
     {
         final File f = getRawFile( resource );
         //        logger.info( "Checking for existence of cache file: {}", f );
-        return f.exists();
+        return f.exists() || writing.containsKey( resource );
+    }
+
+    @Override
+    public boolean isStreamingThrough( final ConcreteResource resource )
+    {
+        return writing.containsKey( resource );
     }
 
     @Override
@@ -222,6 +364,12 @@ public class FileCacheProvider
     public boolean delete( final ConcreteResource resource )
         throws IOException
     {
+        final StreamThroughFile growing = writing.remove( resource );
+        if ( growing != null )
+        {
+            growing.fail( new IOException( "Deleted while being written: " + resource ) );
+        }
+
         return getDetachedFile( resource ).delete();
     }
 
@@ -389,7 +537,11 @@ public class FileCacheProvider
     @Override
     public void waitForReadUnlock( final ConcreteResource resource )
     {
-        lockingSupport.waitForUnlock( resource );
+        // stream-through readers don't need the writer to finish.
+        if ( !writing.containsKey( resource ) )
+        {
+            lockingSupport.waitForUnlock( resource );
+        }
     }
 
     @Override
@@ -15,12 +15,24 @@
  */
 package org.commonjava.maven.galley.cache;
 
+import org.commonjava.maven.galley.spi.cache.ExchangeMetadataIndex;
+
 import java.io.File;
 
 public class FileCacheProviderConfig
 {
+    public static final int DEFAULT_STREAM_THROUGH_STALL_SECONDS = 30; // readers give up on a writer silent this long.
+
     private Boolean aliasLinking;
 
+    private boolean streamThrough;
+
+    private int streamThroughStallSeconds = DEFAULT_STREAM_THROUGH_STALL_SECONDS;
+
+    private Boolean revalidateExpired;
+
+    private ExchangeMetadataIndex exchangeMetadataIndex;
+
     private final File cacheBasedir;
 
     public FileCacheProviderConfig( final File cacheBasedir )
@@ -39,6 +51,68 @@ public class FileCacheProviderConfig
         return aliasLinking == null ? true : aliasLinking;
     }
 
+    /**
+     * If true, a file that is still being written (downloaded) counts as existing, and reading it streams its content
+     * as it is written instead of waiting for the write to finish. Requests joining an in-progress download then get
+     * their first bytes straight away.
+     */
+    public FileCacheProviderConfig withStreamThrough( final boolean streamThrough )
+    {
+        this.streamThrough = streamThrough;
+        return this;
+    }
+
+    public boolean isStreamThrough()
+    {
+        return streamThrough;
+    }
+
+    /**
+     * How long a reader streaming a file that is still being written waits for new content before it fails with an
+     * {@link java.io.IOException}, so a writer that hangs without closing its stream can't hang its readers too.
+     */
+    public FileCacheProviderConfig withStreamThroughStallSeconds( final int streamThroughStallSeconds )
+    {
+        this.streamThroughStallSeconds = streamThroughStallSeconds;
+        return this;
+    }
+
+    public int getStreamThroughStallSeconds()
+    {
+        return streamThroughStallSeconds;
+    }
+
+    /**
+     * If true (the default), an expired file with stored HTTP exchange metadata is set aside as stale rather than
+     * deleted, so the next download can revalidate it with a conditional request and skip the body on a 304.
+     */
+    public FileCacheProviderConfig withRevalidateExpired( final boolean revalidateExpired )
+    {
+        this.revalidateExpired = revalidateExpired;
+        return this;
+    }
+
+    public boolean isRevalidateExpired()
+    {
+        return revalidateExpired == null ? true : revalidateExpired;
+    }
+
+    /**
+     * Where to look for HTTP exchange metadata that isn't kept in a sidecar file next to the content (for example, the
+     * transport's metadata log), when deciding whether an expired file can be revalidated. Sidecar files are always
+     * checked.
+     */
+    public FileCacheProviderConfig withExchangeMetadataIndex( final ExchangeMetadataIndex exchangeMetadataIndex )
+    {
+        this.exchangeMetadataIndex = exchangeMetadataIndex;
+        return this;
+    }
+
+    public ExchangeMetadataIndex getExchangeMetadataIndex()
+    {
+        return exchangeMetadataIndex;
+    }
+
     public File getCacheBasedir()
     {
         return cacheBasedir;
@@ -31,6 +31,8 @@ public class FileCacheProviderFactory
 {
     private File cacheDir;
 
+    private FileCacheProviderConfig config;
+
     private transient FileCacheProvider provider;
 
     public FileCacheProviderFactory( File cacheDir )
@@ -38,13 +40,23 @@ public class FileCacheProviderFactory
         this.cacheDir = cacheDir;
     }
 
+    public FileCacheProviderFactory( FileCacheProviderConfig config )
+    {
+        this.cacheDir = config.getCacheBasedir();
+        this.config = config;
+    }
+
     @SuppressWarnings( "RedundantThrows" )
     @Override
     public synchronized CacheProvider create( PathGenerator pathGenerator, TransferDecoratorManager transferDecorator,
                                  FileEventManager fileEventManager )
             throws GalleyInitException
     {
-        if ( provider == null )
+        if ( provider == null && config != null )
+        {
+            provider = new FileCacheProvider( config, pathGenerator, fileEventManager, transferDecorator );
+        }
+        else if ( provider == null )
         {
             provider = new FileCacheProvider( cacheDir, pathGenerator, fileEventManager, transferDecorator );
         }
@@ -0,0 +1,251 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.cache;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks a file while it's being written (the {@link org.commonjava.maven.galley.spi.cache.CacheProvider#SUFFIX_TO_WRITE}
+ * file of a {@link FileCacheProvider} download), so readers can attach to it and receive content as it is written
+ * rather than waiting for the whole file to land.
+ * <br/>
+ * Readers see end-of-stream only once the writer has closed its stream and the file has been moved to its final
+ * path. If a write fails or is aborted, the move fails, the file is deleted while it's still being written, or the
+ * writer stalls (no new content for longer than the stall timeout), readers get an {@link IOException} instead.
+ */
+final class StreamThroughFile
+{
+    private final File writeFile;
+
+    private final File targetFile;
+
+    private final long stallNanos;
+
+    private long written;
+
+    private long lastProgress = System.nanoTime();
+
+    private boolean closed;
+
+    private IOException failure;
+
+    StreamThroughFile( final File writeFile, final File targetFile, final int stallSeconds )
+    {
+        this.writeFile = writeFile;
+        this.targetFile = targetFile;
+        this.stallNanos = TimeUnit.SECONDS.toNanos( stallSeconds );
+    }
+
+    /**
+     * Wrap the writer's stream (to the write file) so each write is published to readers as soon as it lands.
+     */
+    OutputStream track( final OutputStream stream )
+    {
+        return new FilterOutputStream( stream )
+        {
+            @Override
+            public void write( final int b )
+                    throws IOException
+            {
+                try
+                {
+                    out.write( b );
+                }
+                catch ( final IOException e )
+                {
+                    fail( e );
+                    throw e;
+                }
+
+                wrote( 1 );
+            }
+
+            @Override
+            public void write( final byte[] b, final int off, final int len )
+                    throws IOException
+            {
+                try
+                {
+                    out.write( b, off, len );
+                }
+                catch ( final IOException e )
+                {
+                    fail( e );
+                    throw e;
+                }
+
+                wrote( len );
+            }
+        };
+    }
+
+    /**
+     * Called once the writer's stream is closed and the file has (or hasn't) been moved to its final path.
+     *
+     * @return true if the write completed; false if it failed, so whatever landed at the final path is incomplete
+     */
+    synchronized boolean closed()
+    {
+        if ( !closed && failure == null && !targetFile.exists() )
+        {
+            failure = new IOException( "Failed to move: " + writeFile + " to: " + targetFile );
+        }
+
+        closed = true;
+        notifyAll();
+
+        return failure == null;
+    }
+
+    synchronized void fail( final IOException error )
+    {
+        if ( failure == null && !closed )
+        {
+            failure = error;
+        }
+
+        notifyAll();
+    }
+
+    InputStream openReader()
+            throws IOException
+    {
+        RandomAccessFile file;
+        try
+        {
+            file = new RandomAccessFile( writeFile, "r" );
+        }
+        catch ( final FileNotFoundException e )
+        {
+            // the writer finished and moved the file between our lookup and now.
+            file = new RandomAccessFile( targetFile, "r" );
+        }
+
+        return new Reader( file );
+    }
+
+    private synchronized void wrote( final int count )
+    {
+        written += count;
+        lastProgress = System.nanoTime();
+        notifyAll();
+    }
+
+    /**
+     * Wait until there is content past the given position, or the writer is done.
+     *
+     * @return the number of bytes available past the position, or -1 at the end of the (finished) file
+     */
+    private synchronized long awaitContent( final long position )
+            throws IOException
+    {
+        while ( true )
+        {
+            if ( failure != null )
+            {
+                throw new IOException( "Writing: " + targetFile + " failed: " + failure.getMessage(), failure );
+            }
+
+            if ( written > position )
+            {
+                return written - position;
+            }
+
+            if ( closed )
+            {
+                return -1;
+            }
+
+            final long remaining = lastProgress + stallNanos - System.nanoTime();
+            if ( remaining <= 0 )
+            {
+                throw new IOException( "Writing: " + targetFile + " stalled; no new content for "
+                                               + TimeUnit.NANOSECONDS.toSeconds( stallNanos ) + "s" );
+            }
+
+            try
+            {
+                TimeUnit.NANOSECONDS.timedWait( this, remaining );
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "Interrupted waiting for content of: " + targetFile );
+            }
+        }
+    }
+
+    private final class Reader
+            extends InputStream
+    {
+        private final RandomAccessFile file;
+
+        private long position;
+
+        private Reader( final RandomAccessFile file )
+        {
+            this.file = file;
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            final byte[] b = new byte[1];
+            final int read = read( b, 0, 1 );
+            return read < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len )
+                throws IOException
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+
+            final long available = awaitContent( position );
+            if ( available < 0 )
+            {
+                return -1;
+            }
+
+            final int read = file.read( b, off, (int) Math.min( len, available ) );
+            if ( read > 0 )
+            {
+                position += read;
+            }
+
+            return read;
+        }
+
+        @Override
+        public void close()
+                throws IOException
+        {
+            file.close();
+        }
+    }
+}
@@ -21,23 +21,30 @@ import org.commonjava.cdi.util.weft.ExecutorConfig;
 import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferLocationUnavailableException;
 import org.commonjava.maven.galley.TransferManager;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.event.FileErrorEvent;
 import org.commonjava.maven.galley.event.FileNotFoundEvent;
+import org.commonjava.maven.galley.internal.xfer.BatchPublisher;
+import org.commonjava.maven.galley.internal.xfer.BatchRetrievalPipeline;
 import org.commonjava.maven.galley.internal.xfer.BatchRetriever;
 import org.commonjava.maven.galley.internal.xfer.DownloadHandler;
 import org.commonjava.maven.galley.internal.xfer.ExistenceHandler;
 import org.commonjava.maven.galley.internal.xfer.ListingHandler;
+import org.commonjava.maven.galley.internal.xfer.TransferExecutors;
 import org.commonjava.maven.galley.internal.xfer.UploadHandler;
 import org.commonjava.maven.galley.io.TransferDecoratorManager;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.ListingResult;
 import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.PublishBatch;
 import org.commonjava.maven.galley.model.Resource;
 import org.commonjava.maven.galley.model.SpecialPathInfo;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferBatch;
+import org.commonjava.maven.galley.model.TransferBatchListener;
 import org.commonjava.maven.galley.model.TransferOperation;
 import org.commonjava.maven.galley.model.VirtualResource;
 import org.commonjava.maven.galley.spi.cache.CacheProvider;
@@ -64,15 +71,25 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
 import static org.apache.commons.io.IOUtils.copy;
 import static org.apache.commons.lang.StringUtils.join;
 import static org.commonjava.maven.galley.model.Transfer.DELETE_CONTENT_LOG;
+import static org.commonjava.maven.galley.util.FutureUtils.callAsync;
+import static org.commonjava.maven.galley.util.FutureUtils.completedExceptionally;
+import static org.commonjava.maven.galley.util.FutureUtils.toTransferException;
+import static org.commonjava.maven.galley.util.LocationUtils.getMetadataMaxStaleSeconds;
+import static org.commonjava.maven.galley.util.LocationUtils.getMetadataTimeoutSeconds;
 import static org.commonjava.maven.galley.util.LocationUtils.getTimeoutSeconds;
 
 @ApplicationScoped
@@ -109,13 +126,14 @@ public class TransferManagerImpl
     @Inject
     private SpecialPathManager specialPathManager;
 
+    @Inject
+    private TransportManagerConfig config;
+
     @Inject
     @WeftManaged
     @ExecutorConfig( threads = 12, named = "galley-batching", priority = 8 )
     private ExecutorService executorService;
 
-    private ExecutorCompletionService<BatchRetriever> batchExecutor;
-
     @SuppressWarnings( "unused" )
     protected TransferManagerImpl()
     {
@@ -126,6 +144,17 @@ public class TransferManagerImpl
                                 final DownloadHandler downloader, final UploadHandler uploader,
                                 final ListingHandler lister, final ExistenceHandler exister,
                                 final SpecialPathManager specialPathManager, final ExecutorService executorService )
+    {
+        this( transportManager, cacheProvider, nfc, fileEventManager, downloader, uploader, lister, exister,
+              specialPathManager, executorService, new TransportManagerConfig() );
+    }
+
+    public TransferManagerImpl( final TransportManager transportManager, final CacheProvider cacheProvider,
+                                final NotFoundCache nfc, final FileEventManager fileEventManager,
+                                final DownloadHandler downloader, final UploadHandler uploader,
+                                final ListingHandler lister, final ExistenceHandler exister,
+                                final SpecialPathManager specialPathManager, final ExecutorService executorService,
+                                final TransportManagerConfig config )
     {
         this.transportManager = transportManager;
         this.cacheProvider = cacheProvider;
@@ -137,13 +166,17 @@ public class TransferManagerImpl
         this.exister = exister;
         this.specialPathManager = specialPathManager;
         this.executorService = executorService;
-        init();
+        this.config = config;
     }
 
     @PostConstruct
     public void init()
     {
-        batchExecutor = new ExecutorCompletionService<>( executorService );
+        // constructed (non-CDI) instances are handed the right executor directly, and don't call this.
+        if ( config.isVirtualThreadsEnabled() )
+        {
+            executorService = TransferExecutors.newVirtualThreadExecutor( "galley-batching" );
+        }
     }
 
     @Override
@@ -172,12 +205,38 @@ public class TransferManagerImpl
     public List<ConcreteResource> findAllExisting( final VirtualResource virt )
         throws TransferException
     {
-        final List<ConcreteResource> results = new ArrayList<>();
+        // check all locations concurrently, then collect the hits in order.
+        final List<ConcreteResource> resources = new ArrayList<>();
+        final List<CompletableFuture<Boolean>> checks = new ArrayList<>();
         for ( final ConcreteResource res : virt )
         {
-            if ( exists( res, true ) )
+            final Transfer cached = getCacheReference( res );
+            resources.add( res );
+            checks.add( cached.exists() ?
+                                CompletableFuture.completedFuture( true ) :
+                                exister.existsAsync( res, cached, getTimeoutSeconds( res ), getTransport( res ),
+                                                     true ) );
+        }
+
+        final List<ConcreteResource> results = new ArrayList<>();
+        for ( int i = 0; i < resources.size(); i++ )
+        {
+            final ConcreteResource res = resources.get( i );
+            try
+            {
+                if ( checks.get( i ).get() )
+                {
+                    results.add( res );
+                }
+            }
+            catch ( final InterruptedException e )
             {
-                results.add( res );
+                Thread.currentThread().interrupt();
+                throw new TransferException( "Interrupted existence check: {}", e, res );
+            }
+            catch ( final ExecutionException e )
+            {
+                throw toTransferException( e, "Failed existence check: {}. Reason: {}", res );
             }
         }
 
@@ -452,6 +511,34 @@ public class TransferManagerImpl
         return transport;
     }
 
+    /**
+     * When walking a {@link VirtualResource}, there's no point in asking a location whose transport has already given
+     * up on it (an open circuit breaker, say), unless we have a cached copy to serve from it anyway.
+     *
+     * @return the error to record for the skipped resource, or null if it should be retrieved as usual
+     */
+    private TransferException checkUnavailable( final ConcreteResource resource )
+    {
+        try
+        {
+            final Transport transport = transportManager.getTransport( resource );
+            if ( transport != null && !transport.isAvailable( resource.getLocation() )
+                            && !getCacheReference( resource ).exists() )
+            {
+                logger.debug( "Skipping: {}. Location is unavailable.", resource );
+                return new TransferLocationUnavailableException( resource.getLocation(),
+                                                                 "Location is unavailable: {}. Skipped: {}",
+                                                                 resource.getLocation().getName(), resource );
+            }
+        }
+        catch ( final TransferException e )
+        {
+            logger.debug( "Cannot check availability of: {}. Reason: {}", resource, e.getMessage() );
+        }
+
+        return null;
+    }
+
     /* (non-Javadoc)
      * @see org.commonjava.maven.galley.TransferManager#retrieveFirst(java.util.List, java.lang.String)
      */
@@ -466,6 +553,11 @@ public class TransferManagerImpl
     public Transfer retrieveFirst( final VirtualResource virt, final EventMetadata eventMetadata )
         throws TransferException
     {
+        if ( config.isParallelRetrieveFirst() )
+        {
+            return retrieveFirstParallel( virt, eventMetadata );
+        }
+
         Transfer target;
 
         TransferException lastError = null;
@@ -479,6 +571,13 @@ public class TransferManagerImpl
                 continue;
             }
 
+            final TransferException unavailable = checkUnavailable( res );
+            if ( unavailable != null )
+            {
+                lastError = unavailable;
+                continue;
+            }
+
             try
             {
                 target = retrieve( res, true, eventMetadata );
@@ -506,6 +605,163 @@ public class TransferManagerImpl
         return null;
     }
 
+    /**
+     * Same contract as the sequential walk in {@link #retrieveFirst(VirtualResource, EventMetadata)}, but every
+     * location is probed with an existence check up front (or, with a hedge delay configured, as soon as the
+     * previous probe has taken longer than the delay). Results are still consumed in priority order, so a hit at a
+     * lower index always wins; only locations whose probe says the resource exists (or whose probe failed) are
+     * actually retrieved from.
+     * <br/>
+     * Once the winner is known, probes that haven't started yet are cancelled. Running probes are left to finish
+     * rather than interrupted, since an interrupted existence check would be recorded as a miss in the NFC.
+     * <br/>
+     * The caller runs any probe it needs next that the executor hasn't started yet, so this can't starve even when
+     * called from a thread of the same (bounded) executor.
+     */
+    private Transfer retrieveFirstParallel( final VirtualResource virt, final EventMetadata eventMetadata )
+        throws TransferException
+    {
+        final List<ConcreteResource> resources = virt.toConcreteResources();
+        final List<FutureTask<Boolean>> probes = new ArrayList<>( resources.size() );
+        final TransferException[] unavailable = new TransferException[resources.size()];
+        for ( int i = 0; i < resources.size(); i++ )
+        {
+            final ConcreteResource res = resources.get( i );
+            unavailable[i] = res == null ? null : checkUnavailable( res );
+            probes.add( res == null || unavailable[i] != null ? null : new FutureTask<>( () -> exists( res, false ) ) );
+        }
+
+        final long hedgeMillis = config.getRetrieveFirstHedgeMillis();
+        int launched = hedgeMillis > 0 ? 0 : launchProbes( probes, 0, probes.size() );
+
+        TransferException lastError = null;
+        try
+        {
+            for ( int i = 0; i < resources.size(); i++ )
+            {
+                final ConcreteResource res = resources.get( i );
+                final FutureTask<Boolean> probe = probes.get( i );
+                if ( probe == null )
+                {
+                    if ( unavailable[i] != null )
+                    {
+                        lastError = unavailable[i];
+                    }
+                    continue;
+                }
+
+                if ( launched <= i )
+                {
+                    launched = launchProbes( probes, i, i + 1 );
+                }
+
+                while ( !probe.isDone() && launched < probes.size() )
+                {
+                    try
+                    {
+                        probe.get( hedgeMillis, TimeUnit.MILLISECONDS );
+                    }
+                    catch ( final TimeoutException e )
+                    {
+                        logger.debug( "Probe of: {} is taking longer than {}ms; hedging with the next location.", res,
+                                      hedgeMillis );
+                        launched = launchProbes( probes, launched, launched + 1 );
+                    }
+                    catch ( final ExecutionException e )
+                    {
+                        break;
+                    }
+                }
+
+                Boolean found = null;
+                try
+                {
+                    // runs the probe here if the executor hasn't gotten to it yet; otherwise a no-op.
+                    probe.run();
+                    found = probe.get();
+                }
+                catch ( final ExecutionException e )
+                {
+                    logger.debug( "Probe of: {} failed; retrieving anyway. (Reason: {})", res,
+                                  e.getCause().getMessage() );
+                }
+
+                if ( Boolean.FALSE.equals( found ) )
+                {
+                    lastError = null;
+                    continue;
+                }
+
+                try
+                {
+                    final Transfer target = retrieve( res, true, eventMetadata );
+                    lastError = null;
+                    if ( target != null && target.exists() )
+                    {
+                        return target;
+                    }
+                }
+                catch ( final TransferException e )
+                {
+                    logger.warn( "Failed to retrieve: {}. {} more tries. (Reason: {})", res, resources.size() - i - 1,
+                                 e.getMessage() );
+                    lastError = e;
+                }
+            }
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new TransferException( "Interrupted while retrieving first of: {}", e, virt );
+        }
+        finally
+        {
+            for ( final FutureTask<Boolean> probe : probes )
+            {
+                if ( probe != null )
+                {
+                    probe.cancel( false );
+                }
+            }
+        }
+
+        if ( lastError != null )
+        {
+            throw lastError;
+        }
+
+        fileEventManager.fire( new FileNotFoundEvent( virt, eventMetadata ) );
+        return null;
+    }
+
+    /**
+     * Submit the probes in [from, to) that exist to the executor. If the executor rejects one, it's left for the
+     * caller to run.
+     *
+     * @return the index of the next probe to launch
+     */
+    private int launchProbes( final List<FutureTask<Boolean>> probes, final int from, final int to )
+    {
+        final int end = Math.min( to, probes.size() );
+        for ( int i = from; i < end; i++ )
+        {
+            final FutureTask<Boolean> probe = probes.get( i );
+            if ( probe != null && !probe.isDone() )
+            {
+                try
+                {
+                    executorService.execute( probe );
+                }
+                catch ( final RejectedExecutionException e )
+                {
+                    logger.debug( "Probe of index: {} rejected; it will run on the calling thread.", i );
+                }
+            }
+        }
+
+        return end;
+    }
+
     /* (non-Javadoc)
      * @see org.commonjava.maven.galley.TransferManager#retrieveAll(java.util.List, java.lang.String)
      */
@@ -565,13 +821,23 @@ public class TransferManagerImpl
             // TODO: (see above re:storing) Handle things like local archives that really don't need to be cached...
             target = getCacheReference( resource );
 
+            SpecialPathInfo specialPathInfo = null;
             if ( target.exists() )
             {
-                logger.debug( "Using cached copy of: {}", target );
-                return target;
+                specialPathInfo = specialPathManager.getSpecialPathInfo( resource, eventMetadata.getPackageType() );
+                if ( !isTooStale( resource, target, specialPathInfo, eventMetadata ) )
+                {
+                    logger.debug( "Using cached copy of: {}", target );
+                    return target;
+                }
+
+                logger.debug( "Cached metadata: {} is past its max-stale bound. Refreshing before returning it.",
+                              target );
+                return downloader.refresh( resource, target, getTimeoutSeconds( resource ), getTransport( resource ),
+                                           suppressFailures, eventMetadata );
             }
 
-            SpecialPathInfo specialPathInfo = specialPathManager.getSpecialPathInfo( resource, eventMetadata.getPackageType() );
+            specialPathInfo = specialPathManager.getSpecialPathInfo( resource, eventMetadata.getPackageType() );
             if ( !resource.allowsDownloading() || ( specialPathInfo != null && !specialPathInfo.isRetrievable() ) )
             {
                 logger.debug( "Download not allowed for: {}. Returning null transfer.", resource );
@@ -582,38 +848,326 @@ public class TransferManagerImpl
                 downloader.download( resource, target, getTimeoutSeconds( resource ), getTransport( resource ),
                                      suppressFailures, eventMetadata );
 
-            if ( retrieved != null && retrieved.exists() && !target.equals( retrieved ) )
+            return finishRetrieve( resource, target, retrieved, specialPathInfo );
+        }
+        catch ( final TransferException e )
+        {
+            fileEventManager.fire( new FileErrorEvent( target, e, eventMetadata ) );
+            throw e;
+        }
+        catch ( final IOException e )
+        {
+            final TransferException error =
+                new TransferException( "Failed to download: {}. Reason: {}", e, resource, e.getMessage() );
+
+            fileEventManager.fire( new FileErrorEvent( target, error, eventMetadata ) );
+            throw error;
+        }
+    }
+
+    /**
+     * Stale-while-revalidate for metadata: once a cached metadata file is older than the location's metadata timeout,
+     * it's still served as-is while a (shared) background refresh replaces it, up to the location's max-stale bound.
+     * Past that bound, the caller has to wait for the refresh.
+     *
+     * @return true if the cached copy is too stale to be served without refreshing it first
+     */
+    private boolean isTooStale( final ConcreteResource resource, final Transfer target,
+                                final SpecialPathInfo specialPathInfo, final EventMetadata eventMetadata )
+            throws TransferException
+    {
+        final Location location = resource.getLocation();
+        final int maxStaleSeconds = getMetadataMaxStaleSeconds( location );
+        if ( specialPathInfo == null || !specialPathInfo.isMetadata() || maxStaleSeconds < 1
+                || !resource.allowsDownloading() )
+        {
+            return false;
+        }
+
+        final long age = System.currentTimeMillis() - target.lastModified();
+        final long timeout = TimeUnit.SECONDS.toMillis( getMetadataTimeoutSeconds( location ) );
+        if ( age <= timeout )
+        {
+            return false;
+        }
+
+        if ( age > timeout + TimeUnit.SECONDS.toMillis( maxStaleSeconds ) )
+        {
+            return true;
+        }
+
+        logger.debug( "Serving stale metadata: {} (age: {}ms) while it's refreshed.", target, age );
+        downloader.refreshAsync( resource, target, getTimeoutSeconds( resource ), getTransport( resource ),
+                                 eventMetadata ).whenComplete( ( refreshed, error ) -> {
+            if ( error != null )
+            {
+                logger.warn( "Background refresh of stale metadata: {} failed. Reason: {}", target,
+                             error.getMessage() );
+            }
+        } );
+
+        return false;
+    }
+
+    private Transfer finishRetrieve( final ConcreteResource resource, final Transfer target, final Transfer retrieved,
+                                     final SpecialPathInfo specialPathInfo )
+        throws IOException
+    {
+        if ( retrieved != null && retrieved.exists() && !target.equals( retrieved ) )
+        {
+            if ( specialPathInfo == null || specialPathInfo.isCachable() )
             {
-                if ( specialPathInfo == null || specialPathInfo.isCachable() )
+                cacheProvider.createAlias( retrieved.getResource(), target.getResource() );
+            }
+        }
+
+        if ( target.exists() )
+        {
+            logger.debug( "DOWNLOADED: {}", resource );
+            return target;
+        }
+        else
+        {
+            logger.debug( "NOT DOWNLOADED: {}", resource );
+            return null;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Transfer> retrieveAsync( final ConcreteResource resource )
+    {
+        return retrieveAsync( resource, false, new EventMetadata() );
+    }
+
+    @Override
+    public CompletableFuture<Transfer> retrieveAsync( final ConcreteResource resource, final boolean suppressFailures,
+                                                      final EventMetadata eventMetadata )
+    {
+        final Transfer target = getCacheReference( resource );
+        if ( target.exists() )
+        {
+            try
+            {
+                final SpecialPathInfo specialPathInfo =
+                        specialPathManager.getSpecialPathInfo( resource, eventMetadata.getPackageType() );
+                if ( !isTooStale( resource, target, specialPathInfo, eventMetadata ) )
                 {
-                    cacheProvider.createAlias( retrieved.getResource(), target.getResource() );
+                    logger.debug( "Using cached copy of: {}", target );
+                    return CompletableFuture.completedFuture( target );
                 }
+
+                logger.debug( "Cached metadata: {} is past its max-stale bound. Refreshing before returning it.",
+                              target );
+                return refreshAsync( resource, target, getTransport( resource ), suppressFailures, eventMetadata );
             }
+            catch ( final TransferException e )
+            {
+                fileEventManager.fire( new FileErrorEvent( target, e, eventMetadata ) );
+                return completedExceptionally( e );
+            }
+        }
 
-            if ( target.exists() )
+        final SpecialPathInfo specialPathInfo = specialPathManager.getSpecialPathInfo( resource, eventMetadata.getPackageType() );
+        if ( !resource.allowsDownloading() || ( specialPathInfo != null && !specialPathInfo.isRetrievable() ) )
+        {
+            logger.debug( "Download not allowed for: {}. Returning null transfer.", resource );
+            return CompletableFuture.completedFuture( null );
+        }
+
+        final Transport transport;
+        try
+        {
+            transport = getTransport( resource );
+        }
+        catch ( final TransferException e )
+        {
+            fileEventManager.fire( new FileErrorEvent( target, e, eventMetadata ) );
+            return completedExceptionally( e );
+        }
+
+        final CompletableFuture<Transfer> result = new CompletableFuture<>();
+        downloader.downloadAsync( resource, target, getTimeoutSeconds( resource ), transport, suppressFailures,
+                                  eventMetadata ).whenComplete( ( retrieved, error ) -> {
+            TransferException failure = null;
+            if ( error != null )
             {
-                logger.debug( "DOWNLOADED: {}", resource );
-                return target;
+                failure = toTransferException( error, "Failed to download: {}. Reason: {}", resource );
             }
             else
             {
-                logger.debug( "NOT DOWNLOADED: {}", resource );
-                return null;
+                try
+                {
+                    result.complete( finishRetrieve( resource, target, retrieved, specialPathInfo ) );
+                    return;
+                }
+                catch ( final IOException e )
+                {
+                    failure = new TransferException( "Failed to download: {}. Reason: {}", e, resource, e.getMessage() );
+                }
             }
+
+            fileEventManager.fire( new FileErrorEvent( target, failure, eventMetadata ) );
+            result.completeExceptionally( failure );
+        } );
+
+        return result;
+    }
+
+    /**
+     * Async counterpart of the refresh in {@link #retrieve(ConcreteResource, boolean, EventMetadata)}: with failures
+     * suppressed, a failed refresh leaves the cached copy in place and completes with it.
+     */
+    private CompletableFuture<Transfer> refreshAsync( final ConcreteResource resource, final Transfer target,
+                                                      final Transport transport, final boolean suppressFailures,
+                                                      final EventMetadata eventMetadata )
+    {
+        final CompletableFuture<Transfer> result = new CompletableFuture<>();
+        downloader.refreshAsync( resource, target, getTimeoutSeconds( resource ), transport, eventMetadata )
+                  .whenComplete( ( refreshed, error ) -> {
+                      if ( error == null )
+                      {
+                          result.complete( refreshed );
+                          return;
+                      }
+
+                      if ( suppressFailures )
+                      {
+                          logger.warn( "Refresh of: {} failed; keeping the cached copy.", target );
+                          result.complete( target.exists() ? target : null );
+                          return;
+                      }
+
+                      final TransferException failure =
+                              toTransferException( error, "Refresh failed: {}. Reason: {}", resource );
+                      fileEventManager.fire( new FileErrorEvent( target, failure, eventMetadata ) );
+                      result.completeExceptionally( failure );
+                  } );
+
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Transfer> retrieveFirstAsync( final VirtualResource virt )
+    {
+        return retrieveFirstAsync( virt, new EventMetadata() );
+    }
+
+    @Override
+    public CompletableFuture<Transfer> retrieveFirstAsync( final VirtualResource virt, final EventMetadata eventMetadata )
+    {
+        return retrieveNextAsync( virt, virt.toConcreteResources(), 0, null, eventMetadata );
+    }
+
+    /**
+     * Async counterpart of the loop in {@link #retrieveFirst(VirtualResource, EventMetadata)}: try the resource at the
+     * given index, and only move on to the next one once this try has completed without a result.
+     */
+    private CompletableFuture<Transfer> retrieveNextAsync( final VirtualResource virt,
+                                                           final List<ConcreteResource> resources, final int index,
+                                                           final TransferException lastError,
+                                                           final EventMetadata eventMetadata )
+    {
+        int idx = index;
+        while ( idx < resources.size() && resources.get( idx ) == null )
+        {
+            idx++;
+        }
+
+        if ( idx >= resources.size() )
+        {
+            if ( lastError != null )
+            {
+                return completedExceptionally( lastError );
+            }
+
+            fileEventManager.fire( new FileNotFoundEvent( virt, eventMetadata ) );
+            return CompletableFuture.completedFuture( null );
+        }
+
+        final int current = idx;
+        final ConcreteResource res = resources.get( current );
+        final TransferException unavailable = checkUnavailable( res );
+        if ( unavailable != null )
+        {
+            return retrieveNextAsync( virt, resources, current + 1, unavailable, eventMetadata );
+        }
+
+        return retrieveAsync( res, true, eventMetadata ).handle( ( target, error ) -> {
+            if ( error == null )
+            {
+                if ( target != null && target.exists() )
+                {
+                    return CompletableFuture.completedFuture( target );
+                }
+
+                return retrieveNextAsync( virt, resources, current + 1, null, eventMetadata );
+            }
+
+            final TransferException e = toTransferException( error, "Failed to retrieve: {}. Reason: {}", res );
+            logger.warn( "Failed to retrieve: {}. {} more tries. (Reason: {})", res, resources.size() - current - 1,
+                         e.getMessage() );
+
+            return retrieveNextAsync( virt, resources, current + 1, e, eventMetadata );
+        } ).thenCompose( Function.identity() );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsAsync( final ConcreteResource resource )
+    {
+        final Transfer cached = getCacheReference( resource );
+        if ( cached.exists() )
+        {
+            return CompletableFuture.completedFuture( true );
+        }
+
+        final Transport transport;
+        try
+        {
+            transport = getTransport( resource );
         }
         catch ( final TransferException e )
         {
-            fileEventManager.fire( new FileErrorEvent( target, e, eventMetadata ) );
-            throw e;
+            return completedExceptionally( e );
         }
-        catch ( final IOException e )
+
+        return exister.existsAsync( resource, cached, getTimeoutSeconds( resource ), transport, false );
+    }
+
+    @Override
+    public CompletableFuture<ListingResult> listAsync( final ConcreteResource resource )
+    {
+        return listAsync( resource, new EventMetadata() );
+    }
+
+    @Override
+    public CompletableFuture<ListingResult> listAsync( final ConcreteResource resource, final EventMetadata metadata )
+    {
+        return callAsync( () -> doList( resource, false, metadata ), executorService );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> publishAsync( final ConcreteResource resource, final InputStream stream,
+                                                    final long length, final String contentType,
+                                                    final EventMetadata metadata )
+    {
+        SpecialPathInfo specialPathInfo = specialPathManager.getSpecialPathInfo( resource, metadata.getPackageType() );
+        if ( specialPathInfo != null && !specialPathInfo.isPublishable() )
         {
-            final TransferException error =
-                new TransferException( "Failed to download: {}. Reason: {}", e, resource, e.getMessage() );
+            return completedExceptionally( new TransferException( "Publishing not allowed for: %s", resource ) );
+        }
 
-            fileEventManager.fire( new FileErrorEvent( target, error, eventMetadata ) );
-            throw error;
+        final Transport transport;
+        try
+        {
+            transport = getTransport( resource );
+        }
+        catch ( final TransferException e )
+        {
+            return completedExceptionally( e );
         }
+
+        return uploader.uploadAsync( resource, stream, length, contentType, getTimeoutSeconds( resource ), transport )
+                       .whenComplete( ( published, error ) -> exister.invalidate( resource ) );
     }
 
     @Override
@@ -724,7 +1278,14 @@ public class TransferManagerImpl
         }
 
         final Transfer item = getCacheReference( resource );
-        return doDelete( item, eventMetadata );
+        try
+        {
+            return doDelete( item, eventMetadata );
+        }
+        finally
+        {
+            exister.invalidate( resource );
+        }
     }
 
     private Boolean doDelete( final Transfer item, final EventMetadata eventMetadata )
@@ -832,8 +1393,43 @@ public class TransferManagerImpl
             throw new TransferException( "Publishing not allowed for: %s", resource );
         }
 
-        return uploader.upload( resource, stream, length, contentType, getTimeoutSeconds( resource ),
-                                getTransport( resource ) );
+        try
+        {
+            return uploader.upload( resource, stream, length, contentType, getTimeoutSeconds( resource ),
+                                    getTransport( resource ) );
+        }
+        finally
+        {
+            exister.invalidate( resource );
+        }
+    }
+
+    @Override
+    public <T extends PublishBatch> T batchPublish( final T batch )
+        throws TransferException
+    {
+        return batchPublish( batch, new EventMetadata() );
+    }
+
+    @Override
+    public <T extends PublishBatch> T batchPublish( final T batch, final EventMetadata eventMetadata )
+        throws TransferException
+    {
+        final BatchPublisher publisher = new BatchPublisher(
+                ( resource, stream, length, contentType ) -> publishAsync( resource, stream, length, contentType,
+                                                                           eventMetadata ) );
+        try
+        {
+            publisher.run( batch );
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new TransferException( "Interrupted while publishing batch of {} items.", e,
+                                         batch.getItems().size() );
+        }
+
+        return batch;
     }
 
     @Override
@@ -847,7 +1443,15 @@ public class TransferManagerImpl
     public <T extends TransferBatch> T batchRetrieve( final T batch , final EventMetadata eventMetadata  )
         throws TransferException
     {
-        return doBatch( batch.getResources(), batch, true, eventMetadata );
+        return doBatch( batch.getResources(), batch, true, eventMetadata, null );
+    }
+
+    @Override
+    public <T extends TransferBatch> T batchRetrieve( final T batch, final EventMetadata eventMetadata,
+                                                      final TransferBatchListener listener )
+        throws TransferException
+    {
+        return doBatch( batch.getResources(), batch, true, eventMetadata, listener );
     }
 
     @Override
@@ -860,6 +1464,14 @@ public class TransferManagerImpl
     @Override
     public <T extends TransferBatch> T batchRetrieveAll( final T batch , final EventMetadata eventMetadata  )
         throws TransferException
+    {
+        return batchRetrieveAll( batch, eventMetadata, null );
+    }
+
+    @Override
+    public <T extends TransferBatch> T batchRetrieveAll( final T batch, final EventMetadata eventMetadata,
+                                                         final TransferBatchListener listener )
+        throws TransferException
     {
         final Set<Resource> resources = batch.getResources();
         for ( final Resource resource : new HashSet<>( resources ) )
@@ -874,85 +1486,81 @@ public class TransferManagerImpl
             }
         }
 
-        return doBatch( resources, batch, false, eventMetadata );
+        return doBatch( resources, batch, false, eventMetadata, listener );
     }
 
     @SuppressWarnings( "RedundantThrows" )
     private <T extends TransferBatch> T doBatch( final Set<Resource> resources, final T batch,
-                                                 final boolean suppressFailures, final EventMetadata eventMetadata )
+                                                 final boolean suppressFailures, final EventMetadata eventMetadata,
+                                                 final TransferBatchListener listener )
         throws TransferException
     {
         logger.info( "Attempting to batch-retrieve {} resources:\n  {}", resources.size(), new JoinString( "\n  ",
                                                                                                            resources ) );
 
-        final Set<BatchRetriever> retrievers = new HashSet<>( resources.size() );
+        final List<BatchRetriever> retrievers = new ArrayList<>( resources.size() );
         for ( final Resource resource : resources )
         {
             retrievers.add( new BatchRetriever( this, resource, suppressFailures, eventMetadata ) );
         }
 
+        // only touched by the calling thread, which is where the pipeline reports finished retrievers.
         final Map<ConcreteResource, TransferException> errors = new HashMap<>();
         final Map<ConcreteResource, Transfer> transfers = new HashMap<>();
 
-        do
+        try
         {
-            for ( final BatchRetriever retriever : retrievers )
-            {
-                batchExecutor.submit( retriever );
-            }
-
-            int count = retrievers.size();
-            for ( int i = 0; i < count; i++ )
-            {
-                try
+            new BatchRetrievalPipeline( executorService, config.getBatchConcurrency() ).run( retrievers, retriever -> {
+                final ConcreteResource resource = retriever.getLastTry();
+                final TransferException error = retriever.getError();
+                if ( error != null )
                 {
-                    Future<BatchRetriever> pending = batchExecutor.take();
-                    BatchRetriever retriever = pending.get();
-
-                    final ConcreteResource resource = retriever.getLastTry();
-                    final TransferException error = retriever.getError();
-                    if ( error != null )
+                    logger.warn( String.format( "ERROR: %s...%s", resource, error.getMessage() ), error );
+                    if ( !( error instanceof TransferLocationException ) )
                     {
-                        logger.warn( String.format( "ERROR: %s...%s", resource, error.getMessage() ), error );
-                        retrievers.remove( retriever );
-
-                        if ( !( error instanceof TransferLocationException ) )
+                        errors.put( resource, error );
+                        if ( listener != null )
                         {
-                            errors.put( resource, error );
+                            listener.failed( resource, error );
                         }
 
-                        continue;
+                        return;
                     }
-
+                }
+                else
+                {
                     final Transfer transfer = retriever.getTransfer();
                     if ( transfer != null && transfer.exists() )
                     {
                         transfers.put( resource, transfer );
-                        retrievers.remove( retriever );
                         logger.debug( "Completed: {}", resource );
-                        continue;
-                    }
+                        if ( listener != null )
+                        {
+                            listener.transferred( resource, transfer );
+                        }
 
-                    if ( !retriever.hasMoreTries() )
-                    {
-                        logger.debug( "Not completed, but out of tries: {}", resource );
-                        retrievers.remove( retriever );
+                        return;
                     }
+
+                    logger.debug( "Not completed, but out of tries: {}", resource );
                 }
-                catch ( final InterruptedException e )
-                {
-                    logger.error( String.format( "Failed to wait for batch retrieval attempts to complete: %s",
-                                                 e.getMessage() ), e );
-                    break;
-                }
-                catch ( ExecutionException e )
+
+                if ( listener != null )
                 {
-                    logger.error( String.format( "Failed to retrieve next completed retrieval: %s", e.getMessage() ),
-                                  e );
+                    listener.notFound( retriever.getResource() );
                 }
-            }
+            } );
+        }
+        catch ( final InterruptedException e )
+        {
+            logger.error( String.format( "Failed to wait for batch retrieval attempts to complete: %s",
+                                         e.getMessage() ), e );
+            Thread.currentThread().interrupt();
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            throw new TransferException( "Batch retrieval could not be scheduled. Reason: {}", e, e.getMessage() );
         }
-        while( !retrievers.isEmpty() );
 
         batch.setErrors( errors );
         batch.setTransfers( transfers );
@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.io.checksum.ChecksumAlgorithm;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.PublishBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.apache.commons.codec.binary.Hex.encodeHexString;
+import static org.commonjava.maven.galley.util.FutureUtils.toTransferException;
+
+/**
+ * Publishes the items of a {@link PublishBatch} all at once, leaving scheduling (and per-location limits) to the
+ * {@link Publisher}. Each item's content is digested as the transport reads it, so its checksum sidecars are ready to
+ * publish as soon as the item itself succeeds, without reading it twice.
+ */
+public final class BatchPublisher
+{
+    private static final String CHECKSUM_CONTENT_TYPE = "text/plain";
+
+    /**
+     * Starts one publish; normally {@link UploadHandler#uploadAsync} by way of the transfer manager.
+     */
+    public interface Publisher
+    {
+        CompletableFuture<Boolean> publish( ConcreteResource resource, InputStream stream, long length,
+                                            String contentType );
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Publisher publisher;
+
+    private final Map<ConcreteResource, Boolean> results = new ConcurrentHashMap<>();
+
+    private final Map<ConcreteResource, TransferException> errors = new ConcurrentHashMap<>();
+
+    public BatchPublisher( final Publisher publisher )
+    {
+        this.publisher = publisher;
+    }
+
+    /**
+     * Publish everything in the batch, and record the outcome of each item and sidecar in it.
+     *
+     * @throws InterruptedException if interrupted while waiting; publishes already started are left to finish in the
+     * background, and the batch isn't updated.
+     */
+    public void run( final PublishBatch batch )
+            throws InterruptedException
+    {
+        final Set<ConcreteResource> inBatch = new HashSet<>();
+        batch.getItems().forEach( item -> inBatch.add( item.getResource() ) );
+
+        final List<CompletableFuture<Void>> pipelines = new ArrayList<>();
+        for ( final PublishBatch.Item item : batch.getItems() )
+        {
+            pipelines.add( publish( item, sidecarsFor( item.getResource(), batch.getChecksums(), inBatch ) ) );
+        }
+
+        try
+        {
+            CompletableFuture.allOf( pipelines.toArray( new CompletableFuture[0] ) ).get();
+        }
+        catch ( final ExecutionException e )
+        {
+            // every stage records its own failure, so this shouldn't happen.
+            throw new IllegalStateException( "Batch publish failed unexpectedly: " + e.getMessage(), e );
+        }
+
+        batch.setResults( results );
+        batch.setErrors( errors );
+    }
+
+    private CompletableFuture<Void> publish( final PublishBatch.Item item, final Set<ChecksumAlgorithm> sidecars )
+    {
+        final ConcreteResource resource = item.getResource();
+        final Map<ChecksumAlgorithm, MessageDigest> digests = new EnumMap<>( ChecksumAlgorithm.class );
+        InputStream stream = item.getStream();
+        for ( final ChecksumAlgorithm algorithm : sidecars )
+        {
+            try
+            {
+                final MessageDigest digest = MessageDigest.getInstance( algorithm.getDigestName() );
+                digests.put( algorithm, digest );
+                stream = new DigestInputStream( stream, digest );
+            }
+            catch ( final NoSuchAlgorithmException e )
+            {
+                logger.warn( "Cannot generate {} for: {}. Reason: {}", algorithm.getExtension(), resource,
+                             e.getMessage() );
+            }
+        }
+
+        return start( resource, stream, item.getLength(), item.getContentType() ).thenCompose( published -> {
+            if ( !published )
+            {
+                return CompletableFuture.completedFuture( null );
+            }
+
+            final List<CompletableFuture<Boolean>> checksums = new ArrayList<>();
+            digests.forEach( ( algorithm, digest ) -> {
+                final byte[] hex = encodeHexString( digest.digest() ).getBytes( StandardCharsets.UTF_8 );
+                checksums.add( start( new ConcreteResource( resource.getLocation(),
+                                                            resource.getPath() + algorithm.getExtension() ),
+                                      new ByteArrayInputStream( hex ), hex.length, CHECKSUM_CONTENT_TYPE ) );
+            } );
+
+            return CompletableFuture.allOf( checksums.toArray( new CompletableFuture[0] ) );
+        } );
+    }
+
+    /**
+     * Start one publish, and record how it went. The returned future never fails; it completes with false instead.
+     */
+    private CompletableFuture<Boolean> start( final ConcreteResource resource, final InputStream stream,
+                                              final long length, final String contentType )
+    {
+        CompletableFuture<Boolean> future;
+        try
+        {
+            future = publisher.publish( resource, stream, length, contentType );
+        }
+        catch ( final RuntimeException e )
+        {
+            future = new CompletableFuture<>();
+            future.completeExceptionally( e );
+        }
+
+        return future.handle( ( published, error ) -> {
+            if ( error != null )
+            {
+                final TransferException e = toTransferException( error, "Failed to publish: {}. Reason: {}", resource );
+                logger.warn( String.format( "ERROR: %s...%s", resource, e.getMessage() ), e );
+                errors.put( resource, e );
+                results.put( resource, false );
+                return false;
+            }
+
+            final boolean result = Boolean.TRUE.equals( published );
+            results.put( resource, result );
+            return result;
+        } );
+    }
+
+    /**
+     * Checksums aren't generated for checksum files, or where the batch already carries the sidecar.
+     */
+    private static Set<ChecksumAlgorithm> sidecarsFor( final ConcreteResource resource,
+                                                       final Set<ChecksumAlgorithm> checksums,
+                                                       final Set<ConcreteResource> inBatch )
+    {
+        final Set<ChecksumAlgorithm> result = EnumSet.noneOf( ChecksumAlgorithm.class );
+        for ( final ChecksumAlgorithm algorithm : ChecksumAlgorithm.values() )
+        {
+            if ( resource.getPath().endsWith( algorithm.getExtension() ) )
+            {
+                return result;
+            }
+        }
+
+        for ( final ChecksumAlgorithm algorithm : checksums )
+        {
+            if ( !inBatch.contains(
+                    new ConcreteResource( resource.getLocation(), resource.getPath() + algorithm.getExtension() ) ) )
+            {
+                result.add( algorithm );
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.util.LocationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.function.Consumer;
+
+/**
+ * Drives a set of {@link BatchRetriever}s to completion. Each retriever moves on to its next candidate location as
+ * soon as its current try misses, independently of the others, so a batch takes roughly as long as its slowest single
+ * chain of tries.
+ * <br/>
+ * Concurrency is bounded globally (at most maxConcurrent tries in flight) and per location (at most the location's
+ * {@link Location#MAX_CONNECTIONS} tries against it). Tries waiting for a slot are queued per location, and the
+ * calling thread does the scheduling; it never runs tries itself.
+ */
+public final class BatchRetrievalPipeline
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final int maxConcurrent;
+
+    private final CompletionService<Attempt> completion;
+
+    // keyed by the location of each retriever's next try; the null key holds tries of null resources.
+    private final Map<Location, Deque<BatchRetriever>> ready = new LinkedHashMap<>();
+
+    private final Map<Location, Integer> running = new HashMap<>();
+
+    private int inFlight;
+
+    public BatchRetrievalPipeline( final Executor executor, final int maxConcurrent )
+    {
+        this.maxConcurrent = Math.max( 1, maxConcurrent );
+        this.completion = new ExecutorCompletionService<>( executor );
+    }
+
+    /**
+     * Run every retriever until its last try either found the resource, failed with an error, or it ran out of
+     * locations. Afterward, each retriever's {@link BatchRetriever#getLastTry()}, {@link BatchRetriever#getTransfer()}
+     * and {@link BatchRetriever#getError()} describe its outcome.
+     *
+     * @throws InterruptedException if interrupted while waiting for tries to finish; tries already running are left
+     * to finish in the background, and no new ones are started.
+     */
+    public void run( final Collection<BatchRetriever> retrievers )
+            throws InterruptedException
+    {
+        run( retrievers, retriever -> {
+        } );
+    }
+
+    /**
+     * Same as {@link #run(Collection)}, but hands each retriever to the callback as soon as it's finished. Callbacks run
+     * on the calling thread, one at a time; no new tries are started while a callback runs, so a slow callback
+     * throttles the pipeline (at most maxConcurrent finished tries wait for it). An exception thrown by the callback
+     * stops the pipeline and propagates, leaving tries already running to finish in the background.
+     */
+    public void run( final Collection<BatchRetriever> retrievers, final Consumer<BatchRetriever> onFinished )
+            throws InterruptedException
+    {
+        for ( final BatchRetriever retriever : retrievers )
+        {
+            if ( retriever.hasMoreTries() )
+            {
+                enqueue( retriever );
+            }
+            else
+            {
+                onFinished.accept( retriever );
+            }
+        }
+
+        dispatch();
+        while ( inFlight > 0 )
+        {
+            final Attempt attempt;
+            try
+            {
+                attempt = completion.take().get();
+            }
+            catch ( final ExecutionException e )
+            {
+                // Attempt.call() doesn't throw, so this shouldn't happen.
+                throw new IllegalStateException( "Batch retrieval attempt failed unexpectedly: " + e.getMessage(), e );
+            }
+
+            inFlight--;
+            running.merge( attempt.location, -1, Integer::sum );
+
+            final BatchRetriever retriever = attempt.retriever;
+            if ( isFinished( retriever ) )
+            {
+                logger.debug( "Finished: {}", retriever );
+                onFinished.accept( retriever );
+            }
+            else
+            {
+                logger.debug( "Moving on to next try: {}", retriever );
+                enqueue( retriever );
+            }
+
+            dispatch();
+        }
+    }
+
+    private boolean isFinished( final BatchRetriever retriever )
+    {
+        if ( retriever.getError() != null || !retriever.hasMoreTries() )
+        {
+            return true;
+        }
+
+        final Transfer transfer = retriever.getTransfer();
+        return transfer != null && transfer.exists();
+    }
+
+    private void enqueue( final BatchRetriever retriever )
+    {
+        final ConcreteResource next = retriever.getNextTry();
+        final Location location = next == null ? null : next.getLocation();
+        ready.computeIfAbsent( location, l -> new ArrayDeque<>() ).addLast( retriever );
+    }
+
+    /**
+     * Start as many queued tries as the global and per-location limits allow.
+     */
+    private void dispatch()
+    {
+        final Iterator<Map.Entry<Location, Deque<BatchRetriever>>> it = ready.entrySet().iterator();
+        while ( inFlight < maxConcurrent && it.hasNext() )
+        {
+            final Map.Entry<Location, Deque<BatchRetriever>> entry = it.next();
+            final Location location = entry.getKey();
+            final Deque<BatchRetriever> queue = entry.getValue();
+            final int limit = location == null ? maxConcurrent : LocationUtils.getMaxConnections( location );
+
+            int current = running.getOrDefault( location, 0 );
+            while ( inFlight < maxConcurrent && current < limit && !queue.isEmpty() )
+            {
+                completion.submit( new Attempt( queue.pollFirst(), location ) );
+                current++;
+                inFlight++;
+            }
+
+            running.put( location, current );
+            if ( queue.isEmpty() )
+            {
+                it.remove();
+            }
+        }
+    }
+
+    private final class Attempt
+            implements Callable<Attempt>
+    {
+        private final BatchRetriever retriever;
+
+        private final Location location;
+
+        private Attempt( final BatchRetriever retriever, final Location location )
+        {
+            this.retriever = retriever;
+            this.location = location;
+        }
+
+        @Override
+        public Attempt call()
+        {
+            try
+            {
+                retriever.call();
+            }
+            catch ( final RuntimeException e )
+            {
+                logger.error( String.format( "Batch retrieval try failed: %s. Reason: %s", retriever, e.getMessage() ),
+                              e );
+            }
+
+            return this;
+        }
+    }
+}
@@ -108,6 +108,22 @@ public final class BatchRetriever
         return resources.size() > tries;
     }
 
+    /**
+     * @return the resource the next call will try, or null if there are no more tries
+     */
+    public ConcreteResource getNextTry()
+    {
+        return hasMoreTries() ? resources.get( tries ) : null;
+    }
+
+    /**
+     * @return the resource (concrete or virtual) this retriever was created for
+     */
+    public Resource getResource()
+    {
+        return rootResource;
+    }
+
     public ConcreteResource getLastTry()
     {
         return lastTry;
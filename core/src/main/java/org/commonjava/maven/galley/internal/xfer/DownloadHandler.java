@@ -20,32 +20,53 @@ import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.maven.galley.TransferContentException;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferLocationUnavailableException;
 import org.commonjava.maven.galley.TransferTimeoutException;
 import org.commonjava.maven.galley.config.TransportManagerConfig;
 import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.SpecialPathConstants;
 import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.SpecialPathInfo;
 import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.io.SpecialPathManager;
+import org.commonjava.maven.galley.spi.metrics.GaugeProvider;
+import org.commonjava.maven.galley.spi.metrics.MeteringProvider;
 import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
 import org.commonjava.maven.galley.spi.transport.DownloadJob;
 import org.commonjava.maven.galley.spi.transport.Transport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import static org.commonjava.maven.galley.util.FutureUtils.completedExceptionally;
+import static org.commonjava.maven.galley.util.FutureUtils.toTransferException;
+
 @ApplicationScoped
 public class DownloadHandler
 {
 
+    /**
+     * How often a caller waiting on a download checks the job's progress.
+     */
+    private static final long PROGRESS_POLL_MILLIS = 1000;
+
+    private static final String POM_EXTENSION = ".pom";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -56,23 +77,90 @@ public class DownloadHandler
 
     private final Map<Transfer, Long> transferSizes = new ConcurrentHashMap<>();
 
-    private final Map<Transfer, Future<DownloadJob>> pending = new HashMap<>();
+    private final ConcurrentMap<Transfer, CompletableFuture<DownloadJob>> pending = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Transfer, DownloadJob> jobs = new ConcurrentHashMap<>();
 
     @Inject
     @WeftManaged
     @ExecutorConfig( threads = 12, named = "galley-transfers", priority = 8 )
     private ExecutorService executor;
 
+    @Inject
+    private Instance<MeteringProvider> meters;
+
+    @Inject
+    private Instance<GaugeProvider> gauges;
+
+    @Inject
+    private SpecialPathManager specialPathManager;
+
+    private LocationLimitedExecutor locationExecutor;
+
+    private FairShareExecutor fairShareExecutor;
+
     @SuppressWarnings( "unused" )
     public DownloadHandler()
     {
     }
 
     public DownloadHandler( final NotFoundCache nfc, final TransportManagerConfig config, final ExecutorService executor )
+    {
+        this( nfc, config, executor, null, null );
+    }
+
+    public DownloadHandler( final NotFoundCache nfc, final TransportManagerConfig config, final ExecutorService executor,
+                            final MeteringProvider meters, final GaugeProvider gauges )
+    {
+        this( nfc, config, executor, meters, gauges, null );
+    }
+
+    /**
+     * @param specialPathManager (optional) tells priority downloads from bulk ones when fair-share downloads are
+     * enabled; without it, only POMs are given priority
+     */
+    public DownloadHandler( final NotFoundCache nfc, final TransportManagerConfig config, final ExecutorService executor,
+                            final MeteringProvider meters, final GaugeProvider gauges,
+                            final SpecialPathManager specialPathManager )
     {
         this.nfc = nfc;
         this.config = config;
         this.executor = executor;
+        this.specialPathManager = specialPathManager;
+        this.locationExecutor = LocationLimitedExecutor.forHandler( "download", executor, config, meters, gauges );
+        this.fairShareExecutor = newFairShareExecutor( executor, config, gauges );
+    }
+
+    /**
+     * When virtual threads are enabled, swap the injected (fixed-size) pool for a virtual-thread executor, and cap
+     * concurrency per location instead. When location bulkheads are enabled, also bound the jobs waiting on each
+     * location.
+     */
+    @PostConstruct
+    public void init()
+    {
+        if ( config.isVirtualThreadsEnabled() )
+        {
+            executor = TransferExecutors.newVirtualThreadExecutor( "galley-transfers" );
+        }
+
+        final MeteringProvider meter = meters.isUnsatisfied() || meters.isAmbiguous() ? null : meters.get();
+        final GaugeProvider gauge = gauges.isUnsatisfied() || gauges.isAmbiguous() ? null : gauges.get();
+        locationExecutor = LocationLimitedExecutor.forHandler( "download", executor, config, meter, gauge );
+        fairShareExecutor = newFairShareExecutor( executor, config, gauge );
+    }
+
+    private static FairShareExecutor newFairShareExecutor( final ExecutorService executor,
+                                                           final TransportManagerConfig config,
+                                                           final GaugeProvider gauges )
+    {
+        if ( !config.isFairShareDownloadsEnabled() || config.isVirtualThreadsEnabled() )
+        {
+            return null;
+        }
+
+        return new FairShareExecutor( executor, config.getDownloadConcurrency(), config.getReservedPriorityDownloads(),
+                                      "download", gauges );
     }
 
     // FIXME: download batch
@@ -105,77 +193,298 @@ public class DownloadHandler
         return joinOrStart( resource, target, timeoutSeconds, transport, suppressFailures, eventMetadata );
     }
 
-    private final Object DOWNLOAD_MUTEX = new Object(); // to prevent duplicate downloads
-
-    private Transfer joinOrStart( final ConcreteResource resource, final Transfer target, final int timeoutSeconds,
-                                  final Transport transport, final boolean suppressFailures,
-                                  final EventMetadata eventMetadata )
-            throws TransferException
+    /**
+     * Non-blocking variant of {@link #download(ConcreteResource, Transfer, int, Transport, boolean, EventMetadata)}.
+     * The caller's thread is never parked waiting on the download job; the returned future completes when the (possibly
+     * shared) job does, or exceptionally with a {@link TransferException} if the download failed and failures are not
+     * suppressed. Unlike the blocking method, there is no handler-side wait timeout here; the transport's own
+     * connection / request timeouts bound the job.
+     */
+    public CompletableFuture<Transfer> downloadAsync( final ConcreteResource resource, final Transfer target,
+                                                      final int timeoutSeconds, final Transport transport,
+                                                      final boolean suppressFailures,
+                                                      final EventMetadata eventMetadata )
     {
-        Future<DownloadJob> future;
-        boolean created = false;
-        synchronized ( DOWNLOAD_MUTEX )
+        if ( !resource.allowsDownloading() )
+        {
+            return CompletableFuture.completedFuture( null );
+        }
+
+        if ( transport == null )
+        {
+            return completedExceptionally(
+                    new TransferLocationException( resource.getLocation(),
+                                                   "No transports available to handle: {} with location type: {}",
+                                                   resource, resource.getLocation().getClass().getSimpleName() ) );
+        }
+
+        if ( nfc.isMissing( resource ) )
         {
-            // if the target file already exists, skip joining.
-            if ( target.exists() )
+            logger.debug( "NFC: Already marked as missing: {}", resource );
+            return CompletableFuture.completedFuture( null );
+        }
+
+        logger.debug( "RETRIEVE (async) {}", resource );
+
+        if ( target.exists() )
+        {
+            return CompletableFuture.completedFuture( target );
+        }
+
+        final CompletableFuture<DownloadJob> future;
+        try
+        {
+            future = joinOrStartJob( resource, target, timeoutSeconds, transport, eventMetadata, false );
+        }
+        catch ( final TransferException e )
+        {
+            return completedExceptionally( e );
+        }
+
+        if ( future == null )
+        {
+            return CompletableFuture.completedFuture( target );
+        }
+
+        final CompletableFuture<Transfer> result = new CompletableFuture<>();
+        future.whenComplete( ( job, error ) -> {
+            transferSizes.remove( target );
+            if ( error == null && job == null )
             {
-                return target;
+                // joined a registration that found the target already downloaded
+                result.complete( target );
+                return;
             }
 
-            future = pending.get( target );
-            if ( future == null )
+            Throwable failure = error;
+            if ( failure == null )
             {
-                if ( transport == null )
+                try
                 {
-                    return null;
+                    result.complete( processResult( resource, job, suppressFailures ) );
+                    return;
                 }
+                catch ( final TransferException | RuntimeException e )
+                {
+                    failure = e;
+                }
+            }
 
-                final DownloadJob job = transport.createDownloadJob( resource, target, transferSizes, timeoutSeconds, eventMetadata );
-
-                created = true;
-                future = executor.submit( job );
-                logger.debug( "Created download job for path {}: {}", resource, future );
-                pending.put( target, future );
+            if ( suppressFailures )
+            {
+                result.complete( null );
+            }
+            else
+            {
+                result.completeExceptionally( toTransferException( failure, "Download failed: {}. Reason: {}", resource ) );
             }
+        } );
+
+        return result;
+    }
+
+    /**
+     * Re-download a target that is already cached, replacing its content once the new copy is complete. Until then,
+     * readers keep getting the cached copy. Concurrent refreshes (and downloads) of the same target share one job.
+     * The returned future completes exceptionally if the refresh failed; the cached copy is left alone in that case,
+     * and the resource is NOT marked missing.
+     */
+    public CompletableFuture<Transfer> refreshAsync( final ConcreteResource resource, final Transfer target,
+                                                     final int timeoutSeconds, final Transport transport,
+                                                     final EventMetadata eventMetadata )
+    {
+        if ( transport == null )
+        {
+            return completedExceptionally(
+                    new TransferLocationException( resource.getLocation(),
+                                                   "No transports available to handle: {} with location type: {}",
+                                                   resource, resource.getLocation().getClass().getSimpleName() ) );
         }
 
-        int waitSeconds = (int) ( timeoutSeconds * config.getTimeoutOverextensionFactor() );
-        int tries = 1;
+        logger.debug( "REFRESH {}", resource );
+
+        final CompletableFuture<DownloadJob> future;
         try
         {
-            while ( tries > 0 )
+            future = joinOrStartJob( resource, target, timeoutSeconds, transport, eventMetadata, true );
+        }
+        catch ( final TransferException e )
+        {
+            return completedExceptionally( e );
+        }
+
+        final CompletableFuture<Transfer> result = new CompletableFuture<>();
+        future.whenComplete( ( job, error ) -> {
+            transferSizes.remove( target );
+            Throwable failure = error;
+            if ( failure == null && job != null )
+            {
+                failure = job.getError();
+            }
+
+            if ( failure == null )
+            {
+                result.complete( target );
+            }
+            else
             {
-                tries--;
+                result.completeExceptionally(
+                        toTransferException( failure, "Refresh failed: {}. Reason: {}", resource ) );
+            }
+        } );
+
+        return result;
+    }
 
+    /**
+     * Blocking variant of {@link #refreshAsync(ConcreteResource, Transfer, int, Transport, EventMetadata)}, bounded
+     * by the request timeout (scaled by the overextension factor). With failures suppressed, a failed refresh leaves
+     * the cached copy in place and returns it.
+     */
+    public Transfer refresh( final ConcreteResource resource, final Transfer target, final int timeoutSeconds,
+                             final Transport transport, final boolean suppressFailures,
+                             final EventMetadata eventMetadata )
+            throws TransferException
+    {
+        final long waitMillis =
+                TimeUnit.SECONDS.toMillis( (int) ( timeoutSeconds * config.getTimeoutOverextensionFactor() ) );
+        try
+        {
+            return refreshAsync( resource, target, timeoutSeconds, transport, eventMetadata ).get( waitMillis,
+                                                                                                   TimeUnit.MILLISECONDS );
+        }
+        catch ( final TimeoutException e )
+        {
+            if ( !suppressFailures )
+            {
+                throw new TransferTimeoutException( target, "Timed out waiting for refresh of: {}", e, target );
+            }
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            if ( !suppressFailures )
+            {
+                throw new TransferException( "Refresh interrupted: {}", e, target );
+            }
+        }
+        catch ( final ExecutionException e )
+        {
+            if ( !suppressFailures )
+            {
+                throw toTransferException( e.getCause(), "Refresh failed: {}. Reason: {}", resource );
+            }
+        }
+
+        logger.warn( "Refresh of: {} failed; keeping the cached copy.", target );
+        return target.exists() ? target : null;
+    }
+
+    /**
+     * Join or start the download job for the target, and wait for it. The wait is bounded by the request timeout
+     * (scaled by the overextension factor) until the job reports its first bytes; after that, the caller keeps waiting
+     * as long as data keeps arriving, and gives up once none has arrived for the configured stall period.
+     */
+    private Transfer joinOrStart( final ConcreteResource resource, final Transfer target, final int timeoutSeconds,
+                                  final Transport transport, final boolean suppressFailures,
+                                  final EventMetadata eventMetadata )
+            throws TransferException
+    {
+        // if the target file already exists, skip joining.
+        if ( target.exists() )
+        {
+            return target;
+        }
+
+        final CompletableFuture<DownloadJob> future =
+                joinOrStartJob( resource, target, timeoutSeconds, transport, eventMetadata, false );
+        if ( future == null )
+        {
+            return target;
+        }
+
+        final long waitNanos =
+                TimeUnit.SECONDS.toNanos( (int) ( timeoutSeconds * config.getTimeoutOverextensionFactor() ) );
+        final long stallNanos = TimeUnit.SECONDS.toNanos( config.getDownloadStallSeconds() );
+        final long pollMillis = Math.max( 1, Math.min( PROGRESS_POLL_MILLIS, TimeUnit.NANOSECONDS.toMillis(
+                Math.min( waitNanos, stallNanos > 0 ? stallNanos : waitNanos ) ) ) );
+
+        long limitNanos = waitNanos;
+        boolean extended = false;
+        long lastBytes = 0;
+        long lastProgress = System.nanoTime();
+        try
+        {
+            while ( true )
+            {
                 try
                 {
                     logger.debug( "Waiting for download job of path: {}: {}", resource, future );
-                    final DownloadJob job = future.get( waitSeconds, TimeUnit.SECONDS );
+                    final DownloadJob job = future.get( pollMillis, TimeUnit.MILLISECONDS );
+                    if ( job == null )
+                    {
+                        // joined a registration that found the target already downloaded
+                        return target;
+                    }
 
-                    final Transfer downloaded = job.getTransfer();
+                    return processResult( resource, job, suppressFailures );
+                }
+                catch ( final TimeoutException e )
+                {
+                    if ( target.isStreamingThrough() )
+                    {
+                        // readers get the content as it's written (and an error if the download fails), so there's
+                        // no need to wait; the job's result is still processed once it finishes.
+                        logger.debug( "Download of: {} is streaming into the cache; not waiting for it to finish.",
+                                      target );
+                        future.whenComplete( ( job, error ) -> processLater( resource, job, error ) );
+                        return target;
+                    }
 
-                    if ( job.getError() != null )
+                    final long now = System.nanoTime();
+                    final long bytes = getBytesTransferred( target );
+                    if ( bytes > lastBytes )
                     {
-                        logger.debug( "NFC: Download error. Marking as missing: {}\nError was: {}", job.getError(),
-                                      resource, job.getError().getMessage() );
-                        
-                        if ( ! (job.getError() instanceof  TransferContentException ) && ! (job.getError() instanceof TransferTimeoutException ) )
+                        // data is flowing; from now on, only a stall ends the wait.
+                        lastBytes = bytes;
+                        lastProgress = now;
+                        if ( stallNanos > 0 )
                         {
-                            nfc.addMissing( resource );
+                            limitNanos = stallNanos;
                         }
+                        continue;
+                    }
 
-                        if ( !suppressFailures )
-                        {
-                            throw job.getError();
-                        }
+                    if ( now - lastProgress < limitNanos )
+                    {
+                        continue;
+                    }
+
+                    // the transport doesn't report progress, so go by the announced size instead.
+                    final Long size = transferSizes.get( target );
+                    if ( bytes < 0 && !extended && size != null && size > config.getThresholdWaitRetrySize() )
+                    {
+                        final long tries = size / config.getWaitRetryScalingIncrement();
+                        logger.debug( "Downloading a large file: {}. Waiting up to {} more times.", size, tries );
+                        limitNanos += tries * waitNanos;
+                        extended = true;
+                        continue;
                     }
-                    else if ( downloaded == null || !downloaded.exists() )
+
+                    if ( !suppressFailures )
                     {
-                        logger.debug( "NFC: Download did not complete. Marking as missing: {}", resource );
-                        nfc.addMissing( resource );
+                        if ( lastBytes > 0 )
+                        {
+                            throw new TransferTimeoutException( target, "Download stalled: {} after {} bytes. "
+                                                                        + "No data received for {}ms.", e, target,
+                                                                lastBytes,
+                                                                TimeUnit.NANOSECONDS.toMillis( now - lastProgress ) );
+                        }
+
+                        throw new TransferTimeoutException( target, "Timed out waiting for execution of: {}", e, target );
                     }
 
-                    return downloaded;
+                    return null;
                 }
                 catch ( final InterruptedException e )
                 {
@@ -183,6 +492,7 @@ public class DownloadHandler
                     {
                         throw new TransferException( "Download interrupted: {}", e, target );
                     }
+                    return null;
                 }
                 catch ( final ExecutionException e )
                 {
@@ -190,24 +500,7 @@ public class DownloadHandler
                     {
                         throw new TransferException( "Download failed: {}", e, target );
                     }
-                }
-                catch ( final TimeoutException e )
-                {
-                    Long size = transferSizes.get( target );
-                    if ( tries > 0 )
-                    {
-                        continue;
-                    }
-                    else if ( size != null && size > config.getThresholdWaitRetrySize() )
-                    {
-                        logger.debug( "Downloading a large file: {}. Retrying Future.get() up to {} times.", size, tries );
-                        tries = (int) ( size / config.getWaitRetryScalingIncrement() );
-                        continue;
-                    }
-                    else if ( !suppressFailures )
-                    {
-                        throw new TransferTimeoutException( target, "Timed out waiting for execution of: {}", e, target );
-                    }
+                    return null;
                 }
                 catch ( final TransferException e )
                 {
@@ -216,6 +509,7 @@ public class DownloadHandler
                     {
                         throw e;
                     }
+                    return null;
                 }
                 catch ( final Exception e )
                 {
@@ -223,23 +517,224 @@ public class DownloadHandler
                     {
                         throw new TransferException( "Download failed: {}. Reason: {}", e, resource, e.getMessage() );
                     }
+                    return null;
                 }
             }
         }
         finally
         {
             transferSizes.remove( target );
-            if ( created )
+        }
+    }
+
+    /**
+     * @return the bytes the in-flight job for the target has written so far, or -1 if there's no such job or its
+     * transport doesn't report progress
+     */
+    private long getBytesTransferred( final Transfer target )
+    {
+        final DownloadJob job = jobs.get( target );
+        return job == null ? -1 : job.getBytesTransferred();
+    }
+
+    /**
+     * Result handling for a download nobody is waiting on anymore: failures are logged, and recorded in the NFC as
+     * {@link #processResult(ConcreteResource, DownloadJob, boolean)} would.
+     */
+    private void processLater( final ConcreteResource resource, final DownloadJob job, final Throwable error )
+    {
+        if ( error == null && job == null )
+        {
+            return;
+        }
+
+        if ( error != null )
+        {
+            logger.warn( "Download of: {} failed after readers started streaming it. Reason: {}", resource,
+                         error.getMessage() );
+            return;
+        }
+
+        if ( job.getError() != null )
+        {
+            logger.warn( "Download of: {} failed after readers started streaming it. Reason: {}", resource,
+                         job.getError().getMessage() );
+        }
+
+        try
+        {
+            processResult( resource, job, true );
+        }
+        catch ( final TransferException e )
+        {
+            // can't happen with failures suppressed
+            logger.warn( "Failed to process download result of: {}. Reason: {}", resource, e.getMessage() );
+        }
+    }
+
+    private Transfer processResult( final ConcreteResource resource, final DownloadJob job,
+                                    final boolean suppressFailures )
+            throws TransferException
+    {
+        final Transfer downloaded = job.getTransfer();
+
+        if ( job.getError() != null )
+        {
+            logger.debug( "NFC: Download error. Marking as missing: {}\nError was: {}", job.getError(),
+                          resource, job.getError().getMessage() );
+
+            if ( ! (job.getError() instanceof  TransferContentException ) && ! (job.getError() instanceof TransferTimeoutException )
+                    && ! (job.getError() instanceof TransferLocationUnavailableException ) )
+            {
+                nfc.addMissing( resource );
+            }
+
+            if ( !suppressFailures )
             {
-                synchronized ( DOWNLOAD_MUTEX )
+                throw job.getError();
+            }
+        }
+        else if ( downloaded == null || !downloaded.exists() )
+        {
+            logger.debug( "NFC: Download did not complete. Marking as missing: {}", resource );
+            nfc.addMissing( resource );
+        }
+
+        return downloaded;
+    }
+
+    /**
+     * Join the in-flight download job for the target, or register and start a new one. Jobs are registered in the
+     * pending map so concurrent requests for the same {@link Transfer} can join them; each registration is removed as
+     * soon as its job finishes, whether or not anyone is still waiting on it.
+     *
+     * @param refresh true if the target is expected to exist already, and its content is to be replaced
+     * @return the job's future, or null if the target turned out to exist already (so no job is needed)
+     */
+    private CompletableFuture<DownloadJob> joinOrStartJob( final ConcreteResource resource, final Transfer target,
+                                                           final int timeoutSeconds, final Transport transport,
+                                                           final EventMetadata eventMetadata, final boolean refresh )
+            throws TransferException
+    {
+        CompletableFuture<DownloadJob> future = pending.get( target );
+        if ( future != null )
+        {
+            return future;
+        }
+
+        // register first, so only the caller that wins the registration creates the job (and whatever transport
+        // resources come with it); everyone else joins.
+        final CompletableFuture<DownloadJob> created = new CompletableFuture<>();
+        future = pending.putIfAbsent( target, created );
+        if ( future != null )
+        {
+            return future;
+        }
+
+        // A concurrent download of this target may have finished (and left the registry) between the caller's
+        // exists() check and the registration, so check again before starting a duplicate.
+        if ( !refresh && target.exists() )
+        {
+            pending.remove( target, created );
+            created.complete( null );
+            return null;
+        }
+
+        final DownloadJob job;
+        try
+        {
+            job = transport.createDownloadJob( resource, target, transferSizes, timeoutSeconds, eventMetadata );
+        }
+        catch ( final TransferException | RuntimeException e )
+        {
+            // anyone who joined in the meantime gets the same failure.
+            pending.remove( target, created );
+            created.completeExceptionally( e );
+            throw e;
+        }
+
+        jobs.put( target, job );
+        created.whenComplete( ( j, e ) -> {
+            logger.debug( "Removing download job of path: {}: {}", resource, created );
+            jobs.remove( target, job );
+            pending.remove( target, created );
+        } );
+
+        try
+        {
+            execute( resource, eventMetadata, () -> {
+                try
                 {
-                    logger.debug( "Removing download job of path: {}: {}", resource, future );
-                    pending.remove( target );
+                    created.complete( job.call() );
                 }
-            }
+                catch ( final Throwable t )
+                {
+                    created.completeExceptionally( t );
+                }
+            } );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            // anyone who joined in the meantime gets the same failure.
+            final TransferLocationException error =
+                    new TransferLocationException( resource.getLocation(),
+                                                   "Download of: {} could not be scheduled. Reason: {}", e, resource,
+                                                   e.getMessage() );
+            created.completeExceptionally( error );
+            jobs.remove( target, job );
+            pending.remove( target, created );
+            throw error;
         }
 
-        return null;
+        logger.debug( "Created download job for path {}: {}", resource, created );
+        return created;
     }
 
+    private void execute( final ConcreteResource resource, final EventMetadata eventMetadata, final Runnable job )
+    {
+        if ( fairShareExecutor != null )
+        {
+            final boolean priority = isPriority( resource, eventMetadata );
+            final Executor share = task -> fairShareExecutor.execute( task, priority );
+            if ( locationExecutor != null )
+            {
+                locationExecutor.execute( resource.getLocation(), job, share );
+            }
+            else
+            {
+                share.execute( job );
+            }
+        }
+        else if ( locationExecutor != null )
+        {
+            locationExecutor.execute( resource.getLocation(), job );
+        }
+        else
+        {
+            executor.execute( job );
+        }
+    }
+
+    /**
+     * Small files that builds wait on (special paths like metadata, checksums and signatures, and POMs) shouldn't
+     * queue behind bulk binaries.
+     */
+    private boolean isPriority( final ConcreteResource resource, final EventMetadata eventMetadata )
+    {
+        if ( resource.getPath().endsWith( POM_EXTENSION ) )
+        {
+            return true;
+        }
+
+        if ( specialPathManager == null )
+        {
+            return false;
+        }
+
+        final String packageType = eventMetadata == null ? null : eventMetadata.getPackageType();
+        final SpecialPathInfo info = packageType == null ?
+                        specialPathManager.getSpecialPathInfo( resource, SpecialPathConstants.PKG_TYPE_MAVEN ) :
+                        specialPathManager.getSpecialPathInfo( resource, packageType );
+        return info != null;
+    }
 }
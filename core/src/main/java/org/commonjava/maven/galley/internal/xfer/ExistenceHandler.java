@@ -15,13 +15,25 @@
  */
 package org.commonjava.maven.galley.internal.xfer;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationUnavailableException;
 import org.commonjava.maven.galley.TransferTimeoutException;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
@@ -31,28 +43,191 @@ import org.commonjava.maven.galley.util.TransferUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.commonjava.maven.galley.util.FutureUtils.toTransferException;
+
 @ApplicationScoped
 public class ExistenceHandler
 {
 
+    private static final int MAX_CACHED_RESULTS = 10000;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
     private NotFoundCache nfc;
 
+    @Inject
+    private TransportManagerConfig config;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( threads = 4, named = "galley-existence", priority = 8 )
+    private ExecutorService executor;
+
+    private LocationLimitedExecutor locationExecutor;
+
+    private final ConcurrentMap<ConcreteResource, CompletableFuture<Boolean>> pending = new ConcurrentHashMap<>();
+
+    // positive results only (negative ones go in the NFC), mapped to their expiration time.
+    private final ConcurrentMap<ConcreteResource, Long> existing = new ConcurrentHashMap<>();
+
     @SuppressWarnings( "unused" )
     public ExistenceHandler()
     {
     }
 
+    /**
+     * Existence checks run on the calling thread (concurrent checks of the same resource still join it).
+     */
     public ExistenceHandler( final NotFoundCache nfc )
+    {
+        this( nfc, new TransportManagerConfig(), null );
+    }
+
+    public ExistenceHandler( final NotFoundCache nfc, final TransportManagerConfig config,
+                             final ExecutorService executor )
     {
         this.nfc = nfc;
+        this.config = config;
+        this.executor = executor;
+        if ( executor != null && config.isVirtualThreadsEnabled() )
+        {
+            locationExecutor = new LocationLimitedExecutor( executor );
+        }
+    }
+
+    /**
+     * When virtual threads are enabled, swap the injected (fixed-size) pool for a virtual-thread executor, and cap
+     * concurrency per location instead.
+     */
+    @PostConstruct
+    public void init()
+    {
+        if ( config.isVirtualThreadsEnabled() && locationExecutor == null )
+        {
+            executor = TransferExecutors.newVirtualThreadExecutor( "galley-existence" );
+            locationExecutor = new LocationLimitedExecutor( executor );
+        }
     }
 
     public boolean exists( final ConcreteResource resource, final Transfer transfer, final int timeoutSeconds,
                            final Transport transport, final boolean suppressFailures )
         throws TransferException
+    {
+        if ( !shouldCheck( resource, transfer, transport ) )
+        {
+            return false;
+        }
+
+        if ( isKnownToExist( resource ) )
+        {
+            logger.debug( "EXISTS (cached) {}", resource );
+            return true;
+        }
+
+        logger.debug( "EXISTS {}", resource );
+
+        final CompletableFuture<Boolean> future = joinOrStart( resource, transfer, timeoutSeconds, transport );
+
+        final int waitSeconds = (int) ( timeoutSeconds * config.getTimeoutOverextensionFactor() );
+        try
+        {
+            return future.get( waitSeconds, TimeUnit.SECONDS );
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            if ( !suppressFailures )
+            {
+                throw new TransferException( "Interrupted existence check: {}", e, resource );
+            }
+        }
+        catch ( final ExecutionException e )
+        {
+            if ( !suppressFailures )
+            {
+                throw toTransferException( e, "Failed existence check: {}. Reason: {}", resource );
+            }
+        }
+        catch ( final TimeoutException e )
+        {
+            if ( !suppressFailures )
+            {
+                throw new TransferTimeoutException( transfer, "Timed-out existence check: {}. Reason: {}", e, resource, e.getMessage() );
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Non-blocking variant of {@link #exists(ConcreteResource, Transfer, int, Transport, boolean)}. The returned future
+     * completes with the result, or exceptionally with a {@link TransferException} if the check failed and failures
+     * are not suppressed.
+     */
+    public CompletableFuture<Boolean> existsAsync( final ConcreteResource resource, final Transfer transfer,
+                                                   final int timeoutSeconds, final Transport transport,
+                                                   final boolean suppressFailures )
+    {
+        if ( !shouldCheck( resource, transfer, transport ) )
+        {
+            return CompletableFuture.completedFuture( false );
+        }
+
+        if ( isKnownToExist( resource ) )
+        {
+            logger.debug( "EXISTS (cached) {}", resource );
+            return CompletableFuture.completedFuture( true );
+        }
+
+        logger.debug( "EXISTS (async) {}", resource );
+
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        final CompletableFuture<Boolean> future;
+        try
+        {
+            future = joinOrStart( resource, transfer, timeoutSeconds, transport );
+        }
+        catch ( final TransferException e )
+        {
+            result.completeExceptionally( e );
+            return result;
+        }
+
+        future.whenComplete( ( exists, error ) -> {
+            if ( error == null )
+            {
+                result.complete( exists );
+            }
+            else if ( suppressFailures )
+            {
+                result.complete( false );
+            }
+            else
+            {
+                result.completeExceptionally(
+                        toTransferException( error, "Failed existence check: {}. Reason: {}", resource ) );
+            }
+        } );
+
+        return result;
+    }
+
+    /**
+     * Forget any cached positive result for the resource, and detach any in-flight check of it so later callers start
+     * a fresh one. Call this whenever the resource is deleted or (re)published.
+     */
+    public void invalidate( final ConcreteResource resource )
+    {
+        existing.remove( resource );
+        final CompletableFuture<Boolean> inFlight = pending.get( resource );
+        if ( inFlight != null )
+        {
+            pending.remove( resource, inFlight );
+        }
+    }
+
+    private boolean shouldCheck( final ConcreteResource resource, final Transfer transfer, final Transport transport )
     {
         if ( nfc.isMissing( resource ) )
         {
@@ -75,24 +250,114 @@ public class ExistenceHandler
             return false;
         }
 
-        logger.debug( "EXISTS {}", resource );
+        return true;
+    }
+
+    private boolean isKnownToExist( final ConcreteResource resource )
+    {
+        final Long expiration = existing.get( resource );
+        if ( expiration == null )
+        {
+            return false;
+        }
+
+        if ( expiration < System.currentTimeMillis() )
+        {
+            existing.remove( resource, expiration );
+            return false;
+        }
+
+        return true;
+    }
+
+    private void rememberExists( final ConcreteResource resource )
+    {
+        final int cacheSeconds = config.getExistenceCacheSeconds();
+        if ( cacheSeconds <= 0 )
+        {
+            return;
+        }
 
-        final ExistenceJob job = transport.createExistenceJob( resource, transfer, timeoutSeconds );
+        final long now = System.currentTimeMillis();
+        if ( existing.size() >= MAX_CACHED_RESULTS )
+        {
+            existing.values().removeIf( expiration -> expiration < now );
+        }
+
+        existing.put( resource, now + TimeUnit.SECONDS.toMillis( cacheSeconds ) );
+    }
+
+    /**
+     * Join the in-flight existence check for the resource, or register and start a new one. The registration is
+     * removed as soon as the check finishes.
+     */
+    private CompletableFuture<Boolean> joinOrStart( final ConcreteResource resource, final Transfer transfer,
+                                                    final int timeoutSeconds, final Transport transport )
+            throws TransferException
+    {
+        CompletableFuture<Boolean> future = pending.get( resource );
+        if ( future != null )
+        {
+            return future;
+        }
+
+        // register first, so only the caller that wins the registration creates the job; everyone else joins.
+        final CompletableFuture<Boolean> created = new CompletableFuture<>();
+        future = pending.putIfAbsent( resource, created );
+        if ( future != null )
+        {
+            return future;
+        }
+
+        final ExistenceJob job;
+        try
+        {
+            job = transport.createExistenceJob( resource, transfer, timeoutSeconds );
+        }
+        catch ( final TransferException | RuntimeException e )
+        {
+            // anyone who joined in the meantime gets the same failure.
+            created.completeExceptionally( e );
+            pending.remove( resource, created );
+            throw e;
+        }
 
-        // TODO: execute this stuff in a thread just like downloads/publishes. Requires cache storage...
+        try
+        {
+            execute( resource, () -> runCheck( resource, transfer, job, created ) );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            final TransferException error =
+                    new TransferException( "Existence check of: {} could not be scheduled. Reason: {}", e, resource,
+                                           e.getMessage() );
+            created.completeExceptionally( error );
+            pending.remove( resource, created );
+            throw error;
+        }
+
+        return created;
+    }
+
+    private void runCheck( final ConcreteResource resource, final Transfer transfer, final ExistenceJob job,
+                           final CompletableFuture<Boolean> created )
+    {
+        boolean exists = false;
+        TransferException error = null;
         try
         {
             final Boolean result = job.call();
 
-            if ( job.getError() != null )
+            if ( job.getError() instanceof TransferLocationUnavailableException )
+            {
+                // the request was never sent, so this says nothing about whether the resource exists.
+                error = job.getError();
+            }
+            else if ( job.getError() != null )
             {
                 logger.debug( "NFC: Download error. Marking as missing: {}", resource );
                 nfc.addMissing( resource );
-
-                if ( !suppressFailures )
-                {
-                    throw job.getError();
-                }
+                error = job.getError();
             }
             else if ( result == null )
             {
@@ -104,32 +369,55 @@ public class ExistenceHandler
                 logger.debug( "NFC: Existence check returned false. Marking as missing: {}", resource );
                 nfc.addMissing( resource );
             }
-
-            return result == null ? false : result;
+            else
+            {
+                exists = true;
+            }
         }
         catch ( final TimeoutException e )
         {
-            if ( !suppressFailures )
-            {
-                throw new TransferTimeoutException( transfer, "Timed-out existence check: {}. Reason: {}", e, resource, e.getMessage() );
-            }
+            error = new TransferTimeoutException( transfer, "Timed-out existence check: {}. Reason: {}", e, resource,
+                                                  e.getMessage() );
         }
         catch ( final TransferException e )
         {
-            if ( !suppressFailures )
-            {
-                throw e;
-            }
+            error = e;
         }
         catch ( final Exception e )
         {
-            if ( !suppressFailures )
-            {
-                throw new TransferException( "Failed existence check: {}. Reason: {}", e, resource, e.getMessage() );
-            }
+            error = new TransferException( "Failed existence check: {}. Reason: {}", e, resource, e.getMessage() );
         }
 
-        return false;
+        // only cache the answer if the resource wasn't invalidated while the check was running.
+        if ( pending.remove( resource, created ) && exists )
+        {
+            rememberExists( resource );
+        }
+
+        if ( error != null )
+        {
+            created.completeExceptionally( error );
+        }
+        else
+        {
+            created.complete( exists );
+        }
+    }
+
+    private void execute( final ConcreteResource resource, final Runnable job )
+    {
+        if ( locationExecutor != null )
+        {
+            locationExecutor.execute( resource.getLocation(), job );
+        }
+        else if ( executor != null )
+        {
+            executor.execute( job );
+        }
+        else
+        {
+            job.run();
+        }
     }
 
 }
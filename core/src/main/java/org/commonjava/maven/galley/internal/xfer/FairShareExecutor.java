@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.spi.metrics.GaugeProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs jobs on an executor in two classes, priority and bulk, so that a backlog of bulk jobs can't delay priority
+ * ones. At most maxRunning jobs run at once; bulk jobs may only take maxRunning - reserved of those slots, so some
+ * slots are always free for priority jobs. When a slot frees up, queued priority jobs go first.
+ * <br/>
+ * As in {@link LocationLimitedExecutor}, queued jobs are picked up by the threads of finishing jobs, so the underlying
+ * executor only ever sees up to maxRunning tasks and its own queue never builds up.
+ */
+final class FairShareExecutor
+{
+    private static final String METRIC_PREFIX = "galley.fair-share.";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Executor executor;
+
+    private final int maxRunning;
+
+    private final int maxBulk;
+
+    private final Deque<Runnable> priorityQueue = new ArrayDeque<>();
+
+    private final Deque<Runnable> bulkQueue = new ArrayDeque<>();
+
+    private int running;
+
+    private int bulkRunning;
+
+    /**
+     * @param name names this executor's metrics, for example "download"
+     * @param gauges (optional) reports running and queued jobs of each class
+     */
+    FairShareExecutor( final Executor executor, final int maxRunning, final int reserved, final String name,
+                       final GaugeProvider gauges )
+    {
+        this.executor = executor;
+        this.maxRunning = Math.max( 1, maxRunning );
+        this.maxBulk = Math.max( 1, this.maxRunning - Math.max( 0, reserved ) );
+
+        if ( gauges != null )
+        {
+            gauges.register( METRIC_PREFIX + name + ".running", this::getRunning );
+            gauges.register( METRIC_PREFIX + name + ".priority.queued", () -> getQueued( true ) );
+            gauges.register( METRIC_PREFIX + name + ".bulk.queued", () -> getQueued( false ) );
+        }
+    }
+
+    /**
+     * Run the job now if a slot its class may use is free, otherwise queue it.
+     *
+     * @throws RejectedExecutionException if the underlying executor won't accept the job
+     */
+    void execute( final Runnable job, final boolean priority )
+    {
+        synchronized ( this )
+        {
+            if ( running >= maxRunning || ( !priority && bulkRunning >= maxBulk ) )
+            {
+                logger.trace( "No free slot for {} job: {}; queueing it.", priority ? "priority" : "bulk", job );
+                ( priority ? priorityQueue : bulkQueue ).addLast( job );
+                return;
+            }
+
+            take( priority );
+        }
+
+        try
+        {
+            executor.execute( () -> runAndRelease( job, priority ) );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            synchronized ( this )
+            {
+                release( priority );
+            }
+            throw e;
+        }
+    }
+
+    synchronized int getRunning()
+    {
+        return running;
+    }
+
+    synchronized int getQueued( final boolean priority )
+    {
+        return ( priority ? priorityQueue : bulkQueue ).size();
+    }
+
+    private void runAndRelease( final Runnable job, final boolean priority )
+    {
+        Runnable next = job;
+        boolean nextPriority = priority;
+        while ( next != null )
+        {
+            try
+            {
+                next.run();
+            }
+            finally
+            {
+                synchronized ( this )
+                {
+                    release( nextPriority );
+
+                    next = priorityQueue.pollFirst();
+                    nextPriority = true;
+                    if ( next == null && bulkRunning < maxBulk )
+                    {
+                        next = bulkQueue.pollFirst();
+                        nextPriority = false;
+                    }
+
+                    if ( next != null )
+                    {
+                        take( nextPriority );
+                    }
+                }
+            }
+        }
+    }
+
+    private void take( final boolean priority )
+    {
+        running++;
+        if ( !priority )
+        {
+            bulkRunning++;
+        }
+    }
+
+    private void release( final boolean priority )
+    {
+        running--;
+        if ( !priority )
+        {
+            bulkRunning--;
+        }
+    }
+}
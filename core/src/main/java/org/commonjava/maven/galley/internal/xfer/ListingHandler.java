@@ -15,16 +15,24 @@
  */
 package org.commonjava.maven.galley.internal.xfer;
 
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 
 import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferLocationUnavailableException;
 import org.commonjava.maven.galley.TransferTimeoutException;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.ListingResult;
 import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.metrics.GaugeProvider;
+import org.commonjava.maven.galley.spi.metrics.MeteringProvider;
 import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
 import org.commonjava.maven.galley.spi.transport.ListingJob;
 import org.commonjava.maven.galley.spi.transport.Transport;
@@ -40,14 +48,56 @@ public class ListingHandler
     @Inject
     private NotFoundCache nfc;
 
+    @Inject
+    private TransportManagerConfig config;
+
+    @Inject
+    private Instance<MeteringProvider> meters;
+
+    @Inject
+    private Instance<GaugeProvider> gauges;
+
+    private LocationLimitedExecutor bulkhead;
+
     @SuppressWarnings( "unused" )
     public ListingHandler()
     {
     }
 
     public ListingHandler( final NotFoundCache nfc )
+    {
+        this( nfc, new TransportManagerConfig(), null, null );
+    }
+
+    public ListingHandler( final NotFoundCache nfc, final TransportManagerConfig config, final MeteringProvider meters,
+                           final GaugeProvider gauges )
     {
         this.nfc = nfc;
+        this.config = config;
+        this.bulkhead = newBulkhead( meters, gauges );
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        final MeteringProvider meter = meters.isUnsatisfied() || meters.isAmbiguous() ? null : meters.get();
+        final GaugeProvider gauge = gauges.isUnsatisfied() || gauges.isAmbiguous() ? null : gauges.get();
+        bulkhead = newBulkhead( meter, gauge );
+    }
+
+    /**
+     * Listings run on the caller's thread, so with bulkheads enabled each caller takes (or waits for) one of the
+     * location's slots before running the listing job. Queued jobs are never handed to this executor; it only sees
+     * waiting threads.
+     */
+    private LocationLimitedExecutor newBulkhead( final MeteringProvider meter, final GaugeProvider gauge )
+    {
+        if ( !config.isLocationBulkheadsEnabled() )
+        {
+            return null;
+        }
+
+        return new LocationLimitedExecutor( Runnable::run, "listing", config.getBulkheadQueueSize(), meter, gauge );
     }
 
     public ListingResult list( final ConcreteResource resource, final Transfer target, final int timeoutSeconds,
@@ -73,15 +123,62 @@ public class ListingHandler
 
         final ListingJob job = transport.createListingJob( resource, target, timeoutSeconds );
 
-        // TODO: execute this stuff in a thread just like downloads/publishes. Requires cache storage...
+        if ( bulkhead == null )
+        {
+            return runListing( resource, target, job, suppressFailures );
+        }
+
+        try
+        {
+            bulkhead.acquire( resource.getLocation() );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            if ( !suppressFailures )
+            {
+                throw new TransferLocationException( resource.getLocation(),
+                                                     "Listing of: {} could not be scheduled. Reason: {}", e, resource,
+                                                     e.getMessage() );
+            }
+
+            return null;
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            if ( !suppressFailures )
+            {
+                throw new TransferException( "Interrupted waiting to list: {}", e, resource );
+            }
+
+            return null;
+        }
+
+        try
+        {
+            return runListing( resource, target, job, suppressFailures );
+        }
+        finally
+        {
+            bulkhead.release( resource.getLocation() );
+        }
+    }
+
+    private ListingResult runListing( final ConcreteResource resource, final Transfer target, final ListingJob job,
+                                      final boolean suppressFailures )
+        throws TransferException
+    {
         try
         {
             final ListingResult result = job.call();
 
             if ( job.getError() != null )
             {
-                logger.debug( "NFC: Download error. Marking as missing: {}", resource );
-                nfc.addMissing( resource );
+                if ( !( job.getError() instanceof TransferLocationUnavailableException ) )
+                {
+                    logger.debug( "NFC: Download error. Marking as missing: {}", resource );
+                    nfc.addMissing( resource );
+                }
 
                 if ( !suppressFailures )
                 {
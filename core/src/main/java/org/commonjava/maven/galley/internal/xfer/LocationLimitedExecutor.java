@@ -0,0 +1,423 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.spi.metrics.GaugeProvider;
+import org.commonjava.maven.galley.spi.metrics.MeteringProvider;
+import org.commonjava.maven.galley.util.LocationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs jobs on an executor while capping how many jobs run concurrently against each {@link Location}, using the
+ * location's {@link Location#MAX_CONNECTIONS} attribute. That is the same limit the transports use for their
+ * per-location connection pools, so any job past it would only block waiting for a connection.
+ * <br/>
+ * Jobs over the cap are queued per location and picked up by the threads of that location's running jobs as they
+ * finish; no thread is parked waiting for a slot. Jobs submitted with their own executor (see
+ * {@link #execute(Location, Runnable, Executor)}) are handed back to that executor instead, so whatever admission it
+ * applies still holds for them. If a queue limit is set, jobs arriving at a location whose queue is
+ * full are rejected immediately, so one saturated location (a bulkhead) can't back up work for the others.
+ * <br/>
+ * Callers that run their job on their own thread can use {@link #acquire(Location)} / {@link #release(Location)}
+ * instead, which wait in the same queue.
+ */
+final class LocationLimitedExecutor
+{
+    private static final String METRIC_PREFIX = "galley.bulkhead.";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Executor executor;
+
+    private final String name;
+
+    private final int maxQueued;
+
+    private final MeteringProvider meters;
+
+    private final GaugeProvider gauges;
+
+    private final ConcurrentMap<Location, Lane> lanes = new ConcurrentHashMap<>();
+
+    LocationLimitedExecutor( final Executor executor )
+    {
+        this( executor, null, 0, null, null );
+    }
+
+    /**
+     * @param name names this executor's metrics, for example "download"
+     * @param maxQueued how many jobs may wait on a saturated location before new ones are rejected; zero or less means
+     * no limit
+     * @param meters (optional) marks rejected jobs
+     * @param gauges (optional) reports running and queued jobs per location
+     */
+    LocationLimitedExecutor( final Executor executor, final String name, final int maxQueued,
+                             final MeteringProvider meters, final GaugeProvider gauges )
+    {
+        this.executor = executor;
+        this.name = name;
+        this.maxQueued = maxQueued;
+        this.meters = meters;
+        this.gauges = gauges;
+    }
+
+    /**
+     * Create the per-location executor a transfer handler should use for the given config, or return null if the
+     * config calls for neither virtual threads nor bulkheads (jobs can then go straight to the handler's pool).
+     */
+    static LocationLimitedExecutor forHandler( final String name, final Executor executor,
+                                               final TransportManagerConfig config, final MeteringProvider meters,
+                                               final GaugeProvider gauges )
+    {
+        if ( config.isLocationBulkheadsEnabled() )
+        {
+            return new LocationLimitedExecutor( executor, name, config.getBulkheadQueueSize(), meters, gauges );
+        }
+        else if ( config.isVirtualThreadsEnabled() )
+        {
+            return new LocationLimitedExecutor( executor, name, 0, meters, gauges );
+        }
+
+        return null;
+    }
+
+    /**
+     * Run the job now if the location is under its cap, otherwise queue it behind the location's running jobs.
+     *
+     * @throws RejectedExecutionException if the location's queue is full, or the underlying executor won't accept
+     * the job
+     */
+    void execute( final Location location, final Runnable job )
+    {
+        execute( location, job, executor );
+    }
+
+    /**
+     * Same as {@link #execute(Location, Runnable)}, but the job is started on the given executor instead of this
+     * one's, whether it can start right away or has to wait for a slot first. A queued job then doesn't run on the
+     * thread of the job that freed its slot: that thread may belong to a different class of work in the given
+     * executor (a fair-share slot, for example).
+     */
+    void execute( final Location location, final Runnable job, final Executor executor )
+    {
+        final Lane lane = getLane( location );
+        synchronized ( lane )
+        {
+            if ( lane.running >= LocationUtils.getMaxConnections( location ) )
+            {
+                logger.trace( "Location: {} is at its concurrency limit; queueing job: {}", location, job );
+                enqueue( location, lane, executor == this.executor ? job : new Handoff( job, executor ) );
+                return;
+            }
+
+            lane.running++;
+        }
+
+        try
+        {
+            executor.execute( () -> runAndRelease( lane, job ) );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            synchronized ( lane )
+            {
+                lane.running--;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Take one of the location's slots for a job the caller will run on its own thread, waiting in the location's
+     * queue if it is at its cap. Every successful call must be matched by a call to {@link #release(Location)}.
+     *
+     * @throws RejectedExecutionException if the location's queue is full
+     */
+    void acquire( final Location location )
+            throws InterruptedException
+    {
+        final Lane lane = getLane( location );
+        final Waiter waiter = new Waiter();
+        synchronized ( lane )
+        {
+            if ( lane.running < LocationUtils.getMaxConnections( location ) )
+            {
+                lane.running++;
+                return;
+            }
+
+            enqueue( location, lane, waiter );
+        }
+
+        try
+        {
+            waiter.latch.await();
+        }
+        catch ( final InterruptedException e )
+        {
+            final boolean removed;
+            synchronized ( lane )
+            {
+                removed = lane.queued.remove( waiter );
+            }
+
+            if ( !removed )
+            {
+                // the slot was handed to us just as we gave up waiting; pass it on.
+                release( location );
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * Give back a slot taken with {@link #acquire(Location)}.
+     */
+    void release( final Location location )
+    {
+        final Lane lane = lanes.get( location );
+        if ( lane == null )
+        {
+            return;
+        }
+
+        final Runnable next = release( lane );
+        if ( next instanceof Handoff )
+        {
+            handOff( lane, (Handoff) next );
+        }
+        else if ( next != null )
+        {
+            try
+            {
+                executor.execute( () -> runAndRelease( lane, next ) );
+            }
+            catch ( final RejectedExecutionException e )
+            {
+                logger.debug( "Executor rejected queued job for: {}; running it on the releasing thread.", location );
+                runAndRelease( lane, next );
+            }
+        }
+    }
+
+    /**
+     * @return the number of jobs currently running against the location
+     */
+    int getRunning( final Location location )
+    {
+        final Lane lane = lanes.get( location );
+        if ( lane == null )
+        {
+            return 0;
+        }
+
+        synchronized ( lane )
+        {
+            return lane.running;
+        }
+    }
+
+    /**
+     * @return the number of jobs waiting for the location to drop under its concurrency limit
+     */
+    int getQueued( final Location location )
+    {
+        final Lane lane = lanes.get( location );
+        if ( lane == null )
+        {
+            return 0;
+        }
+
+        synchronized ( lane )
+        {
+            return lane.queued.size();
+        }
+    }
+
+    private Lane getLane( final Location location )
+    {
+        Lane lane = lanes.get( location );
+        if ( lane == null )
+        {
+            final Lane created = new Lane();
+            lane = lanes.putIfAbsent( location, created );
+            if ( lane == null )
+            {
+                lane = created;
+                if ( gauges != null )
+                {
+                    gauges.register( metricName( location, "running" ), () -> getRunning( location ) );
+                    gauges.register( metricName( location, "queued" ), () -> getQueued( location ) );
+                }
+            }
+        }
+
+        return lane;
+    }
+
+    /**
+     * Queue the job on the (locked) lane, or reject it if the lane's queue is full.
+     */
+    private void enqueue( final Location location, final Lane lane, final Runnable job )
+    {
+        if ( maxQueued > 0 && lane.queued.size() >= maxQueued )
+        {
+            logger.debug( "Location: {} is saturated ({} running, {} queued); rejecting job: {}", location,
+                          lane.running, lane.queued.size(), job );
+            if ( meters != null )
+            {
+                meters.mark( metricName( location, "rejected" ) );
+            }
+
+            throw new RejectedExecutionException(
+                    String.format( "Location: %s is saturated (%d running, %d queued)", location.getName(),
+                                   lane.running, lane.queued.size() ) );
+        }
+
+        lane.queued.addLast( job );
+    }
+
+    private String metricName( final Location location, final String suffix )
+    {
+        return METRIC_PREFIX + name + "." + location.getName() + "." + suffix;
+    }
+
+    private void runAndRelease( final Lane lane, final Runnable job )
+    {
+        Runnable next = job;
+        while ( next != null )
+        {
+            try
+            {
+                next.run();
+            }
+            finally
+            {
+                next = release( lane );
+                if ( next instanceof Handoff )
+                {
+                    handOff( lane, (Handoff) next );
+                    next = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Start a queued job that now owns a slot of the lane on its own executor. If that executor won't take it, run it
+     * here rather than lose it (and the slot).
+     */
+    private void handOff( final Lane lane, final Handoff next )
+    {
+        try
+        {
+            next.executor.execute( () -> runAndRelease( lane, next.job ) );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            logger.debug( "Executor rejected queued job: {}; running it on the releasing thread.", next.job );
+            runAndRelease( lane, next.job );
+        }
+    }
+
+    /**
+     * Hand the finished job's slot to the next queued job for the lane, which then runs on the current thread (saving
+     * a thread hand-off), or is handed to its own executor if it has one. If the next in line is a thread waiting in
+     * {@link #acquire(Location)}, the slot passes to that thread instead. If nothing is queued, release the slot.
+     */
+    private Runnable release( final Lane lane )
+    {
+        synchronized ( lane )
+        {
+            final Runnable next = lane.queued.pollFirst();
+            if ( next == null )
+            {
+                lane.running--;
+            }
+            else if ( next instanceof Waiter )
+            {
+                next.run();
+                return null;
+            }
+
+            return next;
+        }
+    }
+
+    private static final class Lane
+    {
+        private int running;
+
+        private final Deque<Runnable> queued = new ArrayDeque<>();
+    }
+
+    /**
+     * Queue entry for a job submitted with its own executor, which it is started on once it gets a slot.
+     */
+    private static final class Handoff
+            implements Runnable
+    {
+        private final Runnable job;
+
+        private final Executor executor;
+
+        private Handoff( final Runnable job, final Executor executor )
+        {
+            this.job = job;
+            this.executor = executor;
+        }
+
+        @Override
+        public void run()
+        {
+            job.run();
+        }
+
+        @Override
+        public String toString()
+        {
+            return job.toString();
+        }
+    }
+
+    /**
+     * Queue entry for a thread blocked in {@link #acquire(Location)}; running it wakes the thread, which then owns the
+     * slot.
+     */
+    private static final class Waiter
+            implements Runnable
+    {
+        private final CountDownLatch latch = new CountDownLatch( 1 );
+
+        @Override
+        public void run()
+        {
+            latch.countDown();
+        }
+    }
+}
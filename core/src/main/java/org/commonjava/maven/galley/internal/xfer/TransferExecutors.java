@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the executors used when {@link org.commonjava.maven.galley.config.TransportManagerConfig#isVirtualThreadsEnabled()}
+ * is set. Galley still targets Java 8, so the virtual-thread API is looked up reflectively; on JVMs that don't have it
+ * the executor falls back to an unbounded cached pool of daemon threads, which gives the same scheduling behavior
+ * (no pool-size cap, idle threads are reclaimed) at the cost of a platform thread per running job.
+ */
+public final class TransferExecutors
+{
+    private static final Logger logger = LoggerFactory.getLogger( TransferExecutors.class );
+
+    private static final int FALLBACK_THREAD_PRIORITY = 8;
+
+    private TransferExecutors()
+    {
+    }
+
+    /**
+     * @return an executor that starts a new virtual thread (named with the given prefix) for each job, or an unbounded
+     * cached pool of daemon threads if virtual threads aren't available in this JVM.
+     */
+    public static ExecutorService newVirtualThreadExecutor( final String name )
+    {
+        final ExecutorService executor = newVirtualThreadPerTaskExecutor( name );
+        if ( executor != null )
+        {
+            logger.debug( "Running {} jobs on virtual threads", name );
+            return executor;
+        }
+
+        logger.debug( "Virtual threads are not available in this JVM; running {} jobs on an unbounded thread pool",
+                      name );
+
+        return Executors.newCachedThreadPool( new NamedThreadFactory( name, true, FALLBACK_THREAD_PRIORITY ) );
+    }
+
+    public static boolean isVirtualThreadSupported()
+    {
+        try
+        {
+            Thread.class.getMethod( "ofVirtual" );
+            return true;
+        }
+        catch ( final NoSuchMethodException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Reflective equivalent of:
+     * <pre>Executors.newThreadPerTaskExecutor( Thread.ofVirtual().name( name + "-", 0 ).factory() )</pre>
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor( final String name )
+    {
+        if ( !isVirtualThreadSupported() )
+        {
+            return null;
+        }
+
+        try
+        {
+            Object builder = Thread.class.getMethod( "ofVirtual" ).invoke( null );
+
+            final Class<?> builderType = Class.forName( "java.lang.Thread$Builder" );
+            builder = builderType.getMethod( "name", String.class, long.class ).invoke( builder, name + "-", 0L );
+
+            final ThreadFactory factory = (ThreadFactory) builderType.getMethod( "factory" ).invoke( builder );
+            final Method perTask = Executors.class.getMethod( "newThreadPerTaskExecutor", ThreadFactory.class );
+
+            return (ExecutorService) perTask.invoke( null, factory );
+        }
+        catch ( final ReflectiveOperationException | RuntimeException e )
+        {
+            logger.warn( "Failed to create virtual-thread executor for: {}. Reason: {}", name, e.getMessage() );
+            return null;
+        }
+    }
+}
@@ -17,14 +17,19 @@ package org.commonjava.maven.galley.internal.xfer;
 
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 
 import org.commonjava.cdi.util.weft.ExecutorConfig;
@@ -35,12 +40,17 @@ import org.commonjava.maven.galley.TransferTimeoutException;
 import org.commonjava.maven.galley.config.TransportManagerConfig;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Resource;
+import org.commonjava.maven.galley.spi.metrics.GaugeProvider;
+import org.commonjava.maven.galley.spi.metrics.MeteringProvider;
 import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
 import org.commonjava.maven.galley.spi.transport.PublishJob;
 import org.commonjava.maven.galley.spi.transport.Transport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.commonjava.maven.galley.util.FutureUtils.completedExceptionally;
+import static org.commonjava.maven.galley.util.FutureUtils.toTransferException;
+
 @ApplicationScoped
 public class UploadHandler
 {
@@ -55,23 +65,56 @@ public class UploadHandler
 
     private final Map<ConcreteResource, Long> transferSizes = new ConcurrentHashMap<>();
 
-    private final Map<Resource, Future<PublishJob>> pending = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Resource, CompletableFuture<PublishJob>> pending = new ConcurrentHashMap<>();
 
     @Inject
     @WeftManaged
     @ExecutorConfig( threads = 12, named = "galley-transfers", priority = 8 )
     private ExecutorService executor;
 
+    @Inject
+    private Instance<MeteringProvider> meters;
+
+    @Inject
+    private Instance<GaugeProvider> gauges;
+
+    private LocationLimitedExecutor locationExecutor;
+
     @SuppressWarnings( "unused" )
     public UploadHandler()
     {
     }
 
     public UploadHandler( final NotFoundCache nfc, final TransportManagerConfig config, final ExecutorService executor )
+    {
+        this( nfc, config, executor, null, null );
+    }
+
+    public UploadHandler( final NotFoundCache nfc, final TransportManagerConfig config, final ExecutorService executor,
+                          final MeteringProvider meters, final GaugeProvider gauges )
     {
         this.nfc = nfc;
         this.config = config;
         this.executor = executor;
+        this.locationExecutor = LocationLimitedExecutor.forHandler( "upload", executor, config, meters, gauges );
+    }
+
+    /**
+     * When virtual threads are enabled, swap the injected (fixed-size) pool for a virtual-thread executor, and cap
+     * concurrency per location instead. When location bulkheads are enabled, also bound the jobs waiting on each
+     * location.
+     */
+    @PostConstruct
+    public void init()
+    {
+        if ( config.isVirtualThreadsEnabled() )
+        {
+            executor = TransferExecutors.newVirtualThreadExecutor( "galley-transfers" );
+        }
+
+        final MeteringProvider meter = meters.isUnsatisfied() || meters.isAmbiguous() ? null : meters.get();
+        final GaugeProvider gauge = gauges.isUnsatisfied() || gauges.isAmbiguous() ? null : gauges.get();
+        locationExecutor = LocationLimitedExecutor.forHandler( "upload", executor, config, meter, gauge );
     }
 
     public boolean upload( final ConcreteResource resource, final InputStream stream, final long length,
@@ -95,28 +138,72 @@ public class UploadHandler
         return joinOrStart( resource, timeoutSeconds, stream, length, contentType, transport );
     }
 
-    private boolean joinOrStart( final ConcreteResource resource, final int timeoutSeconds, final InputStream stream,
-                                 final long length, @SuppressWarnings( "unused" ) final String contentType, final Transport transport )
-            throws TransferException
+    /**
+     * Non-blocking variant of {@link #upload(ConcreteResource, InputStream, long, String, int, Transport)}. The
+     * returned future completes with the publish result, or exceptionally with a {@link TransferException}.
+     */
+    public CompletableFuture<Boolean> uploadAsync( final ConcreteResource resource, final InputStream stream,
+                                                   final long length, final String contentType,
+                                                   final int timeoutSeconds, final Transport transport )
     {
+        if ( !resource.allowsPublishing() )
+        {
+            return completedExceptionally( new TransferException( "Publishing not allowed in: {}", resource ) );
+        }
+
         if ( transport == null )
         {
-            return false;
+            return completedExceptionally(
+                    new TransferLocationException( resource.getLocation(),
+                                                   "No transports available to handle: {} with location type: {}",
+                                                   resource, resource.getLocation().getClass().getSimpleName() ) );
         }
 
-        Future<PublishJob> future;
-        synchronized ( pending )
+        logger.debug( "PUBLISH (async) {}", resource );
+
+        final CompletableFuture<PublishJob> future;
+        try
         {
-            future = pending.get( resource );
-            if ( future == null )
-            {
-                final PublishJob job = transport.createPublishJob( resource, stream, length, timeoutSeconds );
+            future = joinOrStartJob( resource, timeoutSeconds, stream, length, contentType, transport );
+        }
+        catch ( final TransferException e )
+        {
+            return completedExceptionally( e );
+        }
 
-                future = executor.submit( job );
-                pending.put( resource, future );
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        future.whenComplete( ( job, error ) -> {
+            transferSizes.remove( resource );
+            if ( error != null )
+            {
+                result.completeExceptionally(
+                        toTransferException( error, "Failed to publish: {}. Reason: {}", resource ) );
+            }
+            else if ( job.getError() != null )
+            {
+                result.completeExceptionally( job.getError() );
+            }
+            else
+            {
+                nfc.clearMissing( resource );
+                result.complete( job.isSuccessful() );
             }
+        } );
+
+        return result;
+    }
+
+    private boolean joinOrStart( final ConcreteResource resource, final int timeoutSeconds, final InputStream stream,
+                                 final long length, final String contentType, final Transport transport )
+            throws TransferException
+    {
+        if ( transport == null )
+        {
+            return false;
         }
 
+        final Future<PublishJob> future = joinOrStartJob( resource, timeoutSeconds, stream, length, contentType, transport );
+
         //int waitSeconds = (int) ( timeoutSeconds * config.getTimeoutOverextensionFactor() );
         int tries = 1;
         try
@@ -176,11 +263,70 @@ public class UploadHandler
         finally
         {
             transferSizes.remove( resource );
-
-            //            logger.info( "Marking download complete: {}", url );
-            pending.remove( resource );
         }
 
         return false;
     }
+
+    /**
+     * Join the in-flight publish job for the resource, or register and start a new one. The registration is removed
+     * as soon as the job finishes.
+     */
+    private CompletableFuture<PublishJob> joinOrStartJob( final ConcreteResource resource, final int timeoutSeconds,
+                                                          final InputStream stream, final long length,
+                                                          final String contentType, final Transport transport )
+            throws TransferException
+    {
+        CompletableFuture<PublishJob> future = pending.get( resource );
+        if ( future != null )
+        {
+            return future;
+        }
+
+        final PublishJob job = transport.createPublishJob( resource, stream, length, contentType, timeoutSeconds );
+        final CompletableFuture<PublishJob> created = new CompletableFuture<>();
+
+        future = pending.putIfAbsent( resource, created );
+        if ( future != null )
+        {
+            return future;
+        }
+
+        created.whenComplete( ( j, e ) -> pending.remove( resource, created ) );
+
+        try
+        {
+            execute( resource, () -> {
+                try
+                {
+                    created.complete( job.call() );
+                }
+                catch ( final Throwable t )
+                {
+                    created.completeExceptionally( t );
+                }
+            } );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            pending.remove( resource, created );
+            throw new TransferLocationException( resource.getLocation(),
+                                                 "Publish of: {} could not be scheduled. Reason: {}", e, resource,
+                                                 e.getMessage() );
+        }
+
+        return created;
+    }
+
+    private void execute( final ConcreteResource resource, final Runnable job )
+    {
+        if ( locationExecutor != null )
+        {
+            locationExecutor.execute( resource.getLocation(), job );
+        }
+        else
+        {
+            executor.execute( job );
+        }
+    }
 }
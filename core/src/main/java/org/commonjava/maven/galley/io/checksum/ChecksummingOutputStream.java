@@ -76,6 +76,13 @@ public final class ChecksummingOutputStream
         {
             logger.trace( "START CLOSE: {}", transfer );
             super.flush();
+            if ( isAborted() )
+            {
+                // the content is incomplete, so its checksums would be wrong
+                logger.trace( "Write of: {} was aborted. Skipping checksums.", transfer );
+                return;
+            }
+
             logger.trace( "Wrote: {} (size: {}) in: {}. Now, writing checksums.", transfer.getPath(), size,
                           transfer.getLocation() );
             Map<ContentDigest, String> hexDigests = new HashMap<>();
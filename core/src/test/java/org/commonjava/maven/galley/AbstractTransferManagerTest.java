@@ -15,28 +15,45 @@
  */
 package org.commonjava.maven.galley;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.checksum.ChecksumAlgorithm;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.PublishBatch;
 import org.commonjava.maven.galley.model.Resource;
 import org.commonjava.maven.galley.model.SimpleLocation;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferBatch;
+import org.commonjava.maven.galley.model.TransferBatchListener;
+import org.commonjava.maven.galley.model.TransferOperation;
 import org.commonjava.maven.galley.model.VirtualResource;
 import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
 import org.commonjava.maven.galley.testing.core.transport.TestTransport;
 import org.commonjava.maven.galley.testing.core.transport.job.TestDownload;
+import org.commonjava.maven.galley.testing.core.transport.job.TestPublish;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
 
 public abstract class AbstractTransferManagerTest
 {
@@ -139,6 +156,255 @@ public abstract class AbstractTransferManagerTest
         assertTransferContent( transfer, testContent );
     }
 
+    /**
+     * Test that the async retrieval downloads and caches remote content, just like the blocking one.
+     */
+    @Test( timeout = 5000 )
+    public void retrieveAsync_cacheIfMissing()
+        throws Exception
+    {
+        final String testContent = "This is a test " + System.currentTimeMillis();
+
+        final Location loc = new SimpleLocation( "file:///test-repo" );
+        final String path = "/path/to/test.txt";
+
+        final ConcreteResource resource = new ConcreteResource( loc, path );
+
+        getTransport().registerDownload( resource, new TestDownload( testContent.getBytes() ) );
+
+        final Transfer transfer = getTransferManagerImpl().retrieveAsync( resource ).toCompletableFuture().get();
+
+        assertTransferContent( transfer, testContent );
+    }
+
+    /**
+     * Test that the async retrieval of the first available resource skips locations that fail, and returns the first
+     * one that can be retrieved.
+     */
+    @Test( timeout = 5000 )
+    public void retrieveFirstAsync_skipFailedLocation()
+        throws Exception
+    {
+        final String testContent = "This is a test " + System.currentTimeMillis();
+
+        final Location missing = new SimpleLocation( "file:///missing-repo" );
+        final Location loc = new SimpleLocation( "file:///test-repo" );
+        final String path = "/path/to/test.txt";
+
+        // nothing is registered for the first location, so the transport will throw an error for it.
+        getTransport().registerDownload( new ConcreteResource( loc, path ), new TestDownload( testContent.getBytes() ) );
+
+        final VirtualResource virt = new VirtualResource( Arrays.asList( missing, loc ), path );
+        final Transfer transfer = getTransferManagerImpl().retrieveFirstAsync( virt ).toCompletableFuture().get();
+
+        assertTransferContent( transfer, testContent );
+    }
+
+    /**
+     * Test that retrieval of the first available resource doesn't ask a location the transport reports as unavailable.
+     */
+    @Test
+    public void retrieveFirst_skipUnavailableLocation()
+        throws Exception
+    {
+        final Location down = new SimpleLocation( "file:///down-repo" );
+        final Location loc = new SimpleLocation( "file:///test-repo" );
+        final String path = "/path/to/test.txt";
+
+        getTransport().registerDownload( new ConcreteResource( down, path ), new TestDownload( "down".getBytes() ) );
+        getTransport().registerDownload( new ConcreteResource( loc, path ), new TestDownload( "up".getBytes() ) );
+        getTransport().markUnavailable( down );
+
+        final VirtualResource virt = new VirtualResource( Arrays.asList( down, loc ), path );
+        final Transfer transfer = getTransferManagerImpl().retrieveFirst( virt );
+
+        assertTransferContent( transfer, "up" );
+        assertThat( getCacheProvider().exists( new ConcreteResource( down, path ) ), equalTo( false ) );
+    }
+
+    @Test( timeout = 5000 )
+    public void retrieveAsync_completeExceptionallyOnError()
+        throws Exception
+    {
+        final ConcreteResource resource =
+                new ConcreteResource( new SimpleLocation( "file:///test-repo" ), "/path/to/unregistered.txt" );
+
+        try
+        {
+            getTransferManagerImpl().retrieveAsync( resource ).toCompletableFuture().get();
+            fail( "Retrieval of unregistered resource should fail" );
+        }
+        catch ( final ExecutionException e )
+        {
+            assertThat( e.getCause() instanceof TransferException, equalTo( true ) );
+        }
+    }
+
+    @Test( timeout = 5000 )
+    public void batchRetrieve_reportEachResultToListener()
+        throws Exception
+    {
+        final Location loc = new SimpleLocation( "file:///test-repo" );
+        final ConcreteResource first = new ConcreteResource( loc, "/path/to/first.txt" );
+        final ConcreteResource second = new ConcreteResource( loc, "/path/to/second.txt" );
+        // downloads aren't allowed from this location, so the resource can't be found.
+        final ConcreteResource missing = new ConcreteResource(
+                new SimpleLocation( "no-download", "file:///no-download-repo", true, true, true, true, false ),
+                "/path/to/missing.txt" );
+
+        getTransport().registerDownload( first, new TestDownload( "first".getBytes() ) );
+        getTransport().registerDownload( second, new TestDownload( "second".getBytes() ) );
+
+        final Map<ConcreteResource, Transfer> transferred = new HashMap<>();
+        final Set<Resource> notFound = new HashSet<>();
+        final TransferBatch batch = getTransferManagerImpl().batchRetrieve(
+                new TransferBatch( Arrays.asList( first, second, missing ) ), new EventMetadata(),
+                new TransferBatchListener()
+                {
+                    @Override
+                    public void transferred( final ConcreteResource resource, final Transfer transfer )
+                    {
+                        transferred.put( resource, transfer );
+                    }
+
+                    @Override
+                    public void failed( final ConcreteResource resource, final TransferException error )
+                    {
+                        fail( "Unexpected failure for: " + resource + ": " + error.getMessage() );
+                    }
+
+                    @Override
+                    public void notFound( final Resource resource )
+                    {
+                        notFound.add( resource );
+                    }
+                } );
+
+        assertThat( transferred.size(), equalTo( 2 ) );
+        assertTransferContent( transferred.get( first ), "first" );
+        assertTransferContent( transferred.get( second ), "second" );
+        assertThat( notFound, equalTo( Collections.<Resource>singleton( missing ) ) );
+        assertThat( batch.getTransfers(), equalTo( transferred ) );
+    }
+
+    /**
+     * Test that expired metadata within the max-stale bound is served as-is, while a background refresh replaces it.
+     */
+    @Test( timeout = 10000 )
+    public void retrieve_serveStaleMetadataWhileRefreshing()
+        throws Exception
+    {
+        final ConcreteResource resource = seedExpiredMetadata( "stale", TimeUnit.MINUTES.toSeconds( 2 ) );
+
+        // hold the refresh back until the stale copy has been served.
+        final CountDownLatch served = new CountDownLatch( 1 );
+        getTransport().registerDownload( resource, new TestDownload( "fresh".getBytes() )
+        {
+            @Override
+            public DownloadJob call()
+                throws Exception
+            {
+                served.await();
+                return super.call();
+            }
+        } );
+
+        assertTransferContent( getTransferManagerImpl().retrieve( resource ), "stale" );
+        served.countDown();
+
+        Transfer transfer;
+        do
+        {
+            Thread.sleep( 50 );
+            transfer = getTransferManagerImpl().retrieve( resource );
+        }
+        while ( !"fresh".equals( readContent( transfer ) ) );
+    }
+
+    /**
+     * Test that expired metadata past the max-stale bound is refreshed before it's returned.
+     */
+    @Test
+    public void retrieve_refreshMetadataPastMaxStale()
+        throws Exception
+    {
+        final ConcreteResource resource = seedExpiredMetadata( "stale", TimeUnit.HOURS.toSeconds( 1 ) );
+        getTransport().registerDownload( resource, new TestDownload( "fresh".getBytes() ) );
+
+        assertTransferContent( getTransferManagerImpl().retrieve( resource ), "fresh" );
+    }
+
+    /**
+     * Test that the async path serves expired metadata within the max-stale bound as-is, while a background refresh
+     * replaces it.
+     */
+    @Test( timeout = 10000 )
+    public void retrieveAsync_serveStaleMetadataWhileRefreshing()
+        throws Exception
+    {
+        final ConcreteResource resource = seedExpiredMetadata( "stale", TimeUnit.MINUTES.toSeconds( 2 ) );
+
+        final CountDownLatch served = new CountDownLatch( 1 );
+        getTransport().registerDownload( resource, new TestDownload( "fresh".getBytes() )
+        {
+            @Override
+            public DownloadJob call()
+                throws Exception
+            {
+                served.await();
+                return super.call();
+            }
+        } );
+
+        assertTransferContent( getTransferManagerImpl().retrieveAsync( resource ).toCompletableFuture().get(), "stale" );
+        served.countDown();
+
+        Transfer transfer;
+        do
+        {
+            Thread.sleep( 50 );
+            transfer = getTransferManagerImpl().retrieveAsync( resource ).toCompletableFuture().get();
+        }
+        while ( !"fresh".equals( readContent( transfer ) ) );
+    }
+
+    /**
+     * Test that the async path refreshes expired metadata past the max-stale bound before completing with it.
+     */
+    @Test
+    public void retrieveAsync_refreshMetadataPastMaxStale()
+        throws Exception
+    {
+        final ConcreteResource resource = seedExpiredMetadata( "stale", TimeUnit.HOURS.toSeconds( 1 ) );
+        getTransport().registerDownload( resource, new TestDownload( "fresh".getBytes() ) );
+
+        assertTransferContent( getTransferManagerImpl().retrieveAsync( resource ).toCompletableFuture().get(), "fresh" );
+    }
+
+    /**
+     * Cache some maven-metadata.xml content that's the given age, from a location with a 1 minute metadata timeout
+     * and a 10 minute max-stale bound.
+     */
+    private ConcreteResource seedExpiredMetadata( final String content, final long ageSeconds )
+        throws Exception
+    {
+        final SimpleLocation loc = new SimpleLocation( "file:///test-repo" );
+        loc.setAttribute( Location.METADATA_TIMEOUT_SECONDS, 60 );
+        loc.setAttribute( Location.METADATA_MAX_STALE_SECONDS, 600 );
+
+        final ConcreteResource resource = new ConcreteResource( loc, "/org/foo/bar/maven-metadata.xml" );
+        try (OutputStream os = getCacheProvider().getTransfer( resource ).openOutputStream( TransferOperation.DOWNLOAD ))
+        {
+            os.write( content.getBytes() );
+        }
+
+        getCacheProvider().asAdminView()
+                          .getDetachedFile( resource )
+                          .setLastModified( System.currentTimeMillis() - TimeUnit.SECONDS.toMillis( ageSeconds ) );
+
+        return resource;
+    }
+
     @Test( expected = TransferException.class )
     public void resourceDeletionNotAllowed() throws Exception
     {
@@ -156,6 +422,76 @@ public abstract class AbstractTransferManagerTest
         getTransferManagerImpl().delete( resource );
     }
 
+    @Test( timeout = 10000 )
+    public void batchPublish_publishesItemsAndGeneratedChecksums()
+        throws Exception
+    {
+        final Location loc =
+                        new SimpleLocation( "test-repo", "file:///test-repo", true, true, true, true, true, false );
+        final byte[] jar = ( "jar " + System.currentTimeMillis() ).getBytes();
+        final byte[] pom = "<project/>".getBytes();
+        final ConcreteResource jarRes = new ConcreteResource( loc, "/path/to/foo-1.jar" );
+        final ConcreteResource pomRes = new ConcreteResource( loc, "/path/to/foo-1.pom" );
+        final ConcreteResource pomSha1 = new ConcreteResource( loc, "/path/to/foo-1.pom.sha1" );
+
+        final Map<ConcreteResource, ReadingPublish> publishes = new HashMap<>();
+        for ( final String path : Arrays.asList( "/path/to/foo-1.jar", "/path/to/foo-1.jar.md5",
+                                                 "/path/to/foo-1.jar.sha1", "/path/to/foo-1.pom",
+                                                 "/path/to/foo-1.pom.md5", "/path/to/foo-1.pom.sha1" ) )
+        {
+            final ConcreteResource resource = new ConcreteResource( loc, path );
+            publishes.put( resource, new ReadingPublish( path ) );
+            getTransport().registerPublish( resource, publishes.get( resource ) );
+        }
+
+        // the pom's SHA-1 comes with the batch, so only its MD5 is generated.
+        final PublishBatch batch = new PublishBatch().add( jarRes, new ByteArrayInputStream( jar ), jar.length )
+                                                     .add( pomRes, new ByteArrayInputStream( pom ), pom.length )
+                                                     .add( pomSha1, new ByteArrayInputStream( "given".getBytes() ), 5 );
+
+        getTransferManagerImpl().batchPublish( batch, new EventMetadata() );
+
+        assertThat( batch.getErrors().isEmpty(), equalTo( true ) );
+        assertThat( batch.getResults().size(), equalTo( 6 ) );
+        for ( final ConcreteResource resource : publishes.keySet() )
+        {
+            assertThat( resource.toString(), batch.isPublished( resource ), equalTo( true ) );
+        }
+
+        assertThat( publishes.get( new ConcreteResource( loc, "/path/to/foo-1.jar.sha1" ) ).content,
+                    equalTo( DigestUtils.shaHex( jar ) ) );
+        assertThat( publishes.get( new ConcreteResource( loc, "/path/to/foo-1.jar.md5" ) ).content,
+                    equalTo( DigestUtils.md5Hex( jar ) ) );
+        assertThat( publishes.get( new ConcreteResource( loc, "/path/to/foo-1.pom.md5" ) ).content,
+                    equalTo( DigestUtils.md5Hex( pom ) ) );
+        assertThat( publishes.get( pomSha1 ).content, equalTo( "given" ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void batchPublish_failedItemIsReportedWithoutChecksums()
+        throws Exception
+    {
+        final Location loc =
+                        new SimpleLocation( "test-repo", "file:///test-repo", true, true, true, true, true, false );
+        final ConcreteResource jarRes = new ConcreteResource( loc, "/path/to/foo-1.jar" );
+        final ConcreteResource pomRes = new ConcreteResource( loc, "/path/to/foo-1.pom" );
+
+        getTransport().registerPublish( jarRes, new TestPublish( jarRes.getPath(), new TransferException( "Nope" ),
+                                                                 false ) );
+        getTransport().registerPublish( pomRes, new ReadingPublish( pomRes.getPath() ) );
+
+        final PublishBatch batch = new PublishBatch().add( jarRes, new ByteArrayInputStream( "jar".getBytes() ), 3 )
+                                                     .add( pomRes, new ByteArrayInputStream( "pom".getBytes() ), 3 );
+        batch.setChecksums( Collections.<ChecksumAlgorithm> emptySet() );
+
+        getTransferManagerImpl().batchPublish( batch );
+
+        assertThat( batch.getError( jarRes ), notNullValue() );
+        assertThat( batch.isPublished( jarRes ), equalTo( false ) );
+        assertThat( batch.isPublished( pomRes ), equalTo( true ) );
+        assertThat( batch.getResults().keySet(), equalTo( new HashSet<>( Arrays.asList( jarRes, pomRes ) ) ) );
+    }
+
     private void assertTransferContent( final Transfer transfer, final String testContent )
         throws Exception
     {
@@ -163,13 +499,39 @@ public abstract class AbstractTransferManagerTest
         assertThat( transfer, notNullValue() );
 
         // now, read the content to verify it matches what we wrote above.
+        assertThat( readContent( transfer ), equalTo( testContent ) );
+    }
+
+    /**
+     * Reads what it's given to publish, like a real transport would.
+     */
+    private static final class ReadingPublish
+        extends TestPublish
+    {
+        private String content;
+
+        ReadingPublish( final String url )
+        {
+            super( url, null, true );
+        }
+
+        @Override
+        public TestPublish call()
+            throws Exception
+        {
+            content = IOUtils.toString( getStream() );
+            return this;
+        }
+    }
+
+    private String readContent( final Transfer transfer )
+        throws Exception
+    {
         InputStream is = null;
         try
         {
             is = transfer.openInputStream();
-            final String result = IOUtils.toString( is );
-
-            assertThat( result, equalTo( testContent ) );
+            return IOUtils.toString( is );
         }
         finally
         {
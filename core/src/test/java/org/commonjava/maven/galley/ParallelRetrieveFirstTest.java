@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.cache.testutil.TestIOUtils;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.internal.TransferManagerImpl;
+import org.commonjava.maven.galley.internal.xfer.DownloadHandler;
+import org.commonjava.maven.galley.internal.xfer.ExistenceHandler;
+import org.commonjava.maven.galley.internal.xfer.ListingHandler;
+import org.commonjava.maven.galley.internal.xfer.UploadHandler;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.VirtualResource;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.testing.core.transport.TestTransport;
+import org.commonjava.maven.galley.testing.core.transport.job.TestDownload;
+import org.commonjava.maven.galley.testing.core.transport.job.TestExistence;
+import org.commonjava.maven.galley.transport.TransportManagerImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for {@link TransferManager#retrieveFirst(VirtualResource)} with
+ * {@link TransportManagerConfig#isParallelRetrieveFirst()} enabled. The result must match the sequential walk.
+ */
+public class ParallelRetrieveFirstTest
+{
+    private static final String PATH = "/path/to/test.txt";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private TestTransport transport;
+
+    private FileCacheProvider cacheProvider;
+
+    private ExecutorService handlerExecutor;
+
+    private ExecutorService batchExecutor;
+
+    private final Location first = new SimpleLocation( "file:///first-repo" );
+
+    private final Location second = new SimpleLocation( "file:///second-repo" );
+
+    private final Location third = new SimpleLocation( "file:///third-repo" );
+
+    @Before
+    public void setup()
+    {
+        transport = new TestTransport();
+        cacheProvider = new FileCacheProvider( TestIOUtils.newTempFolder( temp, "cache" ), new MockPathGenerator(),
+                                               new NoOpFileEventManager(),
+                                               new TransferDecoratorManager( new NoOpTransferDecorator() ), true );
+
+        handlerExecutor = Executors.newFixedThreadPool( 2 );
+        batchExecutor = Executors.newFixedThreadPool( 2 );
+    }
+
+    @After
+    public void teardown()
+    {
+        handlerExecutor.shutdownNow();
+        batchExecutor.shutdownNow();
+    }
+
+    @Test( timeout = 10000 )
+    public void lowerIndexHitWinsOverFasterProbe()
+            throws Exception
+    {
+        register( first, new SlowExistence( 300 ), "first" );
+        register( second, new TestExistence( true ), "second" );
+
+        final Transfer transfer = newManager( 0 ).retrieveFirst( virtual( first, second ) );
+
+        assertContent( transfer, "first" );
+        assertThat( cacheProvider.getTransfer( new ConcreteResource( second, PATH ) ).exists(), equalTo( false ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void lowerIndexHitWinsWhenHedging()
+            throws Exception
+    {
+        register( first, new SlowExistence( 300 ), "first" );
+        register( second, new TestExistence( true ), "second" );
+        register( third, new TestExistence( true ), "third" );
+
+        final Transfer transfer = newManager( 50 ).retrieveFirst( virtual( first, second, third ) );
+
+        assertContent( transfer, "first" );
+        assertThat( cacheProvider.getTransfer( new ConcreteResource( second, PATH ) ).exists(), equalTo( false ) );
+        assertThat( cacheProvider.getTransfer( new ConcreteResource( third, PATH ) ).exists(), equalTo( false ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void missingLocationsAreSkipped()
+            throws Exception
+    {
+        transport.registerExistence( new ConcreteResource( first, PATH ), new TestExistence( false ) );
+        register( second, new TestExistence( true ), "second" );
+
+        final Transfer transfer = newManager( 0 ).retrieveFirst( virtual( first, second ) );
+
+        assertContent( transfer, "second" );
+    }
+
+    @Test( timeout = 10000 )
+    public void failedProbeFallsBackToRetrieve()
+            throws Exception
+    {
+        // no existence job registered, so the probe fails; the download should still be tried.
+        transport.registerDownload( new ConcreteResource( first, PATH ), new TestDownload( "first".getBytes() ) );
+        register( second, new TestExistence( true ), "second" );
+
+        final Transfer transfer = newManager( 0 ).retrieveFirst( virtual( first, second ) );
+
+        assertContent( transfer, "first" );
+    }
+
+    @Test( timeout = 10000 )
+    public void returnNullWhenMissingEverywhere()
+            throws Exception
+    {
+        transport.registerExistence( new ConcreteResource( first, PATH ), new TestExistence( false ) );
+        transport.registerExistence( new ConcreteResource( second, PATH ), new TestExistence( false ) );
+
+        final Transfer transfer = newManager( 0 ).retrieveFirst( virtual( first, second ) );
+
+        assertThat( transfer, nullValue() );
+    }
+
+    private TransferManager newManager( final long hedgeMillis )
+    {
+        final TransportManagerConfig config = new TransportManagerConfig();
+        config.setParallelRetrieveFirst( true );
+        config.setRetrieveFirstHedgeMillis( hedgeMillis );
+
+        final MemoryNotFoundCache nfc = new MemoryNotFoundCache();
+        return new TransferManagerImpl( new TransportManagerImpl( transport ), cacheProvider, nfc,
+                                        new NoOpFileEventManager(),
+                                        new DownloadHandler( nfc, config, handlerExecutor ),
+                                        new UploadHandler( nfc, config, handlerExecutor ), new ListingHandler( nfc ),
+                                        new ExistenceHandler( nfc ), new SpecialPathManagerImpl(), batchExecutor,
+                                        config );
+    }
+
+    private void register( final Location location, final TestExistence existence, final String content )
+    {
+        final ConcreteResource resource = new ConcreteResource( location, PATH );
+        transport.registerExistence( resource, existence );
+        transport.registerDownload( resource, new TestDownload( content.getBytes() ) );
+    }
+
+    private VirtualResource virtual( final Location... locations )
+    {
+        return new VirtualResource( Arrays.asList( locations ), PATH );
+    }
+
+    private void assertContent( final Transfer transfer, final String content )
+            throws Exception
+    {
+        assertThat( transfer, notNullValue() );
+        try (InputStream in = transfer.openInputStream())
+        {
+            assertThat( IOUtils.toString( in ), equalTo( content ) );
+        }
+    }
+
+    private static final class SlowExistence
+            extends TestExistence
+    {
+        private final long delayMillis;
+
+        SlowExistence( final long delayMillis )
+        {
+            super( true );
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public Boolean call()
+                throws Exception
+        {
+            Thread.sleep( delayMillis );
+            return super.call();
+        }
+    }
+}
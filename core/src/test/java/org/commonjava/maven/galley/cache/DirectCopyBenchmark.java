@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.cache;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.util.CopyUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Measures the throughput of writing a large download into a {@link FileCacheProvider} with no active decorators,
+ * through the transfer's output stream (the old <code>IOUtils.copy()</code> path) and through {@link CopyUtils}, which
+ * writes into the cache file's channel. Sources are a local file (as for the file transport, a resumed partial, or
+ * assembled segments) and a plain input stream (as for an HTTP response body). Logs MB/s and CPU time per copy.
+ * <br/>
+ * This is not part of the normal test run (the class name doesn't match the surefire includes). Run it with:
+ * <pre>mvn -pl core test -Dtest=DirectCopyBenchmark</pre>
+ */
+public class DirectCopyBenchmark
+{
+    private static final long SIZE = 512L * 1024 * 1024;
+
+    private static final int WARMUP = 1;
+
+    private static final int ITERATIONS = 3;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private interface Copier
+    {
+        void copy( InputStream in, OutputStream out )
+                throws IOException;
+    }
+
+    private interface Source
+    {
+        InputStream open( File file )
+                throws IOException;
+    }
+
+    @Test
+    public void largeDownload()
+            throws Exception
+    {
+        final File src = temp.newFile( "source.bin" );
+        try (RandomAccessFile raf = new RandomAccessFile( src, "rw" ))
+        {
+            final byte[] block = new byte[1024 * 1024];
+            for ( int i = 0; i < block.length; i++ )
+            {
+                block[i] = (byte) i;
+            }
+            for ( long written = 0; written < SIZE; written += block.length )
+            {
+                raf.write( block );
+            }
+        }
+
+        final FileCacheProvider provider =
+                new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new NoOpTransferDecorator() ), true );
+        final Location loc = new SimpleLocation( "test", "http://repo.foo.com/" );
+        final Transfer target = provider.getTransfer( new ConcreteResource( loc, "/org/foo/big/1/big-1.zip" ) );
+
+        final Copier streams = IOUtils::copyLarge;
+        final Copier direct = CopyUtils::copy;
+        final Source file = FileInputStream::new;
+        final Source stream = f -> new BufferedInputStream( new FileInputStream( f ) );
+
+        logger.info( "Direct copy benchmark ({}MiB, no decorators):\n  file source, streams: {}\n"
+                             + "  file source, direct:  {}\n  stream source, streams: {}\n"
+                             + "  stream source, direct:  {}", SIZE / 1024 / 1024,
+                     measure( streams, file, src, target ), measure( direct, file, src, target ),
+                     measure( streams, stream, src, target ), measure( direct, stream, src, target ) );
+    }
+
+    private String measure( final Copier copier, final Source source, final File src, final Transfer target )
+            throws Exception
+    {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long elapsed = 0;
+        long cpu = 0;
+        for ( int i = 0; i < WARMUP + ITERATIONS; i++ )
+        {
+            target.delete( false );
+
+            final long startCpu = threads.getCurrentThreadCpuTime();
+            final long start = System.nanoTime();
+            try (InputStream in = source.open( src );
+                 OutputStream out = target.openOutputStream( TransferOperation.DOWNLOAD, false ))
+            {
+                copier.copy( in, out );
+            }
+
+            if ( i >= WARMUP )
+            {
+                elapsed += System.nanoTime() - start;
+                cpu += threads.getCurrentThreadCpuTime() - startCpu;
+            }
+
+            assertThat( target.length(), equalTo( SIZE ) );
+        }
+
+        return String.format( "%.0f MB/s, %.0fms CPU/copy", SIZE * ITERATIONS / ( elapsed / 1e9 ) / 1e6,
+                              cpu / 1e6 / ITERATIONS );
+    }
+}
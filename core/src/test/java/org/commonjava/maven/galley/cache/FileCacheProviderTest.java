@@ -15,19 +15,26 @@
  */
 package org.commonjava.maven.galley.cache;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.commonjava.maven.galley.event.NoOpFileEventManager;
 import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.SpecialPathConstants;
 import org.commonjava.maven.galley.io.TransferDecoratorManager;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.SimpleLocation;
 import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.commonjava.maven.galley.util.AbortableOutput;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -69,4 +76,223 @@ public class FileCacheProviderTest
         assertThat( provider.exists( resource ), equalTo( true ) );
         assertTrue( file.exists() );
     }
+
+    @Test
+    public void expiredFileWithExchangeMetadataIsSetAsideForRevalidation()
+                    throws Exception
+    {
+        final Location loc = new SimpleLocation( "http://foo.com" );
+        final ConcreteResource resource = new ConcreteResource( loc, "/path/to/my/expired.txt" );
+        final ConcreteResource other = new ConcreteResource( loc, "/path/to/my/expired-no-metadata.txt" );
+        final CacheProvider provider = getCacheProvider();
+
+        for ( final ConcreteResource r : new ConcreteResource[] { resource, other } )
+        {
+            try (OutputStream out = provider.openOutputStream( r ))
+            {
+                out.write( "stale".getBytes( "UTF-8" ) );
+            }
+        }
+
+        final File file = provider.asAdminView().getDetachedFile( resource );
+        final File meta = new File( file.getPath() + SpecialPathConstants.HTTP_METADATA_EXT );
+        FileUtils.write( meta, "{\"responseHeaders\":{\"ETAG\":[\"\\\"v1\\\"\"]}}", "UTF-8" );
+
+        final long expired = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(
+                Location.DEFAULT_CACHE_TIMEOUT_SECONDS + 60 );
+        assertTrue( file.setLastModified( expired ) );
+        assertTrue( provider.asAdminView().getDetachedFile( other ).setLastModified( expired ) );
+
+        assertThat( provider.asAdminView().getDetachedFile( resource ).exists(), equalTo( false ) );
+        assertThat( provider.asAdminView().getDetachedFile( other ).exists(), equalTo( false ) );
+
+        final File stale = new File( file.getPath() + CacheProvider.SUFFIX_TO_REVALIDATE );
+        assertThat( FileUtils.readFileToString( stale, "UTF-8" ), equalTo( "stale" ) );
+        assertThat( new File( meta.getPath() + CacheProvider.SUFFIX_TO_REVALIDATE ).exists(), equalTo( true ) );
+
+        // the stale copy doesn't expire in turn
+        assertThat( provider.asAdminView()
+                            .getDetachedFile( new ConcreteResource( loc, "/path/to/my/expired.txt"
+                                    + CacheProvider.SUFFIX_TO_REVALIDATE ) )
+                            .exists(), equalTo( true ) );
+    }
+
+    @Test
+    public void expiredFileWithIndexedExchangeMetadataIsSetAsideForRevalidation()
+                    throws Exception
+    {
+        final Location loc = new SimpleLocation( "http://foo.com" );
+        final ConcreteResource resource = new ConcreteResource( loc, "/path/to/my/indexed.txt" );
+        final CacheProvider provider = new FileCacheProvider(
+                new FileCacheProviderConfig( temp.newFolder( "indexed-cache" ) ).withExchangeMetadataIndex(
+                        r -> r.equals( resource ) ), new MockPathGenerator(), new NoOpFileEventManager(),
+                new TransferDecoratorManager( new NoOpTransferDecorator() ) );
+
+        try (OutputStream out = provider.openOutputStream( resource ))
+        {
+            out.write( "stale".getBytes( "UTF-8" ) );
+        }
+
+        final File file = provider.asAdminView().getDetachedFile( resource );
+        assertTrue( file.setLastModified( System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(
+                Location.DEFAULT_CACHE_TIMEOUT_SECONDS + 60 ) ) );
+
+        assertThat( provider.asAdminView().getDetachedFile( resource ).exists(), equalTo( false ) );
+
+        final File stale = new File( file.getPath() + CacheProvider.SUFFIX_TO_REVALIDATE );
+        assertThat( FileUtils.readFileToString( stale, "UTF-8" ), equalTo( "stale" ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void streamThroughReaderGetsContentWhileItIsWritten()
+            throws Exception
+    {
+        final ConcreteResource resource =
+                new ConcreteResource( new SimpleLocation( "http://foo.com" ), "/path/to/my/growing.txt" );
+        final CacheProvider provider = getStreamThroughCacheProvider();
+
+        final OutputStream out = provider.openOutputStream( resource );
+        out.write( "first,".getBytes( "UTF-8" ) );
+
+        assertThat( provider.exists( resource ), equalTo( true ) );
+
+        final InputStream in = provider.openInputStream( resource );
+        final byte[] buf = new byte[64];
+        final int read = in.read( buf );
+        assertThat( new String( buf, 0, read, "UTF-8" ), equalTo( "first," ) );
+
+        out.write( "second".getBytes( "UTF-8" ) );
+        out.close();
+
+        assertThat( IOUtils.toString( in, "UTF-8" ), equalTo( "second" ) );
+        in.close();
+
+        assertThat( IOUtils.toString( provider.openInputStream( resource ), "UTF-8" ), equalTo( "first,second" ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void streamThroughReaderFailsWhenFileIsDeletedMidWrite()
+            throws Exception
+    {
+        final ConcreteResource resource =
+                new ConcreteResource( new SimpleLocation( "http://foo.com" ), "/path/to/my/aborted.txt" );
+        final CacheProvider provider = getStreamThroughCacheProvider();
+
+        final OutputStream out = provider.openOutputStream( resource );
+        out.write( "partial".getBytes( "UTF-8" ) );
+
+        final InputStream in = provider.openInputStream( resource );
+        assertThat( in.read( new byte[7] ), equalTo( 7 ) );
+
+        provider.delete( resource );
+
+        IOException error = null;
+        try
+        {
+            in.read();
+        }
+        catch ( final IOException e )
+        {
+            error = e;
+        }
+        finally
+        {
+            in.close();
+            out.close();
+        }
+
+        assertThat( error != null, equalTo( true ) );
+        assertThat( provider.exists( resource ), equalTo( false ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void abortedStreamThroughWriteFailsReaderAndKeepsPreviousCopy()
+            throws Exception
+    {
+        final ConcreteResource resource =
+                new ConcreteResource( new SimpleLocation( "http://foo.com" ), "/path/to/my/refreshed.txt" );
+        final CacheProvider provider = getStreamThroughCacheProvider();
+
+        try (OutputStream out = provider.openOutputStream( resource ))
+        {
+            out.write( "previous".getBytes( "UTF-8" ) );
+        }
+
+        final OutputStream out = provider.openOutputStream( resource );
+        out.write( "part".getBytes( "UTF-8" ) );
+
+        final InputStream in = provider.openInputStream( resource );
+        assertThat( in.read( new byte[4] ), equalTo( 4 ) );
+
+        AbortableOutput.abort( out, new IOException( "Upstream connection reset" ) );
+        out.close();
+
+        IOException error = null;
+        try
+        {
+            in.read();
+        }
+        catch ( final IOException e )
+        {
+            error = e;
+        }
+        finally
+        {
+            in.close();
+        }
+
+        assertThat( error != null, equalTo( true ) );
+        assertThat( IOUtils.toString( provider.openInputStream( resource ), "UTF-8" ), equalTo( "previous" ) );
+
+        final File file = provider.asAdminView().getDetachedFile( resource );
+        assertThat( new File( file.getPath() + CacheProvider.SUFFIX_TO_WRITE ).exists(), equalTo( false ) );
+        assertThat( FileUtils.readFileToString( new File( file.getPath() + CacheProvider.SUFFIX_TO_RESUME ), "UTF-8" ),
+                    equalTo( "part" ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void streamThroughReaderFailsWhenWriterStalls()
+            throws Exception
+    {
+        final ConcreteResource resource =
+                new ConcreteResource( new SimpleLocation( "http://foo.com" ), "/path/to/my/stalled.txt" );
+        final CacheProvider provider = new FileCacheProvider(
+                new FileCacheProviderConfig( temp.newFolder( "stall-cache" ) ).withStreamThrough( true )
+                                                                              .withStreamThroughStallSeconds( 1 ),
+                new MockPathGenerator(), new NoOpFileEventManager(),
+                new TransferDecoratorManager( new NoOpTransferDecorator() ) );
+
+        final OutputStream out = provider.openOutputStream( resource );
+        out.write( "stuck".getBytes( "UTF-8" ) );
+
+        final InputStream in = provider.openInputStream( resource );
+        assertThat( in.read( new byte[5] ), equalTo( 5 ) );
+
+        final long start = System.currentTimeMillis();
+        IOException error = null;
+        try
+        {
+            in.read();
+        }
+        catch ( final IOException e )
+        {
+            error = e;
+        }
+        finally
+        {
+            in.close();
+            out.close();
+        }
+
+        assertThat( error != null, equalTo( true ) );
+        assertThat( System.currentTimeMillis() - start < 5000, equalTo( true ) );
+    }
+
+    private CacheProvider getStreamThroughCacheProvider()
+            throws Exception
+    {
+        return new FileCacheProvider( new FileCacheProviderConfig( temp.newFolder( "stream-cache" ) ).withStreamThrough(
+                true ), new MockPathGenerator(), new NoOpFileEventManager(),
+                                      new TransferDecoratorManager( new NoOpTransferDecorator() ) );
+    }
 }
@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.TransferManager;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.Resource;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.model.VirtualResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BatchRetrievalPipelineTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileCacheProvider cacheProvider;
+
+    private ExecutorService executor;
+
+    /** locations that have the requested path, and how long a try against each takes. */
+    private final Map<Location, Long> hits = new ConcurrentHashMap<>();
+
+    private final Map<Location, Long> delays = new ConcurrentHashMap<>();
+
+    private final Map<Location, AtomicInteger> running = new ConcurrentHashMap<>();
+
+    private final Map<Location, AtomicInteger> maxRunning = new ConcurrentHashMap<>();
+
+    private final AtomicInteger globalRunning = new AtomicInteger();
+
+    private final AtomicInteger globalMaxRunning = new AtomicInteger();
+
+    private final AtomicInteger started = new AtomicInteger();
+
+    private final List<ConcreteResource> completionOrder = Collections.synchronizedList( new ArrayList<>() );
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheProvider = new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(),
+                                               new NoOpFileEventManager(),
+                                               new TransferDecoratorManager( new NoOpTransferDecorator() ), true );
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void teardown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test( timeout = 20000 )
+    public void globalAndPerLocationLimitsAreRespected()
+            throws Exception
+    {
+        final SimpleLocation first = location( "first", 2 );
+        final SimpleLocation second = location( "second", 3 );
+        hits.put( first, 0L );
+        hits.put( second, 0L );
+        delays.put( first, 20L );
+        delays.put( second, 20L );
+
+        final List<BatchRetriever> retrievers = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            retrievers.add( retriever( new ConcreteResource( first, "path/" + i ) ) );
+            retrievers.add( retriever( new ConcreteResource( second, "path/" + i ) ) );
+        }
+
+        new BatchRetrievalPipeline( executor, 4 ).run( retrievers );
+
+        for ( final BatchRetriever retriever : retrievers )
+        {
+            assertThat( retriever.getTransfer(), notNullValue() );
+            assertThat( retriever.getTransfer().exists(), equalTo( true ) );
+        }
+
+        assertThat( maxRunning.get( first ).get() <= 2, equalTo( true ) );
+        assertThat( maxRunning.get( second ).get() <= 3, equalTo( true ) );
+        assertThat( globalMaxRunning.get() <= 4, equalTo( true ) );
+    }
+
+    @Test( timeout = 20000 )
+    public void missesMoveOnWithoutWaitingForSlowTries()
+            throws Exception
+    {
+        final SimpleLocation slow = location( "slow", 10 );
+        hits.put( slow, 0L );
+        delays.put( slow, 1000L );
+
+        final List<Location> chain = new ArrayList<>();
+        for ( int i = 0; i < 4; i++ )
+        {
+            final SimpleLocation miss = location( "miss-" + i, 10 );
+            delays.put( miss, 50L );
+            chain.add( miss );
+        }
+
+        final SimpleLocation last = location( "last", 10 );
+        hits.put( last, 0L );
+        chain.add( last );
+
+        final BatchRetriever slowRetriever = retriever( new ConcreteResource( slow, "slow/path" ) );
+        final BatchRetriever chainRetriever = retriever( new VirtualResource( chain, "chain/path" ) );
+
+        new BatchRetrievalPipeline( executor, 4 ).run( Arrays.asList( slowRetriever, chainRetriever ) );
+
+        assertThat( chainRetriever.getLastTry(), equalTo( new ConcreteResource( last, "chain/path" ) ) );
+        assertThat( chainRetriever.getTransfer().exists(), equalTo( true ) );
+        assertThat( slowRetriever.getTransfer().exists(), equalTo( true ) );
+
+        // the chain's five tries finished while the single slow try was still running.
+        assertThat( completionOrder.indexOf( chainRetriever.getLastTry() ) < completionOrder.indexOf(
+                slowRetriever.getLastTry() ), equalTo( true ) );
+    }
+
+    @Test( timeout = 20000 )
+    public void slowCallbackThrottlesNewTries()
+            throws Exception
+    {
+        final SimpleLocation location = location( "loc", 10 );
+        hits.put( location, 0L );
+
+        final List<BatchRetriever> retrievers = new ArrayList<>();
+        for ( int i = 0; i < 10; i++ )
+        {
+            retrievers.add( retriever( new ConcreteResource( location, "path/" + i ) ) );
+        }
+
+        final AtomicInteger finished = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        new BatchRetrievalPipeline( executor, 2 ).run( retrievers, retriever -> {
+            // tries started beyond the ones already reported can only be the (at most 2) in flight.
+            maxAhead.accumulateAndGet( started.get() - finished.incrementAndGet(), Math::max );
+            try
+            {
+                Thread.sleep( 50 );
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        } );
+
+        assertThat( finished.get(), equalTo( 10 ) );
+        assertThat( maxAhead.get() <= 2, equalTo( true ) );
+    }
+
+    private SimpleLocation location( final String name, final int maxConnections )
+    {
+        final SimpleLocation location = new SimpleLocation( name, "http://" + name + ".foo.com/repo" );
+        location.setAttribute( Location.MAX_CONNECTIONS, maxConnections );
+        running.put( location, new AtomicInteger() );
+        maxRunning.put( location, new AtomicInteger() );
+        return location;
+    }
+
+    private BatchRetriever retriever( final Resource resource )
+    {
+        return new BatchRetriever( stubTransferManager(), resource, true, new EventMetadata() );
+    }
+
+    /**
+     * A TransferManager whose retrieve() sleeps for the location's delay, then returns an existing transfer if the
+     * location is a hit or null otherwise, tracking how many tries run at once. Nothing else is supported.
+     */
+    private TransferManager stubTransferManager()
+    {
+        return (TransferManager) Proxy.newProxyInstance( getClass().getClassLoader(),
+                                                         new Class<?>[] { TransferManager.class },
+                                                         ( proxy, method, args ) -> {
+            if ( !"retrieve".equals( method.getName() ) )
+            {
+                throw new UnsupportedOperationException( method.getName() );
+            }
+
+            final ConcreteResource resource = (ConcreteResource) args[0];
+            final Location location = resource.getLocation();
+
+            started.incrementAndGet();
+            final int now = running.get( location ).incrementAndGet();
+            maxRunning.get( location ).accumulateAndGet( now, Math::max );
+            globalMaxRunning.accumulateAndGet( globalRunning.incrementAndGet(), Math::max );
+            try
+            {
+                Thread.sleep( delays.getOrDefault( location, 0L ) );
+                if ( !hits.containsKey( location ) )
+                {
+                    return null;
+                }
+
+                final Transfer transfer = cacheProvider.getTransfer( resource );
+                try (OutputStream out = transfer.openOutputStream( TransferOperation.DOWNLOAD ))
+                {
+                    out.write( "test".getBytes() );
+                }
+
+                return transfer;
+            }
+            finally
+            {
+                globalRunning.decrementAndGet();
+                running.get( location ).decrementAndGet();
+                completionOrder.add( resource );
+            }
+        } );
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Contention benchmark for {@link DownloadHandler#download}. Runs unrelated downloads from an increasing number of
+ * caller threads (1, 2, 4... up to the number of cores) and logs the throughput of each round, so scaling with core
+ * count is visible. Two workloads are measured: "warm" requests for already-cached targets, and "cold" requests that
+ * each start a (stubbed) download of a new target.
+ * <br/>
+ * This is not part of the normal test run (the class name doesn't match the surefire includes). Run it with:
+ * <pre>mvn -pl core test -Dtest=DownloadHandlerContentionBenchmark</pre>
+ */
+public class DownloadHandlerContentionBenchmark
+{
+    private static final long ROUND_MILLIS = 2000;
+
+    private static final int WARM_TARGETS = 512;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileCacheProvider cacheProvider;
+
+    private ExecutorService handlerExecutor;
+
+    private DownloadHandler handler;
+
+    private StubDownloadTransport transport;
+
+    private final Location location = new SimpleLocation( "bench", "http://foo.com/repo" );
+
+    private volatile int round;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheProvider = new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(),
+                                               new NoOpFileEventManager(),
+                                               new TransferDecoratorManager( new NoOpTransferDecorator() ), true );
+
+        handlerExecutor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() * 2 );
+        handler = new DownloadHandler( new MemoryNotFoundCache(), new TransportManagerConfig(), handlerExecutor );
+        transport = new StubDownloadTransport( new byte[512], 0 );
+    }
+
+    @After
+    public void teardown()
+    {
+        handlerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void warmTargets()
+            throws Exception
+    {
+        for ( int i = 0; i < WARM_TARGETS; i++ )
+        {
+            download( "warm/" + i + "/file.jar" );
+        }
+
+        run( "warm", new Workload()
+        {
+            @Override
+            public void next( final int thread, final long iteration )
+                    throws Exception
+            {
+                download( "warm/" + ThreadLocalRandom.current().nextInt( WARM_TARGETS ) + "/file.jar" );
+            }
+        } );
+    }
+
+    @Test
+    public void coldTargets()
+            throws Exception
+    {
+        run( "cold", new Workload()
+        {
+            @Override
+            public void next( final int thread, final long iteration )
+                    throws Exception
+            {
+                download( "cold/" + round + "/" + thread + "/" + iteration + ".jar" );
+            }
+        } );
+    }
+
+    private void run( final String name, final Workload workload )
+            throws Exception
+    {
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final List<Integer> threadCounts = new ArrayList<>();
+        for ( int t = 1; t < cores; t *= 2 )
+        {
+            threadCounts.add( t );
+        }
+        threadCounts.add( cores );
+
+        // warm up the JIT before measuring anything.
+        measure( cores, workload, ROUND_MILLIS / 2 );
+
+        double baseline = -1;
+        final StringBuilder report = new StringBuilder();
+        for ( final int threads : threadCounts )
+        {
+            final double opsPerSecond = measure( threads, workload, ROUND_MILLIS );
+            if ( baseline < 0 )
+            {
+                baseline = opsPerSecond;
+            }
+
+            report.append( String.format( "%n  %3d threads: %12.0f ops/s  (%.2fx)", threads, opsPerSecond,
+                                          opsPerSecond / baseline ) );
+        }
+
+        logger.info( "DownloadHandler contention benchmark ({}, {} cores):{}", name, cores, report );
+    }
+
+    private double measure( final int threads, final Workload workload, final long millis )
+            throws Exception
+    {
+        round++;
+
+        final ExecutorService callers = Executors.newFixedThreadPool( threads );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( threads );
+        final AtomicLong ops = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final long[] deadline = new long[1];
+
+        for ( int t = 0; t < threads; t++ )
+        {
+            final int thread = t;
+            callers.execute( () -> {
+                long count = 0;
+                try
+                {
+                    start.await();
+                    while ( System.nanoTime() < deadline[0] )
+                    {
+                        workload.next( thread, count );
+                        count++;
+                    }
+                }
+                catch ( final Exception e )
+                {
+                    logger.error( "Benchmark worker failed: " + e.getMessage(), e );
+                    failures.incrementAndGet();
+                }
+                finally
+                {
+                    ops.addAndGet( count );
+                    done.countDown();
+                }
+            } );
+        }
+
+        final long begin = System.nanoTime();
+        deadline[0] = begin + TimeUnit.MILLISECONDS.toNanos( millis );
+        start.countDown();
+        done.await();
+        final long elapsed = System.nanoTime() - begin;
+        callers.shutdown();
+
+        assertThat( failures.get(), equalTo( 0L ) );
+        return ops.get() / ( elapsed / 1e9 );
+    }
+
+    private void download( final String path )
+            throws Exception
+    {
+        final ConcreteResource resource = new ConcreteResource( location, path );
+        final Transfer target = cacheProvider.getTransfer( resource );
+        final Transfer result = handler.download( resource, target, 10, transport, false, new EventMetadata() );
+        if ( result == null || !result.exists() )
+        {
+            throw new IllegalStateException( "Download failed for: " + path );
+        }
+    }
+
+    private interface Workload
+    {
+        void next( int thread, long iteration )
+                throws Exception;
+    }
+}
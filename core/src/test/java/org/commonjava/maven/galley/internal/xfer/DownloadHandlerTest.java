@@ -0,0 +1,347 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferTimeoutException;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.FileCacheProviderConfig;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DownloadHandlerTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileCacheProvider cacheProvider;
+
+    private ExecutorService handlerExecutor;
+
+    private ExecutorService callerExecutor;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheProvider = new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(),
+                                               new NoOpFileEventManager(),
+                                               new TransferDecoratorManager( new NoOpTransferDecorator() ), true );
+
+        handlerExecutor = Executors.newFixedThreadPool( 4 );
+        callerExecutor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void teardown()
+    {
+        handlerExecutor.shutdownNow();
+        callerExecutor.shutdownNow();
+    }
+
+    @Test( timeout = 10000 )
+    public void concurrentDownloadsOfSameTargetRunOneJob()
+            throws Exception
+    {
+        final StubDownloadTransport transport = new StubDownloadTransport( "this is a test".getBytes(), 200 );
+        final DownloadHandler handler =
+                new DownloadHandler( new MemoryNotFoundCache(), new TransportManagerConfig(), handlerExecutor );
+
+        final ConcreteResource resource =
+                new ConcreteResource( new SimpleLocation( "test", "http://foo.com/repo" ), "path/to/file.txt" );
+        final Transfer target = cacheProvider.getTransfer( resource );
+
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final List<Future<Transfer>> results = new ArrayList<>();
+        for ( int i = 0; i < threads; i++ )
+        {
+            results.add( callerExecutor.submit( new Callable<Transfer>()
+            {
+                @Override
+                public Transfer call()
+                        throws Exception
+                {
+                    start.await();
+                    return handler.download( resource, target, 10, transport, false, new EventMetadata() );
+                }
+            } ) );
+        }
+
+        start.countDown();
+
+        for ( final Future<Transfer> result : results )
+        {
+            final Transfer transfer = result.get();
+            assertThat( transfer, notNullValue() );
+            assertThat( transfer.exists(), equalTo( true ) );
+        }
+
+        assertThat( transport.getCreatedCount(), equalTo( 1 ) );
+        assertThat( transport.getExecutedCount(), equalTo( 1 ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void downloadOfExistingTargetDoesNotStartJob()
+            throws Exception
+    {
+        final StubDownloadTransport transport = new StubDownloadTransport( "this is a test".getBytes(), 0 );
+        final DownloadHandler handler =
+                new DownloadHandler( new MemoryNotFoundCache(), new TransportManagerConfig(), handlerExecutor );
+
+        final ConcreteResource resource =
+                new ConcreteResource( new SimpleLocation( "test", "http://foo.com/repo" ), "path/to/file.txt" );
+        final Transfer target = cacheProvider.getTransfer( resource );
+
+        handler.download( resource, target, 10, transport, false, new EventMetadata() );
+        final Transfer second = handler.download( resource, target, 10, transport, false, new EventMetadata() );
+
+        assertThat( second.exists(), equalTo( true ) );
+        assertThat( transport.getExecutedCount(), equalTo( 1 ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void downloadsCompleteWithBulkheadsAndFairShareTogether()
+            throws Exception
+    {
+        final StubDownloadTransport transport = new StubDownloadTransport( "this is a test".getBytes(), 100 );
+        final TransportManagerConfig config = new TransportManagerConfig();
+        config.setLocationBulkheadsEnabled( true );
+        config.setFairShareDownloadsEnabled( true );
+        config.setDownloadConcurrency( 2 );
+        config.setReservedPriorityDownloads( 1 );
+        final DownloadHandler handler = new DownloadHandler( new MemoryNotFoundCache(), config, handlerExecutor );
+
+        final SimpleLocation limited = new SimpleLocation( "limited", "http://foo.com/repo" );
+        limited.setAttribute( Location.MAX_CONNECTIONS, 1 );
+        final SimpleLocation other = new SimpleLocation( "other", "http://bar.com/repo" );
+
+        final List<Future<Transfer>> results = new ArrayList<>();
+        for ( final String path : Arrays.asList( "a/a-1.jar", "b/b-1.pom", "c/c-1.jar", "d/d-1.pom" ) )
+        {
+            for ( final Location location : Arrays.asList( limited, other ) )
+            {
+                final ConcreteResource resource = new ConcreteResource( location, path );
+                final Transfer target = cacheProvider.getTransfer( resource );
+                results.add( callerExecutor.submit(
+                        () -> handler.download( resource, target, 10, transport, false, new EventMetadata() ) ) );
+            }
+        }
+
+        for ( final Future<Transfer> result : results )
+        {
+            assertThat( result.get().exists(), equalTo( true ) );
+        }
+
+        assertThat( transport.getExecutedCount(), equalTo( 8 ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void joinerOfRejectedDownloadFailsFast()
+            throws Exception
+    {
+        final CountDownLatch creating = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final StubDownloadTransport transport = new StubDownloadTransport( "this is a test".getBytes(), 2000 )
+        {
+            @Override
+            public DownloadJob createDownloadJob( final ConcreteResource resource, final Transfer target,
+                                                  final Map<Transfer, Long> transferSizes, final int timeoutSeconds,
+                                                  final EventMetadata eventMetadata )
+            {
+                if ( resource.getPath().startsWith( "c/" ) )
+                {
+                    // hold the first caller between registering the download and scheduling it.
+                    creating.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch ( final InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                return super.createDownloadJob( resource, target, transferSizes, timeoutSeconds, eventMetadata );
+            }
+        };
+
+        final TransportManagerConfig config = new TransportManagerConfig();
+        config.setLocationBulkheadsEnabled( true );
+        config.setBulkheadQueueSize( 1 );
+        final DownloadHandler handler = new DownloadHandler( new MemoryNotFoundCache(), config, handlerExecutor );
+
+        final SimpleLocation limited = new SimpleLocation( "limited", "http://foo.com/repo" );
+        limited.setAttribute( Location.MAX_CONNECTIONS, 1 );
+
+        // one download takes the location's only slot, and another fills its queue.
+        for ( final String path : Arrays.asList( "a/a-1.jar", "b/b-1.jar" ) )
+        {
+            final ConcreteResource resource = new ConcreteResource( limited, path );
+            handler.downloadAsync( resource, cacheProvider.getTransfer( resource ), 10, transport, false,
+                                   new EventMetadata() );
+        }
+
+        final ConcreteResource resource = new ConcreteResource( limited, "c/c-1.jar" );
+        final Transfer target = cacheProvider.getTransfer( resource );
+        final Future<CompletableFuture<Transfer>> first = callerExecutor.submit(
+                () -> handler.downloadAsync( resource, target, 10, transport, false, new EventMetadata() ) );
+
+        creating.await();
+        final CompletableFuture<Transfer> joined =
+                handler.downloadAsync( resource, target, 10, transport, false, new EventMetadata() );
+        release.countDown();
+
+        assertFailsWithLocationException( first.get() );
+        assertFailsWithLocationException( joined );
+    }
+
+    private void assertFailsWithLocationException( final CompletableFuture<Transfer> future )
+            throws Exception
+    {
+        try
+        {
+            future.get( 5, TimeUnit.SECONDS );
+            fail( "Download should have been rejected" );
+        }
+        catch ( final ExecutionException e )
+        {
+            assertThat( e.getCause() instanceof TransferLocationException, equalTo( true ) );
+        }
+    }
+
+    @Test( timeout = 10000 )
+    public void slowDownloadKeepsWaitingWhileDataFlows()
+            throws Exception
+    {
+        // 12 chunks, 250ms apart: ~2.75s in all, well past the 1s request timeout.
+        final StubDownloadTransport transport = new StubDownloadTransport( new byte[12], 0, 1, 250 );
+        final TransportManagerConfig config = new TransportManagerConfig();
+        config.setDownloadStallSeconds( 1 );
+        final DownloadHandler handler = new DownloadHandler( new MemoryNotFoundCache(), config, handlerExecutor );
+
+        final ConcreteResource resource =
+                new ConcreteResource( new SimpleLocation( "test", "http://foo.com/repo" ), "path/to/slow.jar" );
+        final Transfer target = cacheProvider.getTransfer( resource );
+
+        final Transfer result = handler.download( resource, target, 1, transport, false, new EventMetadata() );
+
+        assertThat( result.exists(), equalTo( true ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void stalledDownloadTimesOutAfterStallPeriod()
+            throws Exception
+    {
+        // the first chunk arrives straight away, then nothing for 8s.
+        final StubDownloadTransport transport = new StubDownloadTransport( new byte[2], 0, 1, 8000 );
+        final TransportManagerConfig config = new TransportManagerConfig();
+        config.setDownloadStallSeconds( 1 );
+        final DownloadHandler handler = new DownloadHandler( new MemoryNotFoundCache(), config, handlerExecutor );
+
+        final ConcreteResource resource =
+                new ConcreteResource( new SimpleLocation( "test", "http://foo.com/repo" ), "path/to/stalled.jar" );
+        final Transfer target = cacheProvider.getTransfer( resource );
+
+        final long start = System.currentTimeMillis();
+        TransferTimeoutException error = null;
+        try
+        {
+            handler.download( resource, target, 30, transport, false, new EventMetadata() );
+        }
+        catch ( final TransferTimeoutException e )
+        {
+            error = e;
+        }
+
+        assertThat( error, notNullValue() );
+        assertThat( System.currentTimeMillis() - start < 5000, equalTo( true ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void joinerStreamsContentOfInProgressDownload()
+            throws Exception
+    {
+        final FileCacheProvider streamingCache = new FileCacheProvider(
+                new FileCacheProviderConfig( temp.newFolder( "stream-cache" ) ).withStreamThrough( true ),
+                new MockPathGenerator(), new NoOpFileEventManager(),
+                new TransferDecoratorManager( new NoOpTransferDecorator() ) );
+
+        final byte[] payload = "0123456789".getBytes();
+        final StubDownloadTransport transport = new StubDownloadTransport( payload, 0, 1, 200 );
+        final DownloadHandler handler =
+                new DownloadHandler( new MemoryNotFoundCache(), new TransportManagerConfig(), handlerExecutor );
+
+        final ConcreteResource resource =
+                new ConcreteResource( new SimpleLocation( "test", "http://foo.com/repo" ), "path/to/streamed.jar" );
+        final Transfer target = streamingCache.getTransfer( resource );
+
+        final Future<Transfer> first = callerExecutor.submit(
+                () -> handler.download( resource, target, 10, transport, false, new EventMetadata() ) );
+
+        while ( !target.exists() )
+        {
+            Thread.sleep( 10 );
+        }
+
+        final Transfer joined = handler.download( resource, target, 10, transport, false, new EventMetadata() );
+        assertThat( first.isDone(), equalTo( false ) );
+
+        try (InputStream in = joined.openInputStream())
+        {
+            assertThat( IOUtils.toByteArray( in ), equalTo( payload ) );
+        }
+
+        assertThat( first.get().exists(), equalTo( true ) );
+        assertThat( transport.getExecutedCount(), equalTo( 1 ) );
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.spi.transport.ExistenceJob;
+import org.commonjava.maven.galley.testing.core.transport.TestTransport;
+import org.commonjava.maven.galley.testing.core.transport.job.TestExistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ExistenceHandlerTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private ExecutorService handlerExecutor;
+
+    private ExecutorService callerExecutor;
+
+    private TestTransport transport;
+
+    private MemoryNotFoundCache nfc;
+
+    private ExistenceHandler handler;
+
+    private ConcreteResource resource;
+
+    private Transfer transfer;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        handlerExecutor = Executors.newFixedThreadPool( 4 );
+        callerExecutor = Executors.newCachedThreadPool();
+        transport = new TestTransport();
+        nfc = new MemoryNotFoundCache();
+        handler = new ExistenceHandler( nfc, new TransportManagerConfig(), handlerExecutor );
+
+        final FileCacheProvider cacheProvider =
+                new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new NoOpTransferDecorator() ), true );
+
+        resource = new ConcreteResource( new SimpleLocation( "test", "http://foo.com/repo" ), "path/to/file.txt" );
+        transfer = cacheProvider.getTransfer( resource );
+    }
+
+    @After
+    public void teardown()
+    {
+        handlerExecutor.shutdownNow();
+        callerExecutor.shutdownNow();
+    }
+
+    @Test( timeout = 10000 )
+    public void concurrentChecksOfSameResourceRunOneJob()
+            throws Exception
+    {
+        final AtomicInteger created = new AtomicInteger();
+        transport = new TestTransport()
+        {
+            @Override
+            public ExistenceJob createExistenceJob( final ConcreteResource resource, final Transfer target,
+                                                    final int timeoutSeconds )
+                    throws TransferException
+            {
+                created.incrementAndGet();
+                return super.createExistenceJob( resource, target, timeoutSeconds );
+            }
+        };
+
+        final CountingExistence job = new CountingExistence( true, 200 );
+        transport.registerExistence( resource, job );
+
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final List<Future<Boolean>> results = new ArrayList<>();
+        for ( int i = 0; i < 8; i++ )
+        {
+            results.add( callerExecutor.submit( () -> {
+                start.await();
+                return handler.exists( resource, transfer, 10, transport, false );
+            } ) );
+        }
+
+        start.countDown();
+        for ( final Future<Boolean> result : results )
+        {
+            assertThat( result.get(), equalTo( true ) );
+        }
+
+        assertThat( job.getCalls(), equalTo( 1 ) );
+        assertThat( created.get(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void positiveResultIsCachedUntilInvalidated()
+            throws Exception
+    {
+        final CountingExistence job = new CountingExistence( true, 0 );
+        transport.registerExistence( resource, job );
+
+        assertThat( handler.exists( resource, transfer, 10, transport, false ), equalTo( true ) );
+        assertThat( handler.exists( resource, transfer, 10, transport, false ), equalTo( true ) );
+        assertThat( job.getCalls(), equalTo( 1 ) );
+
+        handler.invalidate( resource );
+
+        assertThat( handler.exists( resource, transfer, 10, transport, false ), equalTo( true ) );
+        assertThat( job.getCalls(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void positiveResultIsNotCachedWhenDisabled()
+            throws Exception
+    {
+        final TransportManagerConfig config = new TransportManagerConfig();
+        config.setExistenceCacheSeconds( 0 );
+        handler = new ExistenceHandler( nfc, config, handlerExecutor );
+
+        final CountingExistence job = new CountingExistence( true, 0 );
+        transport.registerExistence( resource, job );
+
+        handler.exists( resource, transfer, 10, transport, false );
+        handler.exists( resource, transfer, 10, transport, false );
+
+        assertThat( job.getCalls(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void negativeResultGoesToNfc()
+            throws Exception
+    {
+        final CountingExistence job = new CountingExistence( false, 0 );
+        transport.registerExistence( resource, job );
+
+        assertThat( handler.existsAsync( resource, transfer, 10, transport, false ).get(), equalTo( false ) );
+        assertThat( nfc.isMissing( resource ), equalTo( true ) );
+
+        assertThat( handler.exists( resource, transfer, 10, transport, false ), equalTo( false ) );
+        assertThat( job.getCalls(), equalTo( 1 ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void joinerOfRejectedCheckFailsFast()
+            throws Exception
+    {
+        transport.registerExistence( resource, new CountingExistence( true, 0 ) );
+
+        final List<CompletableFuture<Boolean>> joined = new ArrayList<>();
+        handler = new ExistenceHandler( nfc, new TransportManagerConfig(), new AbstractExecutorService()
+        {
+            @Override
+            public void execute( final Runnable command )
+            {
+                // another caller joins the registered check before it turns out it can't be scheduled.
+                joined.add( handler.existsAsync( resource, transfer, 10, transport, false ) );
+                throw new RejectedExecutionException( "saturated" );
+            }
+
+            @Override
+            public void shutdown()
+            {
+            }
+
+            @Override
+            public List<Runnable> shutdownNow()
+            {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public boolean isShutdown()
+            {
+                return false;
+            }
+
+            @Override
+            public boolean isTerminated()
+            {
+                return false;
+            }
+
+            @Override
+            public boolean awaitTermination( final long timeout, final TimeUnit unit )
+            {
+                return false;
+            }
+        } );
+
+        try
+        {
+            handler.exists( resource, transfer, 10, transport, false );
+            fail( "Existence check should have been rejected" );
+        }
+        catch ( final TransferException e )
+        {
+            // expected
+        }
+
+        assertThat( joined.size(), equalTo( 1 ) );
+        try
+        {
+            joined.get( 0 ).get( 5, TimeUnit.SECONDS );
+            fail( "Joined existence check should have failed" );
+        }
+        catch ( final ExecutionException e )
+        {
+            assertThat( e.getCause() instanceof TransferException, equalTo( true ) );
+        }
+    }
+
+    private static final class CountingExistence
+            extends TestExistence
+    {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private final long delayMillis;
+
+        CountingExistence( final boolean result, final long delayMillis )
+        {
+            super( result );
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public Boolean call()
+                throws Exception
+        {
+            calls.incrementAndGet();
+            if ( delayMillis > 0 )
+            {
+                Thread.sleep( delayMillis );
+            }
+
+            return super.call();
+        }
+
+        int getCalls()
+        {
+            return calls.get();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FairShareExecutorTest
+{
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void teardown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test( timeout = 10000 )
+    public void bulkJobsLeaveReservedSlotsToPriorityJobs()
+            throws Exception
+    {
+        final FairShareExecutor fairShare = new FairShareExecutor( executor, 3, 1, "test", null );
+
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final CountDownLatch bulkStarted = new CountDownLatch( 2 );
+        for ( int i = 0; i < 4; i++ )
+        {
+            fairShare.execute( () -> {
+                bulkStarted.countDown();
+                await( release );
+            }, false );
+        }
+
+        assertThat( bulkStarted.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+        assertThat( fairShare.getRunning(), equalTo( 2 ) );
+        assertThat( fairShare.getQueued( false ), equalTo( 2 ) );
+
+        final CountDownLatch priorityDone = new CountDownLatch( 1 );
+        fairShare.execute( priorityDone::countDown, true );
+
+        assertThat( priorityDone.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+        assertThat( fairShare.getQueued( false ), equalTo( 2 ) );
+
+        release.countDown();
+    }
+
+    @Test( timeout = 10000 )
+    public void queuedPriorityJobsStartBeforeQueuedBulkJobs()
+            throws Exception
+    {
+        final FairShareExecutor fairShare = new FairShareExecutor( executor, 1, 0, "test", null );
+
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final CountDownLatch blockerStarted = new CountDownLatch( 1 );
+        fairShare.execute( () -> {
+            blockerStarted.countDown();
+            await( release );
+        }, false );
+        assertThat( blockerStarted.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+
+        final List<String> order = Collections.synchronizedList( new ArrayList<>() );
+        final CountDownLatch done = new CountDownLatch( 4 );
+        fairShare.execute( record( order, "bulk-1", done ), false );
+        fairShare.execute( record( order, "bulk-2", done ), false );
+        fairShare.execute( record( order, "priority-1", done ), true );
+        fairShare.execute( record( order, "priority-2", done ), true );
+
+        assertThat( fairShare.getQueued( true ), equalTo( 2 ) );
+        assertThat( fairShare.getQueued( false ), equalTo( 2 ) );
+
+        release.countDown();
+        assertThat( done.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+
+        assertThat( order, equalTo( Arrays.asList( "priority-1", "priority-2", "bulk-1", "bulk-2" ) ) );
+    }
+
+    private static Runnable record( final List<String> order, final String name, final CountDownLatch done )
+    {
+        return () -> {
+            order.add( name );
+            done.countDown();
+        };
+    }
+
+    private static void await( final CountDownLatch latch )
+    {
+        try
+        {
+            latch.await();
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.spi.metrics.GaugeProvider;
+import org.commonjava.maven.galley.spi.metrics.MeteringProvider;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LocationLimitedExecutorTest
+{
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void teardown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test( timeout = 10000 )
+    public void jobsOverLocationLimitAreQueuedUntilSlotsFree()
+            throws Exception
+    {
+        final SimpleLocation limited = new SimpleLocation( "limited", "http://foo.com/repo" );
+        limited.setAttribute( Location.MAX_CONNECTIONS, 2 );
+
+        final LocationLimitedExecutor locationExecutor = new LocationLimitedExecutor( executor );
+
+        final CountDownLatch started = new CountDownLatch( 2 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( 5 );
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            locationExecutor.execute( limited, () -> {
+                final int now = running.incrementAndGet();
+                maxRunning.accumulateAndGet( now, Math::max );
+                started.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            } );
+        }
+
+        assertThat( started.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+        assertThat( locationExecutor.getRunning( limited ), equalTo( 2 ) );
+        assertThat( locationExecutor.getQueued( limited ), equalTo( 3 ) );
+
+        release.countDown();
+        assertThat( done.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+
+        assertThat( maxRunning.get(), equalTo( 2 ) );
+        assertThat( locationExecutor.getQueued( limited ), equalTo( 0 ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void locationsAreLimitedIndependently()
+            throws Exception
+    {
+        final SimpleLocation first = new SimpleLocation( "first", "http://foo.com/repo" );
+        first.setAttribute( Location.MAX_CONNECTIONS, 1 );
+        final SimpleLocation second = new SimpleLocation( "second", "http://bar.com/repo" );
+        second.setAttribute( Location.MAX_CONNECTIONS, 1 );
+
+        final LocationLimitedExecutor locationExecutor = new LocationLimitedExecutor( executor );
+
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final CountDownLatch started = new CountDownLatch( 2 );
+        for ( final Location location : new Location[] { first, second } )
+        {
+            locationExecutor.execute( location, () -> {
+                started.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            } );
+        }
+
+        assertThat( started.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+        release.countDown();
+    }
+
+    @Test( timeout = 10000 )
+    public void jobsPastFullQueueAreRejectedAndOccupancyIsReported()
+            throws Exception
+    {
+        final SimpleLocation limited = new SimpleLocation( "limited", "http://foo.com/repo" );
+        limited.setAttribute( Location.MAX_CONNECTIONS, 1 );
+
+        final Map<String, Supplier<? extends Number>> gauges = new HashMap<>();
+        final Map<String, Long> marks = new HashMap<>();
+        final GaugeProvider gaugeProvider = gauges::put;
+        final MeteringProvider meteringProvider = new MeteringProvider()
+        {
+            @Override
+            public void mark( final String name )
+            {
+                mark( name, 1 );
+            }
+
+            @Override
+            public synchronized void mark( final String name, final long count )
+            {
+                marks.merge( name, count, Long::sum );
+            }
+        };
+
+        final LocationLimitedExecutor locationExecutor =
+                new LocationLimitedExecutor( executor, "download", 1, meteringProvider, gaugeProvider );
+
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( 2 );
+        final Runnable job = () -> {
+            started.countDown();
+            try
+            {
+                release.await();
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                done.countDown();
+            }
+        };
+
+        locationExecutor.execute( limited, job );
+        locationExecutor.execute( limited, job );
+        assertThat( started.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+
+        boolean rejected = false;
+        try
+        {
+            locationExecutor.execute( limited, job );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            rejected = true;
+        }
+
+        assertThat( rejected, equalTo( true ) );
+        assertThat( marks.get( "galley.bulkhead.download.limited.rejected" ), equalTo( 1L ) );
+        assertThat( gauges.get( "galley.bulkhead.download.limited.running" ).get().intValue(), equalTo( 1 ) );
+        assertThat( gauges.get( "galley.bulkhead.download.limited.queued" ).get().intValue(), equalTo( 1 ) );
+
+        release.countDown();
+        assertThat( done.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+        assertThat( gauges.get( "galley.bulkhead.download.limited.queued" ).get().intValue(), equalTo( 0 ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void acquireWaitsForReleasedSlot()
+            throws Exception
+    {
+        final SimpleLocation limited = new SimpleLocation( "limited", "http://foo.com/repo" );
+        limited.setAttribute( Location.MAX_CONNECTIONS, 1 );
+
+        final LocationLimitedExecutor bulkhead = new LocationLimitedExecutor( Runnable::run, "listing", 1, null, null );
+
+        bulkhead.acquire( limited );
+
+        final CountDownLatch acquired = new CountDownLatch( 1 );
+        final Future<?> waiting = executor.submit( () -> {
+            bulkhead.acquire( limited );
+            acquired.countDown();
+            bulkhead.release( limited );
+            return null;
+        } );
+
+        while ( bulkhead.getQueued( limited ) < 1 )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertThat( acquired.getCount(), equalTo( 1L ) );
+
+        bulkhead.release( limited );
+        waiting.get( 5, TimeUnit.SECONDS );
+
+        assertThat( bulkhead.getRunning( limited ), equalTo( 0 ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void queuedJobIsResubmittedInItsOwnFairShareClass()
+            throws Exception
+    {
+        final SimpleLocation limited = new SimpleLocation( "limited", "http://foo.com/repo" );
+        limited.setAttribute( Location.MAX_CONNECTIONS, 1 );
+        final SimpleLocation other = new SimpleLocation( "other", "http://bar.com/repo" );
+
+        // two slots, one of them reserved for priority jobs
+        final FairShareExecutor fairShare = new FairShareExecutor( executor, 2, 1, "download", null );
+        final LocationLimitedExecutor bulkhead = new LocationLimitedExecutor( executor );
+
+        final CountDownLatch bulkStarted = new CountDownLatch( 1 );
+        final CountDownLatch finishBulk = new CountDownLatch( 1 );
+        final CountDownLatch priorityStarted = new CountDownLatch( 1 );
+        final CountDownLatch finishPriority = new CountDownLatch( 1 );
+        final CountDownLatch otherBulkStarted = new CountDownLatch( 1 );
+
+        bulkhead.execute( limited, () -> {
+            bulkStarted.countDown();
+            await( finishBulk );
+        }, task -> fairShare.execute( task, false ) );
+        assertThat( bulkStarted.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+
+        // waits for the location's only slot
+        bulkhead.execute( limited, () -> {
+            priorityStarted.countDown();
+            await( finishPriority );
+        }, task -> fairShare.execute( task, true ) );
+
+        // waits for the only bulk slot
+        bulkhead.execute( other, otherBulkStarted::countDown, task -> fairShare.execute( task, false ) );
+
+        assertThat( bulkhead.getQueued( limited ), equalTo( 1 ) );
+        assertThat( fairShare.getQueued( false ), equalTo( 1 ) );
+
+        // the priority job takes over the location slot, but not the bulk slot, which goes to the queued bulk job.
+        finishBulk.countDown();
+        assertThat( priorityStarted.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+        assertThat( otherBulkStarted.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+
+        finishPriority.countDown();
+        while ( fairShare.getRunning() > 0 )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertThat( bulkhead.getRunning( limited ), equalTo( 0 ) );
+    }
+
+    private static void await( final CountDownLatch latch )
+    {
+        try
+        {
+            latch.await();
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.spi.transport.ExistenceJob;
+import org.commonjava.maven.galley.spi.transport.ListingJob;
+import org.commonjava.maven.galley.spi.transport.PublishJob;
+import org.commonjava.maven.galley.spi.transport.Transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe {@link Transport} stub for handler-level tests. Every download job writes the same payload to its target
+ * after an optional delay (simulating the remote round-trip), and counts how many jobs were created and how many
+ * actually ran. Optionally, the
+ * payload is written in chunks with a pause before each one after the first (simulating a slow link), and the job
+ * reports its progress.
+ */
+public class StubDownloadTransport
+        implements Transport
+{
+    private final byte[] payload;
+
+    private final long delayMillis;
+
+    private final int chunkSize;
+
+    private final long chunkDelayMillis;
+
+    private final AtomicInteger created = new AtomicInteger( 0 );
+
+    private final AtomicInteger executed = new AtomicInteger( 0 );
+
+    public StubDownloadTransport( final byte[] payload, final long delayMillis )
+    {
+        this( payload, delayMillis, payload.length, 0 );
+    }
+
+    public StubDownloadTransport( final byte[] payload, final long delayMillis, final int chunkSize,
+                                  final long chunkDelayMillis )
+    {
+        this.payload = payload;
+        this.delayMillis = delayMillis;
+        this.chunkSize = Math.max( 1, chunkSize );
+        this.chunkDelayMillis = chunkDelayMillis;
+    }
+
+    public int getCreatedCount()
+    {
+        return created.get();
+    }
+
+    public int getExecutedCount()
+    {
+        return executed.get();
+    }
+
+    @Override
+    public DownloadJob createDownloadJob( final ConcreteResource resource, final Transfer target,
+                                          final Map<Transfer, Long> transferSizes, final int timeoutSeconds,
+                                          final EventMetadata eventMetadata )
+    {
+        created.incrementAndGet();
+        return new DownloadJob()
+        {
+            private TransferException error;
+
+            private volatile long written;
+
+            @Override
+            public long getTransferSize()
+            {
+                return payload.length;
+            }
+
+            @Override
+            public long getBytesTransferred()
+            {
+                return written;
+            }
+
+            @Override
+            public Transfer getTransfer()
+            {
+                return target;
+            }
+
+            @Override
+            public TransferException getError()
+            {
+                return error;
+            }
+
+            @Override
+            public DownloadJob call()
+                    throws Exception
+            {
+                executed.incrementAndGet();
+                if ( delayMillis > 0 )
+                {
+                    Thread.sleep( delayMillis );
+                }
+
+                try (OutputStream out = target.openOutputStream( TransferOperation.DOWNLOAD, true, eventMetadata ))
+                {
+                    for ( int off = 0; off < payload.length; off += chunkSize )
+                    {
+                        if ( off > 0 && chunkDelayMillis > 0 )
+                        {
+                            Thread.sleep( chunkDelayMillis );
+                        }
+
+                        final int len = Math.min( chunkSize, payload.length - off );
+                        out.write( payload, off, len );
+                        written += len;
+                    }
+                }
+                catch ( final IOException e )
+                {
+                    error = new TransferException( "Failed to write: {}. Reason: {}", e, target, e.getMessage() );
+                }
+
+                return this;
+            }
+        };
+    }
+
+    @Override
+    public ListingJob createListingJob( final ConcreteResource resource, final Transfer target,
+                                        final int timeoutSeconds )
+            throws TransferException
+    {
+        throw new TransferException( "Listing not supported by stub transport: {}", resource );
+    }
+
+    @Override
+    public PublishJob createPublishJob( final ConcreteResource resource, final InputStream stream, final long length,
+                                        final int timeoutSeconds )
+            throws TransferException
+    {
+        throw new TransferException( "Publishing not supported by stub transport: {}", resource );
+    }
+
+    @Override
+    public PublishJob createPublishJob( final ConcreteResource resource, final InputStream stream, final long length,
+                                        final String contentType, final int timeoutSeconds )
+            throws TransferException
+    {
+        throw new TransferException( "Publishing not supported by stub transport: {}", resource );
+    }
+
+    @Override
+    public ExistenceJob createExistenceJob( final ConcreteResource resource, final Transfer target,
+                                            final int timeoutSeconds )
+            throws TransferException
+    {
+        throw new TransferException( "Existence checks not supported by stub transport: {}", resource );
+    }
+
+    @Override
+    public boolean handles( final Location location )
+    {
+        return true;
+    }
+
+    @Override
+    public boolean allowsCaching()
+    {
+        return true;
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.internal.xfer;
+
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Compares the fixed-size transfer pool against the virtual-thread execution mode
+ * ({@link TransportManagerConfig#isVirtualThreadsEnabled()}) for a burst of downloads spread across several locations,
+ * where each (stubbed) download spends its time waiting, as it would on a socket. For each mode it logs the p50 / p99
+ * latency from submission to completion, and the peak number of platform threads parked inside download jobs.
+ * <br/>
+ * On JVMs without virtual threads the virtual-thread mode falls back to an unbounded platform-thread pool, so the
+ * latency numbers still reflect the per-location cap, but the parked-thread count will match the number of running
+ * jobs.
+ * <br/>
+ * This is not part of the normal test run (the class name doesn't match the surefire includes). Run it with:
+ * <pre>mvn -pl core test -Dtest=TransferExecutionModeBenchmark</pre>
+ */
+public class TransferExecutionModeBenchmark
+{
+    private static final int LOCATIONS = 4;
+
+    private static final int REQUESTS = 480;
+
+    private static final long JOB_MILLIS = 50;
+
+    private static final int FIXED_POOL_THREADS = 12;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileCacheProvider cacheProvider;
+
+    private int round;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheProvider = new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(),
+                                               new NoOpFileEventManager(),
+                                               new TransferDecoratorManager( new NoOpTransferDecorator() ), true );
+    }
+
+    @Test
+    public void fixedPoolVersusVirtualThreads()
+            throws Exception
+    {
+        final StringBuilder report = new StringBuilder();
+
+        // warm up both modes before measuring.
+        run( false );
+        run( true );
+
+        report.append( run( false ) ).append( run( true ) );
+
+        logger.info( "Transfer execution mode benchmark ({} requests over {} locations, {}ms per job, virtual threads "
+                             + "{}available):{}", REQUESTS, LOCATIONS, JOB_MILLIS,
+                     TransferExecutors.isVirtualThreadSupported() ? "" : "NOT ", report );
+    }
+
+    private String run( final boolean virtualThreads )
+            throws Exception
+    {
+        round++;
+
+        final String prefix = ( virtualThreads ? "bench-virtual-" : "bench-fixed-" ) + round;
+        final TransportManagerConfig config = new TransportManagerConfig();
+        config.setVirtualThreadsEnabled( virtualThreads );
+
+        final ExecutorService executor = virtualThreads ?
+                TransferExecutors.newVirtualThreadExecutor( prefix ) :
+                Executors.newFixedThreadPool( FIXED_POOL_THREADS, new NamedThreadFactory( prefix, true, 8 ) );
+
+        final DownloadHandler handler = new DownloadHandler( new MemoryNotFoundCache(), config, executor );
+        final StubDownloadTransport transport = new StubDownloadTransport( new byte[512], JOB_MILLIS );
+
+        final Location[] locations = new Location[LOCATIONS];
+        for ( int i = 0; i < LOCATIONS; i++ )
+        {
+            locations[i] = new SimpleLocation( "bench-" + i, "http://repo" + i + ".foo.com/" );
+        }
+
+        final ParkedThreadSampler sampler = new ParkedThreadSampler( prefix );
+        final Thread samplerThread = new Thread( sampler, prefix + "-sampler" );
+        samplerThread.setDaemon( true );
+        samplerThread.start();
+
+        final long[] latencies = new long[REQUESTS];
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch( REQUESTS );
+
+        final long begin = System.nanoTime();
+        for ( int i = 0; i < REQUESTS; i++ )
+        {
+            final int idx = i;
+            final ConcreteResource resource =
+                    new ConcreteResource( locations[i % LOCATIONS], "round-" + round + "/" + i + ".jar" );
+
+            final long start = System.nanoTime();
+            handler.downloadAsync( resource, cacheProvider.getTransfer( resource ), 30, transport, false,
+                                   new EventMetadata() ).whenComplete( ( transfer, error ) -> {
+                latencies[idx] = System.nanoTime() - start;
+                if ( error != null || transfer == null )
+                {
+                    failures.incrementAndGet();
+                }
+                done.countDown();
+            } );
+        }
+
+        done.await();
+        final long elapsed = System.nanoTime() - begin;
+
+        sampler.stop();
+        samplerThread.join();
+        executor.shutdownNow();
+
+        assertThat( failures.get(), equalTo( 0 ) );
+
+        Arrays.sort( latencies );
+        return String.format( "%n  %-16s wall: %6dms  p50: %6dms  p99: %6dms  peak parked platform threads: %d",
+                              virtualThreads ? "virtual threads" : "fixed pool (" + FIXED_POOL_THREADS + ")",
+                              TimeUnit.NANOSECONDS.toMillis( elapsed ), percentile( latencies, 50 ),
+                              percentile( latencies, 99 ), sampler.getPeak() );
+    }
+
+    private static long percentile( final long[] sorted, final int percentile )
+    {
+        final int idx = Math.min( sorted.length - 1, (int) Math.ceil( sorted.length * percentile / 100.0 ) - 1 );
+        return TimeUnit.NANOSECONDS.toMillis( sorted[idx] );
+    }
+
+    /**
+     * Periodically counts the live platform threads from the executor under test that are waiting / blocked. Virtual
+     * threads don't show up in the thread MXBean, which is exactly the point: they don't hold a platform thread while
+     * parked.
+     */
+    private static final class ParkedThreadSampler
+            implements Runnable
+    {
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        private final String prefix;
+
+        private volatile boolean running = true;
+
+        private int peak;
+
+        ParkedThreadSampler( final String prefix )
+        {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public void run()
+        {
+            while ( running )
+            {
+                int parked = 0;
+                for ( final ThreadInfo info : threads.dumpAllThreads( false, false ) )
+                {
+                    if ( info != null && info.getThreadName().startsWith( prefix ) && !info.getThreadName()
+                                                                                            .endsWith( "-sampler" ) )
+                    {
+                        switch ( info.getThreadState() )
+                        {
+                            case BLOCKED:
+                            case WAITING:
+                            case TIMED_WAITING:
+                                parked++;
+                                break;
+                            default:
+                        }
+                    }
+                }
+
+                peak = Math.max( peak, parked );
+
+                try
+                {
+                    Thread.sleep( 5 );
+                }
+                catch ( final InterruptedException e )
+                {
+                    return;
+                }
+            }
+        }
+
+        void stop()
+        {
+            running = false;
+        }
+
+        int getPeak()
+        {
+            return peak;
+        }
+    }
+}
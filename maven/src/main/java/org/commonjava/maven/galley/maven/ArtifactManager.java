@@ -24,6 +24,7 @@ import org.commonjava.maven.galley.maven.model.ArtifactBatch;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferBatchListener;
 
 import java.io.InputStream;
 import java.util.List;
@@ -57,6 +58,18 @@ public interface ArtifactManager
     ArtifactBatch batchRetrieveAll( ArtifactBatch batch, EventMetadata eventMetadata )
         throws TransferException;
 
+    /**
+     * Streaming variant of {@link #batchRetrieve(ArtifactBatch, EventMetadata)}; see {@link TransferBatchListener}.
+     */
+    ArtifactBatch batchRetrieve( ArtifactBatch batch, EventMetadata eventMetadata, TransferBatchListener listener )
+        throws TransferException;
+
+    /**
+     * Streaming variant of {@link #batchRetrieveAll(ArtifactBatch, EventMetadata)}; see {@link TransferBatchListener}.
+     */
+    ArtifactBatch batchRetrieveAll( ArtifactBatch batch, EventMetadata eventMetadata, TransferBatchListener listener )
+        throws TransferException;
+
     Transfer retrieve( Location location, ArtifactRef ref )
         throws TransferException;
 
@@ -382,6 +382,17 @@ public class GalleyMavenBuilder
         return this;
     }
 
+    public ExecutorService getExistenceExecutor()
+    {
+        return coreBuilder.getExistenceExecutor();
+    }
+
+    public GalleyMavenBuilder withExistenceExecutor( final ExecutorService existenceExecutor )
+    {
+        coreBuilder.withExistenceExecutor( existenceExecutor );
+        return this;
+    }
+
     public ExecutorService getBatchExecutor()
     {
         return coreBuilder.getBatchExecutor();
@@ -44,6 +44,7 @@ import org.commonjava.maven.galley.model.ListingResult;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Resource;
 import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferBatchListener;
 import org.commonjava.maven.galley.model.VirtualResource;
 import org.commonjava.maven.galley.spi.transport.LocationExpander;
 import org.slf4j.Logger;
@@ -409,6 +410,15 @@ public class ArtifactManagerImpl
         return transferManager.batchRetrieve( batch, eventMetadata );
     }
 
+    @Override
+    public ArtifactBatch batchRetrieve( final ArtifactBatch batch, final EventMetadata eventMetadata,
+                                       final TransferBatchListener listener )
+        throws TransferException
+    {
+        resolveArtifactMappings( batch, eventMetadata );
+        return transferManager.batchRetrieve( batch, eventMetadata, listener );
+    }
+
     @Override
     public ArtifactBatch batchRetrieveAll( final ArtifactBatch batch )
         throws TransferException
@@ -424,6 +434,15 @@ public class ArtifactManagerImpl
         return transferManager.batchRetrieveAll( batch, eventMetadata );
     }
 
+    @Override
+    public ArtifactBatch batchRetrieveAll( final ArtifactBatch batch, final EventMetadata eventMetadata,
+                                          final TransferBatchListener listener )
+        throws TransferException
+    {
+        resolveArtifactMappings( batch, eventMetadata );
+        return transferManager.batchRetrieveAll( batch, eventMetadata, listener );
+    }
+
     private void resolveArtifactMappings( final ArtifactBatch batch, final EventMetadata eventMetadata )
         throws TransferException
     {
@@ -17,7 +17,9 @@ package org.commonjava.maven.galley.testing.core.transport;
 
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import javax.enterprise.inject.Default;
 import javax.inject.Named;
@@ -65,6 +67,8 @@ public class TestTransport
 
     private final Map<ConcreteResource, TestExistence> exists = new HashMap<ConcreteResource, TestExistence>();
 
+    private final Set<Location> unavailable = new HashSet<Location>();
+
     /**
      * Use this to pre-register data for a {@link DownloadJob} you plan on accessing during
      * your unit test.
@@ -96,6 +100,14 @@ public class TestTransport
         this.exists.put( resource, exists );
     }
 
+    /**
+     * Make {@link #isAvailable(Location)} report the given location as unavailable, as a tripped circuit breaker would.
+     */
+    public void markUnavailable( final Location location )
+    {
+        unavailable.add( location );
+    }
+
     // Transport implementation...
 
     @Override
@@ -177,6 +189,7 @@ public class TestTransport
         publishes.clear();
         listings.clear();
         exists.clear();
+        unavailable.clear();
     }
 
     @Override
@@ -185,4 +198,10 @@ public class TestTransport
         return false;
     }
 
+    @Override
+    public boolean isAvailable( final Location location )
+    {
+        return !unavailable.contains( location );
+    }
+
 }
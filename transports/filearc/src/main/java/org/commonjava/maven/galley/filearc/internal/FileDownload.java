@@ -16,7 +16,6 @@
 package org.commonjava.maven.galley.filearc.internal;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
-import static org.apache.commons.io.IOUtils.copy;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -28,6 +27,7 @@ import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferOperation;
 import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.util.CopyUtils;
 
 public class FileDownload
     implements DownloadJob
@@ -71,7 +71,8 @@ public class FileDownload
             {
                 in = new FileInputStream( src );
                 out = txfr.openOutputStream( TransferOperation.DOWNLOAD, true, eventMetadata );
-                copy( in, out );
+                // a plain file cache lets this go file-to-file in the kernel
+                CopyUtils.copy( in, out );
             }
 
             return this;
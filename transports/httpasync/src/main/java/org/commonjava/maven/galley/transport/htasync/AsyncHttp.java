@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htasync;
+
+import org.apache.http.HttpHost;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.commonjava.maven.galley.auth.PasswordEntry;
+import org.commonjava.maven.galley.spi.auth.PasswordManager;
+import org.commonjava.maven.galley.transport.htcli.ExchangeMetadataStore;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.util.LocationUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the single non-blocking HTTP client shared by all async transport jobs. A handful of I/O reactor threads
+ * (one per core by default) multiplex every open connection, so the number of in-flight requests isn't tied to the
+ * number of threads. Per-location settings that HttpClient can apply per request (timeouts, proxy, credentials) go
+ * into the request context; per-location connection limits are applied to the route the first time it's used.
+ * <br/>
+ * Reactor threads must never block, so anything that touches the cache (opening, writing and closing the target,
+ * writing exchange metadata) runs on the separate, bounded cache executor instead.
+ */
+public class AsyncHttp
+        implements Closeable
+{
+    public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 1000;
+
+    public static final int DEFAULT_CACHE_THREADS = 4;
+
+    private final PasswordManager passwords;
+
+    private final PoolingNHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpAsyncClient client;
+
+    private final Map<String, Integer> routeLimits = new ConcurrentHashMap<>();
+
+    private final ExchangeMetadataStore metadataStore;
+
+    private final ExecutorService cacheExecutor;
+
+    private final boolean ownsCacheExecutor;
+
+    public AsyncHttp( final PasswordManager passwords )
+            throws IOReactorException
+    {
+        this( passwords, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_CONNECTIONS_TOTAL );
+    }
+
+    public AsyncHttp( final PasswordManager passwords, final int ioThreads, final int maxConnectionsTotal )
+            throws IOReactorException
+    {
+        this( passwords, ioThreads, maxConnectionsTotal, null );
+    }
+
+    /**
+     * @param metadataStore where HTTP exchange metadata is kept, or null for JSON files next to the content
+     */
+    public AsyncHttp( final PasswordManager passwords, final int ioThreads, final int maxConnectionsTotal,
+                      final ExchangeMetadataStore metadataStore )
+            throws IOReactorException
+    {
+        this( passwords, ioThreads, maxConnectionsTotal, metadataStore, null );
+    }
+
+    /**
+     * @param cacheExecutor where cache I/O runs; it is left running on {@link #close()}. If null, a pool of
+     * {@link #DEFAULT_CACHE_THREADS} threads is created, and shut down on close.
+     */
+    public AsyncHttp( final PasswordManager passwords, final int ioThreads, final int maxConnectionsTotal,
+                      final ExchangeMetadataStore metadataStore, final ExecutorService cacheExecutor )
+            throws IOReactorException
+    {
+        this.passwords = passwords;
+        this.metadataStore = metadataStore;
+        this.ownsCacheExecutor = cacheExecutor == null;
+        this.cacheExecutor = ownsCacheExecutor ? newCacheExecutor() : cacheExecutor;
+
+        final IOReactorConfig reactorConfig = IOReactorConfig.custom().setIoThreadCount( ioThreads ).build();
+        this.connectionManager = new PoolingNHttpClientConnectionManager( new DefaultConnectingIOReactor( reactorConfig ) );
+        this.connectionManager.setMaxTotal( maxConnectionsTotal );
+
+        this.client = HttpAsyncClients.custom().setConnectionManager( connectionManager ).build();
+        this.client.start();
+    }
+
+    public CloseableHttpAsyncClient getClient()
+    {
+        return client;
+    }
+
+    /**
+     * @return the executor for blocking cache I/O that must stay off the reactor threads
+     */
+    public ExecutorService getCacheExecutor()
+    {
+        return cacheExecutor;
+    }
+
+    public ExchangeMetadataStore getExchangeMetadataStore()
+    {
+        return metadataStore;
+    }
+
+    /**
+     * Build the context for one request to the location: its timeouts, proxy and credentials. This also applies the
+     * location's max-connections to its route.
+     */
+    public HttpClientContext createContext( final HttpLocation location )
+    {
+        final boolean secure = location.getUri().startsWith( "https" );
+        final HttpHost host = new HttpHost( location.getHost(), location.getPort(), secure ? "https" : "http" );
+        final HttpHost proxy = location.getProxyHost() == null ?
+                null :
+                new HttpHost( location.getProxyHost(), getProxyPort( location ) );
+
+        final HttpRoute route = proxy == null ? new HttpRoute( host, null, secure ) :
+                new HttpRoute( host, null, proxy, secure );
+        final int maxConnections = LocationUtils.getMaxConnections( location );
+        final Integer previous = routeLimits.put( route.toString(), maxConnections );
+        if ( previous == null || previous != maxConnections )
+        {
+            connectionManager.setMaxPerRoute( route, maxConnections );
+        }
+
+        final int timeoutMillis = (int) TimeUnit.SECONDS.toMillis( LocationUtils.getTimeoutSeconds( location ) );
+        final RequestConfig.Builder config = RequestConfig.custom()
+                                                          .setConnectTimeout( timeoutMillis )
+                                                          .setSocketTimeout( timeoutMillis )
+                                                          .setConnectionRequestTimeout( timeoutMillis );
+
+        if ( proxy != null )
+        {
+            config.setProxy( proxy );
+        }
+
+        final HttpClientContext ctx = HttpClientContext.create();
+        ctx.setRequestConfig( config.build() );
+
+        final CredentialsProvider creds = new BasicCredentialsProvider();
+        if ( location.getUser() != null )
+        {
+            final String password = passwords.getPassword( new PasswordEntry( location, PasswordEntry.USER_PASSWORD ) );
+            creds.setCredentials( new AuthScope( location.getHost(), location.getPort() ),
+                                  new UsernamePasswordCredentials( location.getUser(), password ) );
+        }
+
+        if ( location.getProxyHost() != null && location.getProxyUser() != null )
+        {
+            final String password =
+                    passwords.getPassword( new PasswordEntry( location, PasswordEntry.PROXY_PASSWORD ) );
+            creds.setCredentials( new AuthScope( location.getProxyHost(), getProxyPort( location ) ),
+                                  new UsernamePasswordCredentials( location.getProxyUser(), password ) );
+        }
+
+        ctx.setCredentialsProvider( creds );
+        return ctx;
+    }
+
+    private int getProxyPort( final HttpLocation location )
+    {
+        int port = location.getProxyPort();
+        if ( port < 1 )
+        {
+            port = -1;
+        }
+
+        return port;
+    }
+
+    private static ExecutorService newCacheExecutor()
+    {
+        final AtomicInteger threads = new AtomicInteger( 0 );
+        return Executors.newFixedThreadPool( DEFAULT_CACHE_THREADS, r -> {
+            final Thread t = new Thread( r, "galley-async-http-cache-" + threads.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        } );
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        client.close();
+        if ( ownsCacheExecutor )
+        {
+            cacheExecutor.shutdown();
+        }
+
+        if ( metadataStore instanceof Closeable )
+        {
+            ( (Closeable) metadataStore ).close();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htasync.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.commonjava.maven.galley.BadGatewayException;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferTimeoutException;
+import org.commonjava.maven.galley.io.checksum.ChecksumAlgorithm;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.transport.htasync.AsyncHttp;
+import org.commonjava.maven.galley.transport.htcli.ExchangeMetadataStore;
+import org.commonjava.maven.galley.transport.htcli.internal.SidecarExchangeMetadataStore;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Base for the async transport jobs. The request runs on the shared non-blocking client; its I/O happens on the
+ * client's reactor threads, and each job's {@code callAsync()} composes the rest of its work onto the exchange's
+ * future. The job's {@link java.util.concurrent.Callable#call()} only waits for that outcome. Status handling
+ * mirrors the blocking httpclient transport, so callers can't tell the two apart.
+ */
+public abstract class AbstractAsyncHttpJob
+{
+    protected final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    protected final String url;
+
+    protected final HttpLocation location;
+
+    protected final AsyncHttp http;
+
+    protected TransferException error;
+
+    private volatile Future<?> exchange;
+
+    protected AbstractAsyncHttpJob( final String url, final HttpLocation location, final AsyncHttp http )
+    {
+        this.url = url;
+        this.location = location;
+        this.http = http;
+    }
+
+    public TransferException getError()
+    {
+        return error;
+    }
+
+    /**
+     * Send the request. Nothing here waits for it: the returned future completes on a reactor thread, so anything
+     * blocking that follows (like cache I/O) has to move to {@link AsyncHttp#getCacheExecutor()}. Failures complete it
+     * with the same {@link TransferException}s the httpclient transport throws.
+     */
+    protected <T> CompletableFuture<T> execute( final HttpUriRequest request,
+                                                final HttpAsyncResponseConsumer<T> consumer )
+    {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        exchange = http.getClient()
+                       .execute( HttpAsyncMethods.create( request ), consumer, http.createContext( location ),
+                                 new FutureCallback<T>()
+                                 {
+                                     @Override
+                                     public void completed( final T response )
+                                     {
+                                         result.complete( response );
+                                     }
+
+                                     @Override
+                                     public void failed( final Exception e )
+                                     {
+                                         result.completeExceptionally( toTransferException( e ) );
+                                     }
+
+                                     @Override
+                                     public void cancelled()
+                                     {
+                                         result.completeExceptionally(
+                                                 new TransferException( "Request cancelled: {} {}",
+                                                                        request.getMethod(), url ) );
+                                     }
+                                 } );
+
+        return result;
+    }
+
+    /**
+     * The job SPI is a {@link java.util.concurrent.Callable}, so {@code call()} waits here, on the caller's thread,
+     * for the outcome of the job's {@code callAsync()}. If that fails or the wait is interrupted, the error is recorded
+     * and the fallback is returned.
+     */
+    protected <T> T await( final CompletableFuture<T> future, final T fallback )
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( final InterruptedException e )
+        {
+            final Future<?> exchange = this.exchange;
+            if ( exchange != null )
+            {
+                exchange.cancel( true );
+            }
+
+            Thread.currentThread().interrupt();
+            error = new TransferException( "Interrupted while waiting for: {}", e, url );
+        }
+        catch ( final ExecutionException e )
+        {
+            error = toTransferException( e.getCause() );
+        }
+
+        return fallback;
+    }
+
+    protected TransferException toTransferException( final Throwable error )
+    {
+        Throwable cause = error;
+        while ( cause instanceof CompletionException && cause.getCause() != null )
+        {
+            cause = cause.getCause();
+        }
+
+        if ( cause instanceof TransferException )
+        {
+            return (TransferException) cause;
+        }
+        else if ( cause instanceof ConnectTimeoutException || cause instanceof SocketTimeoutException )
+        {
+            return new TransferTimeoutException( location, url, "Repository remote request failed for: {}. Reason: {}",
+                                                 cause, url, cause.getMessage() );
+        }
+        else if ( cause instanceof IOException )
+        {
+            return new TransferLocationException( location, "Repository remote request failed for: {}. Reason: {}",
+                                                  cause, url, cause.getMessage() );
+        }
+
+        return new TransferException( "Repository remote request failed for: {}. Reason: {}", cause, url,
+                                      cause.getMessage() );
+    }
+
+    /**
+     * Returns true for one of the success statuses, and false for a missing (404) resource. Anything else becomes the
+     * same exception the httpclient transport would throw for it.
+     */
+    protected boolean checkStatus( final HttpResponse response, final Integer... successStatuses )
+            throws TransferException
+    {
+        final StatusLine line = response.getStatusLine();
+        final int sc = line.getStatusCode();
+        logger.trace( "{} : {}", line, url );
+
+        if ( sc > 399 && sc != 404 && sc != 408 && sc != 502 && sc != 503 && sc != 504 )
+        {
+            throw new TransferLocationException( location,
+                                                 "Server misconfigured or not responding normally for url %s: '%s'",
+                                                 url, line );
+        }
+        else if ( Arrays.asList( successStatuses ).contains( sc ) )
+        {
+            return true;
+        }
+        else if ( sc == HttpStatus.SC_NOT_FOUND )
+        {
+            return false;
+        }
+        else if ( sc > 499 && sc < 599 )
+        {
+            throw new BadGatewayException( location, url, sc, "HTTP request failed: %s", line );
+        }
+
+        throw new TransferLocationException( location, "HTTP request failed: %s", line );
+    }
+
+    /**
+     * Same exchange metadata the httpclient transport records for GET / HEAD, in the {@link AsyncHttp}'s store if it
+     * has one, or else in a .http-metadata.json sidecar.
+     */
+    protected void writeMetadata( final Transfer target, final ObjectMapper mapper, final HttpRequest request,
+                                  final HttpResponse response )
+    {
+        if ( target == null || mapper == null || response == null
+                || response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND )
+        {
+            return;
+        }
+
+        for ( final ChecksumAlgorithm checksum : Arrays.asList( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1,
+                                                                ChecksumAlgorithm.SHA256 ) )
+        {
+            if ( target.getPath().endsWith( checksum.getExtension() ) )
+            {
+                return;
+            }
+        }
+
+        final HttpExchangeMetadata metadata = new HttpExchangeMetadata( request, response );
+        final ExchangeMetadataStore store = http.getExchangeMetadataStore();
+        try
+        {
+            ( store != null ? store : new SidecarExchangeMetadataStore( mapper ) ).write( target, metadata );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to write metadata for HTTP exchange of: {}. Reason: {}", target, e.getMessage() );
+        }
+    }
+}
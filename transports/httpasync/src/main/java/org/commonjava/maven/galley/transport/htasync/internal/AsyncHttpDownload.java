@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htasync.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.transport.htasync.AsyncHttp;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class AsyncHttpDownload
+        extends AbstractAsyncHttpJob
+        implements DownloadJob
+{
+    private final Transfer target;
+
+    private final Map<Transfer, Long> transferSizes;
+
+    private final EventMetadata eventMetadata;
+
+    private final ObjectMapper mapper;
+
+    private final AtomicLong bytesTransferred = new AtomicLong();
+
+    private volatile HttpResponse response;
+
+    public AsyncHttpDownload( final String url, final HttpLocation location, final Transfer target,
+                              final Map<Transfer, Long> transferSizes, final EventMetadata eventMetadata,
+                              final AsyncHttp http, final ObjectMapper mapper )
+    {
+        super( url, location, http );
+        this.target = target;
+        this.transferSizes = transferSizes;
+        this.eventMetadata = eventMetadata;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public DownloadJob call()
+    {
+        return await( callAsync(), this );
+    }
+
+    /**
+     * Start the download. The returned future completes (with this job) once the content is in the cache, or the
+     * download has failed and {@link #getError()} says why.
+     */
+    public CompletableFuture<DownloadJob> callAsync()
+    {
+        final HttpGet request = new HttpGet( url );
+        final CacheStreamingConsumer consumer =
+                new CacheStreamingConsumer( target, eventMetadata, bytesTransferred, http.getCacheExecutor() );
+
+        return execute( request, consumer ).thenCompose( result -> {
+            response = result;
+            return consumer.getWritten();
+        } ).handleAsync( ( written, e ) -> {
+            if ( e != null )
+            {
+                this.error = toTransferException( e );
+            }
+            else
+            {
+                try
+                {
+                    if ( checkStatus( response, HttpStatus.SC_OK ) )
+                    {
+                        transferSizes.put( target, getTransferSize() );
+                    }
+                }
+                catch ( final TransferException te )
+                {
+                    this.error = te;
+                }
+                finally
+                {
+                    writeMetadata( target, mapper, request, response );
+                }
+            }
+
+            logger.info( "Download attempt done: {} Result:\n  target: {}\n  error: {}", url, target, error );
+            return (DownloadJob) this;
+        }, http.getCacheExecutor() );
+    }
+
+    @Override
+    public long getTransferSize()
+    {
+        final HttpResponse response = this.response;
+        final Header header = response == null ? null : response.getFirstHeader( HttpHeaders.CONTENT_LENGTH );
+        return header == null ? -1 : Long.parseLong( header.getValue() );
+    }
+
+    @Override
+    public long getBytesTransferred()
+    {
+        return bytesTransferred.get();
+    }
+
+    @Override
+    public Transfer getTransfer()
+    {
+        return target;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htasync.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.transport.ExistenceJob;
+import org.commonjava.maven.galley.transport.htasync.AsyncHttp;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+
+import java.util.concurrent.CompletableFuture;
+
+public final class AsyncHttpExistence
+        extends AbstractAsyncHttpJob
+        implements ExistenceJob
+{
+    private final Transfer transfer;
+
+    private final ObjectMapper mapper;
+
+    public AsyncHttpExistence( final String url, final HttpLocation location, final Transfer transfer,
+                               final AsyncHttp http, final ObjectMapper mapper )
+    {
+        super( url, location, http );
+        this.transfer = transfer;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public Boolean call()
+    {
+        return await( callAsync(), false );
+    }
+
+    /**
+     * Start the existence check. The returned future completes with false if the check failed; {@link #getError()}
+     * says why.
+     */
+    public CompletableFuture<Boolean> callAsync()
+    {
+        final HttpHead request = new HttpHead( url );
+        return execute( request, HttpAsyncMethods.createConsumer() ).handleAsync( ( response, e ) -> {
+            if ( e != null )
+            {
+                this.error = toTransferException( e );
+                return false;
+            }
+
+            try
+            {
+                return checkStatus( response, HttpStatus.SC_OK );
+            }
+            catch ( final TransferException te )
+            {
+                this.error = te;
+                return false;
+            }
+            finally
+            {
+                writeMetadata( transfer, mapper, request, response );
+            }
+        }, http.getCacheExecutor() );
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htasync.internal;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.ListingResult;
+import org.commonjava.maven.galley.spi.transport.ListingJob;
+import org.commonjava.maven.galley.transport.htasync.AsyncHttp;
+import org.commonjava.maven.galley.transport.htcli.internal.HttpListing;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.transport.htcli.util.HtmlLinkTokenizer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Directory listing over the async client. The HTML page is buffered by the client, then its links are read and
+ * filtered the same way {@link HttpListing} does it.
+ */
+public final class AsyncHttpListing
+        extends AbstractAsyncHttpJob
+        implements ListingJob
+{
+    private final ConcreteResource resource;
+
+    public AsyncHttpListing( final String url, final ConcreteResource resource, final AsyncHttp http )
+    {
+        super( url, (HttpLocation) resource.getLocation(), http );
+        this.resource = resource;
+    }
+
+    @Override
+    public ListingResult call()
+    {
+        return await( callAsync(), null );
+    }
+
+    /**
+     * Start the listing. The returned future completes with null if the listing wasn't found or failed;
+     * {@link #getError()} says which.
+     */
+    public CompletableFuture<ListingResult> callAsync()
+    {
+        return execute( new HttpGet( url ), HttpAsyncMethods.createConsumer() ).handleAsync( ( response, e ) -> {
+            if ( e != null )
+            {
+                this.error = toTransferException( e );
+                return null;
+            }
+
+            try
+            {
+                return readListing( response );
+            }
+            catch ( final TransferException te )
+            {
+                this.error = te;
+            }
+            catch ( final IOException ioe )
+            {
+                this.error = new TransferException( "Failed to construct directory listing for: {}. Reason: {}", ioe,
+                                                    url, ioe.getMessage() );
+            }
+
+            return null;
+        }, http.getCacheExecutor() );
+    }
+
+    private ListingResult readListing( final HttpResponse response )
+            throws TransferException, IOException
+    {
+        if ( !checkStatus( response, HttpStatus.SC_OK ) )
+        {
+            return null;
+        }
+
+        final HttpEntity entity = response.getEntity();
+        final Header contentType = entity.getContentType();
+        final Charset charset = HtmlLinkTokenizer.charsetOf( contentType == null ? null : contentType.getValue() );
+
+        final List<String> names;
+        try (InputStream in = entity.getContent())
+        {
+            names = HttpListing.readListing( HtmlLinkTokenizer.open( in, charset ), url );
+        }
+
+        return new ListingResult( resource, names.toArray( new String[names.size()] ) );
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htasync.internal;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.spi.transport.PublishJob;
+import org.commonjava.maven.galley.transport.htasync.AsyncHttp;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.util.ContentTypeUtils;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+public final class AsyncHttpPublish
+        extends AbstractAsyncHttpJob
+        implements PublishJob
+{
+    private final InputStream stream;
+
+    private final long length;
+
+    private final String contentType;
+
+    private boolean success;
+
+    public AsyncHttpPublish( final String url, final HttpLocation location, final InputStream stream,
+                             final long length, final String contentType, final AsyncHttp http )
+    {
+        super( url, location, http );
+        this.stream = stream;
+        this.length = length;
+        this.contentType = contentType == null ? ContentTypeUtils.detectContent( url ) : contentType;
+    }
+
+    @Override
+    public AsyncHttpPublish call()
+    {
+        return await( callAsync(), this );
+    }
+
+    /**
+     * Start the upload. The returned future completes (with this job) once the server has answered, or the upload
+     * has failed and {@link #getError()} says why.
+     */
+    public CompletableFuture<AsyncHttpPublish> callAsync()
+    {
+        final HttpPut put = new HttpPut( url );
+        put.setEntity( new InputStreamEntity( stream, length, ContentType.create( contentType ) ) );
+
+        return execute( put, HttpAsyncMethods.createConsumer() ).handle( ( response, e ) -> {
+            if ( e != null )
+            {
+                this.error = toTransferException( e );
+                return this;
+            }
+
+            try
+            {
+                success = checkStatus( response, HttpStatus.SC_OK, HttpStatus.SC_CREATED );
+            }
+            catch ( final TransferException te )
+            {
+                this.error = te;
+            }
+
+            return this;
+        } );
+    }
+
+    @Override
+    public boolean isSuccessful()
+    {
+        return success;
+    }
+
+    @Override
+    public long getTransferSize()
+    {
+        return length;
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htasync.internal;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.util.AbortableOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Streams a 200 response body into the target's cache output stream. The reactor only copies each chunk it delivers;
+ * opening, writing and closing the target happen in order on the cache executor, so the reactor thread never blocks
+ * on the cache. When more than {@link #MAX_BUFFERED_BYTES} are waiting to be written, input from the connection is
+ * suspended until the writes catch up.
+ * <br/>
+ * The response is returned as soon as it has been read; {@link #getWritten()} completes once the target has been
+ * closed. Other responses are returned without writing anything. If the exchange or a write fails part-way, the
+ * partial target is discarded.
+ */
+final class CacheStreamingConsumer
+        extends AsyncByteConsumer<HttpResponse>
+{
+    static final int MAX_BUFFERED_BYTES = 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Transfer target;
+
+    private final EventMetadata eventMetadata;
+
+    private final AtomicLong bytesTransferred;
+
+    private final Executor cacheExecutor;
+
+    private final Queue<Runnable> writes = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private final AtomicLong buffered = new AtomicLong();
+
+    private final AtomicReference<IOControl> suspended = new AtomicReference<>();
+
+    private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+    private volatile IOException failure;
+
+    // reactor side
+    private HttpResponse response;
+
+    private boolean streaming;
+
+    private boolean finished;
+
+    // cache side
+    private OutputStream out;
+
+    CacheStreamingConsumer( final Transfer target, final EventMetadata eventMetadata,
+                            final AtomicLong bytesTransferred, final Executor cacheExecutor )
+    {
+        this.target = target;
+        this.eventMetadata = eventMetadata;
+        this.bytesTransferred = bytesTransferred;
+        this.cacheExecutor = cacheExecutor;
+    }
+
+    /**
+     * @return completes when the content has been written to the target (right away if there was no content to
+     * write), or exceptionally if it couldn't be
+     */
+    CompletableFuture<Void> getWritten()
+    {
+        return written;
+    }
+
+    @Override
+    protected void onResponseReceived( final HttpResponse response )
+    {
+        this.response = response;
+        if ( response.getStatusLine().getStatusCode() == HttpStatus.SC_OK )
+        {
+            streaming = true;
+            submit( this::openTarget );
+        }
+        else
+        {
+            written.complete( null );
+        }
+    }
+
+    @Override
+    protected void onByteReceived( final ByteBuffer buf, final IOControl ioctrl )
+            throws IOException
+    {
+        if ( !streaming )
+        {
+            return;
+        }
+
+        final IOException error = failure;
+        if ( error != null )
+        {
+            throw error;
+        }
+
+        // the buffer is reused for the next chunk, so hand off a copy.
+        final byte[] bytes = new byte[buf.remaining()];
+        buf.get( bytes );
+
+        if ( buffered.addAndGet( bytes.length ) > MAX_BUFFERED_BYTES )
+        {
+            suspended.set( ioctrl );
+            ioctrl.suspendInput();
+
+            // the writes may have caught up before input was suspended.
+            if ( buffered.get() <= MAX_BUFFERED_BYTES / 2 )
+            {
+                resumeInput();
+            }
+        }
+
+        submit( () -> write( bytes ) );
+    }
+
+    @Override
+    protected HttpResponse buildResult( final HttpContext context )
+    {
+        finished = true;
+        if ( streaming )
+        {
+            streaming = false;
+            submit( this::closeTarget );
+        }
+
+        return response;
+    }
+
+    @Override
+    protected void releaseResources()
+    {
+        if ( streaming )
+        {
+            streaming = false;
+            submit( () -> discard( new IOException( "Download of: " + target + " did not complete." ) ) );
+        }
+        else if ( !finished )
+        {
+            written.completeExceptionally( new IOException( "Download of: " + target + " did not complete." ) );
+        }
+    }
+
+    private void openTarget()
+    {
+        try
+        {
+            out = target.openOutputStream( TransferOperation.DOWNLOAD, true, eventMetadata );
+        }
+        catch ( final IOException e )
+        {
+            fail( e );
+        }
+    }
+
+    private void write( final byte[] bytes )
+    {
+        try
+        {
+            if ( out != null && failure == null )
+            {
+                out.write( bytes );
+                bytesTransferred.addAndGet( bytes.length );
+            }
+        }
+        catch ( final IOException e )
+        {
+            fail( e );
+        }
+        finally
+        {
+            if ( buffered.addAndGet( -bytes.length ) <= MAX_BUFFERED_BYTES / 2 )
+            {
+                resumeInput();
+            }
+        }
+    }
+
+    private void closeTarget()
+    {
+        final IOException error = failure;
+        if ( error != null )
+        {
+            discard( error );
+            return;
+        }
+
+        try
+        {
+            final OutputStream stream = out;
+            out = null;
+            if ( stream != null )
+            {
+                stream.close();
+            }
+
+            written.complete( null );
+        }
+        catch ( final IOException | RuntimeException e )
+        {
+            written.completeExceptionally( e );
+        }
+    }
+
+    private void discard( final IOException cause )
+    {
+        if ( out != null )
+        {
+            final boolean aborted = AbortableOutput.abort( out, cause );
+            closeQuietly( out );
+            out = null;
+
+            if ( !aborted )
+            {
+                try
+                {
+                    logger.debug( "Download of: {} did not complete. Deleting partial target.", target );
+                    target.delete();
+                }
+                catch ( final IOException e )
+                {
+                    logger.error( String.format( "Failed to delete partial target: %s. Reason: %s", target,
+                                                 e.getMessage() ), e );
+                }
+            }
+        }
+
+        written.completeExceptionally( cause );
+    }
+
+    private void fail( final IOException error )
+    {
+        if ( failure == null )
+        {
+            failure = error;
+        }
+
+        // let the reactor see the failure (and fail the exchange) if it's waiting on us.
+        resumeInput();
+    }
+
+    private void resumeInput()
+    {
+        final IOControl ioctrl = suspended.getAndSet( null );
+        if ( ioctrl != null )
+        {
+            ioctrl.requestInput();
+        }
+    }
+
+    /**
+     * Queue cache work to run in order on the cache executor, one task at a time.
+     */
+    private void submit( final Runnable task )
+    {
+        writes.add( task );
+        if ( draining.compareAndSet( false, true ) )
+        {
+            try
+            {
+                cacheExecutor.execute( this::drain );
+            }
+            catch ( final RejectedExecutionException e )
+            {
+                logger.warn( "Cache executor is not accepting work; writing: {} on the calling thread.", target );
+                drain();
+            }
+        }
+    }
+
+    private void drain()
+    {
+        do
+        {
+            Runnable task;
+            while ( ( task = writes.poll() ) != null )
+            {
+                try
+                {
+                    task.run();
+                }
+                catch ( final RuntimeException e )
+                {
+                    fail( new IOException( e.getMessage(), e ) );
+                }
+            }
+
+            draining.set( false );
+        }
+        while ( !writes.isEmpty() && draining.compareAndSet( false, true ) );
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli;
+
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+
+import java.io.IOException;
+
+/**
+ * Keeps the {@link HttpExchangeMetadata} (request / response headers and status) of the last exchange for each
+ * resource. The transport writes it after each GET or HEAD, and reads it back for the validators it needs to
+ * revalidate expired content or resume an interrupted download.
+ */
+public interface ExchangeMetadataStore
+{
+
+    /**
+     * Record the metadata for the target's resource, replacing anything recorded for it before.
+     */
+    void write( Transfer target, HttpExchangeMetadata metadata )
+            throws IOException;
+
+    /**
+     * @return the metadata recorded for the target's resource, or null if there is none
+     */
+    HttpExchangeMetadata read( Transfer target )
+            throws IOException;
+
+    /**
+     * Forget the metadata recorded for the target's resource, if any.
+     */
+    void delete( Transfer target )
+            throws IOException;
+
+}
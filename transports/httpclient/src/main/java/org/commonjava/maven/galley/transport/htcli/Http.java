@@ -16,12 +16,15 @@
 package org.commonjava.maven.galley.transport.htcli;
 
 import java.io.Closeable;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.commonjava.maven.galley.GalleyException;
+import org.commonjava.maven.galley.transport.htcli.internal.BandwidthLimiter;
+import org.commonjava.maven.galley.transport.htcli.internal.CircuitBreakers;
 import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
 
 public interface Http
@@ -39,5 +42,45 @@ public interface Http
     HttpClientContext createContext();
 
     void cleanup( CloseableHttpClient client, HttpUriRequest request, CloseableHttpResponse response );
-    
+
+    /**
+     * @return the per-location circuit breakers requests should go through, or null if there are none
+     */
+    default CircuitBreakers getCircuitBreakers()
+    {
+        return null;
+    }
+
+    /**
+     * @return the policy for retrying and hedging idempotent requests, or null to send every request just once
+     */
+    default RetryPolicy getRetryPolicy()
+    {
+        return null;
+    }
+
+    /**
+     * @return the limiter downloaded content should be read through, or null if download bandwidth isn't shaped
+     */
+    default BandwidthLimiter getBandwidthLimiter()
+    {
+        return null;
+    }
+
+    /**
+     * @return the store HTTP exchange metadata should be kept in, or null to keep it in JSON files next to the content
+     */
+    default ExchangeMetadataStore getExchangeMetadataStore()
+    {
+        return null;
+    }
+
+    /**
+     * @return the bounded executor hedged copies of slow requests are sent from, or null to never hedge
+     */
+    default ScheduledExecutorService getHedgeExecutor()
+    {
+        return null;
+    }
+
 }
@@ -19,28 +19,35 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.TransferLocationException;
 import org.commonjava.maven.galley.config.TransportMetricConfig;
+import org.commonjava.maven.galley.event.CircuitBreakerEvent;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.event.FileEventManager;
 import org.commonjava.maven.galley.spi.transport.DownloadJob;
 import org.commonjava.maven.galley.spi.transport.ExistenceJob;
 import org.commonjava.maven.galley.spi.transport.ListingJob;
 import org.commonjava.maven.galley.spi.transport.PublishJob;
 import org.commonjava.maven.galley.spi.transport.Transport;
 import org.commonjava.maven.galley.transport.htcli.conf.GlobalHttpConfiguration;
+import org.commonjava.maven.galley.transport.htcli.internal.CircuitBreakers;
 import org.commonjava.maven.galley.transport.htcli.internal.HttpDownload;
 import org.commonjava.maven.galley.transport.htcli.internal.HttpExistence;
 import org.commonjava.maven.galley.transport.htcli.internal.HttpListing;
 import org.commonjava.maven.galley.transport.htcli.internal.HttpPublish;
+import org.commonjava.maven.galley.transport.htcli.internal.SegmentPool;
 import org.commonjava.maven.galley.transport.htcli.internal.model.WrapperHttpLocation;
 import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.util.LocationUtils;
 import org.commonjava.o11yphant.metrics.api.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.IOException;
@@ -48,6 +55,7 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import static org.commonjava.maven.galley.util.UrlUtils.buildUrl;
 
@@ -73,6 +81,15 @@ public class HttpClientTransport
     @Inject
     private TransportMetricConfig metricConfig;
 
+    @Inject
+    private Instance<FileEventManager> fileEventManagers;
+
+    private volatile FileEventManager fileEventManager;
+
+    private Consumer<CircuitBreakerEvent> breakerListener;
+
+    private SegmentPool segmentPool;
+
     protected HttpClientTransport()
     {
     }
@@ -84,17 +101,77 @@ public class HttpClientTransport
 
     public HttpClientTransport( final Http http, final ObjectMapper mapper, final GlobalHttpConfiguration globalConfig,
                                 final MetricRegistry metricRegistry, final TransportMetricConfig metricConfig )
+    {
+        this( http, mapper, globalConfig, metricRegistry, metricConfig, null );
+    }
+
+    /**
+     * @param fileEventManager (optional) is told about circuit breaker state changes
+     */
+    public HttpClientTransport( final Http http, final ObjectMapper mapper, final GlobalHttpConfiguration globalConfig,
+                                final MetricRegistry metricRegistry, final TransportMetricConfig metricConfig,
+                                final FileEventManager fileEventManager )
     {
         this.http = http;
         this.mapper = mapper;
         this.globalConfig = globalConfig;
         this.metricRegistry = metricRegistry;
         this.metricConfig = metricConfig;
+        this.fileEventManager = fileEventManager;
+        watchCircuitBreakers();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( fileEventManagers != null && !fileEventManagers.isUnsatisfied() && !fileEventManagers.isAmbiguous() )
+        {
+            fileEventManager = fileEventManagers.get();
+        }
+
+        watchCircuitBreakers();
+    }
+
+    /**
+     * Registers (once) a listener that forwards breaker state changes to whichever {@link FileEventManager} this
+     * transport currently has. The breakers may be shared with other transports, so {@link #shutdown()} removes it.
+     */
+    private synchronized void watchCircuitBreakers()
+    {
+        final CircuitBreakers breakers = http.getCircuitBreakers();
+        if ( breakers == null || fileEventManager == null || breakerListener != null )
+        {
+            return;
+        }
+
+        breakerListener = event -> {
+            final FileEventManager events = fileEventManager;
+            if ( events != null )
+            {
+                events.fire( event );
+            }
+        };
+        breakers.addListener( breakerListener );
     }
 
     @PreDestroy
     public void shutdown()
     {
+        synchronized ( this )
+        {
+            if ( segmentPool != null )
+            {
+                segmentPool.shutdown();
+            }
+
+            final CircuitBreakers breakers = http.getCircuitBreakers();
+            if ( breakers != null && breakerListener != null )
+            {
+                breakers.removeListener( breakerListener );
+                breakerListener = null;
+            }
+        }
+
         try
         {
             http.close();
@@ -111,8 +188,25 @@ public class HttpClientTransport
                                           final EventMetadata eventMetadata )
         throws TransferException
     {
-        return new HttpDownload( getUrl( resource ), getHttpLocation( resource.getLocation() ), target, transferSizes, eventMetadata,
-                                 http, mapper, metricRegistry, metricConfig );
+        final HttpLocation location = getHttpLocation( resource.getLocation() );
+        final SegmentPool segments =
+                LocationUtils.getSegmentedDownloadThreshold( location ) > 0 ? getSegmentPool() : null;
+
+        return new HttpDownload( getUrl( resource ), location, target, transferSizes, eventMetadata, http, mapper,
+                                 true, metricRegistry, metricConfig, segments );
+    }
+
+    /**
+     * Shared by the segmented downloads of all locations, only started once some location enables them.
+     */
+    private synchronized SegmentPool getSegmentPool()
+    {
+        if ( segmentPool == null )
+        {
+            segmentPool = new SegmentPool();
+        }
+
+        return segmentPool;
     }
 
     @Override
@@ -196,4 +290,11 @@ public class HttpClientTransport
         return true;
     }
 
+    @Override
+    public boolean isAvailable( final Location location )
+    {
+        final CircuitBreakers breakers = http.getCircuitBreakers();
+        return breakers == null || breakers.isAvailable( location );
+    }
+
 }
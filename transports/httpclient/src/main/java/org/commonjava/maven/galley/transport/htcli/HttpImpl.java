@@ -27,6 +27,11 @@ import org.commonjava.maven.galley.GalleyException;
 import org.commonjava.maven.galley.TransferLocationException;
 import org.commonjava.maven.galley.auth.PasswordEntry;
 import org.commonjava.maven.galley.spi.auth.PasswordManager;
+import org.commonjava.maven.galley.transport.htcli.conf.HttpImplConfig;
+import org.commonjava.maven.galley.transport.htcli.internal.BackoffRetryPolicy;
+import org.commonjava.maven.galley.transport.htcli.internal.BandwidthLimiter;
+import org.commonjava.maven.galley.transport.htcli.internal.CircuitBreakers;
+import org.commonjava.maven.galley.transport.htcli.internal.HttpClientPool;
 import org.commonjava.maven.galley.transport.htcli.internal.util.HttpFactoryPasswordDelegate;
 import org.commonjava.maven.galley.transport.htcli.internal.util.LocationLookup;
 import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
@@ -45,30 +50,87 @@ import javax.enterprise.context.ApplicationScoped;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @ApplicationScoped
 public class HttpImpl
         implements Http, Closeable
 {
+    /**
+     * Hedges are sent from this many threads at most; when they are all busy, further hedges wait their turn (and are
+     * skipped if the request they'd duplicate has finished meanwhile).
+     */
+    public static final int DEFAULT_HEDGE_THREADS = 4;
+
     private final PasswordManager passwords;
 
     private final HttpFactoryIfc httpFactory;
 
     private final LocationLookup locationLookup;
 
+    private final HttpClientPool clientPool;
+
+    private final CircuitBreakers circuitBreakers;
+
+    private final RetryPolicy retryPolicy;
+
+    private final BandwidthLimiter bandwidthLimiter;
+
+    private final ExchangeMetadataStore metadataStore;
+
+    private final ScheduledExecutorService hedgeExecutor;
+
+    private final boolean ownsHedgeExecutor;
+
+    public HttpImpl( final PasswordManager passwords )
+    {
+        this( passwords, Optional.empty() );
+    }
+
+    /**
+     * Uses the default collaborators, which report no metrics. Embedders that want pool / breaker metrics pass their
+     * providers through {@link HttpImplConfig}.
+     */
     public HttpImpl( final PasswordManager passwords, Optional<TraceManager> traceManager )
+    {
+        this( passwords, traceManager, new HttpImplConfig() );
+    }
+
+    /**
+     * @param config collaborators to use instead of the defaults; see {@link HttpImplConfig}
+     */
+    public HttpImpl( final PasswordManager passwords, Optional<TraceManager> traceManager,
+                     final HttpImplConfig config )
     {
         this.passwords = passwords;
         this.locationLookup = new LocationLookup();
         this.httpFactory = new SpanningHttpFactory(
                         new HttpFactory( new HttpFactoryPasswordDelegate( passwords, locationLookup ) ), traceManager );
+        this.clientPool = config.getClientPool() == null ?
+                        new HttpClientPool( HttpClientPool.DEFAULT_IDLE_MILLIS, HttpClientPool.DEFAULT_MAX_LIFE_MILLIS,
+                                            config.getMeteringProvider(), config.getTimingProviders() ) :
+                        config.getClientPool();
+        this.circuitBreakers = config.getCircuitBreakers() == null ?
+                        new CircuitBreakers( config.getMeteringProvider(), config.getGaugeProvider() ) :
+                        config.getCircuitBreakers();
+        this.retryPolicy = config.getRetryPolicy() == null ? new BackoffRetryPolicy() : config.getRetryPolicy();
+        this.bandwidthLimiter =
+                        config.getBandwidthLimiter() == null ? new BandwidthLimiter() : config.getBandwidthLimiter();
+        this.metadataStore = config.getExchangeMetadataStore();
+        this.ownsHedgeExecutor = config.getHedgeExecutor() == null;
+        this.hedgeExecutor = ownsHedgeExecutor ? newHedgeExecutor() : config.getHedgeExecutor();
     }
 
-    public HttpImpl( final PasswordManager passwords )
+    private static ScheduledExecutorService newHedgeExecutor()
     {
-        this.passwords = passwords;
-        this.locationLookup = new LocationLookup();
-        this.httpFactory = new HttpFactory( new HttpFactoryPasswordDelegate( passwords, locationLookup ) );
+        final AtomicInteger threads = new AtomicInteger( 0 );
+        return Executors.newScheduledThreadPool( DEFAULT_HEDGE_THREADS, r -> {
+            final Thread t = new Thread( r, "galley-http-hedge-" + threads.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        } );
     }
 
     @Override
@@ -78,16 +140,30 @@ public class HttpImpl
         return createClient( null );
     }
 
+    /**
+     * Clients for a location come from the {@link HttpClientPool}. Closing the returned client (as
+     * {@link #cleanup(CloseableHttpClient, HttpUriRequest, CloseableHttpResponse)} does) returns it to the pool.
+     */
     @Override
     public CloseableHttpClient createClient( final HttpLocation location )
             throws GalleyException
+    {
+        if ( location == null )
+        {
+            return createSiteClient( null );
+        }
+
+        locationLookup.register( location );
+        return clientPool.lease( location, this::createSiteClient );
+    }
+
+    private CloseableHttpClient createSiteClient( final HttpLocation location )
+            throws GalleyException
     {
         try
         {
             if ( location != null )
             {
-                locationLookup.register( location );
-
                 int maxConnections = LocationUtils.getMaxConnections( location );
                 SiteConfigBuilder configBuilder = new SiteConfigBuilder( location.getName(), location.getUri() );
                 configBuilder.withAttributes( location.getAttributes() )
@@ -177,9 +253,49 @@ public class HttpImpl
         HttpUtil.cleanupResources( client, request, response );
     }
 
+    @Override
+    public CircuitBreakers getCircuitBreakers()
+    {
+        return circuitBreakers;
+    }
+
+    @Override
+    public RetryPolicy getRetryPolicy()
+    {
+        return retryPolicy;
+    }
+
+    @Override
+    public BandwidthLimiter getBandwidthLimiter()
+    {
+        return bandwidthLimiter;
+    }
+
+    @Override
+    public ExchangeMetadataStore getExchangeMetadataStore()
+    {
+        return metadataStore;
+    }
+
+    @Override
+    public ScheduledExecutorService getHedgeExecutor()
+    {
+        return hedgeExecutor;
+    }
+
     @Override
     public void close()
             throws IOException
     {
+        if ( ownsHedgeExecutor )
+        {
+            hedgeExecutor.shutdownNow();
+        }
+
+        clientPool.close();
+        if ( metadataStore instanceof Closeable )
+        {
+            ( (Closeable) metadataStore ).close();
+        }
     }
 }
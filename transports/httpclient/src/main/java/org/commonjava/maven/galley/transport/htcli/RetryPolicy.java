@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli;
+
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+
+import java.io.IOException;
+
+/**
+ * Decides when a failed HTTP request is sent again, and when a slow one is hedged with a duplicate. It is only
+ * consulted for idempotent (GET and HEAD) requests; everything else goes out exactly once.
+ */
+public interface RetryPolicy
+{
+
+    /**
+     * Called after an attempt ended with a server error, a request timeout, or an I/O error.
+     *
+     * @param attempt number of the attempt that just failed, starting with 1
+     * @param statusCode status code of the failed response, or -1 if the attempt failed with an error
+     * @param error the error the attempt failed with, or null if there was a response
+     * @return milliseconds to wait before sending the request again, or -1 to give up
+     */
+    long getRetryDelay( HttpLocation location, int attempt, int statusCode, IOException error );
+
+    /**
+     * @return milliseconds to wait for a response before sending a duplicate request (whichever responds first is
+     * used), or -1 to not hedge
+     */
+    long getHedgeDelay( HttpLocation location );
+
+    /**
+     * Called with the time it took the location to respond to each request that didn't fail.
+     */
+    void recordLatency( HttpLocation location, long millis );
+
+}
@@ -60,10 +60,23 @@ public class UploadMetadataGenTransferDecorator
 
     private Function<String, TimingProvider> timerProviderFunction;
 
+    private ExchangeMetadataStore metadataStore;
+
     public UploadMetadataGenTransferDecorator( SpecialPathManager specialPathManager, Function<String, TimingProvider> timerProviderFunction )
+    {
+        this( specialPathManager, timerProviderFunction, null );
+    }
+
+    /**
+     * @param metadataStore where to keep the generated metadata; null writes the usual http-metadata.json files
+     */
+    public UploadMetadataGenTransferDecorator( SpecialPathManager specialPathManager,
+                                               Function<String, TimingProvider> timerProviderFunction,
+                                               ExchangeMetadataStore metadataStore )
     {
         this.specialPathManager = specialPathManager;
         this.timerProviderFunction = timerProviderFunction;
+        this.metadataStore = metadataStore;
     }
 
     @Override
@@ -102,6 +115,12 @@ public class UploadMetadataGenTransferDecorator
         logger.debug( "http-metadata write-timer is: {}", writeTimer );
         try
         {
+            if ( metadataStore != null )
+            {
+                writeToStore( target, requestHeaders );
+                return;
+            }
+
             Transfer metaTxfr = target.getSiblingMeta( FILE_EXTENSION );
             if ( metaTxfr == null )
             {
@@ -171,6 +190,26 @@ public class UploadMetadataGenTransferDecorator
         }
     }
 
+    private void writeToStore( final Transfer target, final Map<String, List<String>> requestHeaders )
+    {
+        try
+        {
+            metadataStore.write( target, new HttpExchangeMetadataFromRequestHeader( requestHeaders ) );
+        }
+        catch ( final IOException e )
+        {
+            if ( logger.isTraceEnabled() )
+            {
+                logger.trace( String.format( "Failed to write metadata for HTTP exchange of: %s. Reason: %s", target,
+                                             e.getMessage() ), e );
+            }
+            else
+            {
+                logger.warn( "Failed to write metadata for HTTP exchange of: {}. Reason: {}", target, e.getMessage() );
+            }
+        }
+    }
+
     private class HttpMetadataWrapperOutputStream
             extends IdempotentCloseOutputStream
     {
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.conf;
+
+import org.commonjava.maven.galley.spi.metrics.GaugeProvider;
+import org.commonjava.maven.galley.spi.metrics.MeteringProvider;
+import org.commonjava.maven.galley.spi.metrics.TimingProvider;
+import org.commonjava.maven.galley.transport.htcli.ExchangeMetadataStore;
+import org.commonjava.maven.galley.transport.htcli.HttpImpl;
+import org.commonjava.maven.galley.transport.htcli.RetryPolicy;
+import org.commonjava.maven.galley.transport.htcli.internal.BandwidthLimiter;
+import org.commonjava.maven.galley.transport.htcli.internal.CircuitBreakers;
+import org.commonjava.maven.galley.transport.htcli.internal.HttpClientPool;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+/**
+ * Optional collaborators for {@link HttpImpl}. Anything left unset gets the default: a plain client pool and set of
+ * circuit breakers, a {@link org.commonjava.maven.galley.transport.htcli.internal.BackoffRetryPolicy}, an unshaped
+ * bandwidth limiter, sidecar exchange metadata files, and a hedge executor owned (and shut down) by the
+ * {@link HttpImpl}. The default collaborators report their metrics to the metering / gauge / timing providers set
+ * here, if any; collaborators set explicitly are used as they are.
+ */
+public class HttpImplConfig
+{
+    private HttpClientPool clientPool;
+
+    private CircuitBreakers circuitBreakers;
+
+    private RetryPolicy retryPolicy;
+
+    private BandwidthLimiter bandwidthLimiter;
+
+    private ExchangeMetadataStore exchangeMetadataStore;
+
+    private ScheduledExecutorService hedgeExecutor;
+
+    private MeteringProvider meteringProvider;
+
+    private GaugeProvider gaugeProvider;
+
+    private Function<String, TimingProvider> timingProviders;
+
+    public HttpImplConfig withClientPool( final HttpClientPool clientPool )
+    {
+        this.clientPool = clientPool;
+        return this;
+    }
+
+    public HttpClientPool getClientPool()
+    {
+        return clientPool;
+    }
+
+    public HttpImplConfig withCircuitBreakers( final CircuitBreakers circuitBreakers )
+    {
+        this.circuitBreakers = circuitBreakers;
+        return this;
+    }
+
+    public CircuitBreakers getCircuitBreakers()
+    {
+        return circuitBreakers;
+    }
+
+    public HttpImplConfig withRetryPolicy( final RetryPolicy retryPolicy )
+    {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public RetryPolicy getRetryPolicy()
+    {
+        return retryPolicy;
+    }
+
+    public HttpImplConfig withBandwidthLimiter( final BandwidthLimiter bandwidthLimiter )
+    {
+        this.bandwidthLimiter = bandwidthLimiter;
+        return this;
+    }
+
+    public BandwidthLimiter getBandwidthLimiter()
+    {
+        return bandwidthLimiter;
+    }
+
+    /**
+     * Where HTTP exchange metadata is kept, instead of JSON files next to the content. If it's
+     * {@link java.io.Closeable}, the {@link HttpImpl} closes it.
+     */
+    public HttpImplConfig withExchangeMetadataStore( final ExchangeMetadataStore exchangeMetadataStore )
+    {
+        this.exchangeMetadataStore = exchangeMetadataStore;
+        return this;
+    }
+
+    public ExchangeMetadataStore getExchangeMetadataStore()
+    {
+        return exchangeMetadataStore;
+    }
+
+    /**
+     * Where hedged requests are sent from. An executor set here is left running when the {@link HttpImpl} closes.
+     */
+    public HttpImplConfig withHedgeExecutor( final ScheduledExecutorService hedgeExecutor )
+    {
+        this.hedgeExecutor = hedgeExecutor;
+        return this;
+    }
+
+    public ScheduledExecutorService getHedgeExecutor()
+    {
+        return hedgeExecutor;
+    }
+
+    public HttpImplConfig withMeteringProvider( final MeteringProvider meteringProvider )
+    {
+        this.meteringProvider = meteringProvider;
+        return this;
+    }
+
+    public MeteringProvider getMeteringProvider()
+    {
+        return meteringProvider;
+    }
+
+    public HttpImplConfig withGaugeProvider( final GaugeProvider gaugeProvider )
+    {
+        this.gaugeProvider = gaugeProvider;
+        return this;
+    }
+
+    public GaugeProvider getGaugeProvider()
+    {
+        return gaugeProvider;
+    }
+
+    public HttpImplConfig withTimingProviders( final Function<String, TimingProvider> timingProviders )
+    {
+        this.timingProviders = timingProviders;
+        return this;
+    }
+
+    public Function<String, TimingProvider> getTimingProviders()
+    {
+        return timingProviders;
+    }
+}
@@ -16,13 +16,14 @@
 package org.commonjava.maven.galley.transport.htcli.internal;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.SocketTimeoutException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.apache.http.NoHttpResponseException;
 import org.apache.http.StatusLine;
@@ -33,19 +34,21 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.commonjava.maven.galley.GalleyException;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferLocationUnavailableException;
 import org.commonjava.maven.galley.TransferTimeoutException;
 import org.commonjava.maven.galley.io.checksum.ChecksumAlgorithm;
 import org.commonjava.maven.galley.model.Transfer;
-import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.transport.htcli.ExchangeMetadataStore;
 import org.commonjava.maven.galley.transport.htcli.Http;
+import org.commonjava.maven.galley.transport.htcli.RetryPolicy;
 import org.commonjava.maven.galley.transport.htcli.internal.util.TransferResponseUtils;
 import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
 import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
 import org.commonjava.maven.galley.transport.htcli.util.HttpUtil;
+import org.commonjava.maven.galley.util.LocationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import static org.commonjava.o11yphant.trace.TraceManager.addFieldToActiveSpan;
@@ -102,10 +105,50 @@ public abstract class AbstractHttpJob
     protected boolean executeHttp()
         throws TransferException
     {
+        final RetryPolicy retryPolicy = isIdempotent() ? http.getRetryPolicy() : null;
+        if ( isIdempotent() )
+        {
+            negotiateEncoding();
+        }
+
         try
         {
             client = http.createClient( location );
-            response = client.execute( request, http.createContext( location ) );
+            for ( int attempt = 1; ; attempt++ )
+            {
+                int status = -1;
+                IOException failure = null;
+                try
+                {
+                    status = send( retryPolicy );
+                }
+                catch ( final IOException e )
+                {
+                    failure = e;
+                }
+
+                final boolean failed = failure != null || status > 499 || status == HttpStatus.SC_REQUEST_TIMEOUT;
+                final long delay = retryPolicy == null || !failed ?
+                                -1 :
+                                retryPolicy.getRetryDelay( location, attempt, status, failure );
+                if ( delay < 0 )
+                {
+                    if ( failure != null )
+                    {
+                        throw failure;
+                    }
+
+                    break;
+                }
+
+                logger.debug( "Attempt {} of {} {} failed ({}). Retrying in {}ms.", attempt, request.getMethod(), url,
+                              failure == null ? status : failure.getMessage(), delay );
+
+                // releases the connection and resets the request, so it can be sent again
+                HttpUtil.cleanupResources( null, request, response );
+                response = null;
+                Thread.sleep( delay );
+            }
 
             final StatusLine line = response.getStatusLine();
             final int sc = line.getStatusCode();
@@ -126,6 +169,12 @@ public abstract class AbstractHttpJob
                 return false;
             }
         }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            addFieldToActiveSpan( "target-error-reason", "interrupted" );
+            throw new TransferException( "Interrupted while waiting to retry: {}", e, url );
+        }
         catch ( final NoHttpResponseException | ConnectTimeoutException | SocketTimeoutException e )
         {
             addFieldToActiveSpan( "target-error-reason", "timeout" );
@@ -140,6 +189,10 @@ public abstract class AbstractHttpJob
             throw new TransferLocationException( location, "Repository remote request failed for: {}. Reason: {}", e, url,
                                          e.getMessage() );
         }
+        catch ( TransferLocationUnavailableException e )
+        {
+            throw e;
+        }
         catch ( TransferLocationException e )
         {
             addFieldToActiveSpan( "target-error-reason", "no transport" );
@@ -164,10 +217,10 @@ public abstract class AbstractHttpJob
             if ( "GET".equalsIgnoreCase( method ) || "HEAD".equalsIgnoreCase( method ) )
             {
                 Transfer target = getTransfer();
-                ObjectMapper mapper = getMetadataObjectMapper();
-                if ( target != null && mapper != null )
+                ExchangeMetadataStore store = getMetadataStore();
+                if ( target != null && store != null )
                 {
-                    writeMetadata( target, mapper );
+                    writeMetadata( target, store );
                 }
             }
         }
@@ -175,6 +228,99 @@ public abstract class AbstractHttpJob
         return true;
     }
 
+    /**
+     * Send the request once (or twice, if it gets hedged), going through the location's circuit breaker.
+     *
+     * @return the response status code
+     */
+    private int send( final RetryPolicy retryPolicy )
+        throws IOException, InterruptedException, TransferException
+    {
+        final CircuitBreakers breakers = http.getCircuitBreakers();
+        final LocationCircuitBreaker breaker = breakers == null ? null : breakers.get( location );
+        if ( breaker != null && !breaker.tryAcquire() )
+        {
+            addFieldToActiveSpan( "target-error-reason", "circuit open" );
+            throw new TransferLocationUnavailableException( location,
+                                                            "Circuit breaker is open for: {}. Not sending request for: {}",
+                                                            location.getName(), url );
+        }
+
+        // anything short of a response that says the server is fine counts against the breaker.
+        boolean upstreamFailed = true;
+        try
+        {
+            final ScheduledExecutorService hedges = http.getHedgeExecutor();
+            final long hedgeDelay =
+                            retryPolicy == null || hedges == null ? -1 : retryPolicy.getHedgeDelay( location );
+            final long start = System.nanoTime();
+            if ( hedgeDelay < 0 )
+            {
+                response = client.execute( request, http.createContext( location ) );
+            }
+            else
+            {
+                final HedgedExchange.Attempt winner =
+                                new HedgedExchange( client, () -> http.createContext( location ), hedges ).execute(
+                                                request, hedgeDelay );
+                request = winner.getRequest();
+                response = winner.getResponse();
+            }
+
+            final int sc = response.getStatusLine().getStatusCode();
+            upstreamFailed = sc > 499 || sc == HttpStatus.SC_REQUEST_TIMEOUT;
+            if ( retryPolicy != null && !upstreamFailed )
+            {
+                retryPolicy.recordLatency( location, TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) );
+            }
+
+            return sc;
+        }
+        finally
+        {
+            if ( breaker != null )
+            {
+                if ( upstreamFailed )
+                {
+                    breaker.onFailure();
+                }
+                else
+                {
+                    breaker.onSuccess();
+                }
+            }
+        }
+    }
+
+    /**
+     * The client asks for gzip / deflate and decodes the response before we see it, so the cache (and the checksums
+     * computed as it's written) always get the decoded content. Ask for the content as-is instead when the location
+     * opts out, when it's compressed already, or when requesting a byte range: range offsets count decoded bytes, and
+     * would be wrong against a compressed representation.
+     */
+    private void negotiateEncoding()
+    {
+        if ( request.containsHeader( HttpUtil.ACCEPT_ENCODING ) )
+        {
+            return;
+        }
+
+        if ( request.containsHeader( HttpHeaders.RANGE ) || !LocationUtils.isCompressedDownloads( location )
+                || HttpUtil.isPrecompressed( request.getURI().getPath() ) )
+        {
+            request.setHeader( HttpUtil.ACCEPT_ENCODING, HttpUtil.IDENTITY_ENCODING );
+        }
+    }
+
+    /**
+     * Only GET and HEAD requests are safe to send more than once.
+     */
+    private boolean isIdempotent()
+    {
+        final String method = request.getMethod();
+        return "GET".equalsIgnoreCase( method ) || "HEAD".equalsIgnoreCase( method );
+    }
+
     /* for GET/HEAD request, need to override below two methods for writeMetadata() */
 
     protected Transfer getTransfer()
@@ -187,7 +333,23 @@ public abstract class AbstractHttpJob
         return null;
     }
 
-    private void writeMetadata( final Transfer target, final ObjectMapper mapper )
+    /**
+     * The store exchange metadata goes to: the one configured on {@link Http}, or JSON sidecar files written with the
+     * job's mapper. Jobs without a mapper don't keep exchange metadata at all.
+     */
+    protected ExchangeMetadataStore getMetadataStore()
+    {
+        final ObjectMapper mapper = getMetadataObjectMapper();
+        if ( mapper == null )
+        {
+            return null;
+        }
+
+        final ExchangeMetadataStore store = http.getExchangeMetadataStore();
+        return store != null ? store : new SidecarExchangeMetadataStore( mapper );
+    }
+
+    private void writeMetadata( final Transfer target, final ExchangeMetadataStore store )
     {
         if ( target == null || request == null || response == null )
         {
@@ -202,6 +364,13 @@ public abstract class AbstractHttpJob
             return;
         }
 
+        // a 304 revalidates the metadata we already have; it doesn't replace it
+        if ( response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED )
+        {
+            logger.trace( "Skip to write HTTP exchange metadata for a not-modified response." );
+            return;
+        }
+
         if ( target.getPath().endsWith( ChecksumAlgorithm.MD5.getExtension() ) || target.getPath()
                                                                                         .endsWith( ChecksumAlgorithm.SHA1
                                                                                                                    .getExtension() )
@@ -212,48 +381,9 @@ public abstract class AbstractHttpJob
         }
 
         logger.trace( "Writing HTTP exchange metadata. Request: {}. Response: {}", request, response );
-        Transfer metaTxfr = target.getSiblingMeta( HttpExchangeMetadata.FILE_EXTENSION );
-        if ( metaTxfr == null )
-        {
-            if ( target.isDirectory() )
-            {
-                logger.trace( "DIRECTORY. Using HTTP exchange metadata file INSIDE directory called: {}", HttpExchangeMetadata.FILE_EXTENSION );
-                metaTxfr = target.getChild( HttpExchangeMetadata.FILE_EXTENSION );
-            }
-            else
-            {
-                logger.trace( "SKIP: Cannot retrieve HTTP exchange metadata Transfer instance for: {}", target );
-                return;
-            }
-        }
-
-        final HttpExchangeMetadata metadata = new HttpExchangeMetadata( request, response );
-        OutputStream out = null;
         try
         {
-            final Transfer finalMeta = metaTxfr;
-            out = metaTxfr.openOutputStream( TransferOperation.GENERATE, false );
-            logger.trace( "Writing HTTP exchange metadata:\n\n{}\n\n", new Object()
-            {
-                @Override
-                public String toString()
-                {
-                    try
-                    {
-                        return mapper.writeValueAsString( metadata );
-                    }
-                    catch ( final JsonProcessingException e )
-                    {
-                        addFieldToActiveSpan( "httpmeta-error-reason", "JSON error" );
-                        addFieldToActiveSpan( "httpmeta-error", e.getClass().getSimpleName() );
-                        logger.warn( String.format("Failed to write HTTP exchange metadata: %s. Reason: %s", finalMeta, e.getMessage()), e );
-                    }
-
-                    return "ERROR RENDERING METADATA";
-                }
-            } );
-
-            out.write( mapper.writeValueAsBytes( metadata ) );
+            store.write( target, new HttpExchangeMetadata( request, response ) );
         }
         catch ( final IOException e )
         {
@@ -261,18 +391,14 @@ public abstract class AbstractHttpJob
             addFieldToActiveSpan( "httpmeta-error", e.getClass().getSimpleName() );
             if ( logger.isTraceEnabled() )
             {
-                logger.trace( String.format( "Failed to write metadata for HTTP exchange to: %s. Reason: %s", metaTxfr,
+                logger.trace( String.format( "Failed to write metadata for HTTP exchange of: %s. Reason: %s", target,
                                              e.getMessage() ), e );
             }
             else
             {
-                logger.warn( "Failed to write metadata for HTTP exchange to: {}. Reason: {}", metaTxfr, e.getMessage() );
+                logger.warn( "Failed to write metadata for HTTP exchange of: {}. Reason: {}", target, e.getMessage() );
             }
         }
-        finally
-        {
-            IOUtils.closeQuietly( out );
-        }
     }
 
     protected void cleanup()
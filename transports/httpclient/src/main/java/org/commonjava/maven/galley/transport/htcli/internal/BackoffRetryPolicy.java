@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.NoHttpResponseException;
+import org.commonjava.maven.galley.transport.htcli.RetryPolicy;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.util.LocationUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Default {@link RetryPolicy}, configured through location attributes (see
+ * {@link LocationUtils#getRetryMaxRetries}, {@link LocationUtils#getHedgePercentile}).
+ * <br/>
+ * Only gateway errors (502, 503, 504) and timeouts are retried. The delay doubles with each retry, up to the location's
+ * maximum, and half of it is randomized so that clients that failed together don't retry together.
+ * <br/>
+ * Requests are hedged once the location's recent response times are known: a request still waiting after the
+ * configured percentile of the last {@link #LATENCY_SAMPLES} response times gets a duplicate.
+ */
+public final class BackoffRetryPolicy
+        implements RetryPolicy
+{
+    static final int LATENCY_SAMPLES = 100;
+
+    /**
+     * Don't hedge off a percentile of just a handful of samples.
+     */
+    static final int MIN_LATENCY_SAMPLES = 20;
+
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    @Override
+    public long getRetryDelay( final HttpLocation location, final int attempt, final int statusCode,
+                               final IOException error )
+    {
+        if ( attempt > LocationUtils.getRetryMaxRetries( location ) || !isTransient( statusCode, error ) )
+        {
+            return -1;
+        }
+
+        final long base = LocationUtils.getRetryBackoffMillis( location );
+        final long max = LocationUtils.getRetryMaxBackoffMillis( location );
+        final long delay = Math.min( max, base << Math.min( attempt - 1, 20 ) );
+
+        return delay / 2 + ThreadLocalRandom.current().nextLong( delay / 2 + 1 );
+    }
+
+    @Override
+    public long getHedgeDelay( final HttpLocation location )
+    {
+        final int percentile = LocationUtils.getHedgePercentile( location );
+        if ( percentile < 0 )
+        {
+            return -1;
+        }
+
+        final LatencyWindow window = latencies.get( location.getName() );
+        return window == null ? -1 : window.percentile( percentile );
+    }
+
+    @Override
+    public void recordLatency( final HttpLocation location, final long millis )
+    {
+        if ( LocationUtils.getHedgePercentile( location ) > 0 )
+        {
+            latencies.computeIfAbsent( location.getName(), k -> new LatencyWindow() ).add( millis );
+        }
+    }
+
+    private boolean isTransient( final int statusCode, final IOException error )
+    {
+        if ( error != null )
+        {
+            // SocketTimeoutException and ConnectTimeoutException are both InterruptedIOExceptions
+            return error instanceof InterruptedIOException || error instanceof NoHttpResponseException;
+        }
+
+        return statusCode == HttpStatus.SC_BAD_GATEWAY || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE
+                        || statusCode == HttpStatus.SC_GATEWAY_TIMEOUT;
+    }
+
+    private static final class LatencyWindow
+    {
+        private final long[] samples = new long[LATENCY_SAMPLES];
+
+        private int count;
+
+        private int next;
+
+        synchronized void add( final long millis )
+        {
+            samples[next] = millis;
+            next = ( next + 1 ) % samples.length;
+            count = Math.min( count + 1, samples.length );
+        }
+
+        long percentile( final int percentile )
+        {
+            final long[] sorted;
+            synchronized ( this )
+            {
+                if ( count < MIN_LATENCY_SAMPLES )
+                {
+                    return -1;
+                }
+
+                sorted = Arrays.copyOf( samples, count );
+            }
+
+            Arrays.sort( sorted );
+            return Math.max( 1, sorted[Math.min( sorted.length - 1, sorted.length * percentile / 100 )] );
+        }
+    }
+}
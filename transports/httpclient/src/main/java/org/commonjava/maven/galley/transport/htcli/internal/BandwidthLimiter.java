@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.util.LocationUtils;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shapes download bandwidth: content read from a location that sets {@link LocationUtils#getMaxBytesPerSecond} goes
+ * through that location's token bucket, and all content (from any location) goes through the global one, if there
+ * is a global limit. Concurrent downloads from one location share its bucket.
+ */
+public final class BandwidthLimiter
+{
+    private final TokenBucket global;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    public BandwidthLimiter()
+    {
+        this( -1 );
+    }
+
+    /**
+     * @param globalBytesPerSecond cap on the combined download rate of all locations; zero or less means no cap
+     */
+    public BandwidthLimiter( final long globalBytesPerSecond )
+    {
+        this.global = globalBytesPerSecond > 0 ? new TokenBucket( globalBytesPerSecond ) : null;
+    }
+
+    /**
+     * Account for bytes just read from the location, waiting as long as its limit (and the global one) requires
+     * before they're passed on.
+     */
+    public void acquire( final HttpLocation location, final int bytes )
+            throws InterruptedIOException
+    {
+        final TokenBucket bucket = getBucket( location );
+        if ( bucket != null )
+        {
+            bucket.acquire( bytes );
+        }
+
+        if ( global != null )
+        {
+            global.acquire( bytes );
+        }
+    }
+
+    private TokenBucket getBucket( final HttpLocation location )
+    {
+        final long rate = LocationUtils.getMaxBytesPerSecond( location );
+        if ( rate < 1 )
+        {
+            buckets.remove( location.getName() );
+            return null;
+        }
+
+        final TokenBucket bucket = buckets.get( location.getName() );
+        if ( bucket != null && bucket.getBytesPerSecond() == rate )
+        {
+            return bucket;
+        }
+
+        // new location, or its limit changed
+        return buckets.compute( location.getName(), ( name, existing ) -> existing != null
+                        && existing.getBytesPerSecond() == rate ? existing : new TokenBucket( rate ) );
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.commonjava.maven.galley.event.CircuitBreakerEvent;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.spi.metrics.GaugeProvider;
+import org.commonjava.maven.galley.spi.metrics.MeteringProvider;
+import org.commonjava.maven.galley.util.LocationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The {@link LocationCircuitBreaker}s of the HTTP transport, one per location name, for the locations that enable
+ * them (via {@link Location#CIRCUIT_BREAKER_FAILURE_RATE}). State changes are logged, counted, and handed to the
+ * registered listeners; each breaker's state (0 = closed, 1 = half-open, 2 = open) and fast-failed request count are
+ * reported as gauges.
+ */
+public final class CircuitBreakers
+{
+    public static final String CIRCUIT_OPENED = "galley.http.circuit-breaker.opened";
+
+    public static final String CIRCUIT_CLOSED = "galley.http.circuit-breaker.closed";
+
+    public static final String CIRCUIT_STATE = "galley.http.circuit-breaker.state";
+
+    public static final String CIRCUIT_REJECTED = "galley.http.circuit-breaker.rejected";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<String, LocationCircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final List<Consumer<CircuitBreakerEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    private final MeteringProvider meters;
+
+    private final GaugeProvider gauges;
+
+    public CircuitBreakers()
+    {
+        this( null, null );
+    }
+
+    public CircuitBreakers( final MeteringProvider meters, final GaugeProvider gauges )
+    {
+        this.meters = meters;
+        this.gauges = gauges;
+    }
+
+    public void addListener( final Consumer<CircuitBreakerEvent> listener )
+    {
+        listeners.add( listener );
+    }
+
+    public void removeListener( final Consumer<CircuitBreakerEvent> listener )
+    {
+        listeners.remove( listener );
+    }
+
+    /**
+     * @return the location's breaker, or null if it doesn't use one
+     */
+    public LocationCircuitBreaker get( final Location location )
+    {
+        if ( LocationUtils.getCircuitBreakerFailureRate( location ) < 1 )
+        {
+            return null;
+        }
+
+        return breakers.computeIfAbsent( location.getName(), name -> {
+            final LocationCircuitBreaker breaker = new LocationCircuitBreaker( location, this::stateChanged );
+            if ( gauges != null )
+            {
+                gauges.register( metricName( CIRCUIT_STATE, name ), () -> breaker.getState().ordinal() );
+                gauges.register( metricName( CIRCUIT_REJECTED, name ), breaker::getRejected );
+            }
+            return breaker;
+        } );
+    }
+
+    /**
+     * @return false if the location's breaker would fail a request fast right now
+     */
+    public boolean isAvailable( final Location location )
+    {
+        final LocationCircuitBreaker breaker = breakers.get( location.getName() );
+        return breaker == null || breaker.isAvailable();
+    }
+
+    private void stateChanged( final CircuitBreakerEvent event )
+    {
+        final String name = event.getLocation().getName();
+        if ( event.getState() == CircuitBreakerEvent.State.OPEN )
+        {
+            logger.warn( "Circuit breaker for: {} is OPEN (was: {}). Requests will fail fast for {}s.", name,
+                         event.getPrevious(),
+                         LocationUtils.getCircuitBreakerOpenSeconds( event.getLocation() ) );
+            mark( metricName( CIRCUIT_OPENED, name ) );
+        }
+        else if ( event.getState() == CircuitBreakerEvent.State.CLOSED )
+        {
+            logger.info( "Circuit breaker for: {} is CLOSED again.", name );
+            mark( metricName( CIRCUIT_CLOSED, name ) );
+        }
+        else
+        {
+            logger.debug( "Circuit breaker for: {} is HALF_OPEN; probing.", name );
+        }
+
+        for ( final Consumer<CircuitBreakerEvent> listener : listeners )
+        {
+            try
+            {
+                listener.accept( event );
+            }
+            catch ( final RuntimeException e )
+            {
+                logger.warn( "Circuit breaker listener failed for: {}. Reason: {}", event, e.getMessage() );
+            }
+        }
+    }
+
+    private void mark( final String name )
+    {
+        if ( meters != null )
+        {
+            meters.mark( name );
+        }
+    }
+
+    private static String metricName( final String metric, final String location )
+    {
+        return metric + "." + location;
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Sends a request on the calling thread, and if no response has arrived after the hedge delay, sends a copy of it
+ * from the hedge executor as well. The first successful response wins; the other request is aborted (or its response
+ * closed, if it arrives anyway). If the first to finish failed with an error, the other one still gets its chance.
+ * <br/>
+ * The hedge executor is bounded, so when it's busy a hedge may start late; it isn't sent at all once the primary
+ * request has finished.
+ */
+final class HedgedExchange
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final CloseableHttpClient client;
+
+    private final Supplier<HttpContext> contexts;
+
+    private final ScheduledExecutorService hedges;
+
+    private Attempt winner;
+
+    private Attempt hedge;
+
+    private boolean primaryDone;
+
+    HedgedExchange( final CloseableHttpClient client, final Supplier<HttpContext> contexts,
+                    final ScheduledExecutorService hedges )
+    {
+        this.client = client;
+        this.contexts = contexts;
+        this.hedges = hedges;
+    }
+
+    /**
+     * @return the attempt that won, holding the request that was used and its response
+     */
+    Attempt execute( final HttpUriRequest request, final long hedgeDelayMillis )
+            throws IOException, InterruptedException
+    {
+        final Attempt primary = new Attempt( request );
+        ScheduledFuture<?> scheduled = null;
+        try
+        {
+            scheduled = hedges.schedule( () -> sendHedge( primary ), hedgeDelayMillis, TimeUnit.MILLISECONDS );
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            logger.debug( "Hedge executor is not accepting work; not hedging request for: {}", request.getURI() );
+        }
+
+        primary.run();
+
+        final Attempt started;
+        synchronized ( this )
+        {
+            primaryDone = true;
+            started = hedge;
+        }
+
+        if ( scheduled != null )
+        {
+            scheduled.cancel( false );
+        }
+
+        Attempt result = null;
+        try
+        {
+            if ( started == null || getWinner() == primary )
+            {
+                result = primary;
+            }
+            else
+            {
+                // either the hedge already won (and aborted the primary), or the primary failed: see how it ends.
+                started.await();
+                result = getWinner() == started ? started : primary;
+            }
+        }
+        finally
+        {
+            if ( started != null && result != started )
+            {
+                started.abandon();
+            }
+
+            if ( result != primary )
+            {
+                primary.abandon();
+            }
+        }
+
+        if ( result.error != null )
+        {
+            throw result.error;
+        }
+
+        return result;
+    }
+
+    private void sendHedge( final Attempt primary )
+    {
+        final Attempt attempt;
+        synchronized ( this )
+        {
+            if ( primaryDone )
+            {
+                return;
+            }
+
+            attempt = new Attempt( RequestBuilder.copy( primary.request ).build() );
+            hedge = attempt;
+        }
+
+        logger.debug( "No response yet; hedging request for: {}", primary.request.getURI() );
+        attempt.run();
+        if ( getWinner() == attempt )
+        {
+            // unblock the calling thread, which is still waiting on the primary.
+            primary.request.abort();
+        }
+    }
+
+    private synchronized Attempt getWinner()
+    {
+        return winner;
+    }
+
+    private synchronized void finished( final Attempt attempt )
+    {
+        if ( winner == null && attempt.succeeded() )
+        {
+            winner = attempt;
+        }
+    }
+
+    final class Attempt
+            implements Runnable
+    {
+        private final CountDownLatch latch = new CountDownLatch( 1 );
+
+        private final HttpUriRequest request;
+
+        private CloseableHttpResponse response;
+
+        private IOException error;
+
+        private boolean abandoned;
+
+        private Attempt( final HttpUriRequest request )
+        {
+            this.request = request;
+        }
+
+        HttpUriRequest getRequest()
+        {
+            return request;
+        }
+
+        CloseableHttpResponse getResponse()
+        {
+            return response;
+        }
+
+        @Override
+        public void run()
+        {
+            CloseableHttpResponse result = null;
+            IOException failure = null;
+            try
+            {
+                result = client.execute( request, contexts.get() );
+            }
+            catch ( final IOException e )
+            {
+                failure = e;
+            }
+            catch ( final RuntimeException e )
+            {
+                failure = new IOException( e.getMessage(), e );
+            }
+
+            synchronized ( this )
+            {
+                if ( abandoned )
+                {
+                    IOUtils.closeQuietly( result );
+                }
+                else
+                {
+                    response = result;
+                    error = failure;
+                }
+            }
+
+            finished( this );
+            latch.countDown();
+        }
+
+        private synchronized boolean succeeded()
+        {
+            return response != null;
+        }
+
+        private void await()
+                throws InterruptedException
+        {
+            latch.await();
+        }
+
+        private synchronized void abandon()
+        {
+            abandoned = true;
+            request.abort();
+            if ( response != null )
+            {
+                IOUtils.closeQuietly( response );
+                response = null;
+            }
+        }
+    }
+}
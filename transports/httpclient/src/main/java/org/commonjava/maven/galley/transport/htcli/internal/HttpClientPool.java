@@ -0,0 +1,355 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
+import org.commonjava.maven.galley.GalleyException;
+import org.commonjava.maven.galley.spi.metrics.MeteringProvider;
+import org.commonjava.maven.galley.spi.metrics.TimingProvider;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.util.LocationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+/**
+ * Keeps one long-lived {@link CloseableHttpClient} per {@link HttpLocation} configuration, so requests to the same
+ * location reuse its kept-alive connections (and TLS sessions) instead of building a new client for every job.
+ * <br/>
+ * Clients are keyed by a fingerprint of everything that goes into their configuration, including the location's
+ * attributes. When a location's fingerprint changes, the old client is retired. Retired clients are closed once their
+ * last lease is returned. Clients that sit idle, or that reach their maximum lifetime, are retired as well. The
+ * lifetime limit is there because a jhttpc client tracks every request it runs until it's closed.
+ * <br/>
+ * Callers get a lease: closing the returned client hands it back to the pool instead of closing the shared client.
+ */
+public final class HttpClientPool
+        implements Closeable
+{
+    public static final long DEFAULT_IDLE_MILLIS = TimeUnit.MINUTES.toMillis( 5 );
+
+    public static final long DEFAULT_MAX_LIFE_MILLIS = TimeUnit.MINUTES.toMillis( 30 );
+
+    public static final String POOL_HIT = "galley.http.client-pool.hit";
+
+    public static final String POOL_MISS = "galley.http.client-pool.miss";
+
+    public static final String POOL_EVICTED = "galley.http.client-pool.evicted";
+
+    public static final String LEASE_WAIT = "galley.http.client-pool.lease-wait";
+
+    // read by jhttpc's HttpFactory when it builds the client
+    private static final String COOKIE_STORE_ATTRIBUTE = "cookie-store";
+
+    /**
+     * Builds the shared client for a location, on a pool miss.
+     */
+    public interface ClientFactory
+    {
+        CloseableHttpClient create( HttpLocation location )
+                throws GalleyException;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<List<Object>, PooledClient> clients = new ConcurrentHashMap<>();
+
+    private final Map<String, List<Object>> fingerprints = new ConcurrentHashMap<>();
+
+    private final long idleMillis;
+
+    private final long maxLifeMillis;
+
+    private final MeteringProvider meters;
+
+    private final Function<String, TimingProvider> timers;
+
+    private volatile long nextSweep;
+
+    public HttpClientPool()
+    {
+        this( DEFAULT_IDLE_MILLIS, DEFAULT_MAX_LIFE_MILLIS, null, null );
+    }
+
+    public HttpClientPool( final long idleMillis, final long maxLifeMillis, final MeteringProvider meters,
+                           final Function<String, TimingProvider> timers )
+    {
+        this.idleMillis = idleMillis;
+        this.maxLifeMillis = maxLifeMillis;
+        this.meters = meters;
+        this.timers = timers;
+    }
+
+    public CloseableHttpClient lease( final HttpLocation location, final ClientFactory factory )
+            throws GalleyException
+    {
+        final TimingProvider timer = timers == null ? null : timers.apply( LEASE_WAIT );
+        try
+        {
+            sweep();
+
+            final List<Object> fingerprint = fingerprint( location );
+            PooledClient pooled = clients.get( fingerprint );
+            if ( pooled != null && pooled.tryLease() )
+            {
+                mark( POOL_HIT );
+                return new LeasedClient( pooled );
+            }
+
+            synchronized ( this )
+            {
+                pooled = clients.get( fingerprint );
+                if ( pooled == null || !pooled.tryLease() )
+                {
+                    mark( POOL_MISS );
+                    logger.debug( "Creating pooled HTTP client for: {}", location );
+
+                    pooled = new PooledClient( factory.create( location ) );
+                    pooled.tryLease();
+                    clients.put( fingerprint, pooled );
+                }
+                else
+                {
+                    mark( POOL_HIT );
+                }
+
+                final List<Object> previous = fingerprints.put( location.getName(), fingerprint );
+                if ( previous != null && !previous.equals( fingerprint ) )
+                {
+                    logger.debug( "Configuration of: {} changed. Retiring its previous HTTP client.", location );
+                    retire( previous );
+                }
+            }
+
+            return new LeasedClient( pooled );
+        }
+        finally
+        {
+            if ( timer != null )
+            {
+                timer.stop();
+            }
+        }
+    }
+
+    /**
+     * Drop the pooled client for this location, if any, e.g. after its credentials or certificates were replaced
+     * out-of-band. It's closed as soon as the requests using it are done.
+     */
+    public void invalidate( final HttpLocation location )
+    {
+        final List<Object> fingerprint = fingerprints.remove( location.getName() );
+        if ( fingerprint != null )
+        {
+            retire( fingerprint );
+        }
+    }
+
+    public int size()
+    {
+        return clients.size();
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        new ArrayList<>( clients.keySet() ).forEach( this::retire );
+        fingerprints.clear();
+    }
+
+    private void retire( final List<Object> fingerprint )
+    {
+        final PooledClient pooled = clients.remove( fingerprint );
+        if ( pooled != null )
+        {
+            pooled.retire();
+        }
+    }
+
+    private void sweep()
+    {
+        final long now = System.currentTimeMillis();
+        if ( now < nextSweep )
+        {
+            return;
+        }
+
+        nextSweep = now + Math.max( 1000, Math.min( idleMillis, maxLifeMillis ) / 2 );
+        clients.values().removeIf( pooled -> {
+            if ( pooled.retireIfExpired( now - idleMillis, now - maxLifeMillis ) )
+            {
+                mark( POOL_EVICTED );
+                return true;
+            }
+
+            return false;
+        } );
+    }
+
+    private void mark( final String name )
+    {
+        if ( meters != null )
+        {
+            meters.mark( name );
+        }
+    }
+
+    /**
+     * Everything that goes into building the client in {@link org.commonjava.maven.galley.transport.htcli.HttpImpl}.
+     * Of the location's attributes, only the ones that change the client count: timeouts and max connections (read
+     * through {@link LocationUtils}), and jhttpc's cookie store. Anything else callers keep there (cached credentials,
+     * jhttpc's own cached SSL socket factory) would otherwise retire the client every time it changed.
+     */
+    private static List<Object> fingerprint( final HttpLocation location )
+    {
+        return Arrays.asList( location.getName(), location.getUri(), location.getKeyCertPem(),
+                              location.getServerCertPem(), location.getTrustType(), location.getProxyHost(),
+                              location.getProxyPort(), location.getProxyUser(), location.getUser(),
+                              location.isIgnoreHostnameVerification(), LocationUtils.getTimeoutSeconds( location ),
+                              LocationUtils.getMaxConnections( location ),
+                              location.getAttribute( COOKIE_STORE_ATTRIBUTE, Object.class ) );
+    }
+
+    private static final class PooledClient
+    {
+        private final CloseableHttpClient client;
+
+        private final long created = System.currentTimeMillis();
+
+        private long lastUsed = created;
+
+        private int leases;
+
+        private boolean retired;
+
+        PooledClient( final CloseableHttpClient client )
+        {
+            this.client = client;
+        }
+
+        synchronized boolean tryLease()
+        {
+            if ( retired )
+            {
+                return false;
+            }
+
+            leases++;
+            lastUsed = System.currentTimeMillis();
+            return true;
+        }
+
+        synchronized void release()
+        {
+            leases--;
+            lastUsed = System.currentTimeMillis();
+            if ( retired && leases < 1 )
+            {
+                closeQuietly( client );
+            }
+        }
+
+        synchronized void retire()
+        {
+            if ( !retired )
+            {
+                retired = true;
+                if ( leases < 1 )
+                {
+                    closeQuietly( client );
+                }
+            }
+        }
+
+        synchronized boolean retireIfExpired( final long idleCutoff, final long lifeCutoff )
+        {
+            if ( ( leases < 1 && lastUsed < idleCutoff ) || created < lifeCutoff )
+            {
+                retire();
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * The client handed to callers. Closing it returns the lease; the shared client stays open.
+     * <p>
+     * {@link CloseableHttpClient} still declares the deprecated getParams() / getConnectionManager(); their types are
+     * fully qualified so the deprecation stays inside this suppression instead of warning on the imports.
+     */
+    @SuppressWarnings( "deprecation" )
+    private static final class LeasedClient
+            extends CloseableHttpClient
+    {
+        private final PooledClient pooled;
+
+        private final AtomicBoolean closed = new AtomicBoolean( false );
+
+        LeasedClient( final PooledClient pooled )
+        {
+            this.pooled = pooled;
+        }
+
+        @Override
+        protected CloseableHttpResponse doExecute( final HttpHost target, final HttpRequest request,
+                                                   final HttpContext context )
+                throws IOException
+        {
+            return pooled.client.execute( target, request, context );
+        }
+
+        @Override
+        public void close()
+        {
+            if ( closed.compareAndSet( false, true ) )
+            {
+                pooled.release();
+            }
+        }
+
+        @Override
+        @Deprecated
+        public org.apache.http.params.HttpParams getParams()
+        {
+            return pooled.client.getParams();
+        }
+
+        @Override
+        @Deprecated
+        public org.apache.http.conn.ClientConnectionManager getConnectionManager()
+        {
+            return pooled.client.getConnectionManager();
+        }
+    }
+}
@@ -16,31 +16,45 @@
 package org.commonjava.maven.galley.transport.htcli.internal;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.util.EntityUtils;
 import org.commonjava.maven.galley.TransferContentException;
 import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationException;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
 import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.transport.htcli.ExchangeMetadataStore;
 import org.commonjava.maven.galley.transport.htcli.Http;
 import org.commonjava.maven.galley.config.TransportMetricConfig;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
 import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
 import org.commonjava.maven.galley.transport.htcli.util.HttpUtil;
+import org.commonjava.maven.galley.util.AbortableOutput;
+import org.commonjava.maven.galley.util.CopyUtils;
+import org.commonjava.maven.galley.util.LocationUtils;
 import org.commonjava.o11yphant.metrics.api.MetricRegistry;
 import org.commonjava.o11yphant.metrics.api.Timer;
 import org.commonjava.o11yphant.trace.util.InterceptorUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
-import static org.apache.commons.io.IOUtils.copy;
 import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
 import static org.commonjava.o11yphant.trace.TraceManager.addFieldToActiveSpan;
 
@@ -49,6 +63,12 @@ public final class HttpDownload
     implements DownloadJob
 {
 
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private static final String WEAK_ETAG_PREFIX = "W/";
+
+    private static final String BYTES_UNIT = "bytes";
+
     private final Transfer target;
 
     private final Map<Transfer, Long> transferSizes;
@@ -63,6 +83,14 @@ public final class HttpDownload
 
     private final TransportMetricConfig transportMetricConfig;
 
+    private final SegmentPool segmentPool;
+
+    private final AtomicLong bytesTransferred = new AtomicLong();
+
+    private Transfer resumeFrom;
+
+    private long resumeOffset;
+
     public HttpDownload( final String url, final HttpLocation location, final Transfer target,
                          final Map<Transfer, Long> transferSizes, final EventMetadata eventMetadata, final Http http,
                          final ObjectMapper mapper )
@@ -84,7 +112,22 @@ public final class HttpDownload
                          final ObjectMapper mapper, final boolean deleteFilesOnPath,
                          final MetricRegistry metricRegistry, final TransportMetricConfig transportMetricConfig)
     {
-        super( url, location, http );
+        this( url, location, target, transferSizes, eventMetadata, http, mapper, deleteFilesOnPath, metricRegistry,
+              transportMetricConfig, null );
+    }
+
+    /**
+     * @param segmentPool runs the extra range requests of a segmented download (see
+     * {@link LocationUtils#getSegmentedDownloadThreshold(org.commonjava.maven.galley.model.Location)}), within the
+     * location's connection limit. If null, downloads are never segmented.
+     */
+    public HttpDownload( final String url, final HttpLocation location, final Transfer target,
+                         final Map<Transfer, Long> transferSizes, final EventMetadata eventMetadata, final Http http,
+                         final ObjectMapper mapper, final boolean deleteFilesOnPath,
+                         final MetricRegistry metricRegistry, final TransportMetricConfig transportMetricConfig,
+                         final SegmentPool segmentPool )
+    {
+        super( url, location, http, HttpStatus.SC_OK, HttpStatus.SC_PARTIAL_CONTENT );
         this.request = new HttpGet( url );
         this.target = target;
         this.transferSizes = transferSizes;
@@ -93,6 +136,7 @@ public final class HttpDownload
         this.deleteFilesOnPath = deleteFilesOnPath;
         this.metricRegistry = metricRegistry;
         this.transportMetricConfig = transportMetricConfig;
+        this.segmentPool = segmentPool;
     }
 
     @Override
@@ -161,9 +205,9 @@ public final class HttpDownload
         {
             String newName = oldName + ": GET " + url;
             Thread.currentThread().setName( newName );
-            if ( executeHttp() )
+            if ( executeRevalidating() )
             {
-                transferSizes.put( target, HttpUtil.getContentLength( response ) );
+                transferSizes.put( target, getTransferSize() );
                 writeTarget();
             }
         }
@@ -184,6 +228,303 @@ public final class HttpDownload
         return this;
     }
 
+    /**
+     * If the cache set an expired copy of the target aside for revalidation (see
+     * {@link CacheProvider#SUFFIX_TO_REVALIDATE}), make the download conditional on the validators stored with it. On
+     * 304 Not Modified the stale copy is restored as the target without transferring the body; any other answer
+     * replaces it, the same as a normal download.
+     */
+    private boolean executeRevalidating()
+        throws TransferException
+    {
+        final Transfer stale = target.getSiblingMeta( CacheProvider.SUFFIX_TO_REVALIDATE );
+        if ( stale == null || !stale.exists() )
+        {
+            return executeResumable();
+        }
+
+        final Transfer staleMeta =
+                target.getSiblingMeta( HttpExchangeMetadata.FILE_EXTENSION + CacheProvider.SUFFIX_TO_REVALIDATE );
+        final Map<String, List<String>> headers = readStaleHeaders( staleMeta );
+        final String etag = firstValue( headers, HttpHeaders.ETAG );
+        final String lastModified = firstValue( headers, HttpHeaders.LAST_MODIFIED );
+        if ( etag == null && lastModified == null )
+        {
+            discardStale( stale, staleMeta );
+            return executeResumable();
+        }
+
+        logger.debug( "Revalidating expired copy of: {} (If-None-Match: {}, If-Modified-Since: {})", url, etag,
+                      lastModified );
+        if ( etag != null )
+        {
+            request.setHeader( HttpHeaders.IF_NONE_MATCH, etag );
+        }
+        if ( lastModified != null )
+        {
+            request.setHeader( HttpHeaders.IF_MODIFIED_SINCE, lastModified );
+        }
+
+        try
+        {
+            final boolean ok = executeHttp();
+            discardStale( stale, staleMeta );
+            return ok;
+        }
+        catch ( final TransferLocationException e )
+        {
+            if ( response == null || response.getStatusLine().getStatusCode() != HttpStatus.SC_NOT_MODIFIED )
+            {
+                throw e;
+            }
+        }
+
+        logger.debug( "Not modified: {}. Restoring expired copy.", url );
+        restoreStale( stale, staleMeta );
+        return false;
+    }
+
+    /**
+     * Write the stale copy (and its exchange metadata) back through the usual streams, so the restored target gets a
+     * fresh timestamp and the same events / decorators as a download.
+     */
+    private void restoreStale( final Transfer stale, final Transfer staleMeta )
+        throws TransferException
+    {
+        try
+        {
+            try (InputStream in = stale.openInputStream( false );
+                 OutputStream out = target.openOutputStream( TransferOperation.DOWNLOAD, true, eventMetadata,
+                                                             deleteFilesOnPath ))
+            {
+                CopyUtils.copy( in, out );
+            }
+
+            final Transfer meta = target.getSiblingMeta( HttpExchangeMetadata.FILE_EXTENSION );
+            if ( meta != null && staleMeta != null && staleMeta.exists() )
+            {
+                try (InputStream in = staleMeta.openInputStream( false );
+                     OutputStream out = meta.openOutputStream( TransferOperation.GENERATE, false ))
+                {
+                    IOUtils.copy( in, out );
+                }
+            }
+        }
+        catch ( final IOException e )
+        {
+            try
+            {
+                target.delete();
+            }
+            catch ( final IOException eDel )
+            {
+                logger.error( String.format( "Failed to delete target file: %s. Reason: %s", target,
+                                             eDel.getMessage() ), eDel );
+            }
+
+            throw new TransferContentException( target.getResource(),
+                                                "Failed to restore revalidated copy of: %s. Reason: %s", e, target,
+                                                e.getMessage() );
+        }
+
+        discardStale( stale, staleMeta );
+        transferSizes.put( target, target.length() );
+    }
+
+    private void discardStale( final Transfer stale, final Transfer staleMeta )
+    {
+        discardPartial( stale );
+        if ( staleMeta != null )
+        {
+            discardPartial( staleMeta );
+        }
+    }
+
+    /**
+     * If an earlier attempt left a partial download behind (see {@link #keepForResume()}) and the exchange metadata
+     * from that attempt has a validator, ask the server for the remainder only. The If-Range validator means the
+     * server answers with 206 if the content hasn't changed, or with the full content (200) if it has. A 416, or a
+     * 206 that doesn't start where the partial ends, means the partial is useless, so discard it and do a plain GET.
+     */
+    private boolean executeResumable()
+        throws TransferException
+    {
+        final Transfer partial = target.getSiblingMeta( CacheProvider.SUFFIX_TO_RESUME );
+        if ( partial == null || !partial.exists() )
+        {
+            return executeHttp();
+        }
+
+        final long offset = partial.length();
+        final String validator = offset > 0 ? readStoredValidator() : null;
+        if ( validator == null )
+        {
+            discardPartial( partial );
+            return executeHttp();
+        }
+
+        logger.debug( "Resuming download of: {} from byte: {} (If-Range: {})", url, offset, validator );
+        request.setHeader( HttpHeaders.RANGE, BYTES_UNIT + "=" + offset + "-" );
+        request.setHeader( HttpHeaders.IF_RANGE, validator );
+
+        final boolean ok;
+        try
+        {
+            ok = executeHttp();
+        }
+        catch ( final TransferLocationException e )
+        {
+            if ( response == null
+                    || response.getStatusLine().getStatusCode() != HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE )
+            {
+                throw e;
+            }
+
+            logger.debug( "Server can't satisfy resume of: {} from byte: {}. Restarting download.", url, offset );
+            return restart( partial );
+        }
+
+        if ( !ok )
+        {
+            return false;
+        }
+
+        if ( response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT )
+        {
+            logger.debug( "Server sent full content for: {} (changed, or ranges unsupported). Discarding partial.",
+                          url );
+            discardPartial( partial );
+            return true;
+        }
+
+        if ( HttpUtil.getContentRangeStart( response ) != offset )
+        {
+            logger.debug( "Server sent unexpected range for: {} ({}). Restarting download.", url,
+                          response.getFirstHeader( HttpHeaders.CONTENT_RANGE ) );
+            return restart( partial );
+        }
+
+        resumeFrom = partial;
+        resumeOffset = offset;
+        return true;
+    }
+
+    private boolean restart( final Transfer partial )
+        throws TransferException
+    {
+        discardPartial( partial );
+        cleanup();
+        request = new HttpGet( url );
+        return executeHttp();
+    }
+
+    /**
+     * Read the validator for the partial download from the exchange metadata written by the attempt that left it.
+     */
+    private String readStoredValidator()
+    {
+        final Map<String, List<String>> headers = readStoredHeaders();
+        return selectValidator( firstValue( headers, HttpHeaders.ETAG ),
+                                firstValue( headers, HttpHeaders.LAST_MODIFIED ),
+                                firstValue( headers, HttpHeaders.ACCEPT_RANGES ) );
+    }
+
+    /**
+     * Response headers the metadata store has recorded for the target, or an empty map if there are none.
+     */
+    private Map<String, List<String>> readStoredHeaders()
+    {
+        final ExchangeMetadataStore store = getMetadataStore();
+        if ( store == null )
+        {
+            return Collections.emptyMap();
+        }
+
+        try
+        {
+            return responseHeaders( store.read( target ) );
+        }
+        catch ( final IOException e )
+        {
+            logger.debug( "Cannot read HTTP exchange metadata for: {}. Reason: {}", target, e.getMessage() );
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Response headers for the expired copy. The cache sets JSON metadata files aside along with the content; stores
+     * that don't keep metadata next to the content still have the record from the original download.
+     */
+    private Map<String, List<String>> readStaleHeaders( final Transfer staleMeta )
+    {
+        if ( mapper == null || staleMeta == null || !staleMeta.exists() )
+        {
+            return readStoredHeaders();
+        }
+
+        try
+        {
+            return responseHeaders( new SidecarExchangeMetadataStore( mapper ).readSidecar( staleMeta ) );
+        }
+        catch ( final IOException e )
+        {
+            logger.debug( "Cannot read HTTP exchange metadata: {}. Reason: {}", staleMeta, e.getMessage() );
+            return Collections.emptyMap();
+        }
+    }
+
+    private static Map<String, List<String>> responseHeaders( final HttpExchangeMetadata metadata )
+    {
+        if ( metadata == null || metadata.getResponseHeaders() == null )
+        {
+            return Collections.emptyMap();
+        }
+
+        return metadata.getResponseHeaders();
+    }
+
+    private static String firstValue( final Map<String, List<String>> headers, final String name )
+    {
+        final List<String> values = headers.get( name.toUpperCase() );
+        return values == null || values.isEmpty() ? null : values.get( 0 );
+    }
+
+    private static String firstValue( final Header header )
+    {
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * If-Range needs a strong validator, so weak ETags are passed over in favor of Last-Modified. Nothing is resumable
+     * if the server says it doesn't accept byte ranges.
+     */
+    private static String selectValidator( final String etag, final String lastModified, final String acceptRanges )
+    {
+        if ( acceptRanges != null && !BYTES_UNIT.equalsIgnoreCase( acceptRanges.trim() ) )
+        {
+            return null;
+        }
+
+        if ( etag != null && !etag.startsWith( WEAK_ETAG_PREFIX ) )
+        {
+            return etag;
+        }
+
+        return lastModified;
+    }
+
+    private void discardPartial( final Transfer partial )
+    {
+        try
+        {
+            partial.delete( false );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to delete partial download: {}. Reason: {}", partial, e.getMessage() );
+        }
+    }
+
     @Override
     protected ObjectMapper getMetadataObjectMapper()
     {
@@ -193,7 +534,14 @@ public final class HttpDownload
     @Override
     public long getTransferSize()
     {
-        return response == null ? -1 : HttpUtil.getContentLength( response );
+        final long length = response == null ? -1 : HttpUtil.getContentLength( response );
+        return length < 0 ? length : resumeOffset + length;
+    }
+
+    @Override
+    public long getBytesTransferred()
+    {
+        return bytesTransferred.get();
     }
 
     @Override
@@ -221,25 +569,58 @@ public final class HttpDownload
                 final HttpEntity entity = response.getEntity();
 
                 in = entity.getContent();
+
                 out = target.openOutputStream( TransferOperation.DOWNLOAD, true, eventMetadata, deleteFilesOnPath );
-                doCopy( in, out );
+                if ( resumeFrom != null )
+                {
+                    // replay the partial through the target stream, so decorators (checksums etc.) see all the content
+                    try (InputStream partialIn = resumeFrom.openInputStream( false ))
+                    {
+                        bytesTransferred.addAndGet( CopyUtils.copy( partialIn, out ) );
+                    }
+                }
+
+                final SegmentedDownload segmented = getSegmentedDownload();
+                if ( segmented != null )
+                {
+                    try
+                    {
+                        segmented.fetch( in, out );
+                    }
+                    finally
+                    {
+                        // the first segment came from this response; we don't want the rest of its body.
+                        request.abort();
+                    }
+                }
+                else
+                {
+                    doCopy( in, out );
+                }
                 logger.info( "Ensuring all HTTP data is consumed..." );
             }
             catch ( final IOException eOrig )
             {
+                // so the cache doesn't publish the partial content as the target, and streaming readers see the error
+                final boolean aborted = AbortableOutput.abort( out, eOrig );
                 closeAllQuietly( in, out );
 
                 ConcreteResource resource = target.getResource();
-                try
-                {
-                    logger.debug( "Failed to write to local proxy store:{}. Deleting partial target file:{}", eOrig,
-                                  target.getPath() );
-                    target.delete();
-                }
-                catch ( IOException eDel )
+
+                // an aborted write left the target alone; otherwise it now holds the partial content
+                if ( !keepForResume( aborted ) && !aborted )
                 {
-                    logger.error( String.format( "Failed to delete target file: %s\nOriginal URL: %s. Reason: %s",
-                                  target, url, eDel.getMessage() ), eDel );
+                    try
+                    {
+                        logger.debug( "Failed to write to local proxy store:{}. Deleting partial target file:{}",
+                                      eOrig, target.getPath() );
+                        target.delete();
+                    }
+                    catch ( IOException eDel )
+                    {
+                        logger.error( String.format( "Failed to delete target file: %s\nOriginal URL: %s. Reason: %s",
+                                      target, url, eDel.getMessage() ), eDel );
+                    }
                 }
 
                 logger.error( String.format( "Failed to write to local proxy store: %s\nOriginal URL: %s. Reason: %s", target, url,
@@ -253,27 +634,157 @@ public final class HttpDownload
             {
                 closeAllQuietly( in, out );
             }
+
+            if ( resumeFrom != null )
+            {
+                discardPartial( resumeFrom );
+            }
+        }
+    }
+
+    /**
+     * A download is segmented if the location opts in with a size threshold, the full content (200) is at least that
+     * big, and the server both accepts byte ranges and gave us a validator to keep the ranges consistent with each
+     * other. Resumed downloads are never segmented, and neither are downloads that can't get at least one extra
+     * connection within the location's limit right away.
+     */
+    private SegmentedDownload getSegmentedDownload()
+    {
+        if ( segmentPool == null || resumeFrom != null
+                || response.getStatusLine().getStatusCode() != HttpStatus.SC_OK )
+        {
+            return null;
+        }
+
+        final long threshold = LocationUtils.getSegmentedDownloadThreshold( location );
+        final long length = HttpUtil.getContentLength( response );
+        final int segments = LocationUtils.getSegmentedDownloadSegments( location );
+        if ( threshold < 1 || length < threshold || segments < 2
+                || !BYTES_UNIT.equalsIgnoreCase( firstValue( response.getFirstHeader( HttpHeaders.ACCEPT_RANGES ) ) ) )
+        {
+            return null;
+        }
+
+        final String validator = selectValidator( firstValue( response.getFirstHeader( HttpHeaders.ETAG ) ),
+                                                  firstValue( response.getFirstHeader( HttpHeaders.LAST_MODIFIED ) ),
+                                                  BYTES_UNIT );
+
+        if ( validator == null )
+        {
+            return null;
+        }
+
+        final SegmentPool.Reservation reservation = segmentPool.reserve( location, segments );
+        if ( reservation == null )
+        {
+            logger.debug( "No spare connections to segment download of: {}", url );
+            return null;
+        }
+
+        return new SegmentedDownload( url, location, http, validator, length, segmentPool, reservation,
+                                      getSpoolFile(), bytesTransferred::addAndGet );
+    }
+
+    /**
+     * The hidden {@link CacheProvider#SUFFIX_TO_ASSEMBLE} sibling of the target, if the cache is file-based; otherwise
+     * null, and the segments are assembled in a temp file.
+     */
+    private File getSpoolFile()
+    {
+        final Transfer spool = target.getSiblingMeta( CacheProvider.SUFFIX_TO_ASSEMBLE );
+        try
+        {
+            return spool == null ? null : spool.getDetachedFile();
+        }
+        catch ( final UnsupportedOperationException e )
+        {
+            logger.trace( "Cache of: {} has no admin view; assembling segments in a temp file.", target );
+            return null;
+        }
+    }
+
+    /**
+     * Keep what we managed to write (as a {@link CacheProvider#SUFFIX_TO_RESUME} sibling) so the next attempt can
+     * resume from it, provided the response carried a validator to make that safe. If the target stream was aborted,
+     * the cache has already put the partial there; otherwise closing the stream made the partial visible as the
+     * target, so it has to be moved aside.
+     */
+    private boolean keepForResume( final boolean aborted )
+    {
+        final String validator = selectValidator( firstValue( response.getFirstHeader( HttpHeaders.ETAG ) ),
+                                                  firstValue( response.getFirstHeader( HttpHeaders.LAST_MODIFIED ) ),
+                                                  firstValue( response.getFirstHeader( HttpHeaders.ACCEPT_RANGES ) ) );
+
+        final Transfer partial = target.getSiblingMeta( CacheProvider.SUFFIX_TO_RESUME );
+        if ( aborted )
+        {
+            if ( partial == null )
+            {
+                return false;
+            }
+            else if ( validator == null || !partial.exists() || partial.length() < 1 )
+            {
+                discardPartial( partial );
+                return false;
+            }
+
+            logger.debug( "Kept {} bytes of interrupted download: {} for resume (validator: {})", partial.length(),
+                          url, validator );
+            return true;
+        }
+
+        if ( validator == null || partial == null || !target.exists() || target.length() < 1 )
+        {
+            return false;
+        }
+
+        try
+        {
+            partial.copyFrom( target );
+            target.delete();
+            logger.debug( "Kept {} bytes of interrupted download: {} for resume (validator: {})", partial.length(),
+                          url, validator );
+            return true;
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to keep partial download of: {} for resume. Reason: {}", url, e.getMessage() );
+            discardPartial( partial );
+            return false;
         }
     }
 
     /**
-     * Break out {@link org.apache.commons.io.IOUtils#copy(InputStream, OutputStream)} so we can decorate it with Byteman
-     * rules to test network errors.
+     * Break out the copy loop so we can decorate it with Byteman rules to test network errors. Progress is published
+     * after each buffer, so the handler waiting on this download can see that data is still arriving. Each buffer
+     * is charged to the bandwidth limiter (if any). When nothing between us and the cache file needs to see the bytes,
+     * they go straight into the file's channel instead of through the stream layers.
      * @param in
      * @param out
      */
     private void doCopy( final InputStream in, final OutputStream out )
             throws IOException
     {
-        copy( in, out );
+        final BandwidthLimiter limiter = http.getBandwidthLimiter();
+        CopyUtils.copy( in, out, COPY_BUFFER_SIZE, read -> {
+            if ( limiter != null )
+            {
+                limiter.acquire( location, read );
+            }
+
+            bytesTransferred.addAndGet( read );
+        } );
     }
 
     private void closeAllQuietly( final InputStream in, final OutputStream out )
     {
         try
         {
-            EntityUtils.consume( response.getEntity() );
-            logger.info( "All HTTP data was consumed." );
+            if ( !request.isAborted() )
+            {
+                EntityUtils.consume( response.getEntity() );
+                logger.info( "All HTTP data was consumed." );
+            }
         }
         catch ( IOException e )
         {
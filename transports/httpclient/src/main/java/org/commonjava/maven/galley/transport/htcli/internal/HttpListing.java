@@ -22,11 +22,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.model.ConcreteResource;
@@ -34,9 +37,7 @@ import org.commonjava.maven.galley.model.ListingResult;
 import org.commonjava.maven.galley.spi.transport.ListingJob;
 import org.commonjava.maven.galley.transport.htcli.Http;
 import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
+import org.commonjava.maven.galley.transport.htcli.util.HtmlLinkTokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,14 +72,8 @@ public class HttpListing
         addFieldToActiveSpan( "activity", "httpclient-listing" );
 
         // return null if something goes wrong, after setting the error.
-        // What we should be doing here is trying to retrieve the html directory
-        // listing, then parse out the filenames from that...
-        //
-        // They'll be links, so that's something to key in on.
-        //
-        // I'm wondering about this:
-        // http://jsoup.org/cookbook/extracting-data/selector-syntax
-        // the dependency is: org.jsoup:jsoup:1.7.2
+        // Retrieve the html directory listing, then parse the filenames out of its links. Listings of large
+        // directories can be huge, so they're streamed through a tokenizer rather than parsed into a DOM.
 
         ListingResult result = null;
         InputStream in = null;
@@ -91,46 +86,14 @@ public class HttpListing
 
             if ( executeHttp() )
             {
-                in = response.getEntity().getContent();
-                String listing = IOUtils.toString( in );
-                Logger logger = LoggerFactory.getLogger( getClass() );
-                logger.debug( "Got raw listing content:\n\n{}\n\n", listing );
-
-                final ArrayList<String> al = new ArrayList<>();
-
-                // TODO: Charset!!
-                Document doc = Jsoup.parse( listing, url );
-//                try
-//                {
-//                }
-//                catch ( final IOException e )
-//                {
-//                    this.error =
-//                            new TransferLocationException( resource.getLocation(), "Invalid HTML in: {}. Reason: {}", e, url, e.getMessage() );
-//                }
-
-                if ( doc != null )
-                {
-                    for ( final Element link : doc.select( "a" ) )
-                    {
-                        String linkText = link.text();
-                        String linkHref = link.attr( "href" );
-
-                        URL url = new URL( this.url );
-
-                        boolean sameServer = isSameServer( url, linkHref );
-                        boolean subpath = isSubpath( url, linkHref );
-
-                        if ( ( sameServer && subpath )
-                                && ( linkHref.endsWith( linkText ) || linkHref.endsWith( linkText + '/' ) )
-                                && !EXCLUDES.contains( linkText ) )
-                        {
-                            al.add( linkText );
-                        }
-                    }
-
-                    result = new ListingResult( resource, al.toArray( new String[al.size()] ) );
-                }
+                final HttpEntity entity = response.getEntity();
+                final Header contentType = entity.getContentType();
+
+                in = entity.getContent();
+                final Charset charset = HtmlLinkTokenizer.charsetOf( contentType == null ? null : contentType.getValue() );
+
+                final List<String> names = readListing( HtmlLinkTokenizer.open( in, charset ), url );
+                result = new ListingResult( resource, names.toArray( new String[names.size()] ) );
             }
         }
         catch ( final TransferException e )
@@ -156,7 +119,79 @@ public class HttpListing
         return error == null ? result : null;
     }
 
-    static boolean isSubpath( final URL url, final String linkHref )
+    /**
+     * Read the entries of an HTML directory listing of the given URL, in a single pass over the page. Only links to
+     * sub-paths on the same server, whose text matches the end of the link, are listed.
+     */
+    public static List<String> readListing( final HtmlLinkTokenizer tokenizer, final String url )
+            throws IOException
+    {
+        final URL base = new URL( url );
+        final Logger logger = LoggerFactory.getLogger( HttpListing.class );
+
+        final List<String> names = new ArrayList<>();
+        tokenizer.forEachLink( ( linkHref, linkText ) -> {
+            logger.trace( "Listing link: {} with text: {}", linkHref, linkText );
+            if ( isListed( base, linkHref, linkText ) )
+            {
+                names.add( linkText );
+            }
+        } );
+
+        return names;
+    }
+
+    static boolean isListed( final URL url, final String linkHref, final String linkText )
+    {
+        if ( !( linkHref.endsWith( linkText ) || linkHref.endsWith( linkText + '/' ) ) || EXCLUDES.contains( linkText ) )
+        {
+            return false;
+        }
+
+        if ( hasScheme( linkHref ) )
+        {
+            return isSameServer( url, linkHref ) && isSubpath( url, linkHref );
+        }
+
+        // relative links are on the same server, and can't be parsed as URLs; check them without trying to.
+        return linkHref.length() > 0
+                && ( ( linkHref.charAt( 0 ) != '/' && linkHref.charAt( 0 ) != '.' )
+                || linkHref.startsWith( url.getPath() ) );
+    }
+
+    /**
+     * @return true if the href starts with something that looks like a URL scheme, so might parse as an absolute URL
+     */
+    private static boolean hasScheme( final String linkHref )
+    {
+        int i = 0;
+        while ( i < linkHref.length() && linkHref.charAt( i ) <= ' ' )
+        {
+            i++;
+        }
+
+        if ( i == linkHref.length() || !Character.isLetter( linkHref.charAt( i ) ) )
+        {
+            return false;
+        }
+
+        for ( ; i < linkHref.length(); i++ )
+        {
+            final char c = linkHref.charAt( i );
+            if ( c == ':' )
+            {
+                return true;
+            }
+            else if ( !Character.isLetterOrDigit( c ) && c != '+' && c != '-' && c != '.' )
+            {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    public static boolean isSubpath( final URL url, final String linkHref )
     {
         String linkPath;
         try
@@ -179,7 +214,7 @@ public class HttpListing
         return valid;
     }
 
-    static boolean isSameServer( final URL url, final String linkHref )
+    public static boolean isSameServer( final URL url, final String linkHref )
     {
         String linkProtocol = null;
         String linkAuthority = null;
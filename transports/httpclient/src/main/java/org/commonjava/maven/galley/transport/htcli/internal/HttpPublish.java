@@ -17,15 +17,20 @@ package org.commonjava.maven.galley.transport.htcli.internal;
 
 import java.io.InputStream;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.protocol.HTTP;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.spi.transport.PublishJob;
 import org.commonjava.maven.galley.transport.htcli.Http;
 import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.transport.htcli.util.HttpUtil;
 import org.commonjava.maven.galley.util.ContentTypeUtils;
+import org.commonjava.maven.galley.util.LocationUtils;
 
 import static org.commonjava.o11yphant.trace.TraceManager.addFieldToActiveSpan;
 
@@ -60,7 +65,21 @@ public final class HttpPublish
         addFieldToActiveSpan( "http-target", url );
         addFieldToActiveSpan( "activity", "httpclient-publish" );
 
-        put.setEntity( new InputStreamEntity( stream, length, ContentType.create( contentType ) ) );
+        if ( HttpUtil.isExpectContinue( length ) )
+        {
+            put.setHeader( HTTP.EXPECT_DIRECTIVE, HTTP.EXPECT_CONTINUE );
+        }
+
+        final HttpEntity entity = new InputStreamEntity( stream, length, ContentType.create( contentType ) );
+        if ( LocationUtils.isCompressedUploads( location ) && !HttpUtil.isPrecompressed( put.getURI().getPath() ) )
+        {
+            // Sent chunked; the server has to decode it before storing, which is why this is opt-in.
+            put.setEntity( new GzipCompressingEntity( entity ) );
+        }
+        else
+        {
+            put.setEntity( entity );
+        }
 
         request = put;
 
@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.commonjava.maven.galley.event.CircuitBreakerEvent;
+import org.commonjava.maven.galley.event.CircuitBreakerEvent.State;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.util.LocationUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Circuit breaker for one location. It tracks the outcome of the last N requests (the window); once the window is full
+ * and the share of failures reaches the location's failure rate, the breaker opens, and requests fail fast without
+ * touching the network. After the open period, one probe request is let through (half-open): if it succeeds the
+ * breaker closes, otherwise it opens again for another period.
+ */
+public final class LocationCircuitBreaker
+{
+    private final Location location;
+
+    private final int failureRate;
+
+    private final long openMillis;
+
+    private final boolean[] outcomes;
+
+    private final Consumer<CircuitBreakerEvent> listener;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private State state = State.CLOSED;
+
+    private int recorded;
+
+    private int next;
+
+    private int failures;
+
+    private long openedAt;
+
+    private boolean probing;
+
+    public LocationCircuitBreaker( final Location location, final Consumer<CircuitBreakerEvent> listener )
+    {
+        this.location = location;
+        this.failureRate = LocationUtils.getCircuitBreakerFailureRate( location );
+        this.openMillis = TimeUnit.SECONDS.toMillis( LocationUtils.getCircuitBreakerOpenSeconds( location ) );
+        this.outcomes = new boolean[LocationUtils.getCircuitBreakerWindow( location )];
+        this.listener = listener;
+    }
+
+    /**
+     * Ask to send a request. Callers that get true MUST report the outcome via {@link #onSuccess()} or
+     * {@link #onFailure()}.
+     *
+     * @return false if the request should fail fast instead
+     */
+    public boolean tryAcquire()
+    {
+        CircuitBreakerEvent event = null;
+        try
+        {
+            synchronized ( this )
+            {
+                switch ( state )
+                {
+                    case CLOSED:
+                        return true;
+                    case OPEN:
+                        if ( System.currentTimeMillis() - openedAt < openMillis )
+                        {
+                            break;
+                        }
+
+                        event = transition( State.HALF_OPEN );
+                        probing = true;
+                        return true;
+                    default:
+                        if ( !probing )
+                        {
+                            probing = true;
+                            return true;
+                        }
+                }
+
+                rejected.incrementAndGet();
+                return false;
+            }
+        }
+        finally
+        {
+            fire( event );
+        }
+    }
+
+    public void onSuccess()
+    {
+        CircuitBreakerEvent event = null;
+        synchronized ( this )
+        {
+            if ( state == State.CLOSED )
+            {
+                record( false );
+            }
+            else
+            {
+                reset();
+                event = transition( State.CLOSED );
+            }
+        }
+
+        fire( event );
+    }
+
+    public void onFailure()
+    {
+        CircuitBreakerEvent event = null;
+        synchronized ( this )
+        {
+            if ( state == State.CLOSED )
+            {
+                record( true );
+                if ( recorded == outcomes.length && failures * 100 >= failureRate * recorded )
+                {
+                    event = open();
+                }
+            }
+            else
+            {
+                event = open();
+            }
+        }
+
+        fire( event );
+    }
+
+    /**
+     * @return false while the breaker would fail a request fast
+     */
+    public synchronized boolean isAvailable()
+    {
+        switch ( state )
+        {
+            case OPEN:
+                return System.currentTimeMillis() - openedAt >= openMillis;
+            case HALF_OPEN:
+                return !probing;
+            default:
+                return true;
+        }
+    }
+
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    /**
+     * @return how many requests this breaker has failed fast
+     */
+    public long getRejected()
+    {
+        return rejected.get();
+    }
+
+    public Location getLocation()
+    {
+        return location;
+    }
+
+    private void record( final boolean failure )
+    {
+        if ( recorded == outcomes.length )
+        {
+            if ( outcomes[next] )
+            {
+                failures--;
+            }
+        }
+        else
+        {
+            recorded++;
+        }
+
+        outcomes[next] = failure;
+        if ( failure )
+        {
+            failures++;
+        }
+        next = ( next + 1 ) % outcomes.length;
+    }
+
+    private CircuitBreakerEvent open()
+    {
+        openedAt = System.currentTimeMillis();
+        probing = false;
+        return state == State.OPEN ? null : transition( State.OPEN );
+    }
+
+    private void reset()
+    {
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        probing = false;
+    }
+
+    private CircuitBreakerEvent transition( final State to )
+    {
+        final CircuitBreakerEvent event = new CircuitBreakerEvent( location, state, to );
+        state = to;
+        return event;
+    }
+
+    private void fire( final CircuitBreakerEvent event )
+    {
+        if ( event != null && listener != null )
+        {
+            listener.accept( event );
+        }
+    }
+}
@@ -0,0 +1,588 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.cache.ExchangeMetadataIndex;
+import org.commonjava.maven.galley.transport.htcli.ExchangeMetadataStore;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadataFromRequestHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * {@link ExchangeMetadataStore} that appends compact binary records to a single log file, instead of writing a JSON
+ * file per resource. Records are keyed by {@link ConcreteResource} (location name + path), and an in-memory index
+ * maps each key to the offset of its latest record, so a read is one positional read of a few hundred bytes.
+ * <p>
+ * Each record is framed as <code>[length][crc32][payload]</code>. When the log is opened it's replayed to rebuild the
+ * index; a torn or corrupt tail (say, from a crash mid-append) is truncated away. Once more than half of the log is
+ * superseded records it's compacted into a new file, which then replaces it.
+ * <p>
+ * Appends are not forced to disk one by one: this metadata is a cache of what the remote server said, and losing the
+ * last few records in a crash only costs a full download instead of a conditional one. The log is forced on
+ * {@link #close()}.
+ * <p>
+ * Resources that have no record yet are looked up in the legacy JSON sidecar files, if a mapper is given, so a cache
+ * written before the switch keeps its validators. Deleting a resource's metadata deletes its sidecar too.
+ * <p>
+ * Since there are no sidecar files next to the cached content, give this store to the cache too (see
+ * {@link ExchangeMetadataIndex}), so expired content with a record here is still kept for revalidation.
+ */
+public final class LogExchangeMetadataStore
+        implements ExchangeMetadataStore, ExchangeMetadataIndex, Closeable
+{
+    public static final String DEFAULT_FILE_NAME = ".galley-http-metadata.log";
+
+    private static final int MAGIC = 0x47484d31; // GHM1
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte PUT = 1;
+
+    private static final byte DELETE = 2;
+
+    private static final byte EXCHANGE = 0;
+
+    private static final byte FROM_REQUEST_HEADERS = 1;
+
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final File file;
+
+    private final SidecarExchangeMetadataStore legacy;
+
+    private final long minCompactionSize;
+
+    private Map<String, Entry> index = new HashMap<>();
+
+    private FileChannel channel;
+
+    private long end;
+
+    private long liveBytes;
+
+    public LogExchangeMetadataStore( final File file, final ObjectMapper legacyMapper )
+            throws IOException
+    {
+        this( file, legacyMapper, MIN_COMPACTION_SIZE );
+    }
+
+    LogExchangeMetadataStore( final File file, final ObjectMapper legacyMapper, final long minCompactionSize )
+            throws IOException
+    {
+        this.file = file;
+        this.legacy = legacyMapper == null ? null : new SidecarExchangeMetadataStore( legacyMapper );
+        this.minCompactionSize = minCompactionSize;
+
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if ( dir != null )
+        {
+            Files.createDirectories( dir.toPath() );
+        }
+
+        channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE );
+        replay();
+    }
+
+    @Override
+    public void write( final Transfer target, final HttpExchangeMetadata metadata )
+            throws IOException
+    {
+        append( PUT, key( target ), encode( metadata ) );
+    }
+
+    @Override
+    public HttpExchangeMetadata read( final Transfer target )
+            throws IOException
+    {
+        final String key = key( target );
+        lock.readLock().lock();
+        try
+        {
+            checkOpen();
+            final Entry entry = index.get( key );
+            if ( entry != null )
+            {
+                final ByteBuffer buf = ByteBuffer.allocate( entry.length - HEADER_SIZE );
+                readFully( buf, entry.offset + HEADER_SIZE );
+                final DataInputStream in = new DataInputStream( new ByteArrayInputStream( buf.array() ) );
+                in.readByte();
+                in.readUTF();
+                return decode( in );
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        return legacy == null ? null : legacy.read( target );
+    }
+
+    @Override
+    public void delete( final Transfer target )
+            throws IOException
+    {
+        final String key = key( target );
+        final boolean logged;
+        lock.readLock().lock();
+        try
+        {
+            logged = index.containsKey( key );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        if ( logged )
+        {
+            append( DELETE, key, null );
+        }
+
+        // otherwise read() would fall back to it, and bring the deleted validators back.
+        if ( legacy != null )
+        {
+            legacy.delete( target );
+        }
+    }
+
+    @Override
+    public boolean contains( final ConcreteResource resource )
+    {
+        final String key = key( resource );
+        lock.readLock().lock();
+        try
+        {
+            return index.containsKey( key );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of resources with a record in the log
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return index.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the current length of the log file, in bytes
+     */
+    public long getLogSize()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return end;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if ( channel != null )
+            {
+                channel.force( true );
+                channel.close();
+                channel = null;
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append( final byte op, final String key, final byte[] data )
+            throws IOException
+    {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream( 256 );
+        final DataOutputStream out = new DataOutputStream( payload );
+        out.writeByte( op );
+        out.writeUTF( key );
+        if ( data != null )
+        {
+            out.write( data );
+        }
+        out.flush();
+
+        final byte[] bytes = payload.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update( bytes, 0, bytes.length );
+
+        final ByteBuffer record = ByteBuffer.allocate( HEADER_SIZE + bytes.length );
+        record.putInt( bytes.length ).putInt( (int) crc.getValue() ).put( bytes ).flip();
+
+        lock.writeLock().lock();
+        try
+        {
+            checkOpen();
+            final long offset = end;
+            while ( record.hasRemaining() )
+            {
+                channel.write( record, offset + record.position() );
+            }
+            end += record.limit();
+            apply( op, key, offset, record.limit() );
+
+            if ( end > minCompactionSize && liveBytes < ( end - 4 ) / 2 )
+            {
+                try
+                {
+                    compact();
+                }
+                catch ( final IOException e )
+                {
+                    // the record is already in the log; compaction is tried again on a later append.
+                    logger.warn( "Failed to compact HTTP exchange metadata log: {}. Reason: {}", file,
+                                 e.getMessage() );
+                }
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply( final byte op, final String key, final long offset, final int length )
+    {
+        final Entry old = op == PUT ? index.put( key, new Entry( offset, length ) ) : index.remove( key );
+        if ( old != null )
+        {
+            liveBytes -= old.length;
+        }
+        if ( op == PUT )
+        {
+            liveBytes += length;
+        }
+    }
+
+    private void replay()
+            throws IOException
+    {
+        final long size = channel.size();
+        if ( size == 0 )
+        {
+            final ByteBuffer magic = ByteBuffer.allocate( 4 ).putInt( MAGIC );
+            magic.flip();
+            channel.write( magic, 0 );
+            end = 4;
+            return;
+        }
+
+        final ByteBuffer magic = ByteBuffer.allocate( 4 );
+        if ( size < 4 || channel.read( magic, 0 ) < 4 || magic.getInt( 0 ) != MAGIC )
+        {
+            channel.close();
+            throw new IOException( "Not an HTTP exchange metadata log: " + file );
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+        long offset = 4;
+        while ( offset < size )
+        {
+            header.clear();
+            if ( size - offset < HEADER_SIZE )
+            {
+                break;
+            }
+            readFully( header, offset );
+
+            final int length = header.getInt( 0 );
+            if ( length < 3 || length > size - offset - HEADER_SIZE )
+            {
+                break;
+            }
+
+            final ByteBuffer payload = ByteBuffer.allocate( length );
+            readFully( payload, offset + HEADER_SIZE );
+
+            final CRC32 crc = new CRC32();
+            crc.update( payload.array(), 0, length );
+            if ( (int) crc.getValue() != header.getInt( 4 ) )
+            {
+                break;
+            }
+
+            final DataInputStream in = new DataInputStream( new ByteArrayInputStream( payload.array() ) );
+            apply( in.readByte(), in.readUTF(), offset, HEADER_SIZE + length );
+            offset += HEADER_SIZE + length;
+        }
+
+        if ( offset < size )
+        {
+            logger.warn( "Truncating torn or corrupt tail of HTTP exchange metadata log: {} at offset: {} (was: {})",
+                         file, offset, size );
+            channel.truncate( offset );
+        }
+
+        end = offset;
+    }
+
+    /**
+     * Copy the live records into a new log and swap it in for the current one. Called with the write lock held.
+     */
+    private void compact()
+            throws IOException
+    {
+        final Path path = file.toPath();
+        final Path tmp = path.resolveSibling( path.getFileName() + ".compact" );
+        final Map<String, Entry> compacted = new HashMap<>( index.size() * 2 );
+
+        logger.debug( "Compacting HTTP exchange metadata log: {} ({} live of {} bytes)", file, liveBytes, end );
+        final List<Map.Entry<String, Entry>> live = new ArrayList<>( index.entrySet() );
+        live.sort( ( a, b ) -> Long.compare( a.getValue().offset, b.getValue().offset ) );
+
+        long offset = 4;
+        try (FileChannel out = FileChannel.open( tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                 StandardOpenOption.TRUNCATE_EXISTING ))
+        {
+            final ByteBuffer magic = ByteBuffer.allocate( 4 ).putInt( MAGIC );
+            magic.flip();
+            out.write( magic, 0 );
+
+            for ( final Map.Entry<String, Entry> e : live )
+            {
+                final Entry entry = e.getValue();
+                long copied = 0;
+                while ( copied < entry.length )
+                {
+                    out.position( offset + copied );
+                    copied += channel.transferTo( entry.offset + copied, entry.length - copied, out );
+                }
+                compacted.put( e.getKey(), new Entry( offset, entry.length ) );
+                offset += entry.length;
+            }
+            out.force( true );
+        }
+
+        channel.close();
+        channel = null;
+        boolean swapped = false;
+        try
+        {
+            Files.move( tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            swapped = true;
+        }
+        finally
+        {
+            // either the compacted log, or (if the swap failed) the original one, which is still intact.
+            channel = FileChannel.open( path, StandardOpenOption.READ, StandardOpenOption.WRITE );
+            if ( !swapped )
+            {
+                Files.deleteIfExists( tmp );
+            }
+        }
+
+        index = compacted;
+        end = offset;
+        liveBytes = offset - 4;
+    }
+
+    private void readFully( final ByteBuffer buf, final long offset )
+            throws IOException
+    {
+        while ( buf.hasRemaining() )
+        {
+            if ( channel.read( buf, offset + buf.position() ) < 0 )
+            {
+                throw new EOFException( "Unexpected end of HTTP exchange metadata log: " + file );
+            }
+        }
+    }
+
+    private void checkOpen()
+            throws IOException
+    {
+        if ( channel == null )
+        {
+            throw new IOException( "HTTP exchange metadata log is closed: " + file );
+        }
+    }
+
+    private static String key( final Transfer target )
+    {
+        return key( target.getResource() );
+    }
+
+    private static String key( final ConcreteResource resource )
+    {
+        return resource.getLocationName() + '\u0000' + resource.getPath();
+    }
+
+    private static byte[] encode( final HttpExchangeMetadata metadata )
+            throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream( 256 );
+        final DataOutputStream out = new DataOutputStream( bytes );
+        out.writeByte( metadata instanceof HttpExchangeMetadataFromRequestHeader ? FROM_REQUEST_HEADERS : EXCHANGE );
+        out.writeInt( metadata.getResponseStatusCode() );
+        writeNullable( out, metadata.getResponseStatusMessage() );
+        writeHeaders( out, metadata.getRequestHeaders() );
+        writeHeaders( out, metadata.getResponseHeaders() );
+        out.flush();
+
+        return bytes.toByteArray();
+    }
+
+    private static HttpExchangeMetadata decode( final DataInputStream in )
+            throws IOException
+    {
+        final byte kind = in.readByte();
+        final int status = in.readInt();
+        final String message = readNullable( in );
+        final Map<String, List<String>> requestHeaders = readHeaders( in );
+        final Map<String, List<String>> responseHeaders = readHeaders( in );
+
+        final HttpExchangeMetadata metadata = kind == FROM_REQUEST_HEADERS ?
+                new HttpExchangeMetadataFromRequestHeader( requestHeaders ) :
+                new HttpExchangeMetadata();
+
+        metadata.setRequestHeaders( requestHeaders );
+        metadata.setResponseHeaders( responseHeaders );
+        metadata.setResponseStatusCode( status );
+        metadata.setResponseStatusMessage( message );
+
+        return metadata;
+    }
+
+    private static void writeHeaders( final DataOutputStream out, final Map<String, List<String>> headers )
+            throws IOException
+    {
+        if ( headers == null )
+        {
+            out.writeShort( 0 );
+            return;
+        }
+
+        out.writeShort( headers.size() );
+        for ( final Map.Entry<String, List<String>> header : headers.entrySet() )
+        {
+            out.writeUTF( header.getKey() );
+            final List<String> values = header.getValue();
+            out.writeShort( values == null ? 0 : values.size() );
+            if ( values != null )
+            {
+                for ( final String value : values )
+                {
+                    out.writeUTF( value );
+                }
+            }
+        }
+    }
+
+    private static Map<String, List<String>> readHeaders( final DataInputStream in )
+            throws IOException
+    {
+        final int count = in.readUnsignedShort();
+        final Map<String, List<String>> headers = new LinkedHashMap<>( count * 2 );
+        for ( int i = 0; i < count; i++ )
+        {
+            final String name = in.readUTF();
+            final int valueCount = in.readUnsignedShort();
+            final List<String> values = new ArrayList<>( valueCount );
+            for ( int j = 0; j < valueCount; j++ )
+            {
+                values.add( in.readUTF() );
+            }
+            headers.put( name, values );
+        }
+
+        return headers;
+    }
+
+    private static void writeNullable( final DataOutputStream out, final String value )
+            throws IOException
+    {
+        out.writeBoolean( value != null );
+        if ( value != null )
+        {
+            out.writeUTF( value );
+        }
+    }
+
+    private static String readNullable( final DataInputStream in )
+            throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static final class Entry
+    {
+        private final long offset;
+
+        private final int length;
+
+        private Entry( final long offset, final int length )
+        {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.util.LocationUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the extra range requests of segmented downloads, and keeps them within each location's
+ * {@link LocationUtils#getMaxConnections} budget: the connections of all segmented downloads from a location (their
+ * own request plus its ranges) come out of one shared set of permits. Permits are only ever taken if they're free, so
+ * a download that can't get at least one extra connection just isn't segmented, and the pool never runs more threads
+ * than the sum of those budgets.
+ */
+public final class SegmentPool
+{
+    private final Map<String, Permits> permits = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    public SegmentPool()
+    {
+        final AtomicInteger count = new AtomicInteger( 0 );
+        executor = Executors.newCachedThreadPool( r -> {
+            final Thread t = new Thread( r, "galley-http-segments-" + count.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        } );
+    }
+
+    /**
+     * Take up to the given number of connections (including the download's own) for a segmented download from the
+     * location, without waiting.
+     *
+     * @return the reservation, or null if fewer than two connections are free
+     */
+    Reservation reserve( final HttpLocation location, final int segments )
+    {
+        final Permits available = getPermits( location );
+
+        int granted = 0;
+        while ( granted < segments && available.semaphore.tryAcquire() )
+        {
+            granted++;
+        }
+
+        if ( granted < 2 )
+        {
+            available.semaphore.release( granted );
+            return null;
+        }
+
+        return new Reservation( available.semaphore, granted );
+    }
+
+    void execute( final Runnable task )
+    {
+        executor.execute( task );
+    }
+
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    private Permits getPermits( final HttpLocation location )
+    {
+        final int max = LocationUtils.getMaxConnections( location );
+        // a changed limit gets a fresh set of permits; reservations against the old one release back into it.
+        return permits.compute( location.getName(), ( name, current ) -> current != null && current.max == max ?
+                        current :
+                        new Permits( max ) );
+    }
+
+    private static final class Permits
+    {
+        private final int max;
+
+        private final Semaphore semaphore;
+
+        Permits( final int max )
+        {
+            this.max = max;
+            this.semaphore = new Semaphore( max );
+        }
+    }
+
+    /**
+     * Connections held by one segmented download; {@link #release()} gives them back once it's finished.
+     */
+    static final class Reservation
+    {
+        private final Semaphore semaphore;
+
+        private final int segments;
+
+        private final AtomicInteger held;
+
+        Reservation( final Semaphore semaphore, final int segments )
+        {
+            this.semaphore = semaphore;
+            this.segments = segments;
+            this.held = new AtomicInteger( segments );
+        }
+
+        int getSegments()
+        {
+            return segments;
+        }
+
+        void release()
+        {
+            final int count = held.getAndSet( 0 );
+            if ( count > 0 )
+            {
+                semaphore.release( count );
+            }
+        }
+    }
+}
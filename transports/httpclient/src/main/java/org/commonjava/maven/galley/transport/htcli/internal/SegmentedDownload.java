@@ -0,0 +1,271 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.commonjava.maven.galley.GalleyException;
+import org.commonjava.maven.galley.transport.htcli.Http;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.transport.htcli.util.HttpUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.LongConsumer;
+
+/**
+ * Fetches a large file as several byte ranges at once. The first range is read from the body of the GET that's
+ * already open (the caller aborts it once we're done) and goes straight to the target stream, so stream-through
+ * readers see it as it arrives. The rest are separate Range requests, each pinned to the same content with If-Range,
+ * written at their own offsets in a spool file (via positional {@link FileChannel} writes) and appended to the target
+ * stream in order as each one completes. Only those later ranges are written twice: they arrive out of order, but
+ * the target stream (and the decorators behind it, e.g. checksums) must see the content in order.
+ * <p>
+ * The spool file is preferably a hidden sibling of the cache target, so it's on the same disk as the content it's
+ * for; it's deleted when the download finishes. The connections come from a {@link SegmentPool.Reservation}, which
+ * is released at the end as well.
+ */
+final class SegmentedDownload
+{
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final String url;
+
+    private final HttpLocation location;
+
+    private final Http http;
+
+    private final String validator;
+
+    private final long length;
+
+    private final SegmentPool pool;
+
+    private final SegmentPool.Reservation reservation;
+
+    private final File spool;
+
+    private final LongConsumer progress;
+
+    private final Queue<HttpGet> requests = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param spool where to assemble the later ranges; if null, a temp file is used
+     */
+    SegmentedDownload( final String url, final HttpLocation location, final Http http, final String validator,
+                       final long length, final SegmentPool pool, final SegmentPool.Reservation reservation,
+                       final File spool, final LongConsumer progress )
+    {
+        this.url = url;
+        this.location = location;
+        this.http = http;
+        this.validator = validator;
+        this.length = length;
+        this.pool = pool;
+        this.reservation = reservation;
+        this.spool = spool;
+        this.progress = progress;
+    }
+
+    void fetch( final InputStream firstSegment, final OutputStream out )
+            throws IOException
+    {
+        final long segmentSize = ( length + reservation.getSegments() - 1 ) / reservation.getSegments();
+        final File file = spool == null ? File.createTempFile( "galley-segmented-", ".download" ) : spool;
+        boolean done = false;
+
+        final List<FutureTask<Void>> tasks = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile( file, "rw" ))
+        {
+            // offsets in the spool file are relative to the end of the first range.
+            raf.setLength( length - segmentSize );
+            final FileChannel channel = raf.getChannel();
+
+            for ( long start = segmentSize; start < length; start += segmentSize )
+            {
+                final long from = start;
+                final long to = Math.min( length, start + segmentSize ) - 1;
+                final FutureTask<Void> task = new FutureTask<>( () -> {
+                    fetchRange( channel, from - segmentSize, from, to );
+                    return null;
+                } );
+
+                tasks.add( task );
+                pool.execute( task );
+            }
+
+            logger.debug( "Fetching {} bytes of: {} in {} segments", length, url, tasks.size() + 1 );
+            copy( firstSegment, out, segmentSize );
+
+            final WritableByteChannel target = Channels.newChannel( out );
+            long position = 0;
+            for ( final FutureTask<Void> task : tasks )
+            {
+                task.get();
+
+                final long end = Math.min( length - segmentSize, position + segmentSize );
+                while ( position < end )
+                {
+                    position += channel.transferTo( position, end - position, target );
+                }
+            }
+
+            done = true;
+        }
+        catch ( final ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException( cause.getMessage(), cause );
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for download segments of: " + url );
+        }
+        finally
+        {
+            if ( !done )
+            {
+                tasks.forEach( task -> task.cancel( true ) );
+                requests.forEach( HttpGet::abort );
+            }
+
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            reservation.release();
+        }
+    }
+
+    private void fetchRange( final FileChannel channel, final long position, final long from, final long to )
+            throws IOException
+    {
+        final HttpGet request = new HttpGet( url );
+        request.setHeader( HttpHeaders.RANGE, "bytes=" + from + "-" + to );
+        request.setHeader( HttpHeaders.IF_RANGE, validator );
+        request.setHeader( HttpUtil.ACCEPT_ENCODING, HttpUtil.IDENTITY_ENCODING );
+        requests.add( request );
+
+        CloseableHttpClient client = null;
+        CloseableHttpResponse response = null;
+        try
+        {
+            client = http.createClient( location );
+            response = client.execute( request, http.createContext( location ) );
+
+            final int sc = response.getStatusLine().getStatusCode();
+            if ( sc != HttpStatus.SC_PARTIAL_CONTENT || HttpUtil.getContentRangeStart( response ) != from )
+            {
+                throw new IOException(
+                        String.format( "Unexpected response for bytes %d-%d of: %s (%s, %s)", from, to, url,
+                                       response.getStatusLine(),
+                                       response.getFirstHeader( HttpHeaders.CONTENT_RANGE ) ) );
+            }
+
+            try (InputStream in = response.getEntity().getContent())
+            {
+                write( channel, in, position, to - from + 1 );
+            }
+        }
+        catch ( final GalleyException e )
+        {
+            throw new IOException( "Failed to create HTTP client for: " + url + ". Reason: " + e.getMessage(), e );
+        }
+        finally
+        {
+            http.cleanup( client, request, response );
+        }
+    }
+
+    private void copy( final InputStream in, final OutputStream out, final long count )
+            throws IOException
+    {
+        final BandwidthLimiter limiter = http.getBandwidthLimiter();
+        final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long remaining = count;
+        while ( remaining > 0 )
+        {
+            final int read = in.read( buffer, 0, (int) Math.min( buffer.length, remaining ) );
+            if ( read < 0 )
+            {
+                throw new EOFException(
+                        String.format( "First segment of: %s ended %d bytes short of %d", url, remaining, count ) );
+            }
+
+            if ( limiter != null )
+            {
+                limiter.acquire( location, read );
+            }
+
+            out.write( buffer, 0, read );
+            remaining -= read;
+            progress.accept( read );
+        }
+    }
+
+    private void write( final FileChannel channel, final InputStream in, final long position, final long count )
+            throws IOException
+    {
+        final BandwidthLimiter limiter = http.getBandwidthLimiter();
+        final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long pos = position;
+        long remaining = count;
+        while ( remaining > 0 )
+        {
+            final int read = in.read( buffer, 0, (int) Math.min( buffer.length, remaining ) );
+            if ( read < 0 )
+            {
+                throw new EOFException(
+                        String.format( "Segment of: %s ended %d bytes short of %d", url, remaining, count ) );
+            }
+
+            if ( limiter != null )
+            {
+                limiter.acquire( location, read );
+            }
+
+            final ByteBuffer buf = ByteBuffer.wrap( buffer, 0, read );
+            while ( buf.hasRemaining() )
+            {
+                pos += channel.write( buf, pos );
+            }
+
+            remaining -= read;
+            progress.accept( read );
+        }
+    }
+}
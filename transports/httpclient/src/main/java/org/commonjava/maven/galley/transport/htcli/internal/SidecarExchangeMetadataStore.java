@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.transport.htcli.ExchangeMetadataStore;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The original {@link ExchangeMetadataStore}: a JSON file next to each resource (see
+ * {@link HttpExchangeMetadata#FILE_EXTENSION}), or inside it for directories. Simple, and readable by anything that
+ * reads the cache, but it costs a file (and its create / lock / write) per resource.
+ */
+public final class SidecarExchangeMetadataStore
+        implements ExchangeMetadataStore
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final ObjectMapper mapper;
+
+    public SidecarExchangeMetadataStore( final ObjectMapper mapper )
+    {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void write( final Transfer target, final HttpExchangeMetadata metadata )
+            throws IOException
+    {
+        final Transfer metaTxfr = getSidecar( target );
+        if ( metaTxfr == null )
+        {
+            logger.trace( "SKIP: Cannot retrieve HTTP exchange metadata Transfer instance for: {}", target );
+            return;
+        }
+
+        logger.trace( "Writing HTTP exchange metadata:\n\n{}\n\n", new Object()
+        {
+            @Override
+            public String toString()
+            {
+                try
+                {
+                    return mapper.writeValueAsString( metadata );
+                }
+                catch ( final JsonProcessingException e )
+                {
+                    return "ERROR RENDERING METADATA: " + e.getMessage();
+                }
+            }
+        } );
+
+        try (OutputStream out = metaTxfr.openOutputStream( TransferOperation.GENERATE, false ))
+        {
+            out.write( mapper.writeValueAsBytes( metadata ) );
+        }
+    }
+
+    @Override
+    public HttpExchangeMetadata read( final Transfer target )
+            throws IOException
+    {
+        return readSidecar( getSidecar( target ) );
+    }
+
+    @Override
+    public void delete( final Transfer target )
+            throws IOException
+    {
+        final Transfer metaTxfr = getSidecar( target );
+        if ( metaTxfr != null && metaTxfr.exists() )
+        {
+            metaTxfr.delete( false );
+        }
+    }
+
+    /**
+     * Read a JSON exchange metadata file directly, for example one the cache has set aside along with expired content.
+     *
+     * @return the metadata, or null if the file doesn't exist
+     */
+    public HttpExchangeMetadata readSidecar( final Transfer metaTxfr )
+            throws IOException
+    {
+        if ( metaTxfr == null || !metaTxfr.exists() )
+        {
+            return null;
+        }
+
+        try (InputStream in = metaTxfr.openInputStream( false ))
+        {
+            // the JSON carries derived properties too (lastModified, contentLength...), which have no setters
+            return mapper.readerFor( HttpExchangeMetadata.class )
+                         .without( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES )
+                         .readValue( in );
+        }
+    }
+
+    private Transfer getSidecar( final Transfer target )
+    {
+        final Transfer metaTxfr = target.getSiblingMeta( HttpExchangeMetadata.FILE_EXTENSION );
+        if ( metaTxfr == null && target.isDirectory() )
+        {
+            logger.trace( "DIRECTORY. Using HTTP exchange metadata file INSIDE directory called: {}",
+                          HttpExchangeMetadata.FILE_EXTENSION );
+            return target.getChild( HttpExchangeMetadata.FILE_EXTENSION );
+        }
+
+        return metaTxfr;
+    }
+}
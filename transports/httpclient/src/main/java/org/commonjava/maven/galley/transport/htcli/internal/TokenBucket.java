@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket: tokens (bytes) accrue at a fixed rate, up to one second's worth. Callers that take more than is
+ * available go into debt and wait it out, so concurrent callers are served in the order they asked, and the long-term
+ * rate never exceeds the limit.
+ */
+final class TokenBucket
+{
+    private final long bytesPerSecond;
+
+    private double tokens;
+
+    private long lastRefill = System.nanoTime();
+
+    TokenBucket( final long bytesPerSecond )
+    {
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = bytesPerSecond;
+    }
+
+    long getBytesPerSecond()
+    {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Take the given number of bytes from the bucket, waiting until the rate allows it.
+     */
+    void acquire( final int bytes )
+            throws InterruptedIOException
+    {
+        final long waitNanos = reserve( bytes );
+        if ( waitNanos <= 0 )
+        {
+            return;
+        }
+
+        try
+        {
+            TimeUnit.NANOSECONDS.sleep( waitNanos );
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for bandwidth" );
+        }
+    }
+
+    /**
+     * @return how long the caller has to wait before using the bytes it just took, in nanoseconds
+     */
+    synchronized long reserve( final int bytes )
+    {
+        final long now = System.nanoTime();
+        tokens = Math.min( bytesPerSecond, tokens + ( now - lastRefill ) * bytesPerSecond / 1e9 );
+        lastRefill = now;
+
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) ( -tokens * 1e9 / bytesPerSecond );
+    }
+}
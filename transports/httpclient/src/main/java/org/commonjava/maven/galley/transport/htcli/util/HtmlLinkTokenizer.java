@@ -0,0 +1,505 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Single-pass scanner for the links in an HTML page (typically a directory listing). Instead of building a DOM, it
+ * streams through the markup and reports each anchor's href and (whitespace-normalized) text as it's closed, so memory
+ * use doesn't grow with the size of the page. Comments and the contents of script / style elements are skipped, and
+ * the common character references are decoded.
+ */
+public final class HtmlLinkTokenizer
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int CHARSET_SNIFF_LIMIT = 1024;
+
+    private static final Pattern CHARSET = Pattern.compile( "charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE );
+
+    private static final Pattern META_CHARSET =
+            Pattern.compile( "<meta[^>]+charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE );
+
+    private static final Map<String, String> ENTITIES = new HashMap<>();
+
+    static
+    {
+        ENTITIES.put( "amp", "&" );
+        ENTITIES.put( "lt", "<" );
+        ENTITIES.put( "gt", ">" );
+        ENTITIES.put( "quot", "\"" );
+        ENTITIES.put( "apos", "'" );
+        ENTITIES.put( "nbsp", "\u00a0" );
+    }
+
+    private final Reader reader;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    private int pos;
+
+    private int limit;
+
+    private int pushedBack = -1;
+
+    public HtmlLinkTokenizer( final Reader reader )
+    {
+        this.reader = reader;
+    }
+
+    /**
+     * Scan the given stream, decoded with the charset, or if that's null, with the one declared in a meta tag near the
+     * start of the page (defaulting to UTF-8).
+     */
+    public static HtmlLinkTokenizer open( final InputStream stream, final Charset charset )
+            throws IOException
+    {
+        if ( charset != null )
+        {
+            return new HtmlLinkTokenizer( new InputStreamReader( stream, charset ) );
+        }
+
+        final InputStream in = stream.markSupported() ? stream : new BufferedInputStream( stream );
+        in.mark( CHARSET_SNIFF_LIMIT );
+
+        final byte[] head = new byte[CHARSET_SNIFF_LIMIT];
+        int read = 0;
+        int count;
+        while ( read < head.length && ( count = in.read( head, read, head.length - read ) ) > 0 )
+        {
+            read += count;
+        }
+        in.reset();
+
+        final Matcher matcher = META_CHARSET.matcher( new String( head, 0, read, StandardCharsets.ISO_8859_1 ) );
+        final Charset declared = matcher.find() ? toCharset( matcher.group( 1 ) ) : null;
+
+        return new HtmlLinkTokenizer( new InputStreamReader( in, declared == null ? StandardCharsets.UTF_8 : declared ) );
+    }
+
+    /**
+     * @return the charset named in a Content-Type header value, or null if there isn't one (or it's not supported)
+     */
+    public static Charset charsetOf( final String contentType )
+    {
+        if ( contentType == null )
+        {
+            return null;
+        }
+
+        final Matcher matcher = CHARSET.matcher( contentType );
+        return matcher.find() ? toCharset( matcher.group( 1 ) ) : null;
+    }
+
+    /**
+     * Read through the rest of the page, handing each link's href and text to the handler. Anchors without an href
+     * are reported with an empty one.
+     */
+    public void forEachLink( final BiConsumer<String, String> handler )
+            throws IOException
+    {
+        String href = null;
+        StringBuilder text = null;
+
+        int c;
+        while ( ( c = read() ) != -1 )
+        {
+            if ( c != '<' )
+            {
+                if ( text != null )
+                {
+                    text.append( (char) c );
+                }
+                continue;
+            }
+
+            c = read();
+            if ( c == '!' )
+            {
+                skipDeclaration();
+                continue;
+            }
+            else if ( c == '?' )
+            {
+                skipTo( '>' );
+                continue;
+            }
+
+            final boolean closing = c == '/';
+            if ( closing )
+            {
+                c = read();
+            }
+
+            if ( !Character.isLetter( c ) )
+            {
+                // not markup after all.
+                if ( text != null )
+                {
+                    text.append( closing ? "</" : "<" );
+                }
+                unread( c );
+                continue;
+            }
+
+            final String name = readTagName( c );
+            if ( closing )
+            {
+                skipTo( '>' );
+                if ( "a".equals( name ) && text != null )
+                {
+                    handler.accept( href, normalize( text ) );
+                    href = null;
+                    text = null;
+                }
+            }
+            else if ( "a".equals( name ) )
+            {
+                if ( text != null )
+                {
+                    // anchors don't nest; a new one closes the last.
+                    handler.accept( href, normalize( text ) );
+                }
+
+                href = readAttributes( true );
+                text = new StringBuilder();
+            }
+            else
+            {
+                readAttributes( false );
+                if ( "script".equals( name ) || "style".equals( name ) )
+                {
+                    skipRawText( name );
+                }
+            }
+        }
+
+        if ( text != null )
+        {
+            handler.accept( href, normalize( text ) );
+        }
+    }
+
+    private String readTagName( final int first )
+            throws IOException
+    {
+        final StringBuilder name = new StringBuilder().append( Character.toLowerCase( (char) first ) );
+        int c;
+        while ( ( c = read() ) != -1 && !isNameEnd( c ) )
+        {
+            name.append( Character.toLowerCase( (char) c ) );
+        }
+        unread( c );
+
+        return name.toString();
+    }
+
+    /**
+     * Read the rest of a start tag, up to and including its closing '&gt;'.
+     *
+     * @return the decoded href value if it's wanted, "" if it's wanted but missing, otherwise null
+     */
+    private String readAttributes( final boolean wantHref )
+            throws IOException
+    {
+        String href = null;
+        int c;
+        while ( true )
+        {
+            c = read();
+            while ( Character.isWhitespace( c ) || c == '/' )
+            {
+                c = read();
+            }
+
+            if ( c == -1 || c == '>' )
+            {
+                break;
+            }
+
+            final StringBuilder name = new StringBuilder();
+            while ( c != -1 && !isNameEnd( c ) && c != '=' )
+            {
+                name.append( Character.toLowerCase( (char) c ) );
+                c = read();
+            }
+
+            while ( Character.isWhitespace( c ) )
+            {
+                c = read();
+            }
+
+            if ( c != '=' )
+            {
+                unread( c );
+                continue;
+            }
+
+            c = read();
+            while ( Character.isWhitespace( c ) )
+            {
+                c = read();
+            }
+
+            final StringBuilder value = new StringBuilder();
+            if ( c == '"' || c == '\'' )
+            {
+                final int quote = c;
+                while ( ( c = read() ) != -1 && c != quote )
+                {
+                    value.append( (char) c );
+                }
+            }
+            else
+            {
+                while ( c != -1 && !Character.isWhitespace( c ) && c != '>' )
+                {
+                    value.append( (char) c );
+                    c = read();
+                }
+                unread( c );
+            }
+
+            if ( wantHref && href == null && "href".contentEquals( name ) )
+            {
+                href = decode( value );
+            }
+        }
+
+        return wantHref && href == null ? "" : href;
+    }
+
+    /**
+     * Skip a comment or a declaration like DOCTYPE, the '&lt;!' of which has already been read.
+     */
+    private void skipDeclaration()
+            throws IOException
+    {
+        int c = read();
+        if ( c != '-' )
+        {
+            if ( c != '>' )
+            {
+                skipTo( '>' );
+            }
+            return;
+        }
+
+        c = read();
+        if ( c != '-' )
+        {
+            if ( c != '>' )
+            {
+                skipTo( '>' );
+            }
+            return;
+        }
+
+        int last = -1;
+        int beforeLast = -1;
+        while ( ( c = read() ) != -1 && !( c == '>' && last == '-' && beforeLast == '-' ) )
+        {
+            beforeLast = last;
+            last = c;
+        }
+    }
+
+    /**
+     * Skip the content of a raw-text element (script, style) up to and including its end tag.
+     */
+    private void skipRawText( final String name )
+            throws IOException
+    {
+        int c;
+        while ( ( c = read() ) != -1 )
+        {
+            if ( c != '<' )
+            {
+                continue;
+            }
+
+            c = read();
+            if ( c != '/' )
+            {
+                unread( c );
+                continue;
+            }
+
+            c = read();
+            if ( Character.isLetter( c ) && name.equals( readTagName( c ) ) )
+            {
+                skipTo( '>' );
+                return;
+            }
+            unread( c );
+        }
+    }
+
+    private void skipTo( final char end )
+            throws IOException
+    {
+        int c;
+        do
+        {
+            c = read();
+        }
+        while ( c != -1 && c != end );
+    }
+
+    private int read()
+            throws IOException
+    {
+        if ( pushedBack != -1 )
+        {
+            final int c = pushedBack;
+            pushedBack = -1;
+            return c;
+        }
+
+        if ( pos == limit )
+        {
+            limit = reader.read( buffer, 0, buffer.length );
+            pos = 0;
+            if ( limit < 1 )
+            {
+                limit = 0;
+                return -1;
+            }
+        }
+
+        return buffer[pos++];
+    }
+
+    private void unread( final int c )
+    {
+        pushedBack = c;
+    }
+
+    private static boolean isNameEnd( final int c )
+    {
+        return c == '>' || c == '/' || Character.isWhitespace( c );
+    }
+
+    /**
+     * Decode character references, then collapse whitespace runs to single spaces and trim, the way a DOM's text
+     * content would be rendered.
+     */
+    private static String normalize( final CharSequence raw )
+    {
+        final String decoded = decode( raw );
+        final StringBuilder sb = new StringBuilder( decoded.length() );
+        boolean space = false;
+        for ( int i = 0; i < decoded.length(); i++ )
+        {
+            final char c = decoded.charAt( i );
+            if ( Character.isWhitespace( c ) )
+            {
+                space = sb.length() > 0;
+            }
+            else
+            {
+                if ( space )
+                {
+                    sb.append( ' ' );
+                    space = false;
+                }
+                sb.append( c );
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static String decode( final CharSequence raw )
+    {
+        final String value = raw.toString();
+        int amp = value.indexOf( '&' );
+        if ( amp < 0 )
+        {
+            return value;
+        }
+
+        final StringBuilder sb = new StringBuilder( value.length() );
+        int start = 0;
+        while ( amp >= 0 )
+        {
+            sb.append( value, start, amp );
+            start = amp;
+
+            final int semi = value.indexOf( ';', amp );
+            if ( semi > amp + 1 && semi - amp <= 10 )
+            {
+                final String replacement = resolve( value.substring( amp + 1, semi ) );
+                if ( replacement != null )
+                {
+                    sb.append( replacement );
+                    start = semi + 1;
+                }
+            }
+
+            amp = value.indexOf( '&', amp + 1 );
+        }
+        sb.append( value, start, value.length() );
+
+        return sb.toString();
+    }
+
+    private static String resolve( final String entity )
+    {
+        if ( entity.charAt( 0 ) != '#' )
+        {
+            return ENTITIES.get( entity );
+        }
+
+        try
+        {
+            final boolean hex = entity.length() > 1 && ( entity.charAt( 1 ) == 'x' || entity.charAt( 1 ) == 'X' );
+            final int codePoint = Integer.parseInt( entity.substring( hex ? 2 : 1 ), hex ? 16 : 10 );
+            return new String( Character.toChars( codePoint ) );
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            return null;
+        }
+    }
+
+    private static Charset toCharset( final String name )
+    {
+        try
+        {
+            return Charset.forName( name.toUpperCase( Locale.ROOT ) );
+        }
+        catch ( final IllegalCharsetNameException | UnsupportedCharsetException e )
+        {
+            return null;
+        }
+    }
+}
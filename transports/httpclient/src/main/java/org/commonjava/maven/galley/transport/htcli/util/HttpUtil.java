@@ -18,17 +18,40 @@ package org.commonjava.maven.galley.transport.htcli.util;
 import static org.apache.commons.io.IOUtils.closeQuietly;
 
 import org.apache.http.Header;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.AbstractExecutionAwareRequest;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 public final class HttpUtil
 {
 
     private static final String CONTENT_LENGTH = "Content-Length";
 
+    private static final String CONTENT_RANGE = "Content-Range";
+
+    private static final String BYTES_UNIT = "bytes ";
+
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    public static final String IDENTITY_ENCODING = "identity";
+
+    /**
+     * Uploads at least this large (or of unknown length) wait for the server's 100 Continue before sending the body,
+     * so a rejected PUT (auth, conflict) doesn't send it for nothing. Smaller ones aren't worth the round trip.
+     */
+    public static final long EXPECT_CONTINUE_THRESHOLD = 1024 * 1024;
+
+    private static final Set<String> PRECOMPRESSED_EXTENSIONS = new HashSet<>(
+            Arrays.asList( "jar", "war", "ear", "rar", "aar", "apk", "zip", "nupkg", "whl", "gz", "tgz", "bz2", "xz",
+                           "zst", "7z", "png", "jpg", "jpeg", "gif", "webp" ) );
+
     private HttpUtil()
     {
     }
@@ -66,4 +89,49 @@ public final class HttpUtil
         Header header = response.getFirstHeader( CONTENT_LENGTH );
         return header == null ? 0 : Long.parseLong( header.getValue() );
     }
+
+    /**
+     * First byte position from the Content-Range header of a 206 response (<tt>bytes start-end/total</tt>), or -1 if
+     * the header is missing or can't be parsed.
+     */
+    public static long getContentRangeStart( HttpResponse response )
+    {
+        final Header header = response == null ? null : response.getFirstHeader( CONTENT_RANGE );
+        if ( header == null || !header.getValue().startsWith( BYTES_UNIT ) )
+        {
+            return -1;
+        }
+
+        final String range = header.getValue();
+        final int dash = range.indexOf( '-', BYTES_UNIT.length() );
+        try
+        {
+            return dash < 0 ? -1 : Long.parseLong( range.substring( BYTES_UNIT.length(), dash ).trim() );
+        }
+        catch ( final NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+    public static boolean isExpectContinue( final long length )
+    {
+        return length < 0 || length >= EXPECT_CONTINUE_THRESHOLD;
+    }
+
+    /**
+     * Whether the file at the path is compressed already (archives, jars, images), so compressing it again in transit
+     * would only cost CPU on both ends.
+     */
+    public static boolean isPrecompressed( final String path )
+    {
+        if ( path == null )
+        {
+            return false;
+        }
+
+        final int dot = path.lastIndexOf( '.' );
+        return dot > path.lastIndexOf( '/' )
+                && PRECOMPRESSED_EXTENSIONS.contains( path.substring( dot + 1 ).toLowerCase() );
+    }
 }
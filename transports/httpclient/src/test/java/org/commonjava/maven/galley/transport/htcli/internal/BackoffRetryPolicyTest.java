@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.apache.http.NoHttpResponseException;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.transport.htcli.model.SimpleHttpLocation;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BackoffRetryPolicyTest
+{
+    private final BackoffRetryPolicy policy = new BackoffRetryPolicy();
+
+    @Test
+    public void noRetriesByDefault()
+            throws Exception
+    {
+        assertThat( policy.getRetryDelay( newLocation(), 1, 503, null ), equalTo( -1L ) );
+    }
+
+    @Test
+    public void onlyGatewayErrorsAndTimeoutsAreRetried()
+            throws Exception
+    {
+        final SimpleHttpLocation location = newLocation();
+        location.setAttribute( Location.RETRY_MAX_RETRIES, 3 );
+
+        assertThat( policy.getRetryDelay( location, 1, 502, null ) >= 0, equalTo( true ) );
+        assertThat( policy.getRetryDelay( location, 1, 503, null ) >= 0, equalTo( true ) );
+        assertThat( policy.getRetryDelay( location, 1, 504, null ) >= 0, equalTo( true ) );
+        assertThat( policy.getRetryDelay( location, 1, -1, new SocketTimeoutException() ) >= 0, equalTo( true ) );
+        assertThat( policy.getRetryDelay( location, 1, -1, new NoHttpResponseException( "gone" ) ) >= 0,
+                    equalTo( true ) );
+
+        assertThat( policy.getRetryDelay( location, 1, 500, null ), equalTo( -1L ) );
+        assertThat( policy.getRetryDelay( location, 1, -1, new IOException( "broken" ) ), equalTo( -1L ) );
+    }
+
+    @Test
+    public void delayBacksOffExponentiallyWithJitterUpToMax()
+            throws Exception
+    {
+        final SimpleHttpLocation location = newLocation();
+        location.setAttribute( Location.RETRY_MAX_RETRIES, 10 );
+        location.setAttribute( Location.RETRY_BACKOFF_MILLIS, 100 );
+        location.setAttribute( Location.RETRY_MAX_BACKOFF_MILLIS, 1000 );
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            assertBetween( policy.getRetryDelay( location, 1, 503, null ), 50, 100 );
+            assertBetween( policy.getRetryDelay( location, 2, 503, null ), 100, 200 );
+            assertBetween( policy.getRetryDelay( location, 3, 503, null ), 200, 400 );
+            assertBetween( policy.getRetryDelay( location, 10, 503, null ), 500, 1000 );
+        }
+
+        assertThat( policy.getRetryDelay( location, 11, 503, null ), equalTo( -1L ) );
+    }
+
+    @Test
+    public void hedgeDelayFollowsLatencyPercentileOnceThereAreEnoughSamples()
+            throws Exception
+    {
+        final SimpleHttpLocation location = newLocation();
+        location.setAttribute( Location.HEDGE_PERCENTILE, 90 );
+
+        for ( int i = 1; i < BackoffRetryPolicy.MIN_LATENCY_SAMPLES; i++ )
+        {
+            policy.recordLatency( location, i * 10 );
+        }
+        assertThat( policy.getHedgeDelay( location ), equalTo( -1L ) );
+
+        for ( int i = BackoffRetryPolicy.MIN_LATENCY_SAMPLES; i <= 100; i++ )
+        {
+            policy.recordLatency( location, i * 10 );
+        }
+        assertThat( policy.getHedgeDelay( location ), equalTo( 910L ) );
+    }
+
+    @Test
+    public void noHedgingUnlessPercentileIsSet()
+            throws Exception
+    {
+        final SimpleHttpLocation location = newLocation();
+        for ( int i = 0; i < 100; i++ )
+        {
+            policy.recordLatency( location, 10 );
+        }
+
+        assertThat( policy.getHedgeDelay( location ), equalTo( -1L ) );
+    }
+
+    private void assertBetween( final long value, final long min, final long max )
+    {
+        assertThat( value + " should be in [" + min + ", " + max + "]", value >= min && value <= max,
+                    equalTo( true ) );
+    }
+
+    private SimpleHttpLocation newLocation()
+            throws Exception
+    {
+        return new SimpleHttpLocation( "test", "http://foo.com/repo", true, true, true, true, null );
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.transport.htcli.model.SimpleHttpLocation;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BandwidthLimiterTest
+{
+    @Test
+    public void bucketAllowsOneSecondBurstThenChargesForDebt()
+    {
+        final TokenBucket bucket = new TokenBucket( 1000 );
+
+        assertThat( bucket.reserve( 1000 ), equalTo( 0L ) );
+
+        final long wait = bucket.reserve( 500 );
+        assertThat( wait + "ns", wait > TimeUnit.MILLISECONDS.toNanos( 400 ), equalTo( true ) );
+        assertThat( wait + "ns", wait <= TimeUnit.MILLISECONDS.toNanos( 500 ), equalTo( true ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void locationLimitShapesReads()
+            throws Exception
+    {
+        final SimpleHttpLocation location = newLocation( "limited" );
+        location.setAttribute( Location.MAX_BYTES_PER_SECOND, 64 * 1024 );
+
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+
+        // the first second's worth is free; the next 32k should take about half a second
+        final long start = System.nanoTime();
+        for ( int i = 0; i < 12; i++ )
+        {
+            limiter.acquire( location, 8192 );
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+
+        assertThat( elapsed + "ms", elapsed >= 400, equalTo( true ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void unlimitedLocationIsNotShaped()
+            throws Exception
+    {
+        final BandwidthLimiter limiter = new BandwidthLimiter();
+        final SimpleHttpLocation location = newLocation( "unlimited" );
+
+        final long start = System.nanoTime();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            limiter.acquire( location, 8192 );
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+
+        assertThat( elapsed + "ms", elapsed < 1000, equalTo( true ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void globalLimitAppliesAcrossLocations()
+            throws Exception
+    {
+        final BandwidthLimiter limiter = new BandwidthLimiter( 64 * 1024 );
+
+        final long start = System.nanoTime();
+        for ( int i = 0; i < 6; i++ )
+        {
+            limiter.acquire( newLocation( "first" ), 8192 );
+            limiter.acquire( newLocation( "second" ), 8192 );
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+
+        assertThat( elapsed + "ms", elapsed >= 400, equalTo( true ) );
+    }
+
+    private SimpleHttpLocation newLocation( final String name )
+            throws Exception
+    {
+        return new SimpleHttpLocation( name, "http://foo.com/" + name, true, true, true, true, null );
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.maven.galley.cache.testutil.TestIOUtils;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.transport.htcli.ExchangeMetadataStore;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+import org.commonjava.maven.galley.transport.htcli.testutil.TestCacheProvider;
+import org.commonjava.maven.galley.transport.htcli.testutil.TestFileEventManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Compares the write amplification of the JSON sidecar store ({@link SidecarExchangeMetadataStore}) with the
+ * append-only log ({@link LogExchangeMetadataStore}): writes exchange metadata for a few thousand artifacts (then
+ * rewrites all of it, as revalidation does), and logs the files, bytes and estimated disk space (in 4KiB blocks) each
+ * store takes after every pass.
+ * <br/>
+ * This is not part of the normal test run (the class name doesn't match the surefire includes). Run it with:
+ * <pre>mvn -pl transports/httpclient test -Dmaven.test.skip=false -Dtest=ExchangeMetadataStoreBenchmark</pre>
+ */
+public class ExchangeMetadataStoreBenchmark
+{
+    private static final int ARTIFACTS = 5000;
+
+    private static final int PASSES = 2;
+
+    private static final long BLOCK_SIZE = 4096;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Location loc = new SimpleLocation( "central", "http://repo.foo.com/maven2/" );
+
+    @Test
+    public void writeAmplification()
+            throws Exception
+    {
+        final File sidecarDir = TestIOUtils.newTempFolder( folder, "sidecar" );
+        final String sidecars = measure( sidecarDir, new SidecarExchangeMetadataStore( new ObjectMapper() ) );
+
+        final File logDir = TestIOUtils.newTempFolder( folder, "log" );
+        final String log;
+        try (LogExchangeMetadataStore store = new LogExchangeMetadataStore(
+                new File( logDir, LogExchangeMetadataStore.DEFAULT_FILE_NAME ), null ))
+        {
+            log = measure( logDir, store );
+        }
+
+        logger.info( "Exchange metadata write amplification ({} artifacts):\n  JSON sidecars:{}\n  append-only log:{}",
+                     ARTIFACTS, sidecars, log );
+    }
+
+    private String measure( final File dir, final ExchangeMetadataStore store )
+            throws Exception
+    {
+        final TestCacheProvider cache =
+                new TestCacheProvider( dir, new TestFileEventManager(), new TransferDecoratorManager( Collections.emptyList() ) );
+        final List<Transfer> targets = new ArrayList<>( ARTIFACTS );
+        for ( int i = 0; i < ARTIFACTS; i++ )
+        {
+            targets.add( cache.getTransfer( new ConcreteResource( loc, String.format(
+                    "/org/foo/group-%d/artifact-%d/1.0/artifact-%d-1.0.jar", i % 50, i, i ) ) ) );
+        }
+
+        final StringBuilder result = new StringBuilder();
+        for ( int pass = 0; pass < PASSES; pass++ )
+        {
+            final long start = System.nanoTime();
+            for ( final Transfer target : targets )
+            {
+                store.write( target, LogExchangeMetadataStoreTest.exchange(
+                        "\"" + pass + "-" + target.getPath().hashCode() + "\"", 200 ) );
+            }
+            final long elapsed = System.nanoTime() - start;
+
+            final long[] stats = stats( dir );
+            result.append( String.format( "\n    pass %d: %d files, %d bytes (%.0f/artifact), ~%dKiB on disk, %.1fms",
+                                          pass + 1, stats[0], stats[1], (double) stats[1] / ARTIFACTS,
+                                          stats[2] / 1024, elapsed / 1e6 ) );
+        }
+
+        for ( final Transfer target : targets )
+        {
+            assertThat( store.read( target ).getResponseStatusCode(), equalTo( 200 ) );
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * @return file count, total length, and length rounded up to whole blocks
+     */
+    private static long[] stats( final File dir )
+            throws IOException
+    {
+        final long[] stats = new long[3];
+        try (Stream<Path> files = Files.walk( dir.toPath() ))
+        {
+            files.filter( Files::isRegularFile ).forEach( p -> {
+                final long len = p.toFile().length();
+                stats[0]++;
+                stats[1] += len;
+                stats[2] += ( len + BLOCK_SIZE - 1 ) / BLOCK_SIZE * BLOCK_SIZE;
+            } );
+        }
+
+        return stats;
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.spi.metrics.MeteringProvider;
+import org.commonjava.maven.galley.transport.htcli.HttpImpl;
+import org.commonjava.maven.galley.transport.htcli.conf.HttpImplConfig;
+import org.commonjava.maven.galley.transport.htcli.model.SimpleHttpLocation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class HttpClientPoolTest
+{
+    private final Map<String, AtomicLong> marks = new ConcurrentHashMap<>();
+
+    private final List<StubClient> created = new ArrayList<>();
+
+    private final HttpClientPool.ClientFactory factory = location -> {
+        final StubClient client = new StubClient();
+        created.add( client );
+        return client;
+    };
+
+    @Test
+    public void leasesForSameLocationShareOneClient()
+            throws Exception
+    {
+        final HttpClientPool pool = newPool( HttpClientPool.DEFAULT_IDLE_MILLIS );
+        final SimpleHttpLocation location = newLocation();
+
+        pool.lease( location, factory ).close();
+        pool.lease( location, factory ).close();
+        pool.lease( location, factory ).close();
+
+        assertThat( created.size(), equalTo( 1 ) );
+        assertThat( created.get( 0 ).closed, equalTo( false ) );
+        assertThat( marks.get( HttpClientPool.POOL_MISS ).get(), equalTo( 1L ) );
+        assertThat( marks.get( HttpClientPool.POOL_HIT ).get(), equalTo( 2L ) );
+    }
+
+    @Test
+    public void settingChangeRetiresClientOnceReleased()
+            throws Exception
+    {
+        final HttpClientPool pool = newPool( HttpClientPool.DEFAULT_IDLE_MILLIS );
+        final SimpleHttpLocation location = newLocation();
+
+        final CloseableHttpClient inFlight = pool.lease( location, factory );
+
+        location.setAttribute( Location.CONNECTION_TIMEOUT_SECONDS, 5 );
+        pool.lease( location, factory ).close();
+
+        assertThat( created.size(), equalTo( 2 ) );
+        assertThat( created.get( 0 ).closed, equalTo( false ) );
+
+        inFlight.close();
+
+        assertThat( created.get( 0 ).closed, equalTo( true ) );
+        assertThat( created.get( 1 ).closed, equalTo( false ) );
+        assertThat( pool.size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void unrelatedAttributeChangeKeepsClient()
+            throws Exception
+    {
+        final HttpClientPool pool = newPool( HttpClientPool.DEFAULT_IDLE_MILLIS );
+        final SimpleHttpLocation location = newLocation();
+
+        pool.lease( location, factory ).close();
+        location.setAttribute( "password_test", "cached" );
+        pool.lease( location, factory ).close();
+
+        assertThat( created.size(), equalTo( 1 ) );
+        assertThat( created.get( 0 ).closed, equalTo( false ) );
+    }
+
+    @Test
+    public void idleClientIsEvicted()
+            throws Exception
+    {
+        final HttpClientPool pool = newPool( 10 );
+        final SimpleHttpLocation location = newLocation();
+
+        pool.lease( location, factory ).close();
+        Thread.sleep( 1100 );
+        pool.lease( location, factory ).close();
+
+        assertThat( created.size(), equalTo( 2 ) );
+        assertThat( created.get( 0 ).closed, equalTo( true ) );
+        assertThat( marks.get( HttpClientPool.POOL_EVICTED ).get(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void httpImplDefaultPoolReportsToConfiguredProvider()
+            throws Exception
+    {
+        final HttpImpl http = new HttpImpl( id -> null, Optional.empty(),
+                                            new HttpImplConfig().withMeteringProvider( new MeteringProviderStub() ) );
+        try
+        {
+            final SimpleHttpLocation location = newLocation();
+            http.createClient( location ).close();
+            http.createClient( location ).close();
+        }
+        finally
+        {
+            http.close();
+        }
+
+        assertThat( marks.get( HttpClientPool.POOL_MISS ).get(), equalTo( 1L ) );
+        assertThat( marks.get( HttpClientPool.POOL_HIT ).get(), equalTo( 1L ) );
+    }
+
+    private HttpClientPool newPool( final long idleMillis )
+    {
+        return new HttpClientPool( idleMillis, HttpClientPool.DEFAULT_MAX_LIFE_MILLIS, new MeteringProviderStub(),
+                                   null );
+    }
+
+    private SimpleHttpLocation newLocation()
+            throws Exception
+    {
+        return new SimpleHttpLocation( "test", "http://foo.com/repo", true, true, true, true, null );
+    }
+
+    private final class MeteringProviderStub
+            implements MeteringProvider
+    {
+        @Override
+        public void mark( final String name )
+        {
+            mark( name, 1 );
+        }
+
+        @Override
+        public void mark( final String name, final long count )
+        {
+            marks.computeIfAbsent( name, n -> new AtomicLong() ).addAndGet( count );
+        }
+    }
+
+    private static final class StubClient
+            extends CloseableHttpClient
+    {
+        private volatile boolean closed;
+
+        @Override
+        protected CloseableHttpResponse doExecute( final HttpHost target, final HttpRequest request,
+                                                   final HttpContext context )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+
+        @Override
+        @Deprecated
+        public HttpParams getParams()
+        {
+            return null;
+        }
+
+        @Override
+        @Deprecated
+        public ClientConnectionManager getConnectionManager()
+        {
+            return null;
+        }
+    }
+}
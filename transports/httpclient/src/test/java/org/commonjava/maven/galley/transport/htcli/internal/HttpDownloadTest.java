@@ -16,19 +16,27 @@
 package org.commonjava.maven.galley.transport.htcli.internal;
 
 import static org.commonjava.o11yphant.metrics.util.MetricUtils.newDefaultMetricRegistry;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import org.apache.commons.io.IOUtils;
 import org.commonjava.maven.galley.TransferException;
 import org.commonjava.maven.galley.config.TransportMetricConfig;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
 import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.transport.htcli.HttpImpl;
+import org.commonjava.maven.galley.transport.htcli.RetryPolicy;
+import org.commonjava.maven.galley.transport.htcli.conf.HttpImplConfig;
 import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
 import org.commonjava.maven.galley.transport.htcli.model.SimpleHttpLocation;
 import org.commonjava.maven.galley.transport.htcli.testutil.HttpTestFixture;
 import org.commonjava.o11yphant.metrics.DefaultMetricRegistry;
@@ -46,9 +54,14 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 @RunWith( BMUnitRunner.class )
 @BMUnitConfig( debug = true )
@@ -256,6 +269,243 @@ public class HttpDownloadTest
         assertThat( fixture.getAccessesFor( urlPath ), equalTo( 2 ) );
     }
 
+    @Test
+    public void expiredCopyIsRestoredWhenServerSaysNotModified()
+            throws Exception
+    {
+        final String content = "This is some content " + System.currentTimeMillis() + "." + System.nanoTime();
+        final String etag = "\"v1\"";
+        final String path = "/path/to/revalidated";
+
+        final Map<String, String> conditionalHeaders = new HashMap<>();
+        fixture.getServer().expect( "GET", fixture.formatUrl( path ), new ExpectationHandler()
+        {
+            @Override
+            public void handle( final HttpServletRequest httpServletRequest,
+                                final HttpServletResponse httpServletResponse )
+                    throws ServletException, IOException
+            {
+                conditionalHeaders.put( "If-None-Match", httpServletRequest.getHeader( "If-None-Match" ) );
+                if ( etag.equals( httpServletRequest.getHeader( "If-None-Match" ) ) )
+                {
+                    httpServletResponse.setStatus( 304 );
+                }
+                else
+                {
+                    httpServletResponse.setStatus( 200 );
+                    httpServletResponse.getWriter().write( "changed" );
+                }
+            }
+        } );
+
+        final String baseUri = fixture.getBaseUri();
+        final SimpleHttpLocation location = new SimpleHttpLocation( "test", baseUri, true, true, true, true, null );
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+        final String url = fixture.formatUrl( path );
+
+        // what the cache leaves behind when the copy expires: the stale file and its exchange metadata, set aside
+        final Transfer stale = transfer.getSiblingMeta( CacheProvider.SUFFIX_TO_REVALIDATE );
+        final Transfer staleMeta =
+                transfer.getSiblingMeta( HttpExchangeMetadata.FILE_EXTENSION + CacheProvider.SUFFIX_TO_REVALIDATE );
+        try (OutputStream out = stale.openOutputStream( TransferOperation.DOWNLOAD, false ))
+        {
+            out.write( content.getBytes() );
+        }
+        try (OutputStream out = staleMeta.openOutputStream( TransferOperation.GENERATE, false ))
+        {
+            out.write( ( "{\"responseStatusCode\":200,\"responseHeaders\":{\"ETAG\":[\"\\\"v1\\\"\"]}}" ).getBytes() );
+        }
+
+        final HttpDownload dl =
+                new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(), new EventMetadata(),
+                                  fixture.getHttp(), new ObjectMapper() );
+
+        dl.call();
+
+        assertThat( dl.getError(), nullValue() );
+        assertThat( conditionalHeaders.get( "If-None-Match" ), equalTo( etag ) );
+        assertThat( transfer.exists(), equalTo( true ) );
+        try (InputStream in = transfer.openInputStream())
+        {
+            assertThat( IOUtils.toString( in ), equalTo( content ) );
+        }
+
+        assertThat( stale.exists(), equalTo( false ) );
+        assertThat( staleMeta.exists(), equalTo( false ) );
+
+        final HttpExchangeMetadata metadata;
+        try (InputStream in = transfer.getSiblingMeta( HttpExchangeMetadata.FILE_EXTENSION ).openInputStream())
+        {
+            metadata = new ObjectMapper().readValue( in, HttpExchangeMetadata.class );
+        }
+        assertThat( metadata.getResponseStatusCode(), equalTo( 200 ) );
+    }
+
+    @Test
+    public void partialDownloadWithValidatorResumesFromRange()
+            throws Exception
+    {
+        final String content = "This is some content " + System.currentTimeMillis() + "." + System.nanoTime();
+        final int half = content.length() / 2;
+        final String etag = "\"v1\"";
+        final String path = "/path/to/file";
+
+        final Map<String, String> resumeHeaders = new HashMap<>();
+        fixture.getServer().expect( "GET", fixture.formatUrl( path ), new ExpectationHandler()
+        {
+            int count=0;
+
+            @Override
+            public void handle( final HttpServletRequest httpServletRequest,
+                                final HttpServletResponse httpServletResponse )
+                    throws ServletException, IOException
+            {
+                httpServletResponse.setHeader( "ETag", etag );
+                httpServletResponse.setHeader( "Accept-Ranges", "bytes" );
+                PrintWriter writer = httpServletResponse.getWriter();
+
+                if ( count < 1 )
+                {
+                    httpServletResponse.setStatus( 200 );
+                    httpServletResponse.setHeader( "Content-Length", Integer.toString( content.length() ) );
+                    writer.write( content.substring( 0, half ) );
+                }
+                else
+                {
+                    resumeHeaders.put( "Range", httpServletRequest.getHeader( "Range" ) );
+                    resumeHeaders.put( "If-Range", httpServletRequest.getHeader( "If-Range" ) );
+
+                    httpServletResponse.setStatus( 206 );
+                    httpServletResponse.setHeader( "Content-Range", String.format( "bytes %d-%d/%d", half,
+                                                                                   content.length() - 1,
+                                                                                   content.length() ) );
+                    httpServletResponse.setHeader( "Content-Length", Integer.toString( content.length() - half ) );
+                    writer.write( content.substring( half ) );
+                }
+
+                count++;
+            }
+        } );
+
+        final String baseUri = fixture.getBaseUri();
+        final SimpleHttpLocation location = new SimpleHttpLocation( "test", baseUri, true, true, true, true, null );
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+        final String url = fixture.formatUrl( path );
+
+        // first call, server should quit transferring halfway through the transfer, leaving a resumable partial
+
+        HttpDownload dl =
+                new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(), new EventMetadata(),
+                                  fixture.getHttp(), new ObjectMapper() );
+
+        dl.call();
+
+        assertThat( dl.getError(), notNullValue() );
+        assertThat( transfer.exists(), equalTo( false ) );
+
+        final Transfer partial = transfer.getSiblingMeta( CacheProvider.SUFFIX_TO_RESUME );
+        assertThat( partial.exists(), equalTo( true ) );
+
+        // second call should ask for the remainder only, and stitch the content back together.
+
+        dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(), new EventMetadata(),
+                               fixture.getHttp(), new ObjectMapper() );
+
+        final DownloadJob resultJob = dl.call();
+
+        assertThat( dl.getError(), nullValue() );
+        assertThat( resultJob.getTransfer().exists(), equalTo( true ) );
+        assertThat( partial.exists(), equalTo( false ) );
+        assertThat( resumeHeaders.get( "Range" ), equalTo( "bytes=" + half + "-" ) );
+        assertThat( resumeHeaders.get( "If-Range" ), equalTo( etag ) );
+
+        try (InputStream in = transfer.openInputStream())
+        {
+            assertThat( IOUtils.toString( in ), equalTo( content ) );
+        }
+    }
+
+    @Test
+    public void largeDownloadIsFetchedInConcurrentRanges()
+            throws Exception
+    {
+        final StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            sb.append( i ).append( ',' );
+        }
+
+        final String content = sb.toString();
+        final String path = "/path/to/large.jar";
+
+        fixture.getServer().expect( "GET", fixture.formatUrl( path ), new ExpectationHandler()
+        {
+            @Override
+            public void handle( final HttpServletRequest httpServletRequest,
+                                final HttpServletResponse httpServletResponse )
+                    throws ServletException, IOException
+            {
+                httpServletResponse.setHeader( "ETag", "\"v1\"" );
+                httpServletResponse.setHeader( "Accept-Ranges", "bytes" );
+
+                String body = content;
+                final String range = httpServletRequest.getHeader( "Range" );
+                if ( range == null )
+                {
+                    httpServletResponse.setStatus( 200 );
+                }
+                else
+                {
+                    final String[] bounds = range.substring( "bytes=".length() ).split( "-" );
+                    final int from = Integer.parseInt( bounds[0] );
+                    final int to = Integer.parseInt( bounds[1] );
+                    body = content.substring( from, to + 1 );
+
+                    httpServletResponse.setStatus( 206 );
+                    httpServletResponse.setHeader( "Content-Range",
+                                                   String.format( "bytes %d-%d/%d", from, to, content.length() ) );
+                }
+
+                httpServletResponse.setHeader( "Content-Length", Integer.toString( body.length() ) );
+                httpServletResponse.getWriter().write( body );
+            }
+        } );
+
+        final String baseUri = fixture.getBaseUri();
+        final SimpleHttpLocation location = new SimpleHttpLocation( "test", baseUri, true, true, true, true, null );
+        location.setAttribute( Location.SEGMENTED_DOWNLOAD_THRESHOLD, 1024L );
+        location.setAttribute( Location.SEGMENTED_DOWNLOAD_SEGMENTS, 4 );
+
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+        final String url = fixture.formatUrl( path );
+
+        final SegmentPool segmentPool = new SegmentPool();
+        try
+        {
+            final HttpDownload dl =
+                    new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(), new EventMetadata(),
+                                      fixture.getHttp(), new ObjectMapper(), true, null, null, segmentPool );
+
+            dl.call();
+
+            assertThat( dl.getError(), nullValue() );
+            assertThat( dl.getBytesTransferred(), equalTo( (long) content.length() ) );
+        }
+        finally
+        {
+            segmentPool.shutdown();
+        }
+
+        assertThat( transfer.getSiblingMeta( CacheProvider.SUFFIX_TO_ASSEMBLE ).exists(), equalTo( false ) );
+
+        try (InputStream in = transfer.openInputStream())
+        {
+            assertThat( IOUtils.toString( in ), equalTo( content ) );
+        }
+
+        assertThat( fixture.getAccessesFor( fixture.getUrlPath( url ) ), equalTo( 4 ) );
+    }
+
     @Test
     public void simpleRetrieveOfAvailableUrl()
         throws Exception
@@ -438,4 +688,244 @@ public class HttpDownloadTest
         {
         }
     }
+
+    @Test
+    public void gatewayErrorIsRetriedWhenLocationAllowsIt()
+            throws Exception
+    {
+        final String content = "This is some content " + System.currentTimeMillis() + "." + System.nanoTime();
+        final String path = "/path/to/retried";
+
+        fixture.getServer().expect( "GET", fixture.formatUrl( path ), new ExpectationHandler()
+        {
+            int count = 0;
+
+            @Override
+            public void handle( final HttpServletRequest httpServletRequest,
+                                final HttpServletResponse httpServletResponse )
+                    throws ServletException, IOException
+            {
+                if ( count++ < 2 )
+                {
+                    httpServletResponse.setStatus( 503 );
+                    return;
+                }
+
+                httpServletResponse.setStatus( 200 );
+                httpServletResponse.setHeader( "Content-Length", Integer.toString( content.length() ) );
+                httpServletResponse.getWriter().write( content );
+            }
+        } );
+
+        final SimpleHttpLocation location = newLocation();
+        location.setAttribute( Location.RETRY_MAX_RETRIES, 2 );
+        location.setAttribute( Location.RETRY_BACKOFF_MILLIS, 10 );
+
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+        final String url = fixture.formatUrl( path );
+
+        final HttpDownload dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(),
+                                                  new EventMetadata(), fixture.getHttp(), new ObjectMapper() );
+        dl.call();
+
+        assertThat( dl.getError(), nullValue() );
+        assertThat( readContent( transfer ), equalTo( content ) );
+        assertThat( fixture.getAccessesFor( fixture.getUrlPath( url ) ), equalTo( 3 ) );
+    }
+
+    @Test
+    public void gatewayErrorIsNotRetriedByDefault()
+            throws Exception
+    {
+        final String path = "/path/to/not-retried";
+
+        fixture.getServer().expect( "GET", fixture.formatUrl( path ), 503, "unavailable" );
+
+        final SimpleHttpLocation location = newLocation();
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+        final String url = fixture.formatUrl( path );
+
+        final HttpDownload dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(),
+                                                  new EventMetadata(), fixture.getHttp(), new ObjectMapper() );
+        dl.call();
+
+        assertThat( dl.getError(), notNullValue() );
+        assertThat( fixture.getAccessesFor( fixture.getUrlPath( url ) ), equalTo( 1 ) );
+    }
+
+    @Test
+    public void slowRequestIsHedged()
+            throws Exception
+    {
+        final String content = "This is some content " + System.currentTimeMillis() + "." + System.nanoTime();
+        final String path = "/path/to/hedged";
+
+        fixture.getServer().expect( "GET", fixture.formatUrl( path ), new ExpectationHandler()
+        {
+            final AtomicInteger count = new AtomicInteger( 0 );
+
+            @Override
+            public void handle( final HttpServletRequest httpServletRequest,
+                                final HttpServletResponse httpServletResponse )
+                    throws ServletException, IOException
+            {
+                if ( count.getAndIncrement() < 1 )
+                {
+                    try
+                    {
+                        Thread.sleep( 5000 );
+                    }
+                    catch ( final InterruptedException e )
+                    {
+                        return;
+                    }
+                }
+
+                httpServletResponse.setStatus( 200 );
+                httpServletResponse.setHeader( "Content-Length", Integer.toString( content.length() ) );
+                httpServletResponse.getWriter().write( content );
+            }
+        } );
+
+        final RetryPolicy hedgeFast = new RetryPolicy()
+        {
+            @Override
+            public long getRetryDelay( final HttpLocation location, final int attempt, final int statusCode,
+                                       final IOException error )
+            {
+                return -1;
+            }
+
+            @Override
+            public long getHedgeDelay( final HttpLocation location )
+            {
+                return 100;
+            }
+
+            @Override
+            public void recordLatency( final HttpLocation location, final long millis )
+            {
+            }
+        };
+
+        final SimpleHttpLocation location = newLocation();
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+        final String url = fixture.formatUrl( path );
+
+        final HttpImpl http =
+                new HttpImpl( fixture, Optional.empty(), new HttpImplConfig().withRetryPolicy( hedgeFast ) );
+        try
+        {
+            final long start = System.currentTimeMillis();
+            final HttpDownload dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(),
+                                                      new EventMetadata(), http, new ObjectMapper() );
+            dl.call();
+
+            assertThat( dl.getError(), nullValue() );
+            assertThat( readContent( transfer ), equalTo( content ) );
+            assertThat( System.currentTimeMillis() - start < 4000, equalTo( true ) );
+            assertThat( fixture.getAccessesFor( fixture.getUrlPath( url ) ), equalTo( 2 ) );
+        }
+        finally
+        {
+            http.close();
+        }
+
+        assertThat( http.getHedgeExecutor().isShutdown(), equalTo( true ) );
+    }
+
+    @Test
+    public void gzipEncodedResponseIsStoredDecoded()
+            throws Exception
+    {
+        final String content = "<project>" + System.currentTimeMillis() + "</project>";
+        final String path = "/path/to/foo-1.pom";
+        final Map<String, String> requestHeaders = new HashMap<>();
+
+        fixture.getServer().expect( "GET", fixture.formatUrl( path ), new ExpectationHandler()
+        {
+            @Override
+            public void handle( final HttpServletRequest httpServletRequest,
+                                final HttpServletResponse httpServletResponse )
+                    throws ServletException, IOException
+            {
+                final String accept = httpServletRequest.getHeader( "Accept-Encoding" );
+                requestHeaders.put( "Accept-Encoding", accept );
+                httpServletResponse.setStatus( 200 );
+                if ( accept != null && accept.contains( "gzip" ) )
+                {
+                    httpServletResponse.setHeader( "Content-Encoding", "gzip" );
+                    try (OutputStream out = new GZIPOutputStream( httpServletResponse.getOutputStream() ))
+                    {
+                        out.write( content.getBytes() );
+                    }
+                }
+                else
+                {
+                    httpServletResponse.getOutputStream().write( content.getBytes() );
+                }
+            }
+        } );
+
+        final SimpleHttpLocation location = newLocation();
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+        final String url = fixture.formatUrl( path );
+
+        final HttpDownload dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(),
+                                                  new EventMetadata(), fixture.getHttp(), new ObjectMapper() );
+        dl.call();
+
+        assertThat( dl.getError(), nullValue() );
+        assertThat( requestHeaders.get( "Accept-Encoding" ), containsString( "gzip" ) );
+        assertThat( readContent( transfer ), equalTo( content ) );
+    }
+
+    @Test
+    public void precompressedPathIsRequestedAsIs()
+            throws Exception
+    {
+        final String content = "jar-bytes-" + System.currentTimeMillis();
+        final String path = "/path/to/foo-1.jar";
+        final Map<String, String> requestHeaders = new HashMap<>();
+
+        fixture.getServer().expect( "GET", fixture.formatUrl( path ), new ExpectationHandler()
+        {
+            @Override
+            public void handle( final HttpServletRequest httpServletRequest,
+                                final HttpServletResponse httpServletResponse )
+                    throws ServletException, IOException
+            {
+                requestHeaders.put( "Accept-Encoding", httpServletRequest.getHeader( "Accept-Encoding" ) );
+                httpServletResponse.setStatus( 200 );
+                httpServletResponse.getOutputStream().write( content.getBytes() );
+            }
+        } );
+
+        final SimpleHttpLocation location = newLocation();
+        final Transfer transfer = fixture.getTransfer( new ConcreteResource( location, path ) );
+        final String url = fixture.formatUrl( path );
+
+        final HttpDownload dl = new HttpDownload( url, location, transfer, new HashMap<Transfer, Long>(),
+                                                  new EventMetadata(), fixture.getHttp(), new ObjectMapper() );
+        dl.call();
+
+        assertThat( dl.getError(), nullValue() );
+        assertThat( requestHeaders.get( "Accept-Encoding" ), equalTo( "identity" ) );
+        assertThat( readContent( transfer ), equalTo( content ) );
+    }
+
+    private SimpleHttpLocation newLocation()
+            throws Exception
+    {
+        return new SimpleHttpLocation( "test", fixture.getBaseUri(), true, true, true, true, null );
+    }
+
+    private String readContent( final Transfer transfer )
+            throws IOException
+    {
+        try (InputStream in = transfer.openInputStream())
+        {
+            return IOUtils.toString( in );
+        }
+    }
 }
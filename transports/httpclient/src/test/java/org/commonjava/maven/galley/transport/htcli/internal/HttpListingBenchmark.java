@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.transport.htcli.util.HtmlLinkTokenizer;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Compares the streaming listing parser ({@link HttpListing#readListing}) with the DOM-based parsing it replaced, on
+ * a generated directory listing with tens of thousands of entries (like the index page of a large groupId). Logs the
+ * average time and heap allocation per parse for each.
+ * <br/>
+ * This is not part of the normal test run (the class name doesn't match the surefire includes). Run it with:
+ * <pre>mvn -pl transports/httpclient test -Dmaven.test.skip=false -Dtest=HttpListingBenchmark</pre>
+ */
+public class HttpListingBenchmark
+{
+    private static final int ENTRIES = 50000;
+
+    private static final int WARMUP = 5;
+
+    private static final int ITERATIONS = 20;
+
+    private static final String URL = "http://repo.foo.com/maven2/org/foo/";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private interface Parser
+    {
+        List<String> parse( InputStream in )
+                throws Exception;
+    }
+
+    @Test
+    public void hugeListing()
+            throws Exception
+    {
+        final byte[] page = generateListing();
+
+        final Parser dom = new Parser()
+        {
+            @Override
+            public List<String> parse( final InputStream in )
+                    throws Exception
+            {
+                return parseWithDom( in );
+            }
+        };
+
+        final Parser streaming = new Parser()
+        {
+            @Override
+            public List<String> parse( final InputStream in )
+                    throws Exception
+            {
+                return HttpListing.readListing( HtmlLinkTokenizer.open( in, StandardCharsets.UTF_8 ), URL );
+            }
+        };
+
+        final List<String> expected = dom.parse( new ByteArrayInputStream( page ) );
+        assertThat( expected.size(), equalTo( ENTRIES ) );
+        assertThat( streaming.parse( new ByteArrayInputStream( page ) ), equalTo( expected ) );
+
+        final String domResult = measure( dom, page );
+        final String streamingResult = measure( streaming, page );
+
+        logger.info( "Listing parse benchmark ({} entries, {} bytes):\n  jsoup DOM: {}\n  streaming: {}", ENTRIES,
+                     page.length, domResult, streamingResult );
+    }
+
+    private String measure( final Parser parser, final byte[] page )
+            throws Exception
+    {
+        for ( int i = 0; i < WARMUP; i++ )
+        {
+            parser.parse( new ByteArrayInputStream( page ) );
+        }
+
+        final long startBytes = allocatedBytes();
+        final long start = System.nanoTime();
+        for ( int i = 0; i < ITERATIONS; i++ )
+        {
+            parser.parse( new ByteArrayInputStream( page ) );
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - startBytes;
+
+        return String.format( "%.1fms/parse, %s/parse allocated", elapsed / 1e6 / ITERATIONS,
+                              startBytes < 0 ? "?" : ( allocated / ITERATIONS / 1024 ) + "KiB" );
+    }
+
+    /**
+     * The way listings used to be parsed: buffer the page, build a DOM, and check each link.
+     */
+    private List<String> parseWithDom( final InputStream in )
+            throws Exception
+    {
+        final String listing = IOUtils.toString( in, StandardCharsets.UTF_8 );
+        final Document doc = Jsoup.parse( listing, URL );
+
+        final List<String> names = new ArrayList<>();
+        for ( final Element link : doc.select( "a" ) )
+        {
+            final String linkText = link.text();
+            final String linkHref = link.attr( "href" );
+
+            final URL url = new URL( URL );
+            if ( HttpListing.isSameServer( url, linkHref ) && HttpListing.isSubpath( url, linkHref )
+                    && ( linkHref.endsWith( linkText ) || linkHref.endsWith( linkText + '/' ) )
+                    && !"../".equals( linkText ) )
+            {
+                names.add( linkText );
+            }
+        }
+
+        return names;
+    }
+
+    private static byte[] generateListing()
+    {
+        final StringBuilder sb = new StringBuilder( "<html><head><title>Index of /maven2/org/foo/</title></head>\n" )
+                .append( "<body><h1>Index of /maven2/org/foo/</h1><hr><pre><a href=\"../\">../</a>\n" );
+        for ( int i = 0; i < ENTRIES; i++ )
+        {
+            sb.append( "<a href=\"artifact-" ).append( i ).append( "/\">artifact-" ).append( i ).append( "/</a>" )
+              .append( "                                  16-May-2012 17:17                   -\n" );
+        }
+        sb.append( "</pre><hr></body></html>\n" );
+
+        return sb.toString().getBytes( StandardCharsets.UTF_8 );
+    }
+
+    private static long allocatedBytes()
+    {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if ( threads instanceof com.sun.management.ThreadMXBean )
+        {
+            return ( (com.sun.management.ThreadMXBean) threads ).getThreadAllocatedBytes(
+                    Thread.currentThread().getId() );
+        }
+
+        return -1;
+    }
+}
@@ -18,9 +18,21 @@ package org.commonjava.maven.galley.transport.htcli.internal;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.transport.htcli.util.HtmlLinkTokenizer;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
 import org.junit.Test;
 
 public class HttpListingTest
@@ -48,4 +60,75 @@ public class HttpListingTest
                                               equalTo( false ) );
     }
 
+    @Test
+    public void readListingMatchesDomParsingOfSampleListings()
+            throws IOException
+    {
+        assertSameAsDom( "list-basic/central-btm/index.html", "http://central.maven.org/maven2/org/codehaus/btm/btm/2.1.3/" );
+        assertSameAsDom( "list-basic/nexus-switchyard/index.html",
+                         "https://repository.jboss.org/nexus/content/groups/public/org/switchyard/switchyard-runtime/1.0.0.Final/" );
+    }
+
+    @Test
+    public void tokenizerSkipsCommentsAndScriptsAndDecodesText()
+            throws IOException
+    {
+        final String html = "<!DOCTYPE html><html><head><script>var s = '<a href=\"no/\">no/</a>';</script>"
+                + "<style>a { color: red }</style></head><body>"
+                + "<!-- <a href=\"commented/\">commented/</a> -->"
+                + "<A HREF='upper/'>upper/</A>\n"
+                + "<a class=dir href=unquoted/ >unquoted/</a>\n"
+                + "<a href=\"a&amp;b.jar\">\n   a&amp;b.jar\n</a>"
+                + "<a name=\"anchor\">no href</a>"
+                + "<a href=\"unclosed/\"><b>un</b>closed/"
+                + "</body></html>";
+
+        final List<String> links = new ArrayList<>();
+        new HtmlLinkTokenizer( new StringReader( html ) ).forEachLink( ( href, text ) -> links.add( href + "|" + text ) );
+
+        assertThat( links, equalTo( Arrays.asList( "upper/|upper/", "unquoted/|unquoted/", "a&b.jar|a&b.jar",
+                                                   "|no href", "unclosed/|unclosed/" ) ) );
+    }
+
+    @Test
+    public void tokenizerUsesCharsetDeclaredInPage()
+            throws IOException
+    {
+        final String html = "<html><head><meta charset=\"ISO-8859-1\"></head><body><a href=\"caf\u00e9/\">caf\u00e9/</a>";
+        final InputStream in = new ByteArrayInputStream( html.getBytes( StandardCharsets.ISO_8859_1 ) );
+
+        final List<String> names = HttpListing.readListing( HtmlLinkTokenizer.open( in, null ), "http://foo.com/path/" );
+
+        assertThat( names, equalTo( Arrays.asList( "caf\u00e9/" ) ) );
+    }
+
+    private void assertSameAsDom( final String resource, final String url )
+            throws IOException
+    {
+        final String html;
+        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream( resource ))
+        {
+            html = IOUtils.toString( in, StandardCharsets.UTF_8 );
+        }
+
+        final List<String> expected = new ArrayList<>();
+        final URL base = new URL( url );
+        for ( final Element link : Jsoup.parse( html, url ).select( "a" ) )
+        {
+            final String linkText = link.text();
+            final String linkHref = link.attr( "href" );
+            if ( HttpListing.isSameServer( base, linkHref ) && HttpListing.isSubpath( base, linkHref )
+                    && ( linkHref.endsWith( linkText ) || linkHref.endsWith( linkText + '/' ) )
+                    && !"../".equals( linkText ) )
+            {
+                expected.add( linkText );
+            }
+        }
+
+        final List<String> names = HttpListing.readListing( new HtmlLinkTokenizer( new StringReader( html ) ), url );
+
+        assertThat( names.isEmpty(), equalTo( false ) );
+        assertThat( names, equalTo( expected ) );
+    }
+
 }
@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.commonjava.maven.galley.event.CircuitBreakerEvent;
+import org.commonjava.maven.galley.event.CircuitBreakerEvent.State;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.transport.htcli.HttpClientTransport;
+import org.commonjava.maven.galley.transport.htcli.HttpImpl;
+import org.commonjava.maven.galley.transport.htcli.conf.HttpImplConfig;
+import org.commonjava.maven.galley.transport.htcli.model.SimpleHttpLocation;
+import org.commonjava.maven.galley.transport.htcli.testutil.TestFileEventManager;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LocationCircuitBreakerTest
+{
+    private final List<CircuitBreakerEvent> events = new ArrayList<>();
+
+    @Test
+    public void disabledUnlessFailureRateIsSet()
+            throws Exception
+    {
+        final CircuitBreakers breakers = new CircuitBreakers();
+        final SimpleHttpLocation location = newLocation();
+
+        assertThat( breakers.get( location ), nullValue() );
+        assertThat( breakers.isAvailable( location ), equalTo( true ) );
+    }
+
+    @Test
+    public void staysClosedUntilWindowIsFull()
+            throws Exception
+    {
+        final LocationCircuitBreaker breaker = newBreaker( 50, 4, 30 );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            assertThat( breaker.tryAcquire(), equalTo( true ) );
+            breaker.onFailure();
+        }
+
+        assertThat( breaker.getState(), equalTo( State.CLOSED ) );
+        assertThat( events.isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void opensAtFailureRateAndFailsFast()
+            throws Exception
+    {
+        final LocationCircuitBreaker breaker = newBreaker( 50, 4, 30 );
+
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onSuccess();
+        assertThat( breaker.getState(), equalTo( State.CLOSED ) );
+
+        breaker.onFailure();
+        assertThat( breaker.getState(), equalTo( State.OPEN ) );
+        assertThat( breaker.isAvailable(), equalTo( false ) );
+
+        assertThat( breaker.tryAcquire(), equalTo( false ) );
+        assertThat( breaker.tryAcquire(), equalTo( false ) );
+        assertThat( breaker.getRejected(), equalTo( 2L ) );
+
+        assertThat( events.size(), equalTo( 1 ) );
+        assertThat( events.get( 0 ).getPrevious(), equalTo( State.CLOSED ) );
+        assertThat( events.get( 0 ).getState(), equalTo( State.OPEN ) );
+    }
+
+    @Test
+    public void halfOpenProbeClosesOnSuccess()
+            throws Exception
+    {
+        final LocationCircuitBreaker breaker = openBreaker();
+        Thread.sleep( 1100 );
+
+        assertThat( breaker.isAvailable(), equalTo( true ) );
+        assertThat( breaker.tryAcquire(), equalTo( true ) );
+        assertThat( breaker.getState(), equalTo( State.HALF_OPEN ) );
+
+        // only one probe at a time
+        assertThat( breaker.tryAcquire(), equalTo( false ) );
+
+        breaker.onSuccess();
+        assertThat( breaker.getState(), equalTo( State.CLOSED ) );
+        assertThat( breaker.tryAcquire(), equalTo( true ) );
+
+        // the window starts over after closing
+        breaker.onFailure();
+        assertThat( breaker.getState(), equalTo( State.CLOSED ) );
+    }
+
+    @Test
+    public void halfOpenProbeReopensOnFailure()
+            throws Exception
+    {
+        final LocationCircuitBreaker breaker = openBreaker();
+        Thread.sleep( 1100 );
+
+        assertThat( breaker.tryAcquire(), equalTo( true ) );
+        breaker.onFailure();
+
+        assertThat( breaker.getState(), equalTo( State.OPEN ) );
+        assertThat( breaker.tryAcquire(), equalTo( false ) );
+        assertThat( events.get( events.size() - 1 ).getPrevious(), equalTo( State.HALF_OPEN ) );
+    }
+
+    @Test
+    public void transportForwardsEventsOnceUntilShutdown()
+            throws Exception
+    {
+        final CircuitBreakers breakers = new CircuitBreakers();
+        final HttpImpl http =
+                new HttpImpl( id -> null, Optional.empty(), new HttpImplConfig().withCircuitBreakers( breakers ) );
+        final TestFileEventManager fileEvents = new TestFileEventManager()
+        {
+            @Override
+            public void fire( final CircuitBreakerEvent evt )
+            {
+                events.add( evt );
+            }
+        };
+        final HttpClientTransport transport = new HttpClientTransport( http, null, null, null, null, fileEvents );
+
+        // a second init must not register a second listener.
+        transport.init();
+
+        final LocationCircuitBreaker breaker = breakers.get( breakerLocation( 100, 2, 1 ) );
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat( events.size(), equalTo( 1 ) );
+
+        transport.shutdown();
+        Thread.sleep( 1100 );
+        assertThat( breaker.tryAcquire(), equalTo( true ) );
+        breaker.onSuccess();
+
+        assertThat( breaker.getState(), equalTo( State.CLOSED ) );
+        assertThat( events.size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void httpImplDefaultBreakersReportState()
+            throws Exception
+    {
+        final Map<String, Supplier<? extends Number>> gauges = new HashMap<>();
+        final HttpImpl http = new HttpImpl( id -> null, Optional.empty(),
+                                            new HttpImplConfig().withGaugeProvider( gauges::put ) );
+        try
+        {
+            http.getCircuitBreakers().get( breakerLocation( 50, 4, 30 ) );
+        }
+        finally
+        {
+            http.close();
+        }
+
+        assertThat( gauges.get( CircuitBreakers.CIRCUIT_STATE + ".test" ).get(), equalTo( State.CLOSED.ordinal() ) );
+    }
+
+    private LocationCircuitBreaker openBreaker()
+            throws Exception
+    {
+        final LocationCircuitBreaker breaker = newBreaker( 100, 2, 1 );
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat( breaker.getState(), equalTo( State.OPEN ) );
+
+        return breaker;
+    }
+
+    private LocationCircuitBreaker newBreaker( final int failureRate, final int window, final int openSeconds )
+            throws Exception
+    {
+        return new LocationCircuitBreaker( breakerLocation( failureRate, window, openSeconds ), events::add );
+    }
+
+    private SimpleHttpLocation breakerLocation( final int failureRate, final int window, final int openSeconds )
+            throws Exception
+    {
+        final SimpleHttpLocation location = newLocation();
+        location.setAttribute( Location.CIRCUIT_BREAKER_FAILURE_RATE, failureRate );
+        location.setAttribute( Location.CIRCUIT_BREAKER_WINDOW, window );
+        location.setAttribute( Location.CIRCUIT_BREAKER_OPEN_SECONDS, openSeconds );
+
+        return location;
+    }
+
+    private SimpleHttpLocation newLocation()
+            throws Exception
+    {
+        return new SimpleHttpLocation( "test", "http://foo.com/repo", true, true, true, true, null );
+    }
+}
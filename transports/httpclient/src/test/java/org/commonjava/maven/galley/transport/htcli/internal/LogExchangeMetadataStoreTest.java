@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.maven.galley.cache.testutil.TestIOUtils;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadataFromRequestHeader;
+import org.commonjava.maven.galley.transport.htcli.testutil.TestCacheProvider;
+import org.commonjava.maven.galley.transport.htcli.testutil.TestFileEventManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LogExchangeMetadataStoreTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Location loc = new SimpleLocation( "test", "http://repo.foo.com/" );
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private TestCacheProvider cache;
+
+    private File logFile;
+
+    private LogExchangeMetadataStore store;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        final File dir = TestIOUtils.newTempFolder( folder, "cache" );
+        cache = new TestCacheProvider( dir, new TestFileEventManager(), new TransferDecoratorManager( Collections.emptyList() ) );
+        logFile = new File( dir, LogExchangeMetadataStore.DEFAULT_FILE_NAME );
+        store = new LogExchangeMetadataStore( logFile, mapper );
+    }
+
+    @After
+    public void teardown()
+            throws Exception
+    {
+        store.close();
+    }
+
+    @Test
+    public void writeAndReadBack()
+            throws Exception
+    {
+        final Transfer target = transfer( "/org/foo/foo/1/foo-1.jar" );
+        store.write( target, exchange( "\"abc\"", 200 ) );
+
+        final HttpExchangeMetadata read = store.read( target );
+        assertThat( read.getResponseStatusCode(), equalTo( 200 ) );
+        assertThat( read.getResponseStatusMessage(), equalTo( "OK" ) );
+        assertThat( read.getResponseHeaders().get( "ETAG" ), equalTo( Collections.singletonList( "\"abc\"" ) ) );
+        assertThat( read.getResponseHeaders().get( "VIA" ), equalTo( Arrays.asList( "a", "b" ) ) );
+        assertThat( read.getRequestHeaders().get( "USER-AGENT" ), equalTo( Collections.singletonList( "galley" ) ) );
+        assertThat( read.getContentLength(), equalTo( 42L ) );
+
+        assertThat( store.read( transfer( "/org/foo/foo/1/foo-1.pom" ) ), nullValue() );
+    }
+
+    @Test
+    public void latestWriteWinsAndDeleteForgets()
+            throws Exception
+    {
+        final Transfer target = transfer( "/org/foo/foo/1/foo-1.jar" );
+        store.write( target, exchange( "\"one\"", 200 ) );
+        store.write( target, exchange( "\"two\"", 200 ) );
+        assertThat( store.read( target ).getResponseHeaders().get( "ETAG" ).get( 0 ), equalTo( "\"two\"" ) );
+        assertThat( store.contains( target.getResource() ), equalTo( true ) );
+
+        store.delete( target );
+        assertThat( store.read( target ), nullValue() );
+        assertThat( store.contains( target.getResource() ), equalTo( false ) );
+        assertThat( store.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void requestHeaderMetadataKeepsItsKind()
+            throws Exception
+    {
+        final Map<String, List<String>> headers = new HashMap<>();
+        headers.put( "LAST-MODIFIED", Collections.singletonList( "Sat, 01 Jan 2000 00:00:00 GMT" ) );
+        final Transfer target = transfer( "/org/foo/foo/1/foo-1.jar" );
+        store.write( target, new HttpExchangeMetadataFromRequestHeader( headers ) );
+
+        final HttpExchangeMetadata read = store.read( target );
+        assertThat( read, instanceOf( HttpExchangeMetadataFromRequestHeader.class ) );
+        assertThat( read.getLastModified(), equalTo( "Sat, 01 Jan 2000 00:00:00 GMT" ) );
+    }
+
+    @Test
+    public void reopenReplaysTheLog()
+            throws Exception
+    {
+        final Transfer jar = transfer( "/org/foo/foo/1/foo-1.jar" );
+        final Transfer pom = transfer( "/org/foo/foo/1/foo-1.pom" );
+        store.write( jar, exchange( "\"jar\"", 200 ) );
+        store.write( pom, exchange( "\"pom\"", 200 ) );
+        store.delete( pom );
+        store.close();
+
+        store = new LogExchangeMetadataStore( logFile, mapper );
+        assertThat( store.size(), equalTo( 1 ) );
+        assertThat( store.read( jar ).getResponseHeaders().get( "ETAG" ).get( 0 ), equalTo( "\"jar\"" ) );
+        assertThat( store.read( pom ), nullValue() );
+    }
+
+    @Test
+    public void tornTailIsTruncatedOnReopen()
+            throws Exception
+    {
+        final Transfer jar = transfer( "/org/foo/foo/1/foo-1.jar" );
+        final Transfer pom = transfer( "/org/foo/foo/1/foo-1.pom" );
+        store.write( jar, exchange( "\"jar\"", 200 ) );
+        final long intact = store.getLogSize();
+        store.write( pom, exchange( "\"pom\"", 200 ) );
+        store.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile( logFile, "rw" ))
+        {
+            raf.setLength( raf.length() - 5 );
+        }
+
+        store = new LogExchangeMetadataStore( logFile, mapper );
+        assertThat( store.getLogSize(), equalTo( intact ) );
+        assertThat( logFile.length(), equalTo( intact ) );
+        assertThat( store.read( jar ), notNullValue() );
+        assertThat( store.read( pom ), nullValue() );
+
+        store.write( pom, exchange( "\"pom\"", 200 ) );
+        assertThat( store.read( pom ).getResponseHeaders().get( "ETAG" ).get( 0 ), equalTo( "\"pom\"" ) );
+    }
+
+    @Test
+    public void compactionDropsSupersededRecords()
+            throws Exception
+    {
+        store.close();
+        store = new LogExchangeMetadataStore( logFile, mapper, 4096 );
+
+        final Transfer jar = transfer( "/org/foo/foo/1/foo-1.jar" );
+        final Transfer pom = transfer( "/org/foo/foo/1/foo-1.pom" );
+        store.write( pom, exchange( "\"pom\"", 200 ) );
+        for ( int i = 0; i < 200; i++ )
+        {
+            store.write( jar, exchange( "\"jar-" + i + "\"", 200 ) );
+        }
+
+        assertThat( store.getLogSize() < 4096, equalTo( true ) );
+        assertThat( store.read( jar ).getResponseHeaders().get( "ETAG" ).get( 0 ), equalTo( "\"jar-199\"" ) );
+        assertThat( store.read( pom ).getResponseHeaders().get( "ETAG" ).get( 0 ), equalTo( "\"pom\"" ) );
+
+        store.close();
+        store = new LogExchangeMetadataStore( logFile, mapper );
+        assertThat( store.size(), equalTo( 2 ) );
+        assertThat( store.read( jar ).getResponseHeaders().get( "ETAG" ).get( 0 ), equalTo( "\"jar-199\"" ) );
+    }
+
+    @Test
+    public void fallsBackToJsonSidecar()
+            throws Exception
+    {
+        final Transfer target = transfer( "/org/foo/foo/1/foo-1.jar" );
+        new SidecarExchangeMetadataStore( mapper ).write( target, exchange( "\"legacy\"", 200 ) );
+
+        assertThat( store.read( target ).getResponseHeaders().get( "ETAG" ).get( 0 ), equalTo( "\"legacy\"" ) );
+
+        store.write( target, exchange( "\"new\"", 200 ) );
+        assertThat( store.read( target ).getResponseHeaders().get( "ETAG" ).get( 0 ), equalTo( "\"new\"" ) );
+    }
+
+    @Test
+    public void deleteDoesNotResurrectJsonSidecar()
+            throws Exception
+    {
+        final Transfer legacyOnly = transfer( "/org/foo/foo/1/foo-1.jar" );
+        final Transfer shadowed = transfer( "/org/foo/foo/1/foo-1.pom" );
+        final SidecarExchangeMetadataStore sidecars = new SidecarExchangeMetadataStore( mapper );
+        sidecars.write( legacyOnly, exchange( "\"legacy-jar\"", 200 ) );
+        sidecars.write( shadowed, exchange( "\"legacy-pom\"", 200 ) );
+        store.write( shadowed, exchange( "\"new\"", 200 ) );
+
+        store.delete( legacyOnly );
+        store.delete( shadowed );
+
+        assertThat( store.read( legacyOnly ), nullValue() );
+        assertThat( store.read( shadowed ), nullValue() );
+
+        store.close();
+        store = new LogExchangeMetadataStore( logFile, mapper );
+        assertThat( store.read( shadowed ), nullValue() );
+    }
+
+    @Test
+    public void failedCompactionKeepsLogUsable()
+            throws Exception
+    {
+        store.close();
+        store = new LogExchangeMetadataStore( logFile, mapper, 4096 );
+
+        // a non-empty directory where the compacted log would go makes every compaction fail.
+        final File blocker = new File( logFile.getPath() + ".compact" );
+        assertThat( new File( blocker, "x" ).mkdirs(), equalTo( true ) );
+
+        final Transfer jar = transfer( "/org/foo/foo/1/foo-1.jar" );
+        for ( int i = 0; i < 200; i++ )
+        {
+            store.write( jar, exchange( "\"jar-" + i + "\"", 200 ) );
+        }
+
+        assertThat( store.getLogSize() > 4096, equalTo( true ) );
+        assertThat( store.read( jar ).getResponseHeaders().get( "ETAG" ).get( 0 ), equalTo( "\"jar-199\"" ) );
+
+        store.close();
+        store = new LogExchangeMetadataStore( logFile, mapper );
+        assertThat( store.read( jar ).getResponseHeaders().get( "ETAG" ).get( 0 ), equalTo( "\"jar-199\"" ) );
+    }
+
+    private Transfer transfer( final String path )
+    {
+        return cache.getTransfer( new ConcreteResource( loc, path ) );
+    }
+
+    static HttpExchangeMetadata exchange( final String etag, final int status )
+    {
+        final Map<String, List<String>> request = new HashMap<>();
+        request.put( "USER-AGENT", Collections.singletonList( "galley" ) );
+
+        final Map<String, List<String>> response = new HashMap<>();
+        response.put( "ETAG", Collections.singletonList( etag ) );
+        response.put( "LAST-MODIFIED", Collections.singletonList( "Sat, 01 Jan 2000 00:00:00 GMT" ) );
+        response.put( "CONTENT-LENGTH", Collections.singletonList( "42" ) );
+        response.put( "CONTENT-TYPE", Collections.singletonList( "application/java-archive" ) );
+        response.put( "VIA", Arrays.asList( "a", "b" ) );
+
+        final HttpExchangeMetadata metadata = new HttpExchangeMetadata();
+        metadata.setRequestHeaders( request );
+        metadata.setResponseHeaders( response );
+        metadata.setResponseStatusCode( status );
+        metadata.setResponseStatusMessage( "OK" );
+
+        return metadata;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.htcli.internal;
+
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.transport.htcli.model.SimpleHttpLocation;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SegmentPoolTest
+{
+    private final SegmentPool pool = new SegmentPool();
+
+    @After
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    @Test
+    public void segmentedDownloadsShareLocationConnectionLimit()
+            throws Exception
+    {
+        final SimpleHttpLocation location = newLocation( "limited" );
+        location.setAttribute( Location.MAX_CONNECTIONS, 5 );
+
+        final SegmentPool.Reservation first = pool.reserve( location, 4 );
+        assertThat( first.getSegments(), equalTo( 4 ) );
+
+        // only one connection left, which isn't enough to segment.
+        assertThat( pool.reserve( location, 4 ), nullValue() );
+
+        first.release();
+        first.release();
+
+        final SegmentPool.Reservation second = pool.reserve( location, 4 );
+        assertThat( second.getSegments(), equalTo( 4 ) );
+
+        final SegmentPool.Reservation third = pool.reserve( location, 4 );
+        assertThat( third, nullValue() );
+    }
+
+    @Test
+    public void locationsHaveSeparateLimits()
+            throws Exception
+    {
+        final SimpleHttpLocation one = newLocation( "one" );
+        one.setAttribute( Location.MAX_CONNECTIONS, 2 );
+
+        final SimpleHttpLocation two = newLocation( "two" );
+        two.setAttribute( Location.MAX_CONNECTIONS, 2 );
+
+        assertThat( pool.reserve( one, 2 ), notNullValue() );
+        assertThat( pool.reserve( two, 2 ), notNullValue() );
+        assertThat( pool.reserve( one, 2 ), nullValue() );
+    }
+
+    private SimpleHttpLocation newLocation( final String name )
+            throws Exception
+    {
+        return new SimpleHttpLocation( name, "http://foo.com/" + name, true, true, true, true, null );
+    }
+}
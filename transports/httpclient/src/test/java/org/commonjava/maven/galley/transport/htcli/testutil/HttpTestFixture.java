@@ -36,6 +36,8 @@ import java.net.MalformedURLException;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
 public class HttpTestFixture
     extends ExternalResource
     implements PasswordManager
@@ -98,6 +100,7 @@ public class HttpTestFixture
     @Override
     protected void after()
     {
+        closeQuietly( http );
         server.after();
         folder.delete();
         super.after();
@@ -0,0 +1,400 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.jdkhttp;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.auth.PasswordEntry;
+import org.commonjava.maven.galley.spi.auth.PasswordManager;
+import org.commonjava.maven.galley.transport.htcli.ExchangeMetadataStore;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.transport.htcli.model.LocationTrustType;
+import org.commonjava.maven.galley.util.LocationUtils;
+import org.commonjava.util.jhttpc.INTERNAL.util.SSLUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds one {@link HttpClient} per location, negotiating HTTP/2 where the server supports it (ALPN for https, h2c
+ * upgrade for plain http) and falling back to HTTP/1.1 otherwise. On HTTP/2, concurrent requests to the same server
+ * share a single multiplexed connection.
+ * <br/>
+ * Clients are rebuilt whenever the location's connection settings (proxy, certificates, trust type, credentials,
+ * timeout) change. The JDK client has no per-route connection limit, so the location's max-connections setting is not
+ * applied here.
+ */
+public class JdkHttp
+        implements Closeable
+{
+    private static final int DEFAULT_PROXY_PORT = 80;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final PasswordManager passwords;
+
+    private final Map<String, SiteClient> clients = new ConcurrentHashMap<>();
+
+    private final ExchangeMetadataStore metadataStore;
+
+    public JdkHttp( final PasswordManager passwords )
+    {
+        this( passwords, null );
+    }
+
+    /**
+     * @param metadataStore where HTTP exchange metadata is kept, or null for JSON files next to the content
+     */
+    public JdkHttp( final PasswordManager passwords, final ExchangeMetadataStore metadataStore )
+    {
+        this.passwords = passwords;
+        this.metadataStore = metadataStore;
+    }
+
+    public HttpClient getClient( final HttpLocation location )
+            throws TransferException
+    {
+        final List<Object> fingerprint = fingerprint( location );
+
+        SiteClient site = clients.get( location.getName() );
+        if ( site == null || !site.fingerprint.equals( fingerprint ) )
+        {
+            synchronized ( clients )
+            {
+                site = clients.get( location.getName() );
+                if ( site == null || !site.fingerprint.equals( fingerprint ) )
+                {
+                    logger.debug( "Creating HTTP/2-capable client for: {}", location );
+                    site = new SiteClient( fingerprint, createClient( location ) );
+                    clients.put( location.getName(), site );
+                }
+            }
+        }
+
+        return site.client;
+    }
+
+    public HttpRequest.Builder newRequest( final String url, final HttpLocation location )
+    {
+        return HttpRequest.newBuilder( URI.create( url ) )
+                          .timeout( Duration.ofSeconds( LocationUtils.getTimeoutSeconds( location ) ) );
+    }
+
+    public ExchangeMetadataStore getExchangeMetadataStore()
+    {
+        return metadataStore;
+    }
+
+    /**
+     * Drops all clients, and closes the metadata store. (Java 11's HttpClient has no close(); its connections and
+     * selector thread are released once the client becomes unreachable.)
+     */
+    @Override
+    public void close()
+            throws IOException
+    {
+        clients.clear();
+        if ( metadataStore instanceof Closeable )
+        {
+            ( (Closeable) metadataStore ).close();
+        }
+    }
+
+    private List<Object> fingerprint( final HttpLocation location )
+    {
+        return Arrays.asList( location.getKeyCertPem(), location.getServerCertPem(), location.getTrustType(),
+                              location.isIgnoreHostnameVerification(), location.getProxyHost(),
+                              location.getProxyPort(), location.getProxyUser(), location.getUser(),
+                              LocationUtils.getTimeoutSeconds( location ) );
+    }
+
+    private HttpClient createClient( final HttpLocation location )
+            throws TransferException
+    {
+        final HttpClient.Builder builder = HttpClient.newBuilder()
+                                                     .version( HttpClient.Version.HTTP_2 )
+                                                     .followRedirects( HttpClient.Redirect.NORMAL )
+                                                     .connectTimeout( Duration.ofSeconds(
+                                                             LocationUtils.getTimeoutSeconds( location ) ) );
+
+        if ( location.getProxyHost() != null )
+        {
+            final int port = location.getProxyPort() > 0 ? location.getProxyPort() : DEFAULT_PROXY_PORT;
+            builder.proxy( ProxySelector.of( new InetSocketAddress( location.getProxyHost(), port ) ) );
+        }
+
+        if ( location.getUser() != null || location.getProxyUser() != null )
+        {
+            builder.authenticator( new LocationAuthenticator( location ) );
+        }
+
+        final SSLContext sslContext = createSSLContext( location );
+        if ( sslContext != null )
+        {
+            builder.sslContext( sslContext );
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Returns null when the location doesn't change anything from the JVM's default TLS setup.
+     */
+    private SSLContext createSSLContext( final HttpLocation location )
+            throws TransferException
+    {
+        final boolean selfSigned = location.getTrustType() == LocationTrustType.TRUST_SELF_SIGNED;
+        final boolean ignoreHostname = location.isIgnoreHostnameVerification();
+        if ( location.getKeyCertPem() == null && location.getServerCertPem() == null && !selfSigned
+                && !ignoreHostname )
+        {
+            return null;
+        }
+
+        try
+        {
+            KeyManager[] keyManagers = null;
+            if ( location.getKeyCertPem() != null )
+            {
+                final String keyPassword =
+                        passwords.getPassword( new PasswordEntry( location, PasswordEntry.KEY_PASSWORD ) );
+                if ( keyPassword == null || keyPassword.isEmpty() )
+                {
+                    throw new TransferLocationException( location,
+                                                         "Invalid configuration. Location: {} cannot have an empty key password!",
+                                                         location.getUri() );
+                }
+
+                final KeyManagerFactory kmf = KeyManagerFactory.getInstance( KeyManagerFactory.getDefaultAlgorithm() );
+                kmf.init( SSLUtils.readKeyAndCert( location.getKeyCertPem(), keyPassword ),
+                          keyPassword.toCharArray() );
+                keyManagers = kmf.getKeyManagers();
+            }
+
+            final KeyStore trustStore = location.getServerCertPem() == null ?
+                    null :
+                    SSLUtils.decodePEMTrustStore( location.getServerCertPem(), location.getHost() );
+
+            TrustManager[] trustManagers = trustManagers( trustStore );
+            if ( selfSigned || ignoreHostname )
+            {
+                trustManagers = new TrustManager[] { new LocationTrustManager(
+                        (X509ExtendedTrustManager) trustManagers[0], selfSigned, ignoreHostname ) };
+            }
+
+            final SSLContext ctx = SSLContext.getInstance( "TLS" );
+            ctx.init( keyManagers, trustManagers, null );
+            return ctx;
+        }
+        catch ( final TransferException e )
+        {
+            throw e;
+        }
+        catch ( final Exception e )
+        {
+            throw new TransferLocationException( location, "Failed to initialize SSL context for: %s. Reason: %s", e,
+                                                 location.getUri(), e.getMessage() );
+        }
+    }
+
+    private static TrustManager[] trustManagers( final KeyStore trustStore )
+            throws GeneralSecurityException
+    {
+        final TrustManagerFactory tmf = TrustManagerFactory.getInstance( TrustManagerFactory.getDefaultAlgorithm() );
+        tmf.init( trustStore );
+        return tmf.getTrustManagers();
+    }
+
+    private static final class SiteClient
+    {
+        private final List<Object> fingerprint;
+
+        private final HttpClient client;
+
+        private SiteClient( final List<Object> fingerprint, final HttpClient client )
+        {
+            this.fingerprint = fingerprint;
+            this.client = client;
+        }
+    }
+
+    /**
+     * Answers server / proxy challenges with the location's user and proxy-user passwords.
+     */
+    private final class LocationAuthenticator
+            extends Authenticator
+    {
+        private final HttpLocation location;
+
+        private LocationAuthenticator( final HttpLocation location )
+        {
+            this.location = location;
+        }
+
+        @Override
+        protected PasswordAuthentication getPasswordAuthentication()
+        {
+            if ( getRequestorType() == RequestorType.PROXY )
+            {
+                return location.getProxyUser() == null ?
+                        null :
+                        authentication( location.getProxyUser(), PasswordEntry.PROXY_PASSWORD );
+            }
+
+            return location.getUser() == null ? null : authentication( location.getUser(), PasswordEntry.USER_PASSWORD );
+        }
+
+        private PasswordAuthentication authentication( final String user, final String passwordType )
+        {
+            final String password = passwords.getPassword( new PasswordEntry( location, passwordType ) );
+            return new PasswordAuthentication( user, password == null ? new char[0] : password.toCharArray() );
+        }
+    }
+
+    /**
+     * Applies the location's trust type and hostname-verification settings on top of the default trust checks. A
+     * self-signed server certificate is trusted by itself, and with hostname verification switched off the chain is
+     * checked without the endpoint identification the JDK client otherwise performs.
+     */
+    private static final class LocationTrustManager
+            extends X509ExtendedTrustManager
+    {
+        private final X509ExtendedTrustManager delegate;
+
+        private final boolean selfSigned;
+
+        private final boolean ignoreHostname;
+
+        private LocationTrustManager( final X509ExtendedTrustManager delegate, final boolean selfSigned,
+                                      final boolean ignoreHostname )
+        {
+            this.delegate = delegate;
+            this.selfSigned = selfSigned;
+            this.ignoreHostname = ignoreHostname;
+        }
+
+        @Override
+        public void checkServerTrusted( final X509Certificate[] chain, final String authType,
+                                        final SSLEngine engine )
+                throws CertificateException
+        {
+            if ( ignoreHostname )
+            {
+                checkServerTrusted( chain, authType );
+            }
+            else
+            {
+                trustManagerFor( chain ).checkServerTrusted( chain, authType, engine );
+            }
+        }
+
+        @Override
+        public void checkServerTrusted( final X509Certificate[] chain, final String authType, final Socket socket )
+                throws CertificateException
+        {
+            if ( ignoreHostname )
+            {
+                checkServerTrusted( chain, authType );
+            }
+            else
+            {
+                trustManagerFor( chain ).checkServerTrusted( chain, authType, socket );
+            }
+        }
+
+        @Override
+        public void checkServerTrusted( final X509Certificate[] chain, final String authType )
+                throws CertificateException
+        {
+            trustManagerFor( chain ).checkServerTrusted( chain, authType );
+        }
+
+        @Override
+        public void checkClientTrusted( final X509Certificate[] chain, final String authType, final Socket socket )
+                throws CertificateException
+        {
+            delegate.checkClientTrusted( chain, authType, socket );
+        }
+
+        @Override
+        public void checkClientTrusted( final X509Certificate[] chain, final String authType,
+                                        final SSLEngine engine )
+                throws CertificateException
+        {
+            delegate.checkClientTrusted( chain, authType, engine );
+        }
+
+        @Override
+        public void checkClientTrusted( final X509Certificate[] chain, final String authType )
+                throws CertificateException
+        {
+            delegate.checkClientTrusted( chain, authType );
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return delegate.getAcceptedIssuers();
+        }
+
+        private X509ExtendedTrustManager trustManagerFor( final X509Certificate[] chain )
+                throws CertificateException
+        {
+            if ( !selfSigned || chain == null || chain.length != 1 )
+            {
+                return delegate;
+            }
+
+            try
+            {
+                final KeyStore store = KeyStore.getInstance( KeyStore.getDefaultType() );
+                store.load( null, null );
+                store.setCertificateEntry( "self-signed", chain[0] );
+                return (X509ExtendedTrustManager) trustManagers( store )[0];
+            }
+            catch ( final Exception e )
+            {
+                throw new CertificateException( "Cannot trust self-signed certificate: " + e.getMessage(), e );
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.jdkhttp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.spi.auth.PasswordManager;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.spi.transport.ExistenceJob;
+import org.commonjava.maven.galley.spi.transport.ListingJob;
+import org.commonjava.maven.galley.spi.transport.PublishJob;
+import org.commonjava.maven.galley.spi.transport.Transport;
+import org.commonjava.maven.galley.transport.jdkhttp.internal.JdkHttpDownload;
+import org.commonjava.maven.galley.transport.jdkhttp.internal.JdkHttpExistence;
+import org.commonjava.maven.galley.transport.jdkhttp.internal.JdkHttpListing;
+import org.commonjava.maven.galley.transport.jdkhttp.internal.JdkHttpPublish;
+import org.commonjava.maven.galley.transport.htcli.conf.GlobalHttpConfiguration;
+import org.commonjava.maven.galley.transport.htcli.internal.model.WrapperHttpLocation;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+
+import static org.commonjava.maven.galley.util.UrlUtils.buildUrl;
+
+/**
+ * HTTP transport built on the JDK's {@link java.net.http.HttpClient}. It negotiates HTTP/2 where the upstream supports
+ * it, so concurrent transfers from one server share a single multiplexed connection instead of needing one connection
+ * each; HTTP/1.1-only servers are handled as usual. See {@link JdkHttp} for how the location options are applied.
+ */
+@ApplicationScoped
+@Named
+public class JdkHttpTransport
+        implements Transport
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private PasswordManager passwords;
+
+    @Inject
+    private GlobalHttpConfiguration globalConfig;
+
+    @Inject
+    private ObjectMapper mapper;
+
+    private JdkHttp http;
+
+    protected JdkHttpTransport()
+    {
+    }
+
+    public JdkHttpTransport( final JdkHttp http, final ObjectMapper mapper, final GlobalHttpConfiguration globalConfig )
+    {
+        this.http = http;
+        this.mapper = mapper;
+        this.globalConfig = globalConfig;
+    }
+
+    @PostConstruct
+    public void start()
+    {
+        if ( http == null )
+        {
+            http = new JdkHttp( passwords );
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        try
+        {
+            http.close();
+        }
+        catch ( final IOException e )
+        {
+            logger.error( "Failed to shutdown HTTP manager.", e );
+        }
+    }
+
+    @Override
+    public DownloadJob createDownloadJob( final ConcreteResource resource, final Transfer target,
+                                          final Map<Transfer, Long> transferSizes, final int timeoutSeconds,
+                                          final EventMetadata eventMetadata )
+            throws TransferException
+    {
+        return new JdkHttpDownload( getUrl( resource ), getHttpLocation( resource.getLocation() ), target,
+                                    transferSizes, eventMetadata, http, mapper );
+    }
+
+    @Override
+    public PublishJob createPublishJob( final ConcreteResource resource, final InputStream stream, final long length,
+                                        final String contentType, final int timeoutSeconds )
+            throws TransferException
+    {
+        return new JdkHttpPublish( getUrl( resource ), getHttpLocation( resource.getLocation() ), stream, length,
+                                   contentType, http );
+    }
+
+    @Override
+    public PublishJob createPublishJob( final ConcreteResource resource, final InputStream stream, final long length,
+                                        final int timeoutSeconds )
+            throws TransferException
+    {
+        return createPublishJob( resource, stream, length, null, timeoutSeconds );
+    }
+
+    @Override
+    public ListingJob createListingJob( final ConcreteResource resource, final Transfer target,
+                                        final int timeoutSeconds )
+            throws TransferException
+    {
+        return new JdkHttpListing( getUrl( resource ),
+                                   new ConcreteResource( getHttpLocation( resource.getLocation() ),
+                                                         resource.getPath() ), http );
+    }
+
+    @Override
+    public ExistenceJob createExistenceJob( final ConcreteResource resource, final Transfer target,
+                                            final int timeoutSeconds )
+            throws TransferException
+    {
+        return new JdkHttpExistence( getUrl( resource ), getHttpLocation( resource.getLocation() ), target, http,
+                                     mapper );
+    }
+
+    @Override
+    public boolean handles( final Location location )
+    {
+        final String uri = location.getUri();
+        if ( uri == null || !uri.startsWith( "http" ) )
+        {
+            return false;
+        }
+
+        try
+        {
+            new URL( uri );
+            return true;
+        }
+        catch ( final MalformedURLException e )
+        {
+            logger.warn( String.format( "JDK HTTP transport cannot handle: %s. Error parsing URL: %s", location,
+                                        e.getMessage() ), e );
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean allowsCaching()
+    {
+        return true;
+    }
+
+    private HttpLocation getHttpLocation( final Location repository )
+            throws TransferException
+    {
+        try
+        {
+            return ( repository instanceof HttpLocation ) ?
+                    (HttpLocation) repository :
+                    new WrapperHttpLocation( repository, globalConfig );
+        }
+        catch ( final MalformedURLException e )
+        {
+            throw new TransferLocationException( repository, "Failed to parse base-URL for: {}", e,
+                                                 repository.getUri() );
+        }
+    }
+
+    private String getUrl( final ConcreteResource resource )
+            throws TransferException
+    {
+        try
+        {
+            return buildUrl( resource );
+        }
+        catch ( final MalformedURLException e )
+        {
+            throw new TransferLocationException( resource.getLocation(),
+                                                 "Failed to build URL for resource: {}. Reason: {}", e, resource,
+                                                 e.getMessage() );
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.jdkhttp.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.maven.galley.BadGatewayException;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.TransferLocationException;
+import org.commonjava.maven.galley.TransferTimeoutException;
+import org.commonjava.maven.galley.io.checksum.ChecksumAlgorithm;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.transport.htcli.ExchangeMetadataStore;
+import org.commonjava.maven.galley.transport.htcli.internal.SidecarExchangeMetadataStore;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.transport.htcli.util.HttpUtil;
+import org.commonjava.maven.galley.transport.jdkhttp.JdkHttp;
+import org.commonjava.maven.galley.util.LocationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Base for the JDK client jobs. Status handling and the .http-metadata.json sidecar mirror the httpclient transport,
+ * so callers can't tell the two apart.
+ */
+public abstract class AbstractJdkHttpJob
+{
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+
+    private static final String GZIP_ENCODING = "gzip";
+
+    protected final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    protected final String url;
+
+    protected final HttpLocation location;
+
+    protected final JdkHttp http;
+
+    protected TransferException error;
+
+    protected AbstractJdkHttpJob( final String url, final HttpLocation location, final JdkHttp http )
+    {
+        this.url = url;
+        this.location = location;
+        this.http = http;
+    }
+
+    public TransferException getError()
+    {
+        return error;
+    }
+
+    protected <T> HttpResponse<T> send( final HttpRequest request, final HttpResponse.BodyHandler<T> handler )
+            throws TransferException
+    {
+        try
+        {
+            final HttpResponse<T> response = http.getClient( location ).send( request, handler );
+            logger.trace( "{} {} ({}) : {}", request.method(), response.statusCode(), response.version(), url );
+            return response;
+        }
+        catch ( final HttpTimeoutException e )
+        {
+            throw new TransferTimeoutException( location, url, "Repository remote request failed for: {}. Reason: {}",
+                                                e, url, e.getMessage() );
+        }
+        catch ( final IOException e )
+        {
+            throw new TransferLocationException( location, "Repository remote request failed for: {}. Reason: {}", e,
+                                                 url, e.getMessage() );
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new TransferException( "Interrupted while waiting for: {} {}", e, request.method(), url );
+        }
+    }
+
+    /**
+     * Unlike httpclient, the JDK client neither asks for compressed content nor decodes it, so GETs ask for gzip here
+     * (unless the location opts out, or the file is compressed already) and read the body through
+     * {@link #decode(HttpResponse, InputStream)}.
+     */
+    protected HttpRequest.Builder acceptEncoding( final HttpRequest.Builder builder )
+    {
+        if ( LocationUtils.isCompressedDownloads( location )
+                && !HttpUtil.isPrecompressed( URI.create( url ).getPath() ) )
+        {
+            builder.header( HttpUtil.ACCEPT_ENCODING, GZIP_ENCODING );
+        }
+
+        return builder;
+    }
+
+    protected static boolean isEncoded( final HttpResponse<?> response )
+    {
+        final String encoding = response.headers().firstValue( CONTENT_ENCODING ).orElse( "" ).trim();
+        return GZIP_ENCODING.equalsIgnoreCase( encoding ) || "x-gzip".equalsIgnoreCase( encoding );
+    }
+
+    protected static InputStream decode( final HttpResponse<?> response, final InputStream body )
+            throws IOException
+    {
+        return isEncoded( response ) ? new GZIPInputStream( body ) : body;
+    }
+
+    /**
+     * Returns true for one of the success statuses, and false for a missing (404) resource. Anything else becomes the
+     * same exception the httpclient transport would throw for it.
+     */
+    protected boolean checkStatus( final HttpResponse<?> response, final Integer... successStatuses )
+            throws TransferException
+    {
+        final int sc = response.statusCode();
+        final String line = response.version() + " " + sc;
+
+        if ( sc > 399 && sc != 404 && sc != 408 && sc != 502 && sc != 503 && sc != 504 )
+        {
+            throw new TransferLocationException( location,
+                                                 "Server misconfigured or not responding normally for url %s: '%s'",
+                                                 url, line );
+        }
+        else if ( Arrays.asList( successStatuses ).contains( sc ) )
+        {
+            return true;
+        }
+        else if ( sc == 404 )
+        {
+            return false;
+        }
+        else if ( sc > 499 && sc < 599 )
+        {
+            throw new BadGatewayException( location, url, sc, "HTTP request failed: %s", line );
+        }
+
+        throw new TransferLocationException( location, "HTTP request failed: %s", line );
+    }
+
+    /**
+     * Same exchange metadata the httpclient transport records for GET / HEAD, in the {@link JdkHttp}'s store if it has
+     * one, or else in a .http-metadata.json sidecar.
+     */
+    protected void writeMetadata( final Transfer target, final ObjectMapper mapper, final HttpResponse<?> response )
+    {
+        if ( target == null || mapper == null || response == null || response.statusCode() == 404 )
+        {
+            return;
+        }
+
+        for ( final ChecksumAlgorithm checksum : Arrays.asList( ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA1,
+                                                                ChecksumAlgorithm.SHA256 ) )
+        {
+            if ( target.getPath().endsWith( checksum.getExtension() ) )
+            {
+                return;
+            }
+        }
+
+        final HttpExchangeMetadata metadata = new HttpExchangeMetadata();
+        metadata.setRequestHeaders( headerMap( response.request().headers() ) );
+        final Map<String, List<String>> responseHeaders = headerMap( response.headers() );
+        if ( isEncoded( response ) )
+        {
+            // the stored file is decoded, so these no longer describe it (httpclient drops them the same way)
+            responseHeaders.remove( CONTENT_ENCODING.toUpperCase() );
+            responseHeaders.remove( "CONTENT-LENGTH" );
+        }
+
+        metadata.setResponseHeaders( responseHeaders );
+        metadata.setResponseStatusCode( response.statusCode() );
+
+        final ExchangeMetadataStore store = http.getExchangeMetadataStore();
+        try
+        {
+            ( store != null ? store : new SidecarExchangeMetadataStore( mapper ) ).write( target, metadata );
+        }
+        catch ( final IOException e )
+        {
+            logger.warn( "Failed to write metadata for HTTP exchange of: {}. Reason: {}", target, e.getMessage() );
+        }
+    }
+
+    /**
+     * HTTP/2 header names are lower-case on the wire; the metadata file keys them in upper case, like the httpclient
+     * transport does.
+     */
+    private static Map<String, List<String>> headerMap( final HttpHeaders headers )
+    {
+        final Map<String, List<String>> result = new HashMap<>();
+        headers.map().forEach( ( name, values ) -> result.computeIfAbsent( name.toUpperCase(), k -> new ArrayList<>() )
+                                                         .addAll( values ) );
+        return result;
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.jdkhttp.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.transport.jdkhttp.JdkHttp;
+import org.commonjava.maven.galley.util.AbortableOutput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpResponse;
+import java.util.Map;
+
+public final class JdkHttpDownload
+        extends AbstractJdkHttpJob
+        implements DownloadJob
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Transfer target;
+
+    private final Map<Transfer, Long> transferSizes;
+
+    private final EventMetadata eventMetadata;
+
+    private final ObjectMapper mapper;
+
+    private volatile long bytesTransferred;
+
+    private volatile long transferSize = -1;
+
+    public JdkHttpDownload( final String url, final HttpLocation location, final Transfer target,
+                            final Map<Transfer, Long> transferSizes, final EventMetadata eventMetadata,
+                            final JdkHttp http, final ObjectMapper mapper )
+    {
+        super( url, location, http );
+        this.target = target;
+        this.transferSizes = transferSizes;
+        this.eventMetadata = eventMetadata;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public DownloadJob call()
+    {
+        try
+        {
+            final HttpResponse<InputStream> response =
+                    send( acceptEncoding( http.newRequest( url, location ) ).GET().build(),
+                          HttpResponse.BodyHandlers.ofInputStream() );
+
+            try (InputStream in = response.body())
+            {
+                final boolean found;
+                try
+                {
+                    found = checkStatus( response, 200 );
+                }
+                finally
+                {
+                    writeMetadata( target, mapper, response );
+                }
+
+                if ( found )
+                {
+                    // an encoded body's Content-Length counts compressed bytes, not what ends up in the cache
+                    transferSize = isEncoded( response ) ?
+                            -1 :
+                            response.headers().firstValueAsLong( "Content-Length" ).orElse( -1 );
+                    transferSizes.put( target, transferSize );
+                    try (InputStream body = decode( response, in ))
+                    {
+                        writeTarget( body );
+                    }
+                }
+            }
+            catch ( final IOException e )
+            {
+                throw new TransferException( "Failed to read response body for: {}. Reason: {}", e, url,
+                                             e.getMessage() );
+            }
+        }
+        catch ( final TransferException e )
+        {
+            this.error = e;
+        }
+
+        logger.info( "Download attempt done: {} Result:\n  target: {}\n  error: {}", url, target, error );
+        return this;
+    }
+
+    private void writeTarget( final InputStream in )
+            throws TransferException
+    {
+        boolean done = false;
+        boolean aborted = false;
+        try (OutputStream out = target.openOutputStream( TransferOperation.DOWNLOAD, true, eventMetadata ))
+        {
+            try
+            {
+                final byte[] buf = new byte[BUFFER_SIZE];
+                int read;
+                while ( ( read = in.read( buf ) ) > -1 )
+                {
+                    out.write( buf, 0, read );
+                    bytesTransferred += read;
+                }
+            }
+            catch ( final IOException e )
+            {
+                // so the cache doesn't publish the partial content as the target, and streaming readers see the error
+                aborted = AbortableOutput.abort( out, e );
+                throw e;
+            }
+
+            done = true;
+        }
+        catch ( final IOException e )
+        {
+            throw new TransferException( "Failed to write to local proxy store: {}\nOriginal URL: {}. Reason: {}", e,
+                                         target, url, e.getMessage() );
+        }
+        finally
+        {
+            if ( !done )
+            {
+                deleteQuietly( aborted );
+            }
+        }
+    }
+
+    /**
+     * An aborted write left the target alone, and the cache kept the partial content aside for a resume we don't
+     * do; otherwise, the target itself holds the partial content.
+     */
+    private void deleteQuietly( final boolean aborted )
+    {
+        final Transfer partial = aborted ? target.getSiblingMeta( CacheProvider.SUFFIX_TO_RESUME ) : target;
+        try
+        {
+            if ( partial != null )
+            {
+                partial.delete( !aborted );
+            }
+        }
+        catch ( final IOException e )
+        {
+            logger.error( String.format( "Failed to delete partial target: %s. Reason: %s", partial, e.getMessage() ),
+                          e );
+        }
+    }
+
+    @Override
+    public long getTransferSize()
+    {
+        return transferSize;
+    }
+
+    @Override
+    public long getBytesTransferred()
+    {
+        return bytesTransferred;
+    }
+
+    @Override
+    public Transfer getTransfer()
+    {
+        return target;
+    }
+}
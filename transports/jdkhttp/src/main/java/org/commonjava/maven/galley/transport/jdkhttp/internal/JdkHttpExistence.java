@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.jdkhttp.internal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.transport.ExistenceJob;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.transport.jdkhttp.JdkHttp;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+public final class JdkHttpExistence
+        extends AbstractJdkHttpJob
+        implements ExistenceJob
+{
+    private final Transfer transfer;
+
+    private final ObjectMapper mapper;
+
+    public JdkHttpExistence( final String url, final HttpLocation location, final Transfer transfer,
+                             final JdkHttp http, final ObjectMapper mapper )
+    {
+        super( url, location, http );
+        this.transfer = transfer;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public Boolean call()
+    {
+        try
+        {
+            final HttpResponse<Void> response =
+                    send( http.newRequest( url, location ).method( "HEAD", HttpRequest.BodyPublishers.noBody() ).build(),
+                          HttpResponse.BodyHandlers.discarding() );
+            try
+            {
+                return checkStatus( response, 200 );
+            }
+            finally
+            {
+                writeMetadata( transfer, mapper, response );
+            }
+        }
+        catch ( final TransferException e )
+        {
+            this.error = e;
+        }
+
+        return false;
+    }
+}
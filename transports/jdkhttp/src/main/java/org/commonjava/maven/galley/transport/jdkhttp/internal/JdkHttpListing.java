@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.jdkhttp.internal;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.ListingResult;
+import org.commonjava.maven.galley.spi.transport.ListingJob;
+import org.commonjava.maven.galley.transport.htcli.internal.HttpListing;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.transport.htcli.util.HtmlLinkTokenizer;
+import org.commonjava.maven.galley.transport.jdkhttp.JdkHttp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Directory listing over the JDK client; links are filtered the same way {@link HttpListing} filters them.
+ */
+public final class JdkHttpListing
+        extends AbstractJdkHttpJob
+        implements ListingJob
+{
+    private final ConcreteResource resource;
+
+    public JdkHttpListing( final String url, final ConcreteResource resource, final JdkHttp http )
+    {
+        super( url, (HttpLocation) resource.getLocation(), http );
+        this.resource = resource;
+    }
+
+    @Override
+    public ListingResult call()
+    {
+        try
+        {
+            final HttpResponse<InputStream> response =
+                    send( acceptEncoding( http.newRequest( url, location ) ).GET().build(),
+                          HttpResponse.BodyHandlers.ofInputStream() );
+            try (InputStream in = response.body())
+            {
+                if ( !checkStatus( response, 200 ) )
+                {
+                    return null;
+                }
+
+                final Charset charset =
+                        HtmlLinkTokenizer.charsetOf( response.headers().firstValue( "Content-Type" ).orElse( null ) );
+
+                try (InputStream body = decode( response, in ))
+                {
+                    final List<String> names =
+                            HttpListing.readListing( HtmlLinkTokenizer.open( body, charset ), url );
+                    return new ListingResult( resource, names.toArray( new String[0] ) );
+                }
+            }
+        }
+        catch ( final TransferException e )
+        {
+            this.error = e;
+        }
+        catch ( final IOException e )
+        {
+            this.error = new TransferException( "Failed to construct directory listing for: {}. Reason: {}", e, url,
+                                                e.getMessage() );
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.jdkhttp.internal;
+
+import org.commonjava.maven.galley.TransferException;
+import org.commonjava.maven.galley.spi.transport.PublishJob;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.transport.htcli.util.HttpUtil;
+import org.commonjava.maven.galley.transport.jdkhttp.JdkHttp;
+import org.commonjava.maven.galley.util.ContentTypeUtils;
+
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+public final class JdkHttpPublish
+        extends AbstractJdkHttpJob
+        implements PublishJob
+{
+    private final InputStream stream;
+
+    private final long length;
+
+    private final String contentType;
+
+    private boolean success;
+
+    public JdkHttpPublish( final String url, final HttpLocation location, final InputStream stream, final long length,
+                           final String contentType, final JdkHttp http )
+    {
+        super( url, location, http );
+        this.stream = stream;
+        this.length = length;
+        this.contentType = contentType == null ? ContentTypeUtils.detectContent( url ) : contentType;
+    }
+
+    @Override
+    public JdkHttpPublish call()
+    {
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofInputStream( () -> stream );
+        if ( length == 0 )
+        {
+            body = HttpRequest.BodyPublishers.noBody();
+        }
+        else if ( length > 0 )
+        {
+            // a known length goes out as Content-Length rather than chunked
+            body = HttpRequest.BodyPublishers.fromPublisher( body, length );
+        }
+
+        try
+        {
+            success = checkStatus( send( http.newRequest( url, location )
+                                             .header( "Content-Type", contentType )
+                                             .expectContinue( HttpUtil.isExpectContinue( length ) )
+                                             .PUT( body )
+                                             .build(), HttpResponse.BodyHandlers.discarding() ), 200, 201 );
+        }
+        catch ( final TransferException e )
+        {
+            this.error = e;
+        }
+
+        return this;
+    }
+
+    @Override
+    public boolean isSuccessful()
+    {
+        return success;
+    }
+
+    @Override
+    public long getTransferSize()
+    {
+        return length;
+    }
+}
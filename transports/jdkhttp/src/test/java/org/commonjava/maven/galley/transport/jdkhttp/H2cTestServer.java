@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.jdkhttp;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.util.AsciiString;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.rules.ExternalResource;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cleartext HTTP/2 (h2c) server for the JDK transport tests. It accepts both the HTTP/1.1 Upgrade handshake the JDK
+ * client uses for http:// URLs and prior-knowledge connections, and serves plain HTTP/1.1 to clients that don't
+ * upgrade. Every request is recorded with the protocol it arrived on, so tests can tell HTTP/2 was really used.
+ */
+public class H2cTestServer
+        extends ExternalResource
+{
+    public static final String HTTP_2 = "HTTP/2";
+
+    public static final String HTTP_1_1 = "HTTP/1.1";
+
+    private static final int MAX_CONTENT_LENGTH = 1024 * 1024;
+
+    private final Map<String, byte[]> content = new ConcurrentHashMap<>();
+
+    private final List<String> requests = Collections.synchronizedList( new ArrayList<>() );
+
+    private EventLoopGroup group;
+
+    private Channel channel;
+
+    public void expect( final String path, final String body )
+    {
+        content.put( path, body.getBytes() );
+    }
+
+    public String formatUrl( final String path )
+    {
+        final int port = ( (InetSocketAddress) channel.localAddress() ).getPort();
+        return "http://127.0.0.1:" + port + "/" + path;
+    }
+
+    /**
+     * "METHOD /path PROTOCOL", one per request, in the order they arrived.
+     */
+    public List<String> getRequests()
+    {
+        synchronized ( requests )
+        {
+            return new ArrayList<>( requests );
+        }
+    }
+
+    @Override
+    protected void before()
+            throws Throwable
+    {
+        group = new NioEventLoopGroup( 1 );
+        channel = new ServerBootstrap().group( group )
+                                       .channel( NioServerSocketChannel.class )
+                                       .childHandler( new ChannelInitializer<SocketChannel>()
+                                       {
+                                           @Override
+                                           protected void initChannel( final SocketChannel ch )
+                                           {
+                                               initPipeline( ch );
+                                           }
+                                       } )
+                                       .bind( "127.0.0.1", 0 )
+                                       .sync()
+                                       .channel();
+    }
+
+    @Override
+    protected void after()
+    {
+        if ( channel != null )
+        {
+            channel.close().syncUninterruptibly();
+        }
+
+        if ( group != null )
+        {
+            group.shutdownGracefully( 0, 1, TimeUnit.SECONDS ).syncUninterruptibly();
+        }
+    }
+
+    private void initPipeline( final SocketChannel ch )
+    {
+        final Http2Connection connection = new DefaultHttp2Connection( true );
+        final HttpToHttp2ConnectionHandler http2 =
+                new HttpToHttp2ConnectionHandlerBuilder().connection( connection )
+                                                         .frameListener( new InboundHttp2ToHttpAdapterBuilder(
+                                                                 connection ).maxContentLength( MAX_CONTENT_LENGTH )
+                                                                             .propagateSettings( false )
+                                                                             .build() )
+                                                         .build();
+
+        final HttpServerCodec http1 = new HttpServerCodec();
+        final HttpServerUpgradeHandler upgrade = new HttpServerUpgradeHandler( http1, protocol -> {
+            final boolean h2c = AsciiString.contentEquals( Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol );
+            return h2c ? new Http2ServerUpgradeCodec( http2 ) : null;
+        }, MAX_CONTENT_LENGTH );
+
+        ch.pipeline().addLast( new CleartextHttp2ServerUpgradeHandler( http1, upgrade, http2 ) );
+        ch.pipeline().addLast( new ChannelInboundHandlerAdapter()
+        {
+            @Override
+            public void channelRead( final ChannelHandlerContext ctx, final Object msg )
+            {
+                try
+                {
+                    if ( msg instanceof FullHttpRequest )
+                    {
+                        // converted from HTTP/2 frames
+                        final FullHttpRequest request = (FullHttpRequest) msg;
+                        respond( ctx, request, HTTP_2,
+                                 request.headers().get( HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text() ) );
+                    }
+                    else if ( msg instanceof HttpRequest )
+                    {
+                        // plain HTTP/1.1, no upgrade; any body parts that follow are dropped below
+                        respond( ctx, (HttpRequest) msg, HTTP_1_1, null );
+                    }
+                }
+                finally
+                {
+                    ReferenceCountUtil.release( msg );
+                }
+            }
+
+            @Override
+            public void userEventTriggered( final ChannelHandlerContext ctx, final Object evt )
+            {
+                if ( evt instanceof HttpServerUpgradeHandler.UpgradeEvent )
+                {
+                    // the request that carried the Upgrade header is answered on stream 1
+                    final HttpServerUpgradeHandler.UpgradeEvent upgraded = (HttpServerUpgradeHandler.UpgradeEvent) evt;
+                    try
+                    {
+                        respond( ctx, upgraded.upgradeRequest(), HTTP_2, "1" );
+                    }
+                    finally
+                    {
+                        upgraded.release();
+                    }
+                }
+                else
+                {
+                    ctx.fireUserEventTriggered( evt );
+                }
+            }
+        } );
+    }
+
+    private void respond( final ChannelHandlerContext ctx, final HttpRequest request, final String protocol,
+                          final String streamId )
+    {
+        final String path = request.uri().replaceFirst( "^https?://[^/]+", "" ).replaceFirst( "^/", "" );
+        requests.add( request.method() + " /" + path + " " + protocol );
+
+        final byte[] body = content.get( path );
+        final FullHttpResponse response;
+        if ( body == null )
+        {
+            response = new DefaultFullHttpResponse( HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND );
+            response.headers().setInt( HttpHeaderNames.CONTENT_LENGTH, 0 );
+        }
+        else
+        {
+            response = new DefaultFullHttpResponse( HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                                                    HttpMethod.HEAD.equals( request.method() ) ?
+                                                            Unpooled.EMPTY_BUFFER :
+                                                            Unpooled.wrappedBuffer( body ) );
+            response.headers().setInt( HttpHeaderNames.CONTENT_LENGTH, body.length );
+        }
+
+        if ( streamId != null )
+        {
+            response.headers().set( HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text(), streamId );
+        }
+
+        ctx.writeAndFlush( response );
+    }
+}
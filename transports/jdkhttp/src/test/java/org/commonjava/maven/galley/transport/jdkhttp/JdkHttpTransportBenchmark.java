@@ -0,0 +1,318 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.jdkhttp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.spi.transport.Transport;
+import org.commonjava.maven.galley.transport.htcli.HttpClientTransport;
+import org.commonjava.maven.galley.transport.htcli.HttpImpl;
+import org.commonjava.maven.galley.transport.htcli.model.SimpleHttpLocation;
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Compares {@link JdkHttpTransport} with {@link HttpClientTransport}: the same concurrent download workload runs
+ * through each, via a TCP relay that counts the connections opened to the server, and the connection count and
+ * throughput are logged. Against an HTTP/1.1 server (like the embedded test server) both transports need roughly one
+ * connection per concurrent request; an HTTP/2 upstream lets the JDK transport multiplex them over one. Point
+ * {@code -Dbenchmark.url} at an HTTP/2-capable repository base URL to compare there (no relay, so only throughput).
+ * <br/>
+ * This is not part of the normal test run (the class name doesn't match the surefire includes). Run it with:
+ * <pre>mvn -pl transports/jdkhttp test -Dtest=JdkHttpTransportBenchmark</pre>
+ */
+public class JdkHttpTransportBenchmark
+{
+    private static final int THREADS = 16;
+
+    private static final int DOWNLOADS_PER_THREAD = 50;
+
+    private static final int FILES = 32;
+
+    private static final int FILE_SIZE = 64 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Rule
+    public ExpectationServer server = new ExpectationServer( "repo" );
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileCacheProvider cache;
+
+    private ConnectionCountingRelay relay;
+
+    private String baseUrl;
+
+    private String benchmarkPath;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cache = new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new NoOpTransferDecorator() ) );
+
+        final String external = System.getProperty( "benchmark.url" );
+        if ( external != null )
+        {
+            baseUrl = external;
+            benchmarkPath = System.getProperty( "benchmark.path" );
+            return;
+        }
+
+        final String payload = StringUtils.repeat( 'x', FILE_SIZE );
+        for ( int i = 0; i < FILES; i++ )
+        {
+            server.expect( server.formatUrl( "file-" + i + ".jar" ), 200, payload );
+        }
+
+        relay = new ConnectionCountingRelay( server.getPort() );
+        baseUrl = server.getBaseUri().replace( ":" + server.getPort(), ":" + relay.getPort() );
+    }
+
+    @After
+    public void teardown()
+    {
+        closeQuietly( relay );
+    }
+
+    @Test
+    public void compareTransports()
+            throws Exception
+    {
+        // warm up the JIT on both, then measure with fresh clients so connection counts start from zero.
+        measureJdkHttp();
+        measureHttpClient();
+
+        final String jdk = measureJdkHttp();
+        final String httpclient = measureHttpClient();
+
+        logger.info( "Transport benchmark ({} threads x {} downloads of {} bytes):\n  jdkhttp:    {}\n  httpclient: {}",
+                     THREADS, DOWNLOADS_PER_THREAD, FILE_SIZE, jdk, httpclient );
+    }
+
+    private String measureJdkHttp()
+            throws Exception
+    {
+        final JdkHttp http = new JdkHttp( ( id ) -> null );
+        try
+        {
+            return run( new JdkHttpTransport( http, new ObjectMapper(), null ) );
+        }
+        finally
+        {
+            http.close();
+        }
+    }
+
+    private String measureHttpClient()
+            throws Exception
+    {
+        final HttpImpl http = new HttpImpl( ( id ) -> null );
+        try
+        {
+            return run( new HttpClientTransport( http ) );
+        }
+        finally
+        {
+            http.close();
+        }
+    }
+
+    private String run( final Transport transport )
+            throws Exception
+    {
+        final int connectionsBefore = relay == null ? 0 : relay.getConnections();
+        final SimpleHttpLocation location = new SimpleHttpLocation( "bench", baseUrl, true, true, true, true, null );
+        final SimpleLocation local = new SimpleLocation( "local", "http://local" );
+
+        final ExecutorService threads = Executors.newFixedThreadPool( THREADS );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( THREADS );
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger counter = new AtomicInteger();
+
+        for ( int t = 0; t < THREADS; t++ )
+        {
+            threads.execute( () -> {
+                try
+                {
+                    start.await();
+                    for ( int i = 0; i < DOWNLOADS_PER_THREAD; i++ )
+                    {
+                        final int n = counter.incrementAndGet();
+                        final String path = benchmarkPath != null ? benchmarkPath : "file-" + ( n % FILES ) + ".jar";
+                        final Transfer target = cache.getTransfer( new ConcreteResource( local, "dl/" + n ) );
+
+                        final DownloadJob job =
+                                transport.createDownloadJob( new ConcreteResource( location, path ), target,
+                                                             new HashMap<>(), 30, new EventMetadata() ).call();
+                        if ( job.getError() != null || !target.exists() )
+                        {
+                            failures.incrementAndGet();
+                        }
+                        else
+                        {
+                            bytes.addAndGet( job.getBytesTransferred() );
+                        }
+
+                        target.delete();
+                    }
+                }
+                catch ( final Exception e )
+                {
+                    logger.error( "Benchmark worker failed: " + e.getMessage(), e );
+                    failures.incrementAndGet();
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            } );
+        }
+
+        final long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        final double seconds = ( System.nanoTime() - begin ) / 1e9;
+        threads.shutdown();
+
+        assertThat( failures.get(), equalTo( 0 ) );
+
+        final String connections =
+                relay == null ? "n/a" : Integer.toString( relay.getConnections() - connectionsBefore );
+        return String.format( "%8.0f downloads/s  %8.1f MB/s  connections opened: %s",
+                              THREADS * DOWNLOADS_PER_THREAD / seconds, bytes.get() / seconds / ( 1024 * 1024 ),
+                              connections );
+    }
+
+    /**
+     * Accepts connections on a local port and pipes each one to the target port, counting how many were opened.
+     */
+    private static final class ConnectionCountingRelay
+            implements Closeable
+    {
+        private final ServerSocket serverSocket;
+
+        private final int targetPort;
+
+        private final AtomicInteger connections = new AtomicInteger();
+
+        private final ExecutorService pumps = Executors.newCachedThreadPool( r -> {
+            final Thread t = new Thread( r, "relay-pump" );
+            t.setDaemon( true );
+            return t;
+        } );
+
+        ConnectionCountingRelay( final int targetPort )
+                throws IOException
+        {
+            this.targetPort = targetPort;
+            this.serverSocket = new ServerSocket( 0, 200, InetAddress.getLoopbackAddress() );
+            pumps.execute( this::acceptLoop );
+        }
+
+        int getPort()
+        {
+            return serverSocket.getLocalPort();
+        }
+
+        int getConnections()
+        {
+            return connections.get();
+        }
+
+        private void acceptLoop()
+        {
+            while ( !serverSocket.isClosed() )
+            {
+                try
+                {
+                    final Socket client = serverSocket.accept();
+                    final Socket upstream = new Socket( InetAddress.getLoopbackAddress(), targetPort );
+                    connections.incrementAndGet();
+
+                    pumps.execute( () -> pump( client, upstream ) );
+                    pumps.execute( () -> pump( upstream, client ) );
+                }
+                catch ( final IOException e )
+                {
+                    // closed.
+                }
+            }
+        }
+
+        private void pump( final Socket from, final Socket to )
+        {
+            try
+            {
+                IOUtils.copy( from.getInputStream(), to.getOutputStream() );
+            }
+            catch ( final IOException e )
+            {
+                // connection closed on one side.
+            }
+            finally
+            {
+                closeQuietly( from );
+                closeQuietly( to );
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            closeQuietly( serverSocket );
+            pumps.shutdownNow();
+        }
+    }
+}
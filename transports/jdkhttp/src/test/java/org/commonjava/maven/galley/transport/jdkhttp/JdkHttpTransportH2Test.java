@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.jdkhttp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.transport.htcli.model.SimpleHttpLocation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Runs the transport against a cleartext HTTP/2 server, to check that the client really upgrades and then keeps using
+ * HTTP/2 on the same connection.
+ */
+public class JdkHttpTransportH2Test
+{
+    @Rule
+    public H2cTestServer server = new H2cTestServer();
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileCacheProvider cache;
+
+    private JdkHttpTransport transport;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cache = new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new NoOpTransferDecorator() ) );
+        transport = new JdkHttpTransport( new JdkHttp( entry -> null ), new ObjectMapper(), null );
+    }
+
+    @After
+    public void teardown()
+    {
+        transport.shutdown();
+    }
+
+    @Test
+    public void downloadsAndExistenceChecksUseHttp2()
+            throws Exception
+    {
+        server.expect( "repo/path/to/first.pom", "<project>first</project>" );
+        server.expect( "repo/path/to/second.pom", "<project>second</project>" );
+
+        final SimpleHttpLocation location = location();
+        assertDownload( location, "path/to/first.pom", "<project>first</project>" );
+        assertDownload( location, "path/to/second.pom", "<project>second</project>" );
+
+        assertThat( transport.createExistenceJob( new ConcreteResource( location, "path/to/first.pom" ), null, 10 )
+                             .call(), equalTo( true ) );
+        assertThat( transport.createExistenceJob( new ConcreteResource( location, "path/to/missing.pom" ), null, 10 )
+                             .call(), equalTo( false ) );
+
+        assertThat( server.getRequests(),
+                    equalTo( Arrays.asList( "GET /repo/path/to/first.pom " + H2cTestServer.HTTP_2,
+                                            "GET /repo/path/to/second.pom " + H2cTestServer.HTTP_2,
+                                            "HEAD /repo/path/to/first.pom " + H2cTestServer.HTTP_2,
+                                            "HEAD /repo/path/to/missing.pom " + H2cTestServer.HTTP_2 ) ) );
+    }
+
+    private void assertDownload( final SimpleHttpLocation location, final String path, final String content )
+            throws Exception
+    {
+        final ConcreteResource resource = new ConcreteResource( location, path );
+        final Transfer target = cache.getTransfer( resource );
+
+        final DownloadJob job =
+                transport.createDownloadJob( resource, target, new HashMap<>(), 10, new EventMetadata() ).call();
+
+        assertThat( job.getError(), nullValue() );
+        try (InputStream in = target.openInputStream())
+        {
+            assertThat( IOUtils.toString( in ), equalTo( content ) );
+        }
+    }
+
+    private SimpleHttpLocation location()
+            throws Exception
+    {
+        return new SimpleHttpLocation( "test", server.formatUrl( "repo" ), true, true, true, true, null );
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * Copyright (C) 2013 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.maven.galley.transport.jdkhttp;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.maven.galley.auth.PasswordEntry;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.cache.MockPathGenerator;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.ListingResult;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.auth.PasswordManager;
+import org.commonjava.maven.galley.spi.transport.DownloadJob;
+import org.commonjava.maven.galley.spi.transport.ExistenceJob;
+import org.commonjava.maven.galley.spi.transport.ListingJob;
+import org.commonjava.maven.galley.spi.transport.PublishJob;
+import org.commonjava.maven.galley.transport.htcli.internal.LogExchangeMetadataStore;
+import org.commonjava.maven.galley.transport.htcli.model.HttpExchangeMetadata;
+import org.commonjava.maven.galley.transport.htcli.model.SimpleHttpLocation;
+import org.commonjava.test.http.expect.ExpectationServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class JdkHttpTransportTest
+{
+    @Rule
+    public ExpectationServer server = new ExpectationServer( "repo" );
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final Map<PasswordEntry, String> passwords = new HashMap<>();
+
+    private FileCacheProvider cache;
+
+    private JdkHttpTransport transport;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cache = new FileCacheProvider( temp.newFolder( "cache" ), new MockPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new NoOpTransferDecorator() ) );
+
+        final PasswordManager passwordManager = passwords::get;
+        transport = new JdkHttpTransport( new JdkHttp( passwordManager ), new ObjectMapper(), null );
+    }
+
+    @After
+    public void teardown()
+    {
+        transport.shutdown();
+    }
+
+    @Test
+    public void downloadWritesTargetAndReportsSize()
+            throws Exception
+    {
+        final String content = "this is a test";
+        server.expect( server.formatUrl( "path/to/file.txt" ), 200, content );
+
+        final ConcreteResource resource = new ConcreteResource( location(), "path/to/file.txt" );
+        final Transfer target = cache.getTransfer( resource );
+        final Map<Transfer, Long> sizes = new HashMap<>();
+
+        final DownloadJob job = transport.createDownloadJob( resource, target, sizes, 10, new EventMetadata() ).call();
+
+        assertThat( job.getError(), nullValue() );
+        assertThat( target.exists(), equalTo( true ) );
+        try (InputStream in = target.openInputStream())
+        {
+            assertThat( IOUtils.toString( in ), equalTo( content ) );
+        }
+
+        assertThat( sizes.get( target ), equalTo( (long) content.length() ) );
+        assertThat( job.getBytesTransferred(), equalTo( (long) content.length() ) );
+    }
+
+    @Test
+    public void gzipEncodedDownloadIsStoredDecoded()
+            throws Exception
+    {
+        final String content = "<project>gzipped</project>";
+        final Map<String, String> requestHeaders = new HashMap<>();
+        server.expect( "GET", server.formatUrl( "path/to/foo-1.pom" ), ( request, response ) -> {
+            requestHeaders.put( "Accept-Encoding", request.getHeader( "Accept-Encoding" ) );
+            response.setStatus( 200 );
+            response.setHeader( "Content-Encoding", "gzip" );
+            try (OutputStream out = new GZIPOutputStream( response.getOutputStream() ))
+            {
+                out.write( content.getBytes() );
+            }
+        } );
+
+        final ConcreteResource resource = new ConcreteResource( location(), "path/to/foo-1.pom" );
+        final Transfer target = cache.getTransfer( resource );
+        final Map<Transfer, Long> sizes = new HashMap<>();
+
+        final DownloadJob job = transport.createDownloadJob( resource, target, sizes, 10, new EventMetadata() ).call();
+
+        assertThat( job.getError(), nullValue() );
+        assertThat( requestHeaders.get( "Accept-Encoding" ), equalTo( "gzip" ) );
+        try (InputStream in = target.openInputStream())
+        {
+            assertThat( IOUtils.toString( in ), equalTo( content ) );
+        }
+
+        assertThat( sizes.get( target ), equalTo( -1L ) );
+        assertThat( job.getBytesTransferred(), equalTo( (long) content.length() ) );
+    }
+
+    @Test
+    public void downloadRecordsExchangeMetadataInConfiguredStore()
+            throws Exception
+    {
+        server.expect( "GET", server.formatUrl( "path/to/logged.txt" ), ( request, response ) -> {
+            response.setStatus( 200 );
+            response.setHeader( "ETag", "\"v1\"" );
+            response.getWriter().write( "logged" );
+        } );
+
+        final LogExchangeMetadataStore store =
+                new LogExchangeMetadataStore( temp.newFile( "exchange.log" ), new ObjectMapper() );
+        final JdkHttpTransport logged =
+                new JdkHttpTransport( new JdkHttp( passwords::get, store ), new ObjectMapper(), null );
+
+        final ConcreteResource resource = new ConcreteResource( location(), "path/to/logged.txt" );
+        final Transfer target = cache.getTransfer( resource );
+        try
+        {
+            final DownloadJob job =
+                    logged.createDownloadJob( resource, target, new HashMap<>(), 10, new EventMetadata() ).call();
+
+            assertThat( job.getError(), nullValue() );
+            assertThat( store.contains( resource ), equalTo( true ) );
+            assertThat( store.read( target ).getResponseHeaders().get( "ETAG" ),
+                        equalTo( Collections.singletonList( "\"v1\"" ) ) );
+            assertThat( target.getSiblingMeta( HttpExchangeMetadata.FILE_EXTENSION ).exists(), equalTo( false ) );
+        }
+        finally
+        {
+            logged.shutdown();
+        }
+    }
+
+    @Test
+    public void downloadOfMissingFileLeavesNoTarget()
+            throws Exception
+    {
+        final ConcreteResource resource = new ConcreteResource( location(), "path/to/missing.txt" );
+        final Transfer target = cache.getTransfer( resource );
+
+        final DownloadJob job =
+                transport.createDownloadJob( resource, target, new HashMap<>(), 10, new EventMetadata() ).call();
+
+        assertThat( job.getError(), nullValue() );
+        assertThat( target.exists(), equalTo( false ) );
+    }
+
+    @Test
+    public void existenceUsesHead()
+            throws Exception
+    {
+        server.expect( server.formatUrl( "exists.txt" ), 200, "here" );
+
+        final SimpleHttpLocation location = location();
+        final ExistenceJob found = transport.createExistenceJob( new ConcreteResource( location, "exists.txt" ),
+                                                                 null, 10 );
+        final ExistenceJob missing = transport.createExistenceJob( new ConcreteResource( location, "missing.txt" ),
+                                                                   null, 10 );
+
+        assertThat( found.call(), equalTo( true ) );
+        assertThat( missing.call(), equalTo( false ) );
+        assertThat( server.getAccessesFor( "HEAD", server.getUrlPath( server.formatUrl( "exists.txt" ) ) ),
+                    equalTo( 1 ) );
+    }
+
+    @Test
+    public void listingReturnsChildLinks()
+            throws Exception
+    {
+        final String dirUrl = server.formatUrl( "dir/" );
+        final String html = "<html><body><a href=\"../\">../</a><a href=\"" + dirUrl
+                + "child/\">child/</a><a href=\"" + dirUrl + "file.txt\">file.txt</a></body></html>";
+        server.expect( dirUrl, 200, html );
+
+        final ListingJob job = transport.createListingJob( new ConcreteResource( location(), "dir/" ), null, 10 );
+        final ListingResult result = job.call();
+
+        assertThat( job.getError(), nullValue() );
+        assertThat( result, notNullValue() );
+        assertThat( Arrays.asList( result.getListing() ), equalTo( Arrays.asList( "child/", "file.txt" ) ) );
+    }
+
+    @Test
+    public void publishPutsContent()
+            throws Exception
+    {
+        server.expect( "PUT", server.formatUrl( "path/to/upload.txt" ), 201, "" );
+
+        final byte[] content = "uploaded".getBytes();
+        final PublishJob job =
+                transport.createPublishJob( new ConcreteResource( location(), "path/to/upload.txt" ),
+                                            new ByteArrayInputStream( content ), content.length, "text/plain",
+                                            10 );
+
+        assertThat( job.call().isSuccessful(), equalTo( true ) );
+        assertThat( job.getError(), nullValue() );
+    }
+
+    @Test
+    public void challengedDownloadUsesLocationCredentials()
+            throws Exception
+    {
+        final String expected = "Basic " + Base64.getEncoder().encodeToString( "user:secret".getBytes() );
+        server.expect( "GET", server.formatUrl( "secure.txt" ), ( req, resp ) -> {
+            if ( expected.equals( req.getHeader( "Authorization" ) ) )
+            {
+                resp.setStatus( 200 );
+                resp.getWriter().write( "secret content" );
+            }
+            else
+            {
+                resp.setHeader( "WWW-Authenticate", "Basic realm=\"test\"" );
+                resp.setStatus( 401 );
+            }
+        } );
+
+        final String uri = server.getBaseUri().replace( "://", "://user@" );
+        final SimpleHttpLocation location = new SimpleHttpLocation( "secure", uri, true, true, true, true, null );
+        passwords.put( new PasswordEntry( location, PasswordEntry.USER_PASSWORD ), "secret" );
+
+        final ConcreteResource resource = new ConcreteResource( location, "secure.txt" );
+        final Transfer target = cache.getTransfer( resource );
+
+        final DownloadJob job =
+                transport.createDownloadJob( resource, target, new HashMap<>(), 10, new EventMetadata() ).call();
+
+        assertThat( job.getError(), nullValue() );
+        try (InputStream in = target.openInputStream())
+        {
+            assertThat( IOUtils.toString( in ), equalTo( "secret content" ) );
+        }
+    }
+
+    private SimpleHttpLocation location()
+            throws Exception
+    {
+        return new SimpleHttpLocation( "test", server.getBaseUri(), true, true, true, true, null );
+    }
+}